@@ -0,0 +1,226 @@
+/*
+ * Copyright 2010 Research Studios Austria Forschungsgesellschaft mBH
+ *
+ * This file is part of easyrec.
+ *
+ * easyrec is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * easyrec is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with easyrec.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.easyrec.model.core;
+
+import gnu.trove.list.array.TDoubleArrayList;
+import gnu.trove.list.array.TIntArrayList;
+import gnu.trove.set.hash.TIntHashSet;
+
+import java.util.Arrays;
+
+/**
+ * A sparse user x item rating matrix in compressed rows, with an inverted index from the items to their ratings.
+ * <p/>
+ * Users and items are addressed by dense indexes in the order of their ids. The ratings of user <code>u</code> are the
+ * entries <code>getUserStart(u)</code> to <code>getUserEnd(u) - 1</code>, ordered by item. The ratings of item
+ * <code>i</code> are the entries <code>getItemEntry(p)</code> for <code>p</code> from <code>getItemStart(i)</code> to
+ * <code>getItemEnd(i) - 1</code>, ordered by user.
+ */
+public class RatingMatrix {
+    private final int[] userIds;
+    private final int[] itemIds;
+    // compressed rows: the entries of user u are userOffsets[u] until userOffsets[u + 1]
+    private final int[] userOffsets;
+    private final int[] entryUsers;
+    private final int[] entryItems;
+    private final double[] entryRatings;
+    // inverted index: the entries of item i are itemEntries[itemOffsets[i]] until itemEntries[itemOffsets[i + 1]]
+    private final int[] itemOffsets;
+    private final int[] itemEntries;
+
+    private RatingMatrix(int[] userIds, int[] itemIds, int[] userOffsets, int[] entryItems, double[] entryRatings) {
+        this.userIds = userIds;
+        this.itemIds = itemIds;
+        this.userOffsets = userOffsets;
+        this.entryItems = entryItems;
+        this.entryRatings = entryRatings;
+
+        entryUsers = new int[entryItems.length];
+
+        for (int u = 0; u < userIds.length; u++)
+            Arrays.fill(entryUsers, userOffsets[u], userOffsets[u + 1], u);
+
+        itemOffsets = new int[itemIds.length + 1];
+
+        for (int entryItem : entryItems)
+            itemOffsets[entryItem + 1]++;
+
+        for (int i = 0; i < itemIds.length; i++)
+            itemOffsets[i + 1] += itemOffsets[i];
+
+        // the entries are ordered by user, so every item lists its entries ordered by user too
+        itemEntries = new int[entryItems.length];
+        int[] next = Arrays.copyOf(itemOffsets, itemIds.length);
+
+        for (int entry = 0; entry < entryItems.length; entry++)
+            itemEntries[next[entryItems[entry]]++] = entry;
+    }
+
+    public int getUserCount() {
+        return userIds.length;
+    }
+
+    public int getItemCount() {
+        return itemIds.length;
+    }
+
+    public int getRatingCount() {
+        return entryItems.length;
+    }
+
+    public int getUserId(int userIndex) {
+        return userIds[userIndex];
+    }
+
+    public int getItemId(int itemIndex) {
+        return itemIds[itemIndex];
+    }
+
+    /**
+     * @return the index of the user or a negative value if the user has no ratings
+     */
+    public int getUserIndex(int userId) {
+        return Arrays.binarySearch(userIds, userId);
+    }
+
+    /**
+     * @return the index of the item or a negative value if the item has no ratings
+     */
+    public int getItemIndex(int itemId) {
+        return Arrays.binarySearch(itemIds, itemId);
+    }
+
+    public int getUserStart(int userIndex) {
+        return userOffsets[userIndex];
+    }
+
+    public int getUserEnd(int userIndex) {
+        return userOffsets[userIndex + 1];
+    }
+
+    public int getItemStart(int itemIndex) {
+        return itemOffsets[itemIndex];
+    }
+
+    public int getItemEnd(int itemIndex) {
+        return itemOffsets[itemIndex + 1];
+    }
+
+    /**
+     * @param position a position between {@link #getItemStart(int)} and {@link #getItemEnd(int)} of an item
+     * @return the entry of the rating at the position
+     */
+    public int getItemEntry(int position) {
+        return itemEntries[position];
+    }
+
+    /**
+     * @return the index of the user that gave the rating of the entry
+     */
+    public int getEntryUser(int entry) {
+        return entryUsers[entry];
+    }
+
+    /**
+     * @return the index of the item the rating of the entry is for
+     */
+    public int getEntryItem(int entry) {
+        return entryItems[entry];
+    }
+
+    public double getEntryRating(int entry) {
+        return entryRatings[entry];
+    }
+
+    /**
+     * Collects the ratings of a {@link RatingMatrix}, only the last rating of a user for an item is kept.
+     */
+    public static class Builder {
+        private final TIntArrayList users = new TIntArrayList();
+        private final TIntArrayList items = new TIntArrayList();
+        private final TDoubleArrayList ratings = new TDoubleArrayList();
+
+        public Builder add(int userId, int itemId, double rating) {
+            users.add(userId);
+            items.add(itemId);
+            ratings.add(rating);
+
+            return this;
+        }
+
+        public RatingMatrix build() {
+            int[] userIds = distinct(users);
+            int[] itemIds = distinct(items);
+            int[] userOffsets = new int[userIds.length + 1];
+            int[] ratingUsers = new int[ratings.size()];
+
+            for (int rating = 0; rating < ratingUsers.length; rating++) {
+                ratingUsers[rating] = Arrays.binarySearch(userIds, users.get(rating));
+                userOffsets[ratingUsers[rating] + 1]++;
+            }
+
+            for (int u = 0; u < userIds.length; u++)
+                userOffsets[u + 1] += userOffsets[u];
+
+            // counting sort by user keeps the order in which the ratings of a user were added
+            int[] byUser = new int[ratingUsers.length];
+            int[] next = Arrays.copyOf(userOffsets, userIds.length);
+
+            for (int rating = 0; rating < ratingUsers.length; rating++)
+                byUser[next[ratingUsers[rating]]++] = rating;
+
+            TIntArrayList entryItems = new TIntArrayList(byUser.length);
+            TDoubleArrayList entryRatings = new TDoubleArrayList(byUser.length);
+
+            for (int u = 0; u < userIds.length; u++) {
+                int start = userOffsets[u];
+                // sort the row by item and position within the row, the last rating of an item comes last
+                long[] row = new long[userOffsets[u + 1] - start];
+
+                for (int position = 0; position < row.length; position++)
+                    row[position] = (long) Arrays.binarySearch(itemIds, items.get(byUser[start + position])) << 32 |
+                            position;
+
+                Arrays.sort(row);
+                userOffsets[u] = entryItems.size();
+
+                for (int position = 0; position < row.length; position++) {
+                    int item = (int) (row[position] >>> 32);
+
+                    if (position + 1 < row.length && (int) (row[position + 1] >>> 32) == item) continue;
+
+                    entryItems.add(item);
+                    entryRatings.add(ratings.get(byUser[start + (int) row[position]]));
+                }
+            }
+
+            userOffsets[userIds.length] = entryItems.size();
+
+            return new RatingMatrix(userIds, itemIds, userOffsets, entryItems.toArray(), entryRatings.toArray());
+        }
+
+        private static int[] distinct(TIntArrayList ids) {
+            int[] result = new TIntHashSet(ids).toArray();
+            Arrays.sort(result);
+
+            return result;
+        }
+    }
+}
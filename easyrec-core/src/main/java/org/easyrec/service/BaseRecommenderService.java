@@ -55,7 +55,21 @@ public interface BaseRecommenderService<R, I, ACT, IT, AT, T, U> {
                                IT requestedItemType);
 
 
-    // HINT: The following method will be used (later) for online predictions (eg: for rating-based recommenders like the SlopeOne) (Mantis Issue: #472)
-    // HINT: maybe add ItemType (as 2nd parameter), just in case someone might want to search for different itemTypes than the one of the passed item
+    /**
+     * Computes recommendations for an item online, without a user or session context.
+     *
+     * @see #recommend(Object, Object, String, Object, Object, Object)
+     */
     public R recommend(T tenant, I item, AT assocType);
+
+    /**
+     * Computes recommendations for an item online by combining the precomputed associations of the item with the
+     * items the user or session acted on recently. The work per request is bounded by a time budget and a maximum
+     * number of candidates.
+     *
+     * @param user              optional, the user whose recent actions are considered
+     * @param sessionId         optional, the session whose recent actions are considered
+     * @param requestedItemType optional, if set only items of the requested type are recommended
+     */
+    public R recommend(T tenant, U user, String sessionId, I item, AT assocType, IT requestedItemType);
 }
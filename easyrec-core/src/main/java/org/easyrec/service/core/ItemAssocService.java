@@ -23,6 +23,10 @@ import org.easyrec.model.core.ItemVO;
 import org.easyrec.model.core.transfer.IAConstraintVO;
 import org.easyrec.service.BaseItemAssocService;
 
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+
 /**
  * Describes methods to access item association rules (within the recommender engine).
  * This is a concrete (Integer) typed interface of the generic {@link org.easyrec.service.BaseItemAssocService} interface.
@@ -43,4 +47,13 @@ import org.easyrec.service.BaseItemAssocService;
 public interface ItemAssocService extends
         BaseItemAssocService<ItemAssocVO<Integer,Integer>, Integer, AssociatedItemVO<Integer, Integer>, Integer, Integer, ItemVO<Integer, Integer>, IAConstraintVO<Integer, Integer>, Integer> {
 
+    /**
+     * returns the associated items for each of the specified <code>itemsFrom</code>, <code>assocType</code> and
+     * <code>itemToType</code>. The <code>numberOfResults</code> of the constraints is applied per item in
+     * <code>itemsFrom</code>. Every item of <code>itemsFrom</code> is contained in the returned map, items without
+     * associations are mapped to an empty list.
+     */
+    public Map<ItemVO<Integer, Integer>, List<AssociatedItemVO<Integer, Integer>>> getItemsTo(
+            Collection<ItemVO<Integer, Integer>> itemsFrom, Integer assocType, Integer itemToType,
+            IAConstraintVO<Integer, Integer> constraints);
 }
@@ -0,0 +1,46 @@
+/*
+ * Copyright 2010 Research Studios Austria Forschungsgesellschaft mBH
+ *
+ * This file is part of easyrec.
+ *
+ * easyrec is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * easyrec is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with easyrec.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.easyrec.service.core;
+
+import org.easyrec.model.core.ItemVO;
+import org.easyrec.util.core.OnlineScoreBoard;
+
+import java.util.List;
+
+/**
+ * Contributes candidate scores to the online recommendations computed by the {@link RecommenderService}.
+ * <p/>
+ * Scorers are called one after another for the same request and add their scores to a shared
+ * {@link OnlineScoreBoard}. A scorer must not block on anything but its own data access and should stop as soon as
+ * the score board is expired.
+ */
+public interface OnlineScorer {
+
+    /**
+     * @param tenantId            the tenant of the request
+     * @param item                the item the recommendation is computed for
+     * @param assocTypeId         the assoc type to use, never null
+     * @param requestedItemTypeId only score items of this type, null for all types
+     * @param sessionItems        the items recently acted on by the user or session, most recent first, never null
+     * @param scores              the score board of the request
+     */
+    public void score(Integer tenantId, ItemVO<Integer, Integer> item, Integer assocTypeId,
+                      Integer requestedItemTypeId, List<ItemVO<Integer, Integer>> sessionItems,
+                      OnlineScoreBoard scores);
+}
@@ -83,6 +83,15 @@ public interface ProfileService {
      */
     public String getProfile(ItemVO<Integer, Integer> item);
 
+    /**
+     * This function loads the profile XML strings of several items from the database
+     * with a single query per tenant and item type
+     *
+     * @param items The Item Objects of the profiles (hold itemId, itemType and tenantId)
+     * @return the XML profiles in the order of the given items, <code>null</code> for items without a profile
+     */
+    public List<String> getProfiles(List<Item> items);
+
     /**
      * This function loads a profile XML string from the database
      *
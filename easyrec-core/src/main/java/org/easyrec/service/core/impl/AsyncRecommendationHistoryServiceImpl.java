@@ -0,0 +1,204 @@
+/*
+ * Copyright 2010 Research Studios Austria Forschungsgesellschaft mBH
+ *
+ * This file is part of easyrec.
+ *
+ * easyrec is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * easyrec is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with easyrec.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.easyrec.service.core.impl;
+
+import com.jamonapi.MonitorFactory;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.easyrec.model.core.RecommendationVO;
+import org.easyrec.model.core.RecommendedItemVO;
+import org.easyrec.store.dao.core.RecommendationDAO;
+import org.easyrec.store.dao.core.RecommendedItemDAO;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.InitializingBean;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A {@link org.easyrec.service.core.RecommendationHistoryService} that takes recommendation writes off the request
+ * path.
+ * <p/>
+ * {@link #insertRecommendation(RecommendationVO)} only puts a snapshot of the recommendation into a bounded queue
+ * and returns immediately. A single writer thread drains the queue and stores up to <code>batchSize</code>
+ * recommendations with one multi-row INSERT per table. When the queue is full the recommendation is dropped rather
+ * than blocking the request; dropped, written and failed recommendations are counted in JAMon
+ * (<code>RecommendationHistory.*</code>). Pending recommendations are written when the bean is destroyed.
+ */
+public class AsyncRecommendationHistoryServiceImpl extends RecommendationHistoryServiceImpl
+        implements InitializingBean, DisposableBean {
+    private final static String JAMON_QUEUED = "RecommendationHistory.queued";
+    private final static String JAMON_DROPPED = "RecommendationHistory.dropped";
+    private final static String JAMON_WRITTEN = "RecommendationHistory.written";
+    private final static String JAMON_FAILED = "RecommendationHistory.failed";
+
+    private final Log logger = LogFactory.getLog(this.getClass());
+
+    private RecommendationDAO recommendationDAO;
+    private int capacity = 10000;
+    private int batchSize = 500;
+    private long flushInterval = 1000;
+
+    private BlockingQueue<RecommendationVO<Integer, Integer>> queue;
+    private Thread writer;
+    private volatile boolean running;
+    private final AtomicLong dropped = new AtomicLong();
+
+    public AsyncRecommendationHistoryServiceImpl(RecommendationDAO recommendationDAO,
+                                                 RecommendedItemDAO recommendedItemDAO) {
+        super(recommendationDAO, recommendedItemDAO);
+
+        this.recommendationDAO = recommendationDAO;
+    }
+
+    @Override
+    public int insertRecommendation(RecommendationVO<Integer, Integer> recommendation) {
+        if (queue.offer(snapshot(recommendation))) {
+            MonitorFactory.add(JAMON_QUEUED, "recommendations", 1);
+            return 1;
+        }
+
+        if (dropped.incrementAndGet() % capacity == 1)
+            logger.warn("recommendation history queue is full, " + dropped.get() + " recommendations dropped so far");
+
+        MonitorFactory.add(JAMON_DROPPED, "recommendations", 1);
+
+        return 0;
+    }
+
+    public void afterPropertiesSet() throws Exception {
+        queue = new ArrayBlockingQueue<RecommendationVO<Integer, Integer>>(capacity);
+        running = true;
+
+        writer = new Thread(new Runnable() {
+            public void run() {
+                writeLoop();
+            }
+        }, "RecommendationHistoryWriter");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    public void destroy() throws Exception {
+        // let the writer finish its current batch, it notices the flag after at most one flush interval
+        running = false;
+        writer.join(flushInterval * 10);
+
+        // write what is left, the writer has stopped
+        List<RecommendationVO<Integer, Integer>> batch = new ArrayList<RecommendationVO<Integer, Integer>>(batchSize);
+        while (queue.drainTo(batch, batchSize) > 0) {
+            write(batch);
+            batch.clear();
+        }
+    }
+
+    public long getDropped() {
+        return dropped.get();
+    }
+
+    public int getPending() {
+        return queue.size();
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    public void setCapacity(int capacity) {
+        this.capacity = capacity;
+    }
+
+    public int getBatchSize() {
+        return batchSize;
+    }
+
+    public void setBatchSize(int batchSize) {
+        this.batchSize = batchSize;
+    }
+
+    public long getFlushInterval() {
+        return flushInterval;
+    }
+
+    /**
+     * @param flushInterval the time in milliseconds the writer waits for new recommendations
+     */
+    public void setFlushInterval(long flushInterval) {
+        this.flushInterval = flushInterval;
+    }
+
+    private void writeLoop() {
+        List<RecommendationVO<Integer, Integer>> batch = new ArrayList<RecommendationVO<Integer, Integer>>(batchSize);
+
+        while (running) {
+            try {
+                RecommendationVO<Integer, Integer> first = queue.poll(flushInterval, TimeUnit.MILLISECONDS);
+
+                if (first == null) continue;
+
+                batch.add(first);
+                queue.drainTo(batch, batchSize - 1);
+
+                write(batch);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } finally {
+                batch.clear();
+            }
+        }
+    }
+
+    private void write(List<RecommendationVO<Integer, Integer>> batch) {
+        try {
+            recommendationDAO.insertRecommendations(batch);
+            MonitorFactory.add(JAMON_WRITTEN, "recommendations", batch.size());
+        } catch (Exception e) {
+            logger.error("could not write " + batch.size() + " recommendations to the recommendation history", e);
+            MonitorFactory.add(JAMON_FAILED, "recommendations", batch.size());
+        }
+    }
+
+    // the caller keeps using the recommendation, so the writer must neither see nor cause later modifications
+    private static RecommendationVO<Integer, Integer> snapshot(RecommendationVO<Integer, Integer> recommendation) {
+        List<RecommendedItemVO<Integer, Integer>> recommendedItems = null;
+
+        if (recommendation.getRecommendedItems() != null) {
+            recommendedItems = new ArrayList<RecommendedItemVO<Integer, Integer>>(
+                    recommendation.getRecommendedItems().size());
+
+            for (RecommendedItemVO<Integer, Integer> recommendedItem : recommendation.getRecommendedItems())
+                recommendedItems.add(new RecommendedItemVO<Integer, Integer>(recommendedItem.getItem(),
+                        recommendedItem.getPredictionValue(), recommendedItem.getItemAssocId(),
+                        recommendedItem.getExplanation()));
+        }
+
+        return new RecommendationVO<Integer, Integer>(recommendation.getTenant(), recommendation.getUser(),
+                recommendation.getQueriedItem(), recommendation.getQueriedItemType(),
+                recommendation.getQueriedAssocType(), recommendation.getRelatedActionType(),
+                recommendation.getRecommendationStrategy(), recommendation.getExplanation(),
+                recommendation.getRecommendationTime() != null ? recommendation.getRecommendationTime() : new Date(),
+                recommendedItems);
+    }
+}
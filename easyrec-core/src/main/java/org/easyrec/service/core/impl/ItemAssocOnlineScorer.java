@@ -0,0 +1,77 @@
+/*
+ * Copyright 2010 Research Studios Austria Forschungsgesellschaft mBH
+ *
+ * This file is part of easyrec.
+ *
+ * easyrec is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * easyrec is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with easyrec.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.easyrec.service.core.impl;
+
+import org.easyrec.model.core.AssociatedItemVO;
+import org.easyrec.model.core.ItemVO;
+import org.easyrec.model.core.transfer.IAConstraintVO;
+import org.easyrec.service.core.ItemAssocService;
+import org.easyrec.service.core.OnlineScorer;
+import org.easyrec.util.core.OnlineScoreBoard;
+
+import java.util.List;
+
+/**
+ * Scores the precomputed associations of the requested item with their assoc value.
+ */
+public class ItemAssocOnlineScorer implements OnlineScorer {
+    private final static String EXPLANATION = "this item is related to the currently acted on item '";
+
+    private ItemAssocService itemAssocService;
+    private double weight = 1.0;
+    private int maxNeighbours = 100;
+
+    public ItemAssocOnlineScorer(ItemAssocService itemAssocService) {
+        this.itemAssocService = itemAssocService;
+    }
+
+    public void score(Integer tenantId, ItemVO<Integer, Integer> item, Integer assocTypeId,
+                      Integer requestedItemTypeId, List<ItemVO<Integer, Integer>> sessionItems,
+                      OnlineScoreBoard scores) {
+        if (scores.isExpired()) return;
+
+        List<AssociatedItemVO<Integer, Integer>> associatedItems = itemAssocService
+                .getItemsTo(item, assocTypeId, requestedItemTypeId,
+                        new IAConstraintVO<Integer, Integer>(maxNeighbours, null, null, null, tenantId, true, false));
+        String explanation = EXPLANATION + item.getItem() + "'";
+
+        for (AssociatedItemVO<Integer, Integer> associatedItem : associatedItems) {
+            if (associatedItem.getAssocValue() == null) continue;
+
+            scores.add(associatedItem.getItem(), weight * associatedItem.getAssocValue(),
+                    associatedItem.getItemAssocId(), explanation);
+        }
+    }
+
+    public double getWeight() {
+        return weight;
+    }
+
+    public void setWeight(double weight) {
+        this.weight = weight;
+    }
+
+    public int getMaxNeighbours() {
+        return maxNeighbours;
+    }
+
+    public void setMaxNeighbours(int maxNeighbours) {
+        this.maxNeighbours = maxNeighbours;
+    }
+}
@@ -29,8 +29,10 @@ import org.easyrec.utils.io.autoimport.AutoImportService;
 import org.easyrec.utils.io.autoimport.AutoImportUtils;
 
 import java.io.*;
+import java.util.Collection;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
 
 /**
  * Implementation of the {@link org.easyrec.service.core.ItemAssocService} interface.
@@ -101,6 +103,12 @@ public class ItemAssocServiceImpl implements ItemAssocService {
         return itemAssocDAO.getItemsTo(itemFrom, assocTypeId, itemToTypeId, constraints);
     }
 
+    public Map<ItemVO<Integer, Integer>, List<AssociatedItemVO<Integer, Integer>>> getItemsTo(
+            Collection<ItemVO<Integer, Integer>> itemsFrom, Integer assocTypeId, Integer itemToTypeId,
+            IAConstraintVO<Integer, Integer> constraints) {
+        return itemAssocDAO.getItemsTo(itemsFrom, assocTypeId, itemToTypeId, constraints);
+    }
+
     public void importItemAssocsFromCSV(String fileName) {
         importItemAssocsFromCSV(fileName, null);
     }
@@ -28,28 +28,24 @@ import org.easyrec.service.domain.TypeMappingService;
 import org.easyrec.store.dao.IDMappingDAO;
 import org.easyrec.store.dao.core.ProfileDAO;
 import org.w3c.dom.*;
-import org.xml.sax.InputSource;
 import org.xml.sax.SAXException;
 
 import javax.xml.XMLConstants;
-import javax.xml.parsers.DocumentBuilder;
 import javax.xml.parsers.DocumentBuilderFactory;
-import javax.xml.parsers.ParserConfigurationException;
-import javax.xml.transform.*;
-import javax.xml.transform.dom.DOMSource;
-import javax.xml.transform.stream.StreamResult;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.transform.TransformerException;
 import javax.xml.validation.SchemaFactory;
-import javax.xml.xpath.XPath;
 import javax.xml.xpath.XPathConstants;
 import javax.xml.xpath.XPathExpressionException;
-import javax.xml.xpath.XPathFactory;
 import java.io.IOException;
-import java.io.StringReader;
-import java.io.StringWriter;
 import java.net.URL;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
 /**
@@ -62,8 +58,7 @@ public class ProfileServiceImpl implements ProfileService {
     private TypeMappingService typeMappingService;
     private SchemaFactory sf;
     private DocumentBuilderFactory dbf;
-
-    private Transformer trans;
+    private ProfileXMLProcessor processor;
 
     // logging
     private final Log logger = LogFactory.getLog(this.getClass());
@@ -91,13 +86,7 @@ public class ProfileServiceImpl implements ProfileService {
             logger.debug("Parser loaded from: " + url);
         }
 
-        TransformerFactory tf = TransformerFactory.newInstance();
-        try {
-            trans = tf.newTransformer();
-            trans.setOutputProperty(OutputKeys.OMIT_XML_DECLARATION, "yes");
-        } catch (Exception e) {
-
-        }
+        processor = new ProfileXMLProcessor(dbf);
     }
 
     public boolean storeProfile(Integer tenantId, Integer itemId, String itemTypeId, String profileXML) {
@@ -141,6 +130,41 @@ public class ProfileServiceImpl implements ProfileService {
         return getProfile(tenantId, mappedItemId, itemTypeId);
     }
 
+    public List<String> getProfiles(List<Item> items) {
+        String[] profiles = new String[items.size()];
+        // positions of the items by tenant and item type, the profiles of each group are loaded with one query
+        Map<String, List<Integer>> groups = new LinkedHashMap<String, List<Integer>>();
+
+        for (int i = 0; i < items.size(); i++) {
+            Item item = items.get(i);
+            String group = item.getTenantId() + "\t" + item.getItemType();
+            List<Integer> positions = groups.get(group);
+
+            if (positions == null) {
+                positions = new ArrayList<Integer>();
+                groups.put(group, positions);
+            }
+
+            positions.add(i);
+        }
+
+        for (List<Integer> positions : groups.values()) {
+            Item first = items.get(positions.get(0));
+            List<String> itemIds = new ArrayList<String>(positions.size());
+
+            for (int position : positions)
+                itemIds.add(items.get(position).getItemId());
+
+            Map<String, String> groupProfiles =
+                    profileDAO.getProfiles(first.getTenantId(), itemIds, first.getItemType());
+
+            for (int position : positions)
+                profiles[position] = groupProfiles.get(items.get(position).getItemId());
+        }
+
+        return Arrays.asList(profiles);
+    }
+
     public Set<String> getMultiDimensionValue(Integer tenantId, Integer itemId, String itemType,
                                               String dimensionXPath) {
         return profileDAO.getMultiDimensionValue(tenantId, itemId,
@@ -158,16 +182,25 @@ public class ProfileServiceImpl implements ProfileService {
             throws XPathExpressionException, SAXException {
 
         Set<String> result = new HashSet<String>();
+        ProfileXMLProcessor.Worker worker = null;
 
         try {
             int itemIntID = idMappingDAO.lookup(itemId);
 
-            XPathFactory xpf = XPathFactory.newInstance();
+            String profile = getProfile(tenantId, itemIntID, itemType);
 
-            Document doc = getProfileXMLDocument(tenantId, itemIntID, itemType);
+            if (ProfileXMLProcessor.isStreamable(dimensionXPath)) {
+                try {
+                    return processor.streamField(profile, dimensionXPath);
+                } catch (XMLStreamException e) {
+                    // the profile needs the DOM or is malformed and the DOM parser reports the error
+                }
+            }
 
-            XPath xp = xpf.newXPath();
-            NodeList nodeList = (NodeList) xp.evaluate(dimensionXPath, doc, XPathConstants.NODESET);
+            worker = processor.borrow();
+            Document doc = getProfileXMLDocument(worker, profile);
+
+            NodeList nodeList = (NodeList) worker.compile(dimensionXPath).evaluate(doc, XPathConstants.NODESET);
 
             for (int i = 0; i < nodeList.getLength(); i++) {
                 Node node = nodeList.item(i);
@@ -189,6 +222,8 @@ public class ProfileServiceImpl implements ProfileService {
                 throw (IllegalArgumentException) e;
 
             return null;
+        } finally {
+            if (worker != null) processor.release(worker);
         }
         return result;
     }
@@ -210,35 +245,29 @@ public class ProfileServiceImpl implements ProfileService {
     public boolean insertOrUpdateMultiDimension(Integer tenantId, Integer itemId, String itemType, String dimensionXPath,
                                                 List<String> values) {
 
-        XPathFactory xpf = XPathFactory.newInstance();
+        ProfileXMLProcessor.Worker worker = processor.borrow();
 
         try {
             // load and parse the profile
-            Document doc = getProfileXMLDocument(tenantId, itemId, itemType);
-            // check if the element exists
-            Node node = null;
-            Node parent = null;
-            XPath xp = xpf.newXPath();
+            Document doc = getProfileXMLDocument(worker, getProfile(tenantId, itemId, itemType));
+            // collect the existing values, equal to evaluating dimensionXPath[text()='value'] for every value
+            NodeList nodeList = (NodeList) worker.compile(dimensionXPath).evaluate(doc, XPathConstants.NODESET);
+            Set<String> existingValues = new HashSet<String>();
+            for (int i = 0; i < nodeList.getLength(); i++)
+                existingValues.addAll(ProfileXMLProcessor.getTextValues(nodeList.item(i)));
+            // if value exists, value can be discarded
             for (Iterator<String> it = values.iterator(); it.hasNext(); ) {
-                String value = it.next();
-                // look if value already exists
-                node = (Node) xp.evaluate(dimensionXPath + "[text()='" + value + "']", doc, XPathConstants.NODE);
-                // if value exists, value can be discarded
-                if (node != null) {
-                    // optimization: if a node was found, store the parent; later no new XPath evaluation is necessary
-                    parent = node.getParentNode();
-                    it.remove();
-                }
+                if (existingValues.contains(it.next())) it.remove();
             }
             if (values.isEmpty()) return true; // nothing left to do
             String parentPath = dimensionXPath.substring(0, dimensionXPath.lastIndexOf("/"));
-            parent = (Node) xp.evaluate(parentPath, doc, XPathConstants.NODE);
+            Node parent = (Node) worker.compile(parentPath).evaluate(doc, XPathConstants.NODE);
             // find path to parent
             if (parent == null) {
                 String tmpPath = parentPath;
                 while (parent == null) {
                     tmpPath = parentPath.substring(0, tmpPath.lastIndexOf("/"));
-                    parent = (Node) xp.evaluate(tmpPath, doc, XPathConstants.NODE);
+                    parent = (Node) worker.compile(tmpPath).evaluate(doc, XPathConstants.NODE);
                 }
                 parent = insertElement(doc, parent, parentPath.substring(tmpPath.length()), null);
             }
@@ -250,11 +279,7 @@ public class ProfileServiceImpl implements ProfileService {
                 parent.appendChild(el);
             }
 
-            StringWriter writer = new StringWriter();
-            Result result = new StreamResult(writer);
-            trans.transform(new DOMSource(doc), result);
-            writer.close();
-            String xml = writer.toString();
+            String xml = worker.serialize(doc);
             logger.debug(xml);
             storeProfile(tenantId, itemId, itemType, xml);
 
@@ -262,6 +287,8 @@ public class ProfileServiceImpl implements ProfileService {
             logger.error("Error inserting Multi Dimension: " + e.getMessage());
             e.printStackTrace();
             return false;
+        } finally {
+            processor.release(worker);
         }
         return true;
     }
@@ -276,13 +303,12 @@ public class ProfileServiceImpl implements ProfileService {
     public boolean insertOrUpdateSimpleDimension(Integer tenantId, Integer itemId, String itemTypeId,
                                                  String dimensionXPath, String value) {
 
-        XPathFactory xpf = XPathFactory.newInstance();
+        ProfileXMLProcessor.Worker worker = processor.borrow();
         try {
             // load and parse the profile
-            Document doc = getProfileXMLDocument(tenantId, itemId, itemTypeId);
+            Document doc = getProfileXMLDocument(worker, getProfile(tenantId, itemId, itemTypeId));
             // check if the element exists
-            XPath xp = xpf.newXPath();
-            Node node = (Node) xp.evaluate(dimensionXPath, doc, XPathConstants.NODE);
+            Node node = (Node) worker.compile(dimensionXPath).evaluate(doc, XPathConstants.NODE);
             // if the element exists, just update the value
             if (node != null) {
                 // if value doesn't change, there is no need to alter the profile and write it to database
@@ -295,18 +321,14 @@ public class ProfileServiceImpl implements ProfileService {
                 String tmpPath = dimensionXPath;
                 while (node == null) {
                     tmpPath = dimensionXPath.substring(0, tmpPath.lastIndexOf("/"));
-                    node = (Node) xp.evaluate(tmpPath, doc, XPathConstants.NODE);
+                    node = (Node) worker.compile(tmpPath).evaluate(doc, XPathConstants.NODE);
                 }
                 // found the correct node to insert or ended at Document root, hence insert
                 insertElement(doc, node, dimensionXPath.substring(tmpPath.length()/*, dimensionXPath.length()*/),
                         value);
             }
 
-            StringWriter writer = new StringWriter();
-            Result result = new StreamResult(writer);
-            trans.transform(new DOMSource(doc), result);
-            writer.close();
-            String xml = writer.toString();
+            String xml = worker.serialize(doc);
             logger.debug(xml);
             storeProfile(tenantId, itemId, itemTypeId, xml);
 
@@ -314,6 +336,8 @@ public class ProfileServiceImpl implements ProfileService {
             logger.error("Error inserting Simple Dimension: " + e.getMessage());
             e.printStackTrace();
             return false;
+        } finally {
+            processor.release(worker);
         }
         return true;
     }
@@ -329,18 +353,17 @@ public class ProfileServiceImpl implements ProfileService {
             throws XPathExpressionException, TransformerException, SAXException,
             DOMException, MultipleProfileFieldsFoundException {
 
+        ProfileXMLProcessor.Worker worker = processor.borrow();
+
         try {
             int itemIntID = idMappingDAO.lookup(itemId);
 
-            XPathFactory xpf = XPathFactory.newInstance();
-
             // load and parse the profile
-            Document doc = getProfileXMLDocument(tenantId, itemIntID, itemTypeId);
+            Document doc = getProfileXMLDocument(worker, getProfile(tenantId, itemIntID, itemTypeId));
 
             // follow the XPath from bottom to top until you find the first existing path element
-            XPath xp = xpf.newXPath();
             String tmpPath = dimensionXPath;
-            NodeList nodeList = (NodeList) xp.evaluate(tmpPath, doc, XPathConstants.NODESET);
+            NodeList nodeList = (NodeList) worker.compile(tmpPath).evaluate(doc, XPathConstants.NODESET);
             if (nodeList.getLength() > 1)
                 throw new MultipleProfileFieldsFoundException(nodeList.getLength() + " nodes found.");
 
@@ -353,17 +376,13 @@ public class ProfileServiceImpl implements ProfileService {
                     tmpPath = dimensionXPath.substring(0, tmpPath.lastIndexOf("/"));
                     if ("".equals(tmpPath))
                         tmpPath = "/";
-                    node = (Node) xp.evaluate(tmpPath, doc, XPathConstants.NODE);
+                    node = (Node) worker.compile(tmpPath).evaluate(doc, XPathConstants.NODE);
                 }
                 insertElement(doc, node,
                         dimensionXPath.substring(tmpPath.length()), value);
             }
 
-            StringWriter writer = new StringWriter();
-            Result result = new StreamResult(writer);
-            trans.transform(new DOMSource(doc), result);
-            writer.close();
-            String xml = writer.toString();
+            String xml = worker.serialize(doc);
             logger.debug(xml);
             storeProfile(tenantId, itemId, itemTypeId, xml);
         } catch (Exception e) {
@@ -384,6 +403,8 @@ public class ProfileServiceImpl implements ProfileService {
                 throw (IllegalArgumentException) e;
 
             return false;
+        } finally {
+            processor.release(worker);
         }
         return true;
     }
@@ -392,16 +413,13 @@ public class ProfileServiceImpl implements ProfileService {
     public boolean deleteProfileField(Integer tenantId, String itemId, String itemType, String deleteXPath)
             throws XPathExpressionException, TransformerException, SAXException, FieldNotFoundException {
 
-        XPathFactory xpf = XPathFactory.newInstance();
+        ProfileXMLProcessor.Worker worker = processor.borrow();
         try {
             // load and parse the profile
-            DocumentBuilder db = dbf.newDocumentBuilder();
-            Document doc = db.parse(new InputSource(new StringReader(
-                    getProfile(tenantId, itemId, itemType))));
+            Document doc = worker.parse(getProfile(tenantId, itemId, itemType));
 
             // check if the element exists
-            XPath xp = xpf.newXPath();
-            NodeList nodeList = (NodeList) xp.evaluate(deleteXPath, doc, XPathConstants.NODESET);
+            NodeList nodeList = (NodeList) worker.compile(deleteXPath).evaluate(doc, XPathConstants.NODESET);
 
             if (nodeList.getLength() == 0)
                 throw new FieldNotFoundException("Field does not exist in this profile!");
@@ -410,11 +428,7 @@ public class ProfileServiceImpl implements ProfileService {
                 node.getParentNode().removeChild(node);
             }
 
-            StringWriter writer = new StringWriter();
-            Result result = new StreamResult(writer);
-            trans.transform(new DOMSource(doc), result);
-            writer.close();
-            String xml = writer.toString();
+            String xml = worker.serialize(doc);
             logger.debug(xml);
             storeProfile(tenantId, itemId, itemType, xml);
 
@@ -438,6 +452,8 @@ public class ProfileServiceImpl implements ProfileService {
                 throw (IllegalArgumentException) e;
 
             return false;
+        } finally {
+            processor.release(worker);
         }
     }
 
@@ -477,14 +493,12 @@ public class ProfileServiceImpl implements ProfileService {
         return startNode;
     }
 
-    private Document getProfileXMLDocument(Integer tenantId, Integer itemId, String itemTypeId)
-            throws ParserConfigurationException, SAXException, IOException {
-        DocumentBuilder db = dbf.newDocumentBuilder();
-        String profile = getProfile(tenantId, itemId, itemTypeId);
+    private Document getProfileXMLDocument(ProfileXMLProcessor.Worker worker, String profile)
+            throws SAXException, IOException {
         if (profile == null || profile.equals(""))
-            return db.newDocument();
+            return worker.newDocument();
         else
-            return db.parse(new InputSource(new StringReader(profile)));
+            return worker.parse(profile);
     }
 
 }
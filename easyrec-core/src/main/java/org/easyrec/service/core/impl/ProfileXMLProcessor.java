@@ -0,0 +1,306 @@
+/*
+ * Copyright 2010 Research Studios Austria Forschungsgesellschaft mBH
+ *
+ * This file is part of easyrec.
+ *
+ * easyrec is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * easyrec is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with easyrec.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.easyrec.service.core.impl;
+
+import org.w3c.dom.Document;
+import org.w3c.dom.Node;
+import org.xml.sax.InputSource;
+import org.xml.sax.SAXException;
+
+import javax.xml.parsers.DocumentBuilder;
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import javax.xml.transform.OutputKeys;
+import javax.xml.transform.Transformer;
+import javax.xml.transform.TransformerConfigurationException;
+import javax.xml.transform.TransformerException;
+import javax.xml.transform.TransformerFactory;
+import javax.xml.transform.dom.DOMSource;
+import javax.xml.transform.stream.StreamResult;
+import javax.xml.xpath.XPath;
+import javax.xml.xpath.XPathExpression;
+import javax.xml.xpath.XPathExpressionException;
+import javax.xml.xpath.XPathFactory;
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Parses, queries and serializes item profiles for the {@link ProfileServiceImpl}.
+ * <p/>
+ * Neither parsers, transformers nor compiled XPath expressions may be used by two threads at once, so they are bundled
+ * in {@link Worker}s that are borrowed for one operation and returned to a pool afterwards. Each worker caches the
+ * XPath expressions it compiled.
+ * <p/>
+ * Reads of the text or an attribute of the elements at a plain element path, e.g. <code>/profile/name/text()</code>
+ * or <code>/profile/@id</code>, can be answered by {@link #streamField(String, String)} without building a DOM.
+ */
+public class ProfileXMLProcessor {
+    public static final int DEFAULT_MAX_IDLE_WORKERS = 32;
+    public static final int MAX_CACHED_EXPRESSIONS = 128;
+
+    // a plain absolute element path followed by text() or an attribute, without predicates or namespaces
+    private static final Pattern STREAMABLE_XPATH =
+            Pattern.compile("((?:/[A-Za-z_][\\w.\\-]*)+)/(?:text\\(\\)|@([A-Za-z_][\\w.\\-]*))");
+
+    private final DocumentBuilderFactory documentBuilderFactory;
+    private final TransformerFactory transformerFactory = TransformerFactory.newInstance();
+    private final XPathFactory xPathFactory = XPathFactory.newInstance();
+    private final XMLInputFactory xmlInputFactory = XMLInputFactory.newInstance();
+    private final BlockingQueue<Worker> idleWorkers;
+
+    public ProfileXMLProcessor(DocumentBuilderFactory documentBuilderFactory) {
+        this(documentBuilderFactory, DEFAULT_MAX_IDLE_WORKERS);
+    }
+
+    /**
+     * @param maxIdleWorkers the number of workers kept for reuse, more workers are created when needed
+     */
+    public ProfileXMLProcessor(DocumentBuilderFactory documentBuilderFactory, int maxIdleWorkers) {
+        this.documentBuilderFactory = documentBuilderFactory;
+        this.idleWorkers = new ArrayBlockingQueue<Worker>(maxIdleWorkers);
+
+        xmlInputFactory.setProperty(XMLInputFactory.IS_NAMESPACE_AWARE, true);
+        xmlInputFactory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+        xmlInputFactory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+    }
+
+    /**
+     * @return an idle worker or a new one, pass it to {@link #release(Worker)} when done
+     */
+    public Worker borrow() {
+        Worker worker = idleWorkers.poll();
+
+        return worker != null ? worker : new Worker();
+    }
+
+    public void release(Worker worker) {
+        idleWorkers.offer(worker);
+    }
+
+    /**
+     * @return <code>true</code> if the XPath can be evaluated by {@link #streamField(String, String)}
+     */
+    public static boolean isStreamable(String xPath) {
+        return xPath != null && STREAMABLE_XPATH.matcher(xPath).matches();
+    }
+
+    /**
+     * Evaluates a streamable XPath without building a DOM. The result equals the node values of the nodes the XPath
+     * selects in the DOM of the profile.
+     *
+     * @param profile a profile, <code>null</code> or an empty string for an empty profile
+     * @param xPath   an XPath for which {@link #isStreamable(String)} is <code>true</code>
+     * @return the texts or attribute values of the elements at the path
+     * @throws XMLStreamException if the profile is malformed or uses CDATA sections or a DTD, the XPath has to be
+     *                            evaluated on the DOM then
+     */
+    public Set<String> streamField(String profile, String xPath) throws XMLStreamException {
+        Matcher matcher = STREAMABLE_XPATH.matcher(xPath);
+
+        if (!matcher.matches()) throw new IllegalArgumentException("XPath " + xPath + " cannot be streamed");
+
+        Set<String> result = new HashSet<String>();
+
+        if (profile == null || profile.length() == 0) return result;
+
+        // the DOM keeps CDATA sections and entities as separate nodes, StAX parsers might report them as text
+        if (profile.contains("<![CDATA[") || profile.contains("<!DOCTYPE"))
+            throw new XMLStreamException("profile cannot be streamed");
+
+        String[] steps = matcher.group(1).substring(1).split("/");
+        String attribute = matcher.group(2);
+        XMLStreamReader reader = xmlInputFactory.createXMLStreamReader(new StringReader(profile));
+        // depth of the current element and the number of its leading ancestors (itself included) matching the path
+        int depth = 0;
+        int matchedDepth = 0;
+        // the text directly inside an element at the path
+        StringBuilder text = new StringBuilder();
+
+        try {
+            while (reader.hasNext()) {
+                int event = reader.next();
+
+                if (event == XMLStreamConstants.CHARACTERS || event == XMLStreamConstants.SPACE) {
+                    if (attribute == null && matchedDepth == steps.length && depth == steps.length)
+                        text.append(reader.getText());
+
+                    continue;
+                }
+
+                // a text node ends at the next child, comment or end of the element
+                if (text.length() > 0) {
+                    result.add(text.toString());
+                    text.setLength(0);
+                }
+
+                switch (event) {
+                    case XMLStreamConstants.START_ELEMENT:
+                        depth++;
+
+                        if (matchedDepth == depth - 1 && depth <= steps.length && isNamed(reader, steps[depth - 1])) {
+                            matchedDepth = depth;
+
+                            if (matchedDepth == steps.length && attribute != null) {
+                                for (int i = 0; i < reader.getAttributeCount(); i++) {
+                                    String namespace = reader.getAttributeNamespace(i);
+
+                                    if ((namespace == null || namespace.length() == 0) &&
+                                            attribute.equals(reader.getAttributeLocalName(i)))
+                                        result.add(reader.getAttributeValue(i));
+                                }
+                            }
+                        }
+                        break;
+                    case XMLStreamConstants.END_ELEMENT:
+                        if (matchedDepth == depth) matchedDepth--;
+
+                        depth--;
+                        break;
+                    case XMLStreamConstants.CDATA:
+                    case XMLStreamConstants.DTD:
+                    case XMLStreamConstants.ENTITY_REFERENCE:
+                        throw new XMLStreamException("profile cannot be streamed");
+                }
+            }
+        } finally {
+            reader.close();
+        }
+
+        return result;
+    }
+
+    /**
+     * @return the values of the text nodes the XPath <code>text()</code> selects below the given node, adjacent
+     *         text and CDATA nodes form one value
+     */
+    public static List<String> getTextValues(Node node) {
+        List<String> values = new ArrayList<String>();
+        StringBuilder text = null;
+
+        for (Node child = node.getFirstChild(); child != null; child = child.getNextSibling()) {
+            if (child.getNodeType() == Node.TEXT_NODE || child.getNodeType() == Node.CDATA_SECTION_NODE) {
+                if (text == null) text = new StringBuilder();
+
+                text.append(child.getNodeValue());
+            } else if (text != null) {
+                values.add(text.toString());
+                text = null;
+            }
+        }
+
+        if (text != null) values.add(text.toString());
+
+        return values;
+    }
+
+    private static boolean isNamed(XMLStreamReader reader, String name) {
+        String namespace = reader.getNamespaceURI();
+
+        return (namespace == null || namespace.length() == 0) && name.equals(reader.getLocalName());
+    }
+
+    /**
+     * A parser, a transformer and compiled XPath expressions for the use by one thread at a time.
+     */
+    public class Worker {
+        private final DocumentBuilder documentBuilder;
+        private final Transformer transformer;
+        private final XPath xPath;
+        private final Map<String, XPathExpression> expressions = new ExpressionCache();
+
+        private Worker() {
+            // the factories are not thread safe
+            synchronized (ProfileXMLProcessor.this) {
+                try {
+                    documentBuilder = documentBuilderFactory.newDocumentBuilder();
+                    transformer = transformerFactory.newTransformer();
+                    transformer.setOutputProperty(OutputKeys.OMIT_XML_DECLARATION, "yes");
+                } catch (ParserConfigurationException e) {
+                    throw new IllegalStateException("cannot create a parser for profiles", e);
+                } catch (TransformerConfigurationException e) {
+                    throw new IllegalStateException("cannot create a transformer for profiles", e);
+                }
+
+                xPath = xPathFactory.newXPath();
+            }
+        }
+
+        public Document newDocument() {
+            return documentBuilder.newDocument();
+        }
+
+        public Document parse(String profile) throws SAXException, IOException {
+            return documentBuilder.parse(new InputSource(new StringReader(profile)));
+        }
+
+        /**
+         * @return the compiled expression, cached by this worker
+         */
+        public XPathExpression compile(String expression) throws XPathExpressionException {
+            XPathExpression compiled = expressions.get(expression);
+
+            if (compiled == null) {
+                compiled = xPath.compile(expression);
+                expressions.put(expression, compiled);
+            }
+
+            return compiled;
+        }
+
+        public String serialize(Document document) throws TransformerException {
+            StringWriter writer = new StringWriter();
+
+            transformer.transform(new DOMSource(document), new StreamResult(writer));
+
+            return writer.toString();
+        }
+    }
+
+    /**
+     * The compiled expressions of a worker, the least recently used are dropped beyond
+     * <code>MAX_CACHED_EXPRESSIONS</code>.
+     */
+    private static class ExpressionCache extends LinkedHashMap<String, XPathExpression> {
+        private static final long serialVersionUID = -6018732446231946612L;
+
+        private ExpressionCache() {
+            super(16, 0.75f, true);
+        }
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, XPathExpression> eldest) {
+            return size() > MAX_CACHED_EXPRESSIONS;
+        }
+    }
+}
@@ -17,6 +17,8 @@
  */
 package org.easyrec.service.core.impl;
 
+import com.jamonapi.Monitor;
+import com.jamonapi.MonitorFactory;
 import org.easyrec.model.core.AssociatedItemVO;
 import org.easyrec.model.core.ItemVO;
 import org.easyrec.model.core.RecommendationVO;
@@ -24,12 +26,18 @@ import org.easyrec.model.core.RecommendedItemVO;
 import org.easyrec.model.core.transfer.IAConstraintVO;
 import org.easyrec.service.core.ActionService;
 import org.easyrec.service.core.ItemAssocService;
+import org.easyrec.service.core.OnlineScorer;
 import org.easyrec.service.core.RecommendationHistoryService;
 import org.easyrec.service.core.RecommenderService;
+import org.easyrec.util.core.OnlineScoreBoard;
 import org.springframework.beans.factory.InitializingBean;
 
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 import static org.easyrec.util.core.RecommenderUtils.filterAlreadyActedOn;
 import static org.easyrec.util.core.RecommenderUtils.filterDuplicates;
@@ -55,13 +63,22 @@ public class RecommenderServiceImpl implements RecommenderService, InitializingB
     // HINT: move these constants to a RecommenderConfig class/bean (Mantis Issue: #724)
     private final static Integer DEFAULT_MAXIMUM_NUMBER_OF_RELATED_ITEMS_PER_ITEM = 100;
     private final static boolean DEFAULT_USE_AVERAGE_PREDICTION_VALUES_FOR_DUPLICATES = true;
+    private final static long DEFAULT_ONLINE_TIME_BUDGET = 50;
+    private final static int DEFAULT_ONLINE_MAXIMUM_NUMBER_OF_CANDIDATES = 1000;
+    private final static int DEFAULT_ONLINE_NUMBER_OF_SESSION_ITEMS = 10;
 
     // HINT: introduce language dependent .property file (eg: messages.en.properties) for the following messages (Mantis Issue: #723)
     private final static String RECOMMENDATION_STRATEGY_ITEMS_BASED_ON_ACTION_HISTORY = "itemsBasedOnActionHistory";
     private final static String RECOMMENDATION_STRATEGY_ITEMS_ALSO_ACTED_ON = "itemsAlsoActedOn";
+    private final static String RECOMMENDATION_STRATEGY_ONLINE = "online";
 
     private final static String EXPLANATION_ITEMS_BASED_ON_ACTION_HISTORY = "items that are related with those items the user acted on lately";
     private final static String EXPLANATION_ITEMS_ALSO_ACTED_ON = "items that are often acted on together with the given item";
+    private final static String EXPLANATION_ONLINE = "items that are related with the given item and the items acted on lately";
+
+    private final static String JAMON_ONLINE_RECOMMEND = "RecommenderService.online";
+    private final static String JAMON_ONLINE_EXPIRED = "RecommenderService.online.expired";
+    private final static String JAMON_ONLINE_DROPPED = "RecommenderService.online.droppedScores";
 
     private final static String EXPLANATION_RELATED_1 = "this item is related to the currently acted on item '";
     private final static String EXPLANATION_RELATED_2 = "' via the assoc type '";
@@ -73,6 +90,10 @@ public class RecommenderServiceImpl implements RecommenderService, InitializingB
     private RecommendationHistoryService recommendationHistoryService;
     private Integer maximumNumberOfRelatedItemsPerItem = null;
     private boolean filterResults = true;
+    private List<OnlineScorer> onlineScorers = null;
+    private long onlineTimeBudget = DEFAULT_ONLINE_TIME_BUDGET;
+    private int onlineMaximumNumberOfCandidates = DEFAULT_ONLINE_MAXIMUM_NUMBER_OF_CANDIDATES;
+    private int onlineNumberOfSessionItems = DEFAULT_ONLINE_NUMBER_OF_SESSION_ITEMS;
 
     //////////////////////////////////////////////////////////////////////////////
     // interface "RecommenderService" implementation
@@ -101,13 +122,16 @@ public class RecommenderServiceImpl implements RecommenderService, InitializingB
         List<ItemVO<Integer, Integer>> itemsActedOn = actionService
                 .getItemsByUserActionAndType(tenantId, userId, sessionId, consideredActionTypeId, consideredItemTypeId, ratingThreshold,
                         numberOfLastActionsConsidered);
-        List<AssociatedItemVO<Integer, Integer>> currentAssociatedItems;
         List<RecommendedItemVO<Integer, Integer>> allRecommendedItems = null;
 
+        // fetch the associated items of the whole history at once
+        Map<ItemVO<Integer, Integer>, List<AssociatedItemVO<Integer, Integer>>> associatedItems =
+                itemAssocService.getItemsTo(itemsActedOn, assocTypeId, requestedItemTypeId,
+                        new IAConstraintVO<Integer, Integer>(maximumNumberOfRelatedItemsPerItem, null, tenantId,
+                                true));
+
         for (ItemVO<Integer, Integer> currentItem : itemsActedOn) {
-            currentAssociatedItems = itemAssocService.getItemsTo(currentItem, assocTypeId, requestedItemTypeId,
-                    new IAConstraintVO<Integer, Integer>(maximumNumberOfRelatedItemsPerItem, null, tenantId,
-                            true));
+            List<AssociatedItemVO<Integer, Integer>> currentAssociatedItems = associatedItems.get(currentItem);
             if (currentAssociatedItems != null) {
                 if (allRecommendedItems == null) {
                     allRecommendedItems = convertAssociatedItems(currentAssociatedItems, currentItem);
@@ -119,8 +143,14 @@ public class RecommenderServiceImpl implements RecommenderService, InitializingB
 
         // filter duplicates and history
         if (filterResults) {
+            // the history loaded above already contains every item to filter if it was neither limited by
+            // count or rating nor restricted to another item type
+            boolean historyComplete = numberOfLastActionsConsidered == null && ratingThreshold == null &&
+                    (consideredItemTypeId == null || consideredItemTypeId.equals(requestedItemTypeId));
+
             allRecommendedItems = doFiltering(tenantId, userId, sessionId, consideredActionTypeId, requestedItemTypeId,
-                    allRecommendedItems, DEFAULT_USE_AVERAGE_PREDICTION_VALUES_FOR_DUPLICATES);
+                    allRecommendedItems, DEFAULT_USE_AVERAGE_PREDICTION_VALUES_FOR_DUPLICATES,
+                    historyComplete ? itemsActedOn : null);
         }
 
         // create recommendation object
@@ -129,7 +159,6 @@ public class RecommenderServiceImpl implements RecommenderService, InitializingB
                 RECOMMENDATION_STRATEGY_ITEMS_BASED_ON_ACTION_HISTORY, EXPLANATION_ITEMS_BASED_ON_ACTION_HISTORY,
                 allRecommendedItems);
 
-        // HINT: implement an aspect (instead of directly using this) (Mantis Issue: #650)
         if (recommendationHistoryService != null) recommendationHistoryService.insertRecommendation(recommendation);
 
 
@@ -154,25 +183,69 @@ public class RecommenderServiceImpl implements RecommenderService, InitializingB
         // filter duplicates and history
         if (filterResults) {
             recommendedItems = doFiltering(tenantId, userId, sessionId, filteredActionTypeId, requestedItemTypeId,
-                    recommendedItems, DEFAULT_USE_AVERAGE_PREDICTION_VALUES_FOR_DUPLICATES);
+                    recommendedItems, DEFAULT_USE_AVERAGE_PREDICTION_VALUES_FOR_DUPLICATES, null);
         }
 
         RecommendationVO<Integer, Integer> recommendation = new RecommendationVO<Integer, Integer>(
                 tenantId, userId, item.getItem(), item.getType(), assocTypeId, null,
                 RECOMMENDATION_STRATEGY_ITEMS_ALSO_ACTED_ON, EXPLANATION_ITEMS_ALSO_ACTED_ON, recommendedItems);
 
-        // HINT: implement an aspect (instead of directly using this) (Mantis Issue: #650)
         if (recommendationHistoryService != null) recommendationHistoryService.insertRecommendation(recommendation);
 
         return recommendation;
     }
 
-    // HINT: implement this method (as soon as we support online recommendations)
     @Override
     public RecommendationVO<Integer, Integer> recommend(Integer tenant,
                                                         ItemVO<Integer, Integer> item,
                                                         Integer assocTypeId) {
-        return null;
+        return recommend(tenant, null, null, item, assocTypeId, null);
+    }
+
+    @Override
+    public RecommendationVO<Integer, Integer> recommend(Integer tenantId, Integer userId, String sessionId,
+                                                        ItemVO<Integer, Integer> item, Integer assocTypeId,
+                                                        Integer requestedItemTypeId) {
+        Monitor monitor = MonitorFactory.start(JAMON_ONLINE_RECOMMEND);
+
+        // the most recent actions of the user or session, in any action type
+        List<ItemVO<Integer, Integer>> sessionItems = Collections.emptyList();
+        if (userId != null || sessionId != null) {
+            sessionItems = actionService.getItemsByUserActionAndType(tenantId, userId, sessionId, null, null, null,
+                    onlineNumberOfSessionItems);
+        }
+
+        OnlineScoreBoard scores = new OnlineScoreBoard(onlineMaximumNumberOfCandidates, onlineTimeBudget);
+
+        if (assocTypeId != null) {
+            for (OnlineScorer scorer : onlineScorers) {
+                if (scores.isExpired()) break;
+
+                scorer.score(tenantId, item, assocTypeId, requestedItemTypeId, sessionItems, scores);
+            }
+        }
+
+        // the item itself and the items just acted on are never recommended
+        Set<ItemVO<Integer, Integer>> excluded = new HashSet<ItemVO<Integer, Integer>>();
+        excluded.add(item);
+        if (filterResults) excluded.addAll(sessionItems);
+
+        List<RecommendedItemVO<Integer, Integer>> recommendedItems =
+                scores.getTopItems(maximumNumberOfRelatedItemsPerItem, excluded);
+
+        if (scores.isExpired()) MonitorFactory.add(JAMON_ONLINE_EXPIRED, "count", 1);
+        if (scores.getDroppedScores() > 0)
+            MonitorFactory.add(JAMON_ONLINE_DROPPED, "scores", scores.getDroppedScores());
+
+        RecommendationVO<Integer, Integer> recommendation = new RecommendationVO<Integer, Integer>(
+                tenantId, userId, item.getItem(), item.getType(), assocTypeId, null,
+                RECOMMENDATION_STRATEGY_ONLINE, EXPLANATION_ONLINE, recommendedItems);
+
+        monitor.stop();
+
+        if (recommendationHistoryService != null) recommendationHistoryService.insertRecommendation(recommendation);
+
+        return recommendation;
     }
 
     // getter/setter
@@ -216,6 +289,41 @@ public class RecommenderServiceImpl implements RecommenderService, InitializingB
         this.filterResults = filterResults;
     }
 
+    public List<OnlineScorer> getOnlineScorers() {
+        return onlineScorers;
+    }
+
+    public void setOnlineScorers(List<OnlineScorer> onlineScorers) {
+        this.onlineScorers = onlineScorers;
+    }
+
+    public long getOnlineTimeBudget() {
+        return onlineTimeBudget;
+    }
+
+    /**
+     * @param onlineTimeBudget the time in milliseconds an online recommendation may spend on scoring, 0 for no limit
+     */
+    public void setOnlineTimeBudget(long onlineTimeBudget) {
+        this.onlineTimeBudget = onlineTimeBudget;
+    }
+
+    public int getOnlineMaximumNumberOfCandidates() {
+        return onlineMaximumNumberOfCandidates;
+    }
+
+    public void setOnlineMaximumNumberOfCandidates(int onlineMaximumNumberOfCandidates) {
+        this.onlineMaximumNumberOfCandidates = onlineMaximumNumberOfCandidates;
+    }
+
+    public int getOnlineNumberOfSessionItems() {
+        return onlineNumberOfSessionItems;
+    }
+
+    public void setOnlineNumberOfSessionItems(int onlineNumberOfSessionItems) {
+        this.onlineNumberOfSessionItems = onlineNumberOfSessionItems;
+    }
+
 
     //////////////////////////////////////////////////////////////////////////////
     // private methods
@@ -240,13 +348,13 @@ public class RecommenderServiceImpl implements RecommenderService, InitializingB
                                                                            String sessionId, Integer actionTypeId,
                                                                            Integer itemTypeId,
                                                                            List<RecommendedItemVO<Integer, Integer>> recommendedItems,
-                                                                           boolean useAveragePredictionValues) {
+                                                                           boolean useAveragePredictionValues,
+                                                                           List<ItemVO<Integer, Integer>> itemsActedOn) {
         // filter duplicates 
         recommendedItems = filterDuplicates(recommendedItems, useAveragePredictionValues);
 
-        // filter out shortly acted on items
-        List<ItemVO<Integer, Integer>> itemsActedOn = null;
-        if (userId != null || sessionId != null) {
+        // filter out shortly acted on items, unless the caller already loaded them
+        if (itemsActedOn == null && (userId != null || sessionId != null)) {
             itemsActedOn = actionService
                     .getItemsByUserActionAndType(tenantId, userId, sessionId, actionTypeId, itemTypeId, null, null);
         }
@@ -261,6 +369,13 @@ public class RecommenderServiceImpl implements RecommenderService, InitializingB
     public void afterPropertiesSet() throws Exception {
         if (maximumNumberOfRelatedItemsPerItem == null)
             maximumNumberOfRelatedItemsPerItem = DEFAULT_MAXIMUM_NUMBER_OF_RELATED_ITEMS_PER_ITEM;
+
+        // by default the associations of the item are combined with those of the session
+        if (onlineScorers == null) {
+            onlineScorers = new ArrayList<OnlineScorer>(2);
+            onlineScorers.add(new ItemAssocOnlineScorer(itemAssocService));
+            onlineScorers.add(new SessionAssocOnlineScorer(itemAssocService));
+        }
     }
 
 
@@ -0,0 +1,122 @@
+/*
+ * Copyright 2010 Research Studios Austria Forschungsgesellschaft mBH
+ *
+ * This file is part of easyrec.
+ *
+ * easyrec is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * easyrec is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with easyrec.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.easyrec.service.core.impl;
+
+import org.easyrec.model.core.AssociatedItemVO;
+import org.easyrec.model.core.ItemVO;
+import org.easyrec.model.core.transfer.IAConstraintVO;
+import org.easyrec.service.core.ItemAssocService;
+import org.easyrec.service.core.OnlineScorer;
+import org.easyrec.util.core.OnlineScoreBoard;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Scores the items co-occurring with the items recently acted on in the session. The associations of all session
+ * items are fetched at once; the score of the n-th most recent session item is weighted with <code>decay^n</code>,
+ * so the current context of the session dominates older actions.
+ */
+public class SessionAssocOnlineScorer implements OnlineScorer {
+    private final static String EXPLANATION = "this item is related to the recently acted on item '";
+
+    private ItemAssocService itemAssocService;
+    private double weight = 0.5;
+    private double decay = 0.8;
+    private int maxSessionItems = 5;
+    private int maxNeighbours = 20;
+
+    public SessionAssocOnlineScorer(ItemAssocService itemAssocService) {
+        this.itemAssocService = itemAssocService;
+    }
+
+    public void score(Integer tenantId, ItemVO<Integer, Integer> item, Integer assocTypeId,
+                      Integer requestedItemTypeId, List<ItemVO<Integer, Integer>> sessionItems,
+                      OnlineScoreBoard scores) {
+        if (scores.isExpired() || sessionItems.isEmpty()) return;
+
+        List<ItemVO<Integer, Integer>> consideredItems = new ArrayList<ItemVO<Integer, Integer>>(maxSessionItems);
+
+        for (ItemVO<Integer, Integer> sessionItem : sessionItems) {
+            if (consideredItems.size() >= maxSessionItems) break;
+            if (sessionItem.equals(item) || consideredItems.contains(sessionItem)) continue;
+
+            consideredItems.add(sessionItem);
+        }
+
+        if (consideredItems.isEmpty()) return;
+
+        Map<ItemVO<Integer, Integer>, List<AssociatedItemVO<Integer, Integer>>> associatedItems = itemAssocService
+                .getItemsTo(consideredItems, assocTypeId, requestedItemTypeId,
+                        new IAConstraintVO<Integer, Integer>(maxNeighbours, null, null, null, tenantId, true, false));
+        double itemWeight = weight;
+
+        for (ItemVO<Integer, Integer> sessionItem : consideredItems) {
+            if (scores.isExpired()) return;
+
+            List<AssociatedItemVO<Integer, Integer>> currentAssociatedItems = associatedItems.get(sessionItem);
+
+            if (currentAssociatedItems != null) {
+                String explanation = EXPLANATION + sessionItem.getItem() + "'";
+
+                for (AssociatedItemVO<Integer, Integer> associatedItem : currentAssociatedItems) {
+                    if (associatedItem.getAssocValue() == null) continue;
+
+                    scores.add(associatedItem.getItem(), itemWeight * associatedItem.getAssocValue(),
+                            associatedItem.getItemAssocId(), explanation);
+                }
+            }
+
+            itemWeight *= decay;
+        }
+    }
+
+    public double getWeight() {
+        return weight;
+    }
+
+    public void setWeight(double weight) {
+        this.weight = weight;
+    }
+
+    public double getDecay() {
+        return decay;
+    }
+
+    public void setDecay(double decay) {
+        this.decay = decay;
+    }
+
+    public int getMaxSessionItems() {
+        return maxSessionItems;
+    }
+
+    public void setMaxSessionItems(int maxSessionItems) {
+        this.maxSessionItems = maxSessionItems;
+    }
+
+    public int getMaxNeighbours() {
+        return maxNeighbours;
+    }
+
+    public void setMaxNeighbours(int maxNeighbours) {
+        this.maxNeighbours = maxNeighbours;
+    }
+}
@@ -77,6 +77,14 @@ public interface DomainActionService extends
                          ItemVO<Integer, String> item, String actionType, Integer actionValue, String description,
                          Date actionTime);
 
+    /**
+     * Stores several actions at once, e.g. for bulk imports.
+     *
+     * @param useDateFromVO if false, the actions are stored with the current time
+     * @return the number of stored actions
+     */
+    public int insertActions(List<ActionVO<Integer, String>> actions, boolean useDateFromVO);
+
     public void searchItem(Integer tenant, Integer user, String sessionId, String ip,
                            ItemVO<Integer, String> item, Boolean searchSucceeded, Integer numberOfFoundItems,
                            String description);
@@ -184,6 +184,10 @@ public class DomainActionServiceImpl implements DomainActionService {
 
     
     
+    public int insertActions(List<ActionVO<Integer, String>> actions, boolean useDateFromVO) {
+        return typedActionDAO.insertActions(actions, useDateFromVO);
+    }
+
     public void searchItem(Integer tenant, Integer user, String sessionId, String ip,
                            ItemVO<Integer, String> item, Boolean searchSucceeded, Integer numberOfFoundItems,
                            String description) {
@@ -109,6 +109,16 @@ public class DomainRecommenderServiceImpl implements DomainRecommenderService {
                         typeMappingService.getIdOfAssocType(tenant, assocType)));
     }
 
+    @Override
+    public RecommendationVO<Integer, String> recommend(Integer tenant, Integer user, String sessionId,
+                                                       ItemVO<Integer, String> item, String assocType,
+                                                       String requestedItemType) {
+        return typeMappingService.convertRecommendationVO(tenant, recommenderService
+                .recommend(tenant, user, sessionId, typeMappingService.convertTypedItemVO(tenant, item),
+                        typeMappingService.getIdOfAssocType(tenant, assocType),
+                        typeMappingService.getIdOfItemType(tenant, requestedItemType)));
+    }
+
     //////////////////////////////////////////////////////////////////////////////    
     // interface "DomainRecommenderService" implementation      
     @Override
@@ -17,6 +17,9 @@
  */
 package org.easyrec.store.dao;
 
+import java.util.Collection;
+import java.util.Map;
+
 /**
  * This interface provides methods to map a String IDs to Integers.
  * For an example of a spring bean definition config file see tests.
@@ -51,6 +54,14 @@ public interface IDMappingDAO {
      */
     public Integer lookup(String id);
 
+    /**
+     * Returns the Integer ID mapped to the given String ID without creating a mapping.
+     *
+     * @param id the String to be looked up in the mapping
+     * @return the Integer mapped to the given String; null if no mapping exists.
+     */
+    public Integer lookupExisting(String id);
+
     /**
      * Returns the String ID mapped to the given Integer ID. In case the no mapping exists, null is returned.
      *
@@ -59,4 +70,13 @@ public interface IDMappingDAO {
      */
     public String lookup(Integer id);
 
+    /**
+     * Returns the String IDs mapped to the given Integer IDs. All IDs that are not yet known are resolved with a
+     * single query. Integer IDs without a mapping are not contained in the result.
+     *
+     * @param ids the Integers to be looked up in the mapping
+     * @return a map from each given Integer to its String
+     */
+    public Map<Integer, String> lookupStringIds(Collection<Integer> ids);
+
 }
@@ -46,5 +46,19 @@ import java.util.List;
 public interface ActionDAO extends
         BaseActionDAO<ActionVO<Integer, Integer>, RankedItemVO<Integer, Integer>, Integer, Integer, ItemVO<Integer, Integer>, RatingVO<Integer, Integer>, Integer, Integer> {
 
+    /**
+     * Inserts several actions with one multi-row INSERT. Unlike {@link #insertAction(Object, boolean)} the
+     * generated ids are not set on the given objects.
+     *
+     * @param useDateFromVO if false, the actions are stored with the current time
+     * @return the number of inserted actions
+     */
+    public int insertActions(List<ActionVO<Integer, Integer>> actions, boolean useDateFromVO);
 
+    /**
+     * Reloads the in-memory ranking index (if enabled) from the database, e.g. after actions have been archived.
+     *
+     * @param tenantId the tenant to reload, null for all tenants
+     */
+    public void refreshRankingIndex(Integer tenantId);
 }
@@ -23,6 +23,10 @@ import org.easyrec.model.core.ItemVO;
 import org.easyrec.model.core.transfer.IAConstraintVO;
 import org.easyrec.store.dao.BaseItemAssocDAO;
 
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+
 /**
  * This interface provides methods to access {@link org.easyrec.model.core.ItemAssocVO} entries in a SAT recommender database.
  * <p/>
@@ -43,4 +47,31 @@ import org.easyrec.store.dao.BaseItemAssocDAO;
 public interface ItemAssocDAO extends
         BaseItemAssocDAO<ItemAssocVO<Integer, Integer>, AssociatedItemVO<Integer, Integer>, Integer, Integer, ItemVO<Integer, Integer>, IAConstraintVO<Integer, Integer>> {
 
+    /**
+     * returns the associated items for each of the specified <code>itemsFrom</code>, <code>assocType</code> and
+     * <code>itemToType</code> using a single query. The <code>numberOfResults</code> of the constraints is applied
+     * per item in <code>itemsFrom</code>. Every item of <code>itemsFrom</code> is contained in the returned map,
+     * items without associations are mapped to an empty list.
+     */
+    public Map<ItemVO<Integer, Integer>, List<AssociatedItemVO<Integer, Integer>>> getItemsTo(
+            Collection<ItemVO<Integer, Integer>> itemsFrom, Integer assocType, Integer itemToType,
+            IAConstraintVO<Integer, Integer> constraints);
+
+    /**
+     * Reloads the in-memory serving index (if enabled) from the database, e.g. after a generator has written new
+     * associations.
+     *
+     * @param tenantId    the tenant to reload, null for all tenants
+     * @param assocTypeId the assoc type to reload, null for all assoc types
+     */
+    public void refreshServingIndex(Integer tenantId, Integer assocTypeId);
+
+    /**
+     * Drops the associations of the in-memory serving index (if enabled) after they were changed in the database
+     * without this DAO, they are read from the database until the index is refreshed.
+     *
+     * @param tenantId    the changed tenant, null for all tenants
+     * @param assocTypeId the changed assoc type, null for all assoc types
+     */
+    public void invalidateServingIndex(Integer tenantId, Integer assocTypeId);
 }
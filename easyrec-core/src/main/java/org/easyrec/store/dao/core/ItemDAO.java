@@ -28,7 +28,9 @@ import org.easyrec.model.core.web.statistic.ItemDetails;
 import org.easyrec.store.dao.BasicDAO;
 
 import javax.annotation.Nullable;
+import java.util.Collection;
 import java.util.List;
+import java.util.Map;
 
 
 /**
@@ -114,6 +116,18 @@ public interface ItemDAO extends BasicDAO {
     @Nullable
     public Item get(RemoteTenant remoteTenant, String itemId, String itemType);
 
+    /**
+     * This function returns the items of one item type for the given item ids.
+     * Items that are not cached are loaded with a single query.
+     *
+     * @param remoteTenant
+     * @param itemIds
+     * @param itemType
+     *
+     * @return the items mapped by the requested item id, item ids without an item are not contained
+     */
+    public Map<String, Item> get(RemoteTenant remoteTenant, Collection<String> itemIds, String itemType);
+
     /**
      * This function returns an item (as it is) for the given id.
      * Note: don't forget to update item URLs!
@@ -264,6 +278,12 @@ public interface ItemDAO extends BasicDAO {
      */
     public void emptyCache();
 
+    /**
+     * Drops the cached entry of an item, including the entry remembering that the item does not exist. Must be
+     * called by everything that writes the item table without this DAO, e.g. when a stored profile creates the item.
+     */
+    public void evict(Integer tenantId, String itemId, String itemType);
+
     /**
      * Returns a list of items that match the search criteria. It returns a List of
      * matching ITEMS based on the filters you provide - you can use NULL to ignore the filter.
@@ -19,6 +19,9 @@ package org.easyrec.store.dao.core;
 
 import org.easyrec.store.dao.BaseProfileDAO;
 
+import java.util.Collection;
+import java.util.Map;
+
 /**
  * This interface provides methods to store data into and read <code>Profile</code> entries from a SAT recommender database.
  * <p/>
@@ -37,5 +40,14 @@ import org.easyrec.store.dao.BaseProfileDAO;
  */
 public interface ProfileDAO extends BaseProfileDAO<Integer, Integer, Integer> {
 
+    /**
+     * Loads the profiles of several items of the same item type with a single query.
+     *
+     * @param tenantId the tenantId of the items
+     * @param itemIds  the string itemIds of the items
+     * @param itemType the itemType name of the items
+     * @return the profile XML of every existing item by its itemId, <code>null</code> for items without a profile
+     */
+    public Map<String, String> getProfiles(Integer tenantId, Collection<String> itemIds, String itemType);
 
 }
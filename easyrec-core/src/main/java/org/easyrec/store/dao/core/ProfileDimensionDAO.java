@@ -0,0 +1,58 @@
+/*
+ * Copyright 2010 Research Studios Austria Forschungsgesellschaft mBH
+ *
+ * This file is part of easyrec.
+ *
+ * easyrec is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * easyrec is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with easyrec.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.easyrec.store.dao.core;
+
+import org.easyrec.utils.spring.store.dao.TableCreatingDAO;
+
+import java.util.List;
+
+/**
+ * Maintains an index of the values in the item profiles, so items can be found by a profile value without evaluating
+ * <code>ExtractValue</code> on every profile of a tenant.
+ * <p/>
+ * Every element of a profile that directly contains text is indexed under its absolute element path, e.g.
+ * <code>/profile/genre</code>. The index is derived from <code>item.profileData</code> and kept up to date by
+ * {@link ProfileDAO}.
+ */
+public interface ProfileDimensionDAO extends TableCreatingDAO {
+    public final static String DEFAULT_TABLE_NAME = "profiledimension";
+
+    /**
+     * @return <code>true</code> if items with the given value at the given XPath can be looked up in the index,
+     *         i.e. the XPath is a plain absolute element path and the index is available
+     */
+    public boolean isIndexed(String dimensionXPath, String value);
+
+    /**
+     * Replaces the indexed values of an item with the values of its new profile.
+     *
+     * @param profileXML the new profile, <code>null</code> if the profile was deleted
+     */
+    public void storeDimensions(Integer tenantId, String itemId, String itemType, String profileXML);
+
+    /**
+     * @return the ids of the items that have an element with the given value at the given path
+     */
+    public List<String> getItemIds(Integer tenantId, String itemType, String dimensionXPath, String value);
+
+    /**
+     * Rebuilds the index from all profiles in the item table.
+     */
+    public void rebuild();
+}
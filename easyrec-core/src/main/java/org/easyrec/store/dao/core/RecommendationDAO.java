@@ -20,6 +20,8 @@ package org.easyrec.store.dao.core;
 import org.easyrec.model.core.RecommendationVO;
 import org.easyrec.store.dao.BaseRecommendationDAO;
 
+import java.util.List;
+
 /**
  * This interface provides methods to store data into and read <code>Recommendation</code> entries from a SAT recommender database.
  * <p/>
@@ -39,4 +41,12 @@ import org.easyrec.store.dao.BaseRecommendationDAO;
 public interface RecommendationDAO
         extends BaseRecommendationDAO<RecommendationVO<Integer, Integer>> {
 
+    /**
+     * Inserts several recommendations and their recommended items with one multi-row INSERT per table. The
+     * generated ids are set on the given objects. A recommendation without a recommendation time is stored with
+     * the current time.
+     *
+     * @return the number of inserted recommendations
+     */
+    public int insertRecommendations(List<RecommendationVO<Integer, Integer>> recommendations);
 }
@@ -20,6 +20,8 @@ package org.easyrec.store.dao.core;
 import org.easyrec.model.core.RecommendedItemVO;
 import org.easyrec.store.dao.BaseRecommendedItemDAO;
 
+import java.util.List;
+
 /**
  * This interface provides methods to store data into and read <code>RecommendedItem</code> entries from a SAT recommender database.
  * <p/>
@@ -39,4 +41,11 @@ import org.easyrec.store.dao.BaseRecommendedItemDAO;
 public interface RecommendedItemDAO
         extends BaseRecommendedItemDAO<RecommendedItemVO<Integer, Integer>, Integer> {
 
+    /**
+     * Inserts several recommended items with one multi-row INSERT. Unlike
+     * {@link #insertRecommendedItem} the generated ids are not set on the given objects.
+     *
+     * @return the number of inserted recommended items
+     */
+    public int insertRecommendedItems(List<RecommendedItemVO<Integer, Integer>> recommendedItems);
 }
@@ -20,6 +20,8 @@ package org.easyrec.store.dao.core.impl;
 
 import com.google.common.collect.Lists;
 import com.google.common.primitives.Ints;
+import com.jamonapi.Monitor;
+import com.jamonapi.MonitorFactory;
 import org.easyrec.model.core.ActionVO;
 import org.easyrec.model.core.ItemVO;
 import org.easyrec.model.core.RankedItemVO;
@@ -30,11 +32,13 @@ import org.easyrec.service.core.TenantService;
 import org.easyrec.store.dao.core.ActionDAO;
 import org.easyrec.store.dao.core.types.AssocTypeDAO;
 import org.easyrec.store.dao.impl.AbstractBaseActionDAOMysqlImpl;
-import org.easyrec.utils.spring.store.ResultSetIteratorMysql;
+import org.easyrec.utils.spring.store.KeysetResultSetIteratorMysql;
 import org.easyrec.utils.spring.store.dao.DaoUtils;
 import org.easyrec.utils.spring.store.dao.annotation.DAO;
 import org.easyrec.utils.spring.store.service.sqlscript.SqlScriptService;
+import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.jdbc.core.PreparedStatementCreatorFactory;
+import org.springframework.jdbc.core.RowCallbackHandler;
 import org.springframework.jdbc.core.RowMapper;
 import org.springframework.jdbc.support.GeneratedKeyHolder;
 import org.springframework.jdbc.support.KeyHolder;
@@ -83,6 +87,7 @@ public class ActionDAOMysqlImpl extends
     // members
     private TenantService tenantService;
     private AssocTypeDAO assocTypeDAO;
+    private ActionRankingIndex rankingIndex;
 
     private ActionVORowMapper actionVORowMapper = new ActionVORowMapper();
     private RankedItemVORowMapper rankedItemVORowMapper = new RankedItemVORowMapper();
@@ -130,6 +135,30 @@ public class ActionDAOMysqlImpl extends
         }
     }
 
+    public ActionRankingIndex getRankingIndex() {
+        return rankingIndex;
+    }
+
+    /**
+     * Sets an in-memory index answering the item rankings of {@link #getRankedItemsByActionType}, the index is loaded
+     * when the DAO is initialized. Without an index the rankings are read from the database.
+     */
+    public void setRankingIndex(ActionRankingIndex rankingIndex) {
+        this.rankingIndex = rankingIndex;
+    }
+
+    @Override
+    protected void initDao() throws Exception {
+        if (rankingIndex == null) return;
+
+        try {
+            loadRankingIndex(null);
+        } catch (Exception e) {
+            logger.warn("could not load action ranking index, rankings are read from the database", e);
+            rankingIndex = null;
+        }
+    }
+
     // abstract (generic) method implementation of 'AbstractBaseActionDAOMysqlImpl<ActionVO>'
     @Override
     public Date getNewestActionDate(Integer tenantId, Integer userId, String sessionId) {
@@ -197,6 +226,79 @@ public class ActionDAOMysqlImpl extends
         // retrieve auto increment id, and set to VO
         action.setId(keyHolder.getKey().intValue());
 
+        if (rankingIndex != null && action.getItem() != null && action.getItem().getItem() != null &&
+                action.getItem().getType() != null)
+            rankingIndex.add(action.getTenant(), action.getActionType(), action.getItem().getType(),
+                    action.getItem().getItem(), (Date) args[11]);
+
+        return rowsAffected;
+    }
+
+    public int insertActions(List<ActionVO<Integer, Integer>> actions, boolean useDateFromVO) {
+        if (actions.isEmpty()) return 0;
+
+        StringBuilder query = new StringBuilder("INSERT INTO ");
+        query.append(DEFAULT_TABLE_NAME);
+        query.append(" (");
+        query.append(DEFAULT_TENANT_COLUMN_NAME);
+        query.append(", ");
+        query.append(DEFAULT_USER_COLUMN_NAME);
+        query.append(", ");
+        query.append(DEFAULT_SESSION_COLUMN_NAME);
+        query.append(", ");
+        query.append(DEFAULT_IP_COLUMN_NAME);
+        query.append(", ");
+        query.append(DEFAULT_ITEM_COLUMN_NAME);
+        query.append(", ");
+        query.append(DEFAULT_ITEM_TYPE_COLUMN_NAME);
+        query.append(", ");
+        query.append(DEFAULT_ACTION_TYPE_COLUMN_NAME);
+        query.append(", ");
+        query.append(DEFAULT_RATING_VALUE_COLUMN_NAME);
+        query.append(", ");
+        query.append(DEFAULT_SEARCH_SUCCEEDED_COLUMN_NAME);
+        query.append(", ");
+        query.append(DEFAULT_NUMBER_OF_FOUND_ITEMS);
+        query.append(", ");
+        query.append(DEFAULT_DESCRIPTION_COLUMN_NAME);
+        query.append(", ");
+        query.append(DEFAULT_ACTION_TIME_COLUMN_NAME);
+        query.append(") VALUES ");
+
+        Object[] args = new Object[actions.size() * ARG_TYPES_INSERT.length];
+        int[] argTypes = new int[args.length];
+        Date now = new Date(System.currentTimeMillis());
+        int i = 0;
+
+        for (ActionVO<Integer, Integer> action : actions) {
+            validateNonEmptyFields(action, useDateFromVO);
+
+            if (i > 0) query.append(", ");
+            query.append("(?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)");
+
+            System.arraycopy(ARG_TYPES_INSERT, 0, argTypes, i, ARG_TYPES_INSERT.length);
+            args[i++] = action.getTenant();
+            args[i++] = action.getUser();
+            args[i++] = action.getSessionId();
+            args[i++] = action.getIp();
+            args[i++] = action.getItem().getItem();
+            args[i++] = action.getItem().getType();
+            args[i++] = action.getActionType();
+            args[i++] = action.getRatingValue();
+            args[i++] = action.getSearchSucceeded();
+            args[i++] = action.getNumberOfFoundItems();
+            args[i++] = action.getDescription();
+            args[i++] = useDateFromVO ? action.getActionTime() : now;
+        }
+
+        int rowsAffected = getJdbcTemplate().update(query.toString(), args, argTypes);
+
+        if (rankingIndex != null) {
+            for (ActionVO<Integer, Integer> action : actions)
+                rankingIndex.add(action.getTenant(), action.getActionType(), action.getItem().getType(),
+                        action.getItem().getItem(), useDateFromVO ? action.getActionTime() : now);
+        }
+
         return rowsAffected;
     }
 
@@ -212,13 +314,21 @@ public class ActionDAOMysqlImpl extends
 
         int rowsAffected = getJdbcTemplate().update(SQL_REMOVE_ACTIONS, args, argTypes);
 
+        if (rankingIndex != null) rankingIndex.removeTenant(tenantId);
+
         return rowsAffected;
     }
 
+    public void refreshRankingIndex(Integer tenantId) {
+        if (rankingIndex == null) return;
+
+        loadRankingIndex(tenantId);
+    }
+
     @Override
     public Iterator<ActionVO<Integer, Integer>> getActionIterator(int bulkSize) {
-        return new ResultSetIteratorMysql<ActionVO<Integer, Integer>>(getDataSource(),
-                bulkSize, getActionIteratorQueryString(), actionVORowMapper);
+        return new KeysetResultSetIteratorMysql<ActionVO<Integer, Integer>>(getDataSource(), bulkSize,
+                getActionIteratorQueryString(), DEFAULT_ID_COLUMN_NAME, prefetcher, actionVORowMapper);
     }
 
     @Override
@@ -233,8 +343,8 @@ public class ActionDAOMysqlImpl extends
         DaoUtils.ArgsAndTypesHolder holder = new DaoUtils.ArgsAndTypesHolder(args, argTypes);
         String s = getActionIteratorQueryString(timeConstraints, holder);
 
-        return new ResultSetIteratorMysql<ActionVO<Integer, Integer>>(getDataSource(),
-                bulkSize, s, holder.getArgs(), holder.getArgTypes(), actionVORowMapper);
+        return new KeysetResultSetIteratorMysql<ActionVO<Integer, Integer>>(getDataSource(), bulkSize, s,
+                holder.getArgs(), holder.getArgTypes(), DEFAULT_ID_COLUMN_NAME, prefetcher, actionVORowMapper);
     }
 
     @Override
@@ -302,6 +412,17 @@ public class ActionDAOMysqlImpl extends
             throw new IllegalArgumentException("missing constraints, missing 'actionTypeId'");
         }
 
+        // the index counts the most frequent items of time ranges ending in the current hour
+        ActionRankingIndex index = rankingIndex;
+
+        if (index != null && Boolean.TRUE.equals(sortDesc)) {
+            List<RankedItemVO<Integer, Integer>> ranking = index.getRanking(tenantId, actionTypeId, itemTypeId,
+                    timeConstraints != null ? timeConstraints.getDateFrom() : null,
+                    timeConstraints != null ? timeConstraints.getDateTo() : null, numberOfResults);
+
+            if (ranking != null) return ranking;
+        }
+
         StringBuilder interestingColumns = new StringBuilder(DEFAULT_TENANT_COLUMN_NAME);
         interestingColumns.append(", ");
         interestingColumns.append(DEFAULT_ACTION_TYPE_COLUMN_NAME);
@@ -800,8 +921,8 @@ public class ActionDAOMysqlImpl extends
 
     ///////////////////////////////////////////////////////////////////////////
     // private methods
-    private void validateNonEmptyFields(ActionVO<Integer, Integer> action,
-                                        boolean useDateFromVO) {
+    static void validateNonEmptyFields(ActionVO<Integer, Integer> action,
+                                       boolean useDateFromVO) {
         if (action.getTenant() == null) {
             throw new IllegalArgumentException(
                     "missing constraints, unique key (tenantId, itemTypeId, actionTypeId, actionTime) must be set, missing 'tenantId'");
@@ -825,6 +946,63 @@ public class ActionDAOMysqlImpl extends
         }
     }
 
+    private void loadRankingIndex(Integer tenantId) {
+        Monitor monitor = MonitorFactory.start("ActionDAO.loadRankingIndex");
+
+        final ActionRankingIndex.Loader loader = rankingIndex.loader(tenantId);
+        String columns = DEFAULT_TENANT_COLUMN_NAME + ", " + DEFAULT_ACTION_TYPE_COLUMN_NAME + ", " +
+                DEFAULT_ITEM_TYPE_COLUMN_NAME + ", " + DEFAULT_ITEM_COLUMN_NAME;
+        String where = DEFAULT_ITEM_COLUMN_NAME + " IS NOT NULL AND " + DEFAULT_ITEM_TYPE_COLUMN_NAME + " IS NOT NULL";
+
+        List<Object> args = Lists.newArrayList();
+        List<Integer> argt = Lists.newArrayList();
+
+        if (tenantId != null) {
+            where += " AND " + DEFAULT_TENANT_COLUMN_NAME + "=?";
+
+            args.add(tenantId);
+            argt.add(Types.INTEGER);
+        }
+
+        // stream the counts instead of loading all of them into memory
+        JdbcTemplate streamingTemplate = new JdbcTemplate(getDataSource());
+        streamingTemplate.setFetchSize(Integer.MIN_VALUE);
+
+        streamingTemplate.query("SELECT " + columns + ", COUNT(*) AS " + DEFAULT_COUNT_ALIAS_NAME + " FROM " +
+                DEFAULT_TABLE_NAME + " WHERE " + where + " GROUP BY " + columns, args.toArray(), Ints.toArray(argt),
+                new RowCallbackHandler() {
+                    public void processRow(ResultSet rs) throws SQLException {
+                        loader.addTotal(rs.getInt(DEFAULT_TENANT_COLUMN_NAME),
+                                rs.getInt(DEFAULT_ACTION_TYPE_COLUMN_NAME), rs.getInt(DEFAULT_ITEM_TYPE_COLUMN_NAME),
+                                rs.getInt(DEFAULT_ITEM_COLUMN_NAME), rs.getInt(DEFAULT_COUNT_ALIAS_NAME));
+                    }
+                });
+
+        args.add(0, loader.getRetainedFrom());
+        argt.add(0, Types.TIMESTAMP);
+
+        streamingTemplate.query("SELECT " + columns + ", MIN(" + DEFAULT_ACTION_TIME_COLUMN_NAME + ") AS " +
+                DEFAULT_ACTION_TIME_COLUMN_NAME + ", COUNT(*) AS " + DEFAULT_COUNT_ALIAS_NAME + " FROM " +
+                DEFAULT_TABLE_NAME + " WHERE " + DEFAULT_ACTION_TIME_COLUMN_NAME + " >= ? AND " + where +
+                " GROUP BY " + columns + ", DATE(" + DEFAULT_ACTION_TIME_COLUMN_NAME + "), HOUR(" +
+                DEFAULT_ACTION_TIME_COLUMN_NAME + ")", args.toArray(), Ints.toArray(argt), new RowCallbackHandler() {
+            public void processRow(ResultSet rs) throws SQLException {
+                loader.addBucket(rs.getInt(DEFAULT_TENANT_COLUMN_NAME), rs.getInt(DEFAULT_ACTION_TYPE_COLUMN_NAME),
+                        rs.getInt(DEFAULT_ITEM_TYPE_COLUMN_NAME), rs.getInt(DEFAULT_ITEM_COLUMN_NAME),
+                        rs.getTimestamp(DEFAULT_ACTION_TIME_COLUMN_NAME), rs.getInt(DEFAULT_COUNT_ALIAS_NAME));
+            }
+        });
+
+        loader.publish();
+
+        monitor.stop();
+
+        if (logger.isInfoEnabled()) {
+            logger.info("loaded the action counters of " + (tenantId != null ? "tenant " + tenantId : "all tenants") +
+                    " into the action ranking index in " + (long) monitor.getLastValue() + "ms");
+        }
+    }
+
     //////////////////////////////////////////////////////////////////////////////
     // private inner classes
     private class ActionVORowMapper implements RowMapper<ActionVO<Integer, Integer>> {
@@ -0,0 +1,433 @@
+/*
+ * Copyright 2010 Research Studios Austria Forschungsgesellschaft mBH
+ *
+ * This file is part of easyrec.
+ *
+ * easyrec is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * easyrec is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with easyrec.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.easyrec.store.dao.core.impl;
+
+import gnu.trove.iterator.TLongIntIterator;
+import gnu.trove.map.hash.TLongIntHashMap;
+import org.easyrec.model.core.ItemVO;
+import org.easyrec.model.core.RankedItemVO;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * In-memory action counters answering the item rankings of {@link ActionDAOMysqlImpl#getRankedItemsByActionType}
+ * (most viewed, bought or rated items) without grouping the action table.
+ * <p/>
+ * For every tenant and action type the index counts the actions per item in total and in hourly buckets of the last
+ * <code>retentionHours</code>. The ranking of the actions since a given time is read from a window, the sum of the
+ * buckets from that time on. Windows are kept and moved with the requested start time, so the rankings of the last
+ * day, week or month requested again an hour later only cost the buckets in between. Start times are rounded down to
+ * the hour, so a window may count up to one hour of actions before the requested start. Rankings ending before the
+ * current hour are left to the database.
+ * <p/>
+ * A ranking only copies the matching counts while holding the lock of the counters and sorts them afterwards, so
+ * inserted actions are not blocked by the ranking of large tenants.
+ * <p/>
+ * The counters are loaded from the database by a {@link Loader} and afterwards updated with every inserted action.
+ */
+public class ActionRankingIndex {
+    public final static long BUCKET_MILLIS = 60L * 60L * 1000L;
+    public final static int DEFAULT_RETENTION_HOURS = 32 * 24;
+    // e.g. one for each time range of the ranking web services and one spare
+    public final static int MAX_WINDOWS = 4;
+
+    private final static Comparator<Ranked> WORST_FIRST = new Comparator<Ranked>() {
+        public int compare(Ranked r1, Ranked r2) {
+            if (r1.count != r2.count) return r1.count < r2.count ? -1 : 1;
+
+            return r1.key > r2.key ? -1 : (r1.key < r2.key ? 1 : 0);
+        }
+    };
+
+    private final ConcurrentMap<Long, Counters> counters = new ConcurrentHashMap<Long, Counters>();
+    private final int retentionHours;
+
+    public ActionRankingIndex() {
+        this(DEFAULT_RETENTION_HOURS);
+    }
+
+    public ActionRankingIndex(int retentionHours) {
+        if (retentionHours < 1) throw new IllegalArgumentException("'retentionHours' must be positive");
+
+        this.retentionHours = retentionHours;
+    }
+
+    public int getRetentionHours() {
+        return retentionHours;
+    }
+
+    /**
+     * @param tenantId the tenant to load, null for all tenants
+     */
+    public Loader loader(Integer tenantId) {
+        return new Loader(tenantId);
+    }
+
+    /**
+     * Counts an inserted action.
+     */
+    public void add(int tenantId, int actionTypeId, int itemTypeId, int itemId, Date actionTime) {
+        Long key = pack(tenantId, actionTypeId);
+        Counters tenantCounters = counters.get(key);
+
+        if (tenantCounters == null) {
+            Counters created = new Counters(retentionHours);
+            tenantCounters = counters.putIfAbsent(key, created);
+
+            if (tenantCounters == null) tenantCounters = created;
+        }
+
+        tenantCounters.add(pack(itemTypeId, itemId), bucketOf(actionTime), 1, bucketOf(currentTimeMillis()));
+    }
+
+    /**
+     * Returns the items with the most actions of a type sorted by descending number of actions.
+     *
+     * @param itemTypeId      only rank items of this type, null for all types
+     * @param from            count the actions from this time on, null for all actions
+     * @param to              count the actions until this time, null for all actions
+     * @param numberOfResults the maximum number of items to return, null or less than 1 for all items
+     * @return the ranked items or null if the index cannot answer the request because <code>from</code> lies before
+     *         the retained buckets or <code>to</code> before the current hour
+     */
+    public List<RankedItemVO<Integer, Integer>> getRanking(int tenantId, int actionTypeId, Integer itemTypeId,
+                                                           Date from, Date to, Integer numberOfResults) {
+        Counters tenantCounters = counters.get(pack(tenantId, actionTypeId));
+        long currentBucket = bucketOf(currentTimeMillis());
+
+        if (to != null && bucketOf(to) < currentBucket) return null;
+
+        if (tenantCounters == null)
+            return from == null || bucketOf(from) > currentBucket - retentionHours ?
+                    new ArrayList<RankedItemVO<Integer, Integer>>() : null;
+
+        Snapshot snapshot = tenantCounters.snapshot(from != null ? bucketOf(from) : null, currentBucket, itemTypeId);
+
+        if (snapshot == null) return null;
+
+        List<Ranked> top = snapshot.top(
+                numberOfResults != null && numberOfResults > 0 ? numberOfResults : Integer.MAX_VALUE);
+
+        List<RankedItemVO<Integer, Integer>> ranking = new ArrayList<RankedItemVO<Integer, Integer>>(top.size());
+
+        for (Ranked ranked : top)
+            ranking.add(new RankedItemVO<Integer, Integer>(
+                    new ItemVO<Integer, Integer>(tenantId, (int) ranked.key, (int) (ranked.key >>> 32)),
+                    actionTypeId, ranking.size() + 1, ranked.count));
+
+        return ranking;
+    }
+
+    public void removeTenant(int tenantId) {
+        for (Iterator<Long> keys = counters.keySet().iterator(); keys.hasNext(); ) {
+            if ((int) (keys.next() >>> 32) == tenantId) keys.remove();
+        }
+    }
+
+    public int size() {
+        return counters.size();
+    }
+
+    public void clear() {
+        counters.clear();
+    }
+
+    protected long currentTimeMillis() {
+        return System.currentTimeMillis();
+    }
+
+    private static long bucketOf(Date time) {
+        return bucketOf(time.getTime());
+    }
+
+    private static long bucketOf(long millis) {
+        // round down for times before 1970 too
+        return millis >= 0 ? millis / BUCKET_MILLIS : (millis + 1) / BUCKET_MILLIS - 1;
+    }
+
+    private static long pack(int high, int low) {
+        return ((long) high << 32) | (low & 0xFFFFFFFFL);
+    }
+
+    private static void adjust(TLongIntHashMap counts, long key, int delta) {
+        if (counts.adjustOrPutValue(key, delta, delta) == 0) counts.remove(key);
+    }
+
+    /**
+     * Collects the counters of one or all tenants and publishes them by replacing the previous counters of the
+     * tenants. Actions inserted while the counters are loaded are not counted if the load did not see them.
+     */
+    public class Loader {
+        private final Integer tenantId;
+        private final long currentBucket = bucketOf(currentTimeMillis());
+        private final Map<Long, Counters> loaded = new HashMap<Long, Counters>();
+
+        private Loader(Integer tenantId) {
+            this.tenantId = tenantId;
+        }
+
+        /**
+         * @return the time from which on the actions have to be passed to
+         *         {@link #addBucket(int, int, int, int, Date, int)}
+         */
+        public Date getRetainedFrom() {
+            return new Date((currentBucket - retentionHours + 1) * BUCKET_MILLIS);
+        }
+
+        /**
+         * Adds to the total number of actions of an item.
+         */
+        public void addTotal(int tenantId, int actionTypeId, int itemTypeId, int itemId, int count) {
+            getCounters(tenantId, actionTypeId).addTotal(pack(itemTypeId, itemId), count);
+        }
+
+        /**
+         * Adds to the number of actions of an item in the hour of the given time. Does not change the total.
+         */
+        public void addBucket(int tenantId, int actionTypeId, int itemTypeId, int itemId, Date actionTime,
+                              int count) {
+            getCounters(tenantId, actionTypeId).addBucket(pack(itemTypeId, itemId), bucketOf(actionTime), count,
+                    currentBucket);
+        }
+
+        public void publish() {
+            for (Iterator<Long> keys = counters.keySet().iterator(); keys.hasNext(); ) {
+                Long key = keys.next();
+
+                if ((tenantId == null || (int) (key >>> 32) == tenantId) && !loaded.containsKey(key)) keys.remove();
+            }
+
+            counters.putAll(loaded);
+        }
+
+        private Counters getCounters(int tenantId, int actionTypeId) {
+            if (this.tenantId != null && this.tenantId != tenantId)
+                throw new IllegalArgumentException("loading tenant " + this.tenantId + ", not " + tenantId);
+
+            Long key = pack(tenantId, actionTypeId);
+            Counters tenantCounters = loaded.get(key);
+
+            if (tenantCounters == null) {
+                tenantCounters = new Counters(retentionHours);
+                loaded.put(key, tenantCounters);
+            }
+
+            return tenantCounters;
+        }
+    }
+
+    /**
+     * The counters of a tenant and action type, keyed by item type and item.
+     */
+    private static class Counters {
+        private final int retentionHours;
+        private final TLongIntHashMap totals = new TLongIntHashMap();
+        private final TreeMap<Long, TLongIntHashMap> buckets = new TreeMap<Long, TLongIntHashMap>();
+        private final List<Window> windows = new ArrayList<Window>(MAX_WINDOWS);
+
+        private Counters(int retentionHours) {
+            this.retentionHours = retentionHours;
+        }
+
+        synchronized void add(long itemKey, long bucket, int count, long currentBucket) {
+            addTotal(itemKey, count);
+            addBucket(itemKey, bucket, count, currentBucket);
+        }
+
+        synchronized void addTotal(long itemKey, int count) {
+            adjust(totals, itemKey, count);
+        }
+
+        synchronized void addBucket(long itemKey, long bucket, int count, long currentBucket) {
+            expire(currentBucket);
+
+            if (bucket <= currentBucket - retentionHours) return;
+
+            TLongIntHashMap counts = buckets.get(bucket);
+
+            if (counts == null) {
+                counts = new TLongIntHashMap();
+                buckets.put(bucket, counts);
+            }
+
+            adjust(counts, itemKey, count);
+
+            for (Window window : windows) {
+                if (window.from <= bucket) adjust(window.counts, itemKey, count);
+            }
+        }
+
+        /**
+         * @param from the first bucket to count, null for the totals
+         * @return a copy of the counts of the items of the given type or null if <code>from</code> is not retained
+         */
+        synchronized Snapshot snapshot(Long from, long currentBucket, Integer itemTypeId) {
+            expire(currentBucket);
+
+            TLongIntHashMap counts;
+
+            if (from == null) counts = totals;
+            else if (from <= currentBucket - retentionHours) return null;
+            else counts = window(from);
+
+            Snapshot snapshot = new Snapshot(counts.size());
+
+            for (TLongIntIterator it = counts.iterator(); it.hasNext(); ) {
+                it.advance();
+
+                if (itemTypeId == null || (int) (it.key() >>> 32) == itemTypeId) snapshot.add(it.key(), it.value());
+            }
+
+            return snapshot;
+        }
+
+        /**
+         * Returns the counts from the given bucket on, moving the nearest window there unless building a new window
+         * is much cheaper.
+         */
+        private TLongIntHashMap window(long from) {
+            Window nearest = null;
+
+            for (Window window : windows) {
+                if (nearest == null || Math.abs(window.from - from) < Math.abs(nearest.from - from)) nearest = window;
+            }
+
+            if (nearest != null && nearest.from == from) return nearest.counts;
+
+            int buildCost = buckets.tailMap(from).size();
+
+            if (nearest == null || (windows.size() < MAX_WINDOWS && 2 * Math.abs(nearest.from - from) > buildCost)) {
+                Window window = new Window(from);
+
+                for (TLongIntHashMap counts : buckets.tailMap(from).values())
+                    add(window.counts, counts, 1);
+
+                windows.add(window);
+
+                return window.counts;
+            }
+
+            if (from > nearest.from) {
+                for (TLongIntHashMap counts : buckets.subMap(nearest.from, from).values())
+                    add(nearest.counts, counts, -1);
+            } else {
+                for (TLongIntHashMap counts : buckets.subMap(from, nearest.from).values())
+                    add(nearest.counts, counts, 1);
+            }
+
+            nearest.from = from;
+
+            return nearest.counts;
+        }
+
+        private void expire(long currentBucket) {
+            long oldest = currentBucket - retentionHours + 1;
+
+            buckets.headMap(oldest).clear();
+
+            // windows starting before the oldest bucket can no longer be moved
+            for (Iterator<Window> it = windows.iterator(); it.hasNext(); ) {
+                if (it.next().from < oldest) it.remove();
+            }
+        }
+
+        private static void add(TLongIntHashMap target, TLongIntHashMap counts, int sign) {
+            for (TLongIntIterator it = counts.iterator(); it.hasNext(); ) {
+                it.advance();
+                adjust(target, it.key(), sign * it.value());
+            }
+        }
+    }
+
+    private static class Window {
+        private long from;
+        private final TLongIntHashMap counts = new TLongIntHashMap();
+
+        private Window(long from) {
+            this.from = from;
+        }
+    }
+
+    /**
+     * The counts of the items of a ranking, copied from the counters.
+     */
+    private static class Snapshot {
+        private final long[] keys;
+        private final int[] counts;
+        private int size = 0;
+
+        private Snapshot(int capacity) {
+            keys = new long[capacity];
+            counts = new int[capacity];
+        }
+
+        private void add(long key, int count) {
+            keys[size] = key;
+            counts[size] = count;
+            size++;
+        }
+
+        /**
+         * @return the top items sorted by descending count
+         */
+        private List<Ranked> top(int numberOfResults) {
+            PriorityQueue<Ranked> top = new PriorityQueue<Ranked>(Math.min(numberOfResults, size) + 1, WORST_FIRST);
+
+            for (int i = 0; i < size; i++) {
+                Ranked ranked = new Ranked(keys[i], counts[i]);
+
+                if (top.size() < numberOfResults) top.add(ranked);
+                else if (WORST_FIRST.compare(ranked, top.peek()) > 0) {
+                    top.poll();
+                    top.add(ranked);
+                }
+            }
+
+            List<Ranked> result = new ArrayList<Ranked>(top.size());
+
+            while (!top.isEmpty())
+                result.add(top.poll());
+
+            Collections.reverse(result);
+
+            return result;
+        }
+    }
+
+    private static class Ranked {
+        private final long key;
+        private final int count;
+
+        private Ranked(long key, int count) {
+            this.key = key;
+            this.count = count;
+        }
+    }
+}
@@ -0,0 +1,574 @@
+/*
+ * Copyright 2010 Research Studios Austria Forschungsgesellschaft mBH
+ *
+ * This file is part of easyrec.
+ *
+ * easyrec is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * easyrec is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with easyrec.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.easyrec.store.dao.core.impl;
+
+import com.google.common.base.Strings;
+import com.jamonapi.Monitor;
+import com.jamonapi.MonitorFactory;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.easyrec.model.core.ActionVO;
+import org.easyrec.model.core.ItemVO;
+import org.easyrec.store.dao.core.ActionDAO;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.InitializingBean;
+
+import java.io.*;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Takes action inserts off the request path.
+ * <p/>
+ * {@link #insertAction(ActionVO, boolean)} validates the action, puts a copy of it into a bounded queue and returns
+ * immediately. A single writer thread stores the queued actions with one multi-row INSERT per
+ * <code>flushSize</code> actions, as soon as <code>flushSize</code> actions are pending or at the latest after
+ * <code>flushInterval</code> milliseconds. The action time is taken when the action is queued, so the stored time
+ * does not depend on the flush. The generated ids are not set on the given actions.
+ * <p/>
+ * When the queue is full the caller inserts the action itself, so actions are never dropped. If
+ * <code>journalDirectory</code> is set every queued action is also appended to a journal file which is deleted once
+ * its actions are stored. The actions of batches that could not be stored are kept in a journal of their own, and
+ * journals left over after a crash or a failed flush are inserted on the next start. Actions are stored at least
+ * once: a crash after a batch was stored but before its journal was deleted inserts the batch again on the next
+ * start. A record torn by a crash is discarded. With <code>syncJournal</code> every append is forced to disk,
+ * otherwise a crash of the machine (but not of the JVM) may lose the last appends.
+ * <p/>
+ * When <code>enabled</code> is false every action is inserted synchronously as before. Queue depth, flush latency,
+ * written, failed and synchronously inserted actions are monitored in JAMon (<code>ActionWriteBehind.*</code>).
+ */
+public class ActionWriteBehindQueue implements InitializingBean, DisposableBean {
+    private final static String JAMON_QUEUE_DEPTH = "ActionWriteBehind.queueDepth";
+    private final static String JAMON_FLUSH = "ActionWriteBehind.flush";
+    private final static String JAMON_WRITTEN = "ActionWriteBehind.written";
+    private final static String JAMON_FAILED = "ActionWriteBehind.failed";
+    private final static String JAMON_SYNCHRONOUS = "ActionWriteBehind.synchronous";
+    private final static String JAMON_RECOVERED = "ActionWriteBehind.recovered";
+
+    private final static String JOURNAL_PREFIX = "actions-";
+    private final static String JOURNAL_SUFFIX = ".journal";
+    private final static String NULL = "\\N";
+
+    private final Log logger = LogFactory.getLog(this.getClass());
+
+    private ActionDAO actionDAO;
+    private boolean enabled = true;
+    private int capacity = 50000;
+    private int flushSize = 1000;
+    private long flushInterval = 500;
+    private String journalDirectory;
+    private boolean syncJournal = false;
+
+    private BlockingQueue<ActionVO<Integer, Integer>> queue;
+    private Journal journal;
+    // held during a flush, so that no drained action of a removed tenant is written after its actions are deleted
+    private final Object flushLock = new Object();
+    private Thread writer;
+    private volatile boolean running;
+
+    public ActionWriteBehindQueue(ActionDAO actionDAO) {
+        this.actionDAO = actionDAO;
+    }
+
+    /**
+     * Queues the action for insertion, see the class comment.
+     *
+     * @return always 1, the action is either queued or inserted
+     */
+    public int insertAction(ActionVO<Integer, Integer> action, boolean useDateFromVO) {
+        if (!enabled) return actionDAO.insertAction(action, useDateFromVO);
+
+        ActionDAOMysqlImpl.validateNonEmptyFields(action, useDateFromVO);
+
+        ActionVO<Integer, Integer> snapshot = snapshot(action, useDateFromVO);
+        boolean queued;
+
+        if (journal == null) queued = queue.offer(snapshot);
+        else {
+            synchronized (journal) {
+                queued = queue.offer(snapshot);
+
+                if (queued) {
+                    try {
+                        journal.append(snapshot);
+                    } catch (IOException e) {
+                        // the action is still queued and will be written, only the crash safety is lost
+                        logger.error("could not journal action " + snapshot, e);
+                    }
+                }
+            }
+        }
+
+        if (!queued) {
+            MonitorFactory.add(JAMON_SYNCHRONOUS, "actions", 1);
+
+            return actionDAO.insertActions(Collections.singletonList(snapshot), true);
+        }
+
+        if (queue.size() >= flushSize) LockSupport.unpark(writer);
+
+        return 1;
+    }
+
+    public void afterPropertiesSet() throws Exception {
+        if (!enabled) return;
+
+        queue = new ArrayBlockingQueue<ActionVO<Integer, Integer>>(capacity);
+
+        if (!Strings.isNullOrEmpty(journalDirectory)) {
+            File directory = new File(journalDirectory);
+
+            if (!directory.isDirectory() && !directory.mkdirs())
+                throw new IllegalStateException("could not create action journal directory " + directory);
+
+            recover(directory);
+            journal = new Journal(directory, syncJournal);
+        }
+
+        running = true;
+
+        writer = new Thread(new Runnable() {
+            public void run() {
+                writeLoop();
+            }
+        }, "ActionWriteBehindWriter");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    public void destroy() throws Exception {
+        if (!enabled) return;
+
+        // let the writer finish its current flush
+        running = false;
+        LockSupport.unpark(writer);
+        writer.join(flushInterval * 10);
+
+        // write what is left, the writer has stopped
+        flush(null);
+
+        if (journal != null) journal.close();
+    }
+
+    /**
+     * Drops the queued actions of the tenant and writes the other queued actions. Call it before the actions of the
+     * tenant are deleted, otherwise queued actions of the tenant are stored afterwards.
+     */
+    public void removeTenant(Integer tenantId) {
+        if (!enabled || queue == null) return;
+
+        flush(tenantId);
+    }
+
+    public int getPending() {
+        return queue != null ? queue.size() : 0;
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    public void setCapacity(int capacity) {
+        this.capacity = capacity;
+    }
+
+    public int getFlushSize() {
+        return flushSize;
+    }
+
+    public void setFlushSize(int flushSize) {
+        this.flushSize = flushSize;
+    }
+
+    public long getFlushInterval() {
+        return flushInterval;
+    }
+
+    /**
+     * @param flushInterval the maximum time in milliseconds an action stays queued when less than
+     *                      <code>flushSize</code> actions are pending
+     */
+    public void setFlushInterval(long flushInterval) {
+        this.flushInterval = flushInterval;
+    }
+
+    public String getJournalDirectory() {
+        return journalDirectory;
+    }
+
+    /**
+     * @param journalDirectory the directory for the action journals, empty to keep queued actions in memory only
+     */
+    public void setJournalDirectory(String journalDirectory) {
+        this.journalDirectory = journalDirectory;
+    }
+
+    public boolean isSyncJournal() {
+        return syncJournal;
+    }
+
+    public void setSyncJournal(boolean syncJournal) {
+        this.syncJournal = syncJournal;
+    }
+
+    private void writeLoop() {
+        while (running) {
+            if (queue.size() < flushSize) LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(flushInterval));
+
+            try {
+                flush(null);
+            } catch (Exception e) {
+                logger.error("unexpected error while flushing queued actions", e);
+            }
+        }
+    }
+
+    /**
+     * @param discardedTenant the tenant whose queued actions are dropped, or <code>null</code>
+     */
+    private void flush(Integer discardedTenant) {
+        synchronized (flushLock) {
+            List<ActionVO<Integer, Integer>> pending = new ArrayList<ActionVO<Integer, Integer>>();
+            List<File> journals = null;
+
+            if (journal == null) queue.drainTo(pending);
+            else {
+                // every action in the closed journals is in the queue or written already, so after writing all
+                // drained actions the closed journals can be deleted
+                synchronized (journal) {
+                    // when a tenant is removed the journal is rotated even if nothing is pending, so that the
+                    // journaled actions of the tenant are deleted
+                    if (queue.drainTo(pending) == 0 && discardedTenant == null) return;
+
+                    try {
+                        journals = journal.rotate();
+                    } catch (IOException e) {
+                        logger.error("could not rotate action journal", e);
+                    }
+                }
+            }
+
+            if (discardedTenant != null) {
+                for (Iterator<ActionVO<Integer, Integer>> it = pending.iterator(); it.hasNext(); )
+                    if (discardedTenant.equals(it.next().getTenant())) it.remove();
+            }
+
+            if (pending.isEmpty() && journals == null) return;
+
+            MonitorFactory.add(JAMON_QUEUE_DEPTH, "actions", pending.size());
+
+            List<ActionVO<Integer, Integer>> failed = write(pending);
+
+            if (journals == null) return;
+
+            if (!failed.isEmpty()) {
+                // keep only the failed actions, the stored ones must not be inserted again on the next start
+                try {
+                    File retained;
+
+                    synchronized (journal) {
+                        retained = journal.nextFile();
+                    }
+
+                    Journal.write(retained, failed);
+                } catch (IOException e) {
+                    logger.error("could not journal " + failed.size() + " failed actions", e);
+                    return;
+                }
+            }
+
+            for (File closed : journals)
+                if (!closed.delete()) logger.warn("could not delete action journal " + closed);
+        }
+    }
+
+    /**
+     * @return the actions of the batches that could not be written
+     */
+    private List<ActionVO<Integer, Integer>> write(List<ActionVO<Integer, Integer>> actions) {
+        List<ActionVO<Integer, Integer>> failed = new ArrayList<ActionVO<Integer, Integer>>();
+
+        for (int from = 0; from < actions.size(); from += flushSize) {
+            List<ActionVO<Integer, Integer>> batch = actions.subList(from, Math.min(from + flushSize, actions.size()));
+            Monitor mon = MonitorFactory.start(JAMON_FLUSH);
+
+            try {
+                actionDAO.insertActions(batch, true);
+                MonitorFactory.add(JAMON_WRITTEN, "actions", batch.size());
+            } catch (Exception e) {
+                logger.error("could not write " + batch.size() + " queued actions", e);
+                MonitorFactory.add(JAMON_FAILED, "actions", batch.size());
+                failed.addAll(batch);
+            } finally {
+                mon.stop();
+            }
+        }
+
+        return failed;
+    }
+
+    // inserts the actions of journals left over by a previous run
+    private void recover(File directory) throws IOException {
+        File[] journals = directory.listFiles(new FilenameFilter() {
+            public boolean accept(File dir, String name) {
+                return name.startsWith(JOURNAL_PREFIX) && name.endsWith(JOURNAL_SUFFIX);
+            }
+        });
+
+        if (journals == null) return;
+
+        Arrays.sort(journals);
+
+        for (File file : journals) {
+            List<ActionVO<Integer, Integer>> actions = Journal.read(file);
+
+            logger.info("recovering " + actions.size() + " actions from action journal " + file);
+
+            List<ActionVO<Integer, Integer>> failed = write(actions);
+
+            MonitorFactory.add(JAMON_RECOVERED, "actions", actions.size() - failed.size());
+
+            if (failed.isEmpty()) {
+                if (!file.delete()) logger.warn("could not delete action journal " + file);
+            } else if (failed.size() < actions.size()) Journal.write(file, failed);
+        }
+    }
+
+    // the caller keeps using the action, so the writer must neither see nor cause later modifications
+    private static ActionVO<Integer, Integer> snapshot(ActionVO<Integer, Integer> action, boolean useDateFromVO) {
+        return new ActionVO<Integer, Integer>(action.getTenant(), action.getUser(), action.getSessionId(),
+                action.getIp(), new ItemVO<Integer, Integer>(action.getItem().getTenant(), action.getItem().getItem(),
+                action.getItem().getType()), action.getActionType(), action.getRatingValue(),
+                action.getSearchSucceeded(), action.getNumberOfFoundItems(), action.getDescription(),
+                useDateFromVO ? new Date(action.getActionTime().getTime()) : new Date());
+    }
+
+    /**
+     * Append-only journal of the queued actions, one tab separated line per action. The journal is written to a
+     * new file after every {@link #rotate()}.
+     */
+    static class Journal {
+        private static final Log logger = LogFactory.getLog(Journal.class);
+
+        private File directory;
+        private boolean sync;
+        private long sequence = System.currentTimeMillis();
+        private List<File> closed = new ArrayList<File>();
+        private File file;
+        private FileOutputStream stream;
+        private Writer out;
+
+        public Journal(File directory, boolean sync) throws IOException {
+            this.directory = directory;
+            this.sync = sync;
+
+            file = nextFile();
+            open();
+        }
+
+        public void append(ActionVO<Integer, Integer> action) throws IOException {
+            out.write(format(action));
+            out.flush();
+
+            if (sync) stream.getFD().sync();
+        }
+
+        /**
+         * Starts a new journal file.
+         *
+         * @return the journal files closed so far
+         */
+        public List<File> rotate() throws IOException {
+            out.close();
+            closed.add(file);
+            file = nextFile();
+            open();
+
+            List<File> result = closed;
+            closed = new ArrayList<File>();
+
+            return result;
+        }
+
+        public void close() throws IOException {
+            out.close();
+
+            if (file.length() == 0 && !file.delete()) throw new IOException("could not delete " + file);
+        }
+
+        /**
+         * @return a journal file that sorts after the files of this journal so far
+         */
+        public File nextFile() {
+            return new File(directory, JOURNAL_PREFIX + (sequence++) + JOURNAL_SUFFIX);
+        }
+
+        /**
+         * Writes the actions to a temporary file which then replaces the given file.
+         */
+        public static void write(File file, List<ActionVO<Integer, Integer>> actions) throws IOException {
+            File temp = new File(file.getPath() + ".tmp");
+            Writer out = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(temp), "UTF-8"));
+
+            try {
+                for (ActionVO<Integer, Integer> action : actions)
+                    out.write(format(action));
+            } finally {
+                out.close();
+            }
+
+            if (!temp.renameTo(file) && !(file.delete() && temp.renameTo(file)))
+                throw new IOException("could not replace " + file);
+        }
+
+        public static List<ActionVO<Integer, Integer>> read(File file) throws IOException {
+            List<ActionVO<Integer, Integer>> actions = new ArrayList<ActionVO<Integer, Integer>>();
+            Reader in = new BufferedReader(new InputStreamReader(new FileInputStream(file), "UTF-8"));
+
+            try {
+                String line;
+
+                // a crash may leave the last line incomplete, it has no newline and is not returned
+                while ((line = readLine(in)) != null) {
+                    String[] fields = line.split("\t", -1);
+
+                    if (fields.length != 12) {
+                        logger.warn("skipping corrupt record in action journal " + file);
+                        continue;
+                    }
+
+                    Integer tenant = parseInt(fields[0]);
+
+                    actions.add(new ActionVO<Integer, Integer>(tenant, parseInt(fields[1]), unescape(fields[2]),
+                            unescape(fields[3]), new ItemVO<Integer, Integer>(tenant, parseInt(fields[4]),
+                            parseInt(fields[5])), parseInt(fields[6]), parseInt(fields[7]),
+                            NULL.equals(fields[8]) ? null : Boolean.valueOf(fields[8]), parseInt(fields[9]),
+                            unescape(fields[10]), new Date(Long.parseLong(fields[11]))));
+                }
+            } finally {
+                in.close();
+            }
+
+            return actions;
+        }
+
+        // returns null at the end of the input, also if the last line is not terminated
+        private static String readLine(Reader in) throws IOException {
+            StringBuilder line = new StringBuilder(128);
+
+            for (int c = in.read(); c >= 0; c = in.read()) {
+                if (c == '\n') return line.toString();
+
+                line.append((char) c);
+            }
+
+            return null;
+        }
+
+        private void open() throws IOException {
+            stream = new FileOutputStream(file, true);
+            out = new BufferedWriter(new OutputStreamWriter(stream, "UTF-8"));
+        }
+
+        static String format(ActionVO<Integer, Integer> action) {
+            StringBuilder line = new StringBuilder(128);
+
+            line.append(escape(action.getTenant())).append('\t');
+            line.append(escape(action.getUser())).append('\t');
+            line.append(escape(action.getSessionId())).append('\t');
+            line.append(escape(action.getIp())).append('\t');
+            line.append(escape(action.getItem().getItem())).append('\t');
+            line.append(escape(action.getItem().getType())).append('\t');
+            line.append(escape(action.getActionType())).append('\t');
+            line.append(escape(action.getRatingValue())).append('\t');
+            line.append(escape(action.getSearchSucceeded())).append('\t');
+            line.append(escape(action.getNumberOfFoundItems())).append('\t');
+            line.append(escape(action.getDescription())).append('\t');
+            line.append(action.getActionTime().getTime()).append('\n');
+
+            return line.toString();
+        }
+
+        static String escape(Object value) {
+            if (value == null) return NULL;
+
+            String s = value.toString();
+            StringBuilder escaped = new StringBuilder(s.length());
+
+            for (int i = 0; i < s.length(); i++) {
+                char c = s.charAt(i);
+
+                switch (c) {
+                    case '\\': escaped.append("\\\\"); break;
+                    case '\t': escaped.append("\\t"); break;
+                    case '\n': escaped.append("\\n"); break;
+                    case '\r': escaped.append("\\r"); break;
+                    default: escaped.append(c);
+                }
+            }
+
+            return escaped.toString();
+        }
+
+        static String unescape(String value) {
+            if (NULL.equals(value)) return null;
+            if (value.indexOf('\\') < 0) return value;
+
+            StringBuilder unescaped = new StringBuilder(value.length());
+
+            for (int i = 0; i < value.length(); i++) {
+                char c = value.charAt(i);
+
+                if (c == '\\' && i + 1 < value.length()) {
+                    c = value.charAt(++i);
+
+                    switch (c) {
+                        case 't': c = '\t'; break;
+                        case 'n': c = '\n'; break;
+                        case 'r': c = '\r'; break;
+                    }
+                }
+
+                unescaped.append(c);
+            }
+
+            return unescaped.toString();
+        }
+
+        private static Integer parseInt(String value) {
+            return NULL.equals(value) ? null : Integer.valueOf(value);
+        }
+    }
+}
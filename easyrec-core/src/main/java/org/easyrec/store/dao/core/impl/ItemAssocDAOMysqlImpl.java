@@ -20,6 +20,8 @@ package org.easyrec.store.dao.core.impl;
 
 import com.google.common.collect.Lists;
 import com.google.common.primitives.Ints;
+import com.jamonapi.Monitor;
+import com.jamonapi.MonitorFactory;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.easyrec.model.core.AssociatedItemVO;
@@ -28,12 +30,13 @@ import org.easyrec.model.core.ItemVO;
 import org.easyrec.model.core.transfer.IAConstraintVO;
 import org.easyrec.store.dao.core.ItemAssocDAO;
 import org.easyrec.store.dao.impl.AbstractBaseItemAssocDAOMysqlImpl;
-import org.easyrec.utils.spring.store.ResultSetIteratorMysql;
+import org.easyrec.utils.spring.store.KeysetResultSetIteratorMysql;
 import org.easyrec.utils.spring.store.dao.DaoUtils;
 import org.easyrec.utils.spring.store.dao.annotation.DAO;
 import org.easyrec.utils.spring.store.service.sqlscript.SqlScriptService;
 import org.springframework.dao.EmptyResultDataAccessException;
 import org.springframework.jdbc.core.PreparedStatementCreatorFactory;
+import org.springframework.jdbc.core.RowCallbackHandler;
 import org.springframework.jdbc.core.RowMapper;
 import org.springframework.jdbc.support.GeneratedKeyHolder;
 import org.springframework.jdbc.support.KeyHolder;
@@ -44,9 +47,16 @@ import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Types;
 import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Iterator;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 /**
  * This class provides a Mysql implementation of the {@link org.easyrec.store.dao.core.ItemAssocDAO} interface.
@@ -75,6 +85,9 @@ public class ItemAssocDAOMysqlImpl extends
     // logging
     private final Log logger = LogFactory.getLog(this.getClass());
 
+    // optional in-memory serving index, associations are read from the database if not set
+    private ItemAssocIndex servingIndex;
+
     // constructor
     public ItemAssocDAOMysqlImpl(DataSource dataSource, SqlScriptService sqlScriptService) {
         super(sqlScriptService);
@@ -90,6 +103,25 @@ public class ItemAssocDAOMysqlImpl extends
         }
     }
 
+    public ItemAssocIndex getServingIndex() {
+        return servingIndex;
+    }
+
+    public void setServingIndex(ItemAssocIndex servingIndex) {
+        this.servingIndex = servingIndex;
+    }
+
+    @Override
+    protected void initDao() throws Exception {
+        if (servingIndex == null) return;
+
+        try {
+            loadServingIndex(null, null);
+        } catch (Exception e) {
+            logger.warn("could not load item assoc serving index, associations are read from the database", e);
+        }
+    }
+
     // abstract (generic) method implementation of 'AbstractBaseItemAssocDAOMysqlImpl<ItemAssocVO, AssociatedItemVO, Integer, Integer, ItemVO, IAConstraintVO>'
     @Override
     public int insertItemAssoc(ItemAssocVO<Integer,Integer> itemAssoc) {
@@ -172,6 +204,7 @@ public class ItemAssocDAOMysqlImpl extends
 
         // retrieve auto increment id, and set to VO
         itemAssoc.setId(keyHolder.getKey().intValue());
+        invalidateServingIndex(itemAssoc);
 
         return rowsAffected;
     }
@@ -225,6 +258,9 @@ public class ItemAssocDAOMysqlImpl extends
 
             getJdbcTemplate().update(sqlString.toString(), new Object[]{tempFile.getAbsolutePath()}, new int[]{Types.VARCHAR});
 
+            for (ItemAssocVO<Integer,Integer> itemAssoc : itemAssocs)
+                invalidateServingIndex(itemAssoc);
+
             return itemAssocs.size();
         } catch (IOException ex) {
             if (logger.isWarnEnabled()) logger.warn("Exception when writing item assocaitions to file.", ex);
@@ -347,7 +383,10 @@ public class ItemAssocDAOMysqlImpl extends
             argTypes = new int[]{Types.DOUBLE, Types.INTEGER, Types.TIMESTAMP, Types.INTEGER};
         }
 
-        return getJdbcTemplate().update(sqlString.toString(), args, argTypes);
+        int rowsAffected = getJdbcTemplate().update(sqlString.toString(), args, argTypes);
+        invalidateServingIndex(itemAssoc);
+
+        return rowsAffected;
     }
 
     /**
@@ -425,7 +464,10 @@ public class ItemAssocDAOMysqlImpl extends
             argTypes = new int[]{Types.DOUBLE, Types.INTEGER, Types.TIMESTAMP, Types.INTEGER, Types.INTEGER,
                     Types.INTEGER, Types.INTEGER, Types.INTEGER, Types.INTEGER, Types.INTEGER};
         }
-        return getJdbcTemplate().update(sqlString.toString(), args, argTypes);
+        int rowsAffected = getJdbcTemplate().update(sqlString.toString(), args, argTypes);
+        invalidateServingIndex(itemAssoc);
+
+        return rowsAffected;
     }
 
     @Override
@@ -722,6 +764,10 @@ public class ItemAssocDAOMysqlImpl extends
         validateItemFrom(itemFrom);
         validateConstraints(constraints);
 
+        List<AssociatedItemVO<Integer, Integer>> indexedItems =
+                getIndexedItemsTo(itemFrom, assocTypeId, itemToTypeId, constraints);
+        if (indexedItems != null) return indexedItems;
+
         if (logger.isDebugEnabled()) {
             logger.debug("fetching 'itemsTo' with itemToTypeId='" + itemToTypeId + "', assocTypeId='" + assocTypeId +
                     "', itemFrom=" + itemFrom + " and constraints=" + constraints);
@@ -839,11 +885,258 @@ public class ItemAssocDAOMysqlImpl extends
                 associatedItemToVORowMapper);
     }
 
+    @Override
+    public Map<ItemVO<Integer, Integer>, List<AssociatedItemVO<Integer, Integer>>> getItemsTo(
+            Collection<ItemVO<Integer, Integer>> itemsFrom, Integer assocTypeId, Integer itemToTypeId,
+            IAConstraintVO<Integer, Integer> constraints) {
+        // validate input parameters
+        if (itemsFrom == null) {
+            throw new IllegalArgumentException("missing 'itemsFrom'");
+        }
+        validateConstraints(constraints);
+
+        Map<ItemVO<Integer, Integer>, List<AssociatedItemVO<Integer, Integer>>> result =
+                new HashMap<ItemVO<Integer, Integer>, List<AssociatedItemVO<Integer, Integer>>>();
+        // the items that cannot be answered by the serving index
+        final Map<ItemVO<Integer, Integer>, List<AssociatedItemVO<Integer, Integer>>> pending =
+                new HashMap<ItemVO<Integer, Integer>, List<AssociatedItemVO<Integer, Integer>>>();
+        Set<Integer> itemFromIds = new LinkedHashSet<Integer>();
+        Set<Integer> itemFromTypeIds = new LinkedHashSet<Integer>();
+
+        for (ItemVO<Integer, Integer> itemFrom : itemsFrom) {
+            validateItemFrom(itemFrom);
+
+            List<AssociatedItemVO<Integer, Integer>> indexedItems =
+                    getIndexedItemsTo(itemFrom, assocTypeId, itemToTypeId, constraints);
+
+            if (indexedItems != null) {
+                result.put(itemFrom, indexedItems);
+            } else {
+                pending.put(itemFrom, new ArrayList<AssociatedItemVO<Integer, Integer>>());
+                itemFromIds.add(itemFrom.getItem());
+                itemFromTypeIds.add(itemFrom.getType());
+            }
+        }
+
+        if (pending.isEmpty()) return result;
+
+        if (logger.isDebugEnabled()) {
+            logger.debug("fetching 'itemsTo' with itemToTypeId='" + itemToTypeId + "', assocTypeId='" + assocTypeId +
+                    "', " + pending.size() + " itemsFrom and constraints=" + constraints);
+        }
+
+        // the filters shared by all itemsFrom
+        StringBuilder filters = new StringBuilder();
+        List<Object> filterArgs = Lists.newArrayList();
+        List<Integer> filterArgt = Lists.newArrayList();
+
+        if (itemToTypeId != null) {
+            filters.append(" AND ");
+            filters.append(DEFAULT_ITEM_TO_TYPE_COLUMN_NAME);
+            filters.append("=?");
+
+            filterArgs.add(itemToTypeId);
+            filterArgt.add(Types.INTEGER);
+        }
+
+        if (assocTypeId != null) {
+            filters.append(" AND ");
+            filters.append(DEFAULT_ASSOC_TYPE_COLUMN_NAME);
+            filters.append("=?");
+
+            filterArgs.add(assocTypeId);
+            filterArgt.add(Types.INTEGER);
+        }
+
+        if (constraints.getSourceType() != null) {
+            filters.append(" AND ");
+            filters.append(DEFAULT_SOURCE_TYPE_COLUMN_NAME);
+            filters.append("=?");
+
+            filterArgs.add(constraints.getSourceType());
+            filterArgt.add(Types.INTEGER);
+
+            if (constraints.getSourceInfo() != null) {
+                filters.append(" AND ");
+                filters.append(DEFAULT_SOURCE_INFO_COLUMN_NAME);
+                filters.append(" LIKE ?");
+
+                filterArgs.add(constraints.getSourceInfo());
+                filterArgt.add(Types.VARCHAR);
+            }
+        }
+
+        if (constraints.getViewType() != null) {
+            filters.append(" AND ");
+            filters.append(DEFAULT_VIEW_TYPE_COLUMN_NAME);
+            filters.append("=?");
+
+            filterArgs.add(constraints.getViewType());
+            filterArgt.add(Types.INTEGER);
+        }
+
+        if (constraints.getTenant() != null) {
+            filters.append(" AND ");
+            filters.append(DEFAULT_TENANT_COLUMN_NAME);
+            filters.append("=?");
+
+            filterArgs.add(constraints.getTenant());
+            filterArgt.add(Types.INTEGER);
+        }
+
+        if (constraints.isActive() != null) {
+            filters.append(" AND ");
+            filters.append(DEFAULT_ACTIVE_COLUMN_NAME);
+            filters.append("=?");
+
+            filterArgs.add(constraints.isActive());
+            filterArgt.add(Types.BOOLEAN);
+        }
+
+        String orderBy = "";
+
+        if (constraints.getSortAsc() != null) {
+            orderBy = " ORDER BY " + constraints.getSortField() + " " +
+                    (constraints.getSortAsc() ? DaoUtils.ORDER_ASC : DaoUtils.ORDER_DESC);
+        }
+
+        // generate sql string
+        StringBuilder columns = new StringBuilder();
+        columns.append(DEFAULT_ITEM_FROM_COLUMN_NAME);
+        columns.append(", ");
+        columns.append(DEFAULT_ITEM_FROM_TYPE_COLUMN_NAME);
+        columns.append(", ");
+        columns.append(DEFAULT_ITEM_TO_COLUMN_NAME);
+        columns.append(", ");
+        columns.append(DEFAULT_TENANT_COLUMN_NAME);
+        columns.append(", ");
+        columns.append(DEFAULT_ITEM_TO_TYPE_COLUMN_NAME);
+        columns.append(", ");
+        columns.append(DEFAULT_ASSOC_VALUE_COLUMN_NAME);
+        columns.append(", ");
+        columns.append(DEFAULT_ID_COLUMN_NAME);
+        columns.append(", ");
+        columns.append(DEFAULT_ASSOC_TYPE_COLUMN_NAME);
+
+        StringBuilder sqlString = new StringBuilder();
+        List<Object> args = Lists.newArrayList();
+        List<Integer> argt = Lists.newArrayList();
+
+        if (constraints.getNumberOfResults() != null && constraints.getNumberOfResults() > 0) {
+            // MySQL cannot limit the rows per itemFrom in one SELECT, so every itemFrom gets a SELECT with its own
+            // LIMIT and the rows are ordered once more after the UNION
+            for (ItemVO<Integer, Integer> itemFrom : pending.keySet()) {
+                if (sqlString.length() > 0) sqlString.append(" UNION ALL ");
+
+                sqlString.append("(SELECT ");
+                sqlString.append(columns);
+
+                if (constraints.getSortAsc() != null) {
+                    sqlString.append(", ");
+                    sqlString.append(constraints.getSortField());
+                    sqlString.append(" AS sortValue");
+                }
+
+                sqlString.append(" FROM ");
+                sqlString.append(DEFAULT_TABLE_NAME);
+                sqlString.append(" WHERE ");
+                sqlString.append(DEFAULT_ITEM_FROM_COLUMN_NAME);
+                sqlString.append("=? AND ");
+                sqlString.append(DEFAULT_ITEM_FROM_TYPE_COLUMN_NAME);
+                sqlString.append("=?");
+
+                args.add(itemFrom.getItem());
+                argt.add(Types.INTEGER);
+                args.add(itemFrom.getType());
+                argt.add(Types.INTEGER);
+
+                if (itemFrom.getTenant() != null) {
+                    sqlString.append(" AND ");
+                    sqlString.append(DEFAULT_TENANT_COLUMN_NAME);
+                    sqlString.append("=?");
+
+                    args.add(itemFrom.getTenant());
+                    argt.add(Types.INTEGER);
+                }
+
+                sqlString.append(filters);
+                args.addAll(filterArgs);
+                argt.addAll(filterArgt);
+
+                sqlString.append(orderBy);
+                sqlString.append(" LIMIT ?)");
+
+                args.add(constraints.getNumberOfResults());
+                argt.add(Types.INTEGER);
+            }
+
+            if (constraints.getSortAsc() != null) {
+                sqlString.append(" ORDER BY sortValue ");
+                sqlString.append(constraints.getSortAsc() ? DaoUtils.ORDER_ASC : DaoUtils.ORDER_DESC);
+            }
+        } else {
+            sqlString.append("SELECT ");
+            sqlString.append(columns);
+            sqlString.append(" FROM ");
+            sqlString.append(DEFAULT_TABLE_NAME);
+            sqlString.append(" WHERE ");
+
+            // the IN lists select a superset of the requested (id, type) pairs, the row handler drops the others
+            sqlString.append(DEFAULT_ITEM_FROM_COLUMN_NAME);
+            appendInList(sqlString, itemFromIds, args, argt);
+            sqlString.append(" AND ");
+            sqlString.append(DEFAULT_ITEM_FROM_TYPE_COLUMN_NAME);
+            appendInList(sqlString, itemFromTypeIds, args, argt);
+
+            sqlString.append(filters);
+            args.addAll(filterArgs);
+            argt.addAll(filterArgt);
+
+            sqlString.append(orderBy);
+        }
+
+        getJdbcTemplate().query(sqlString.toString(), args.toArray(), Ints.toArray(argt), new RowCallbackHandler() {
+            public void processRow(ResultSet rs) throws SQLException {
+                List<AssociatedItemVO<Integer, Integer>> associatedItems = pending.get(
+                        new ItemVO<Integer, Integer>(DaoUtils.getInteger(rs, DEFAULT_TENANT_COLUMN_NAME),
+                                DaoUtils.getInteger(rs, DEFAULT_ITEM_FROM_COLUMN_NAME),
+                                DaoUtils.getInteger(rs, DEFAULT_ITEM_FROM_TYPE_COLUMN_NAME)));
+
+                if (associatedItems != null)
+                    associatedItems.add(associatedItemToVORowMapper.mapRow(rs, rs.getRow()));
+            }
+        });
+
+        result.putAll(pending);
+
+        return result;
+    }
+
+    public void refreshServingIndex(Integer tenantId, Integer assocTypeId) {
+        if (servingIndex == null) return;
+
+        loadServingIndex(tenantId, assocTypeId);
+    }
+
+    public void invalidateServingIndex(Integer tenantId, Integer assocTypeId) {
+        if (servingIndex == null) return;
+
+        servingIndex.invalidate(tenantId, assocTypeId);
+    }
+
+    @Override
+    public int removeAllItemAssocs() {
+        int rowsAffected = super.removeAllItemAssocs();
+        invalidateServingIndex(null, null);
+
+        return rowsAffected;
+    }
+
     @Override
     public Iterator<ItemAssocVO<Integer,Integer>> getItemAssocIterator(
             int bulkSize) {
-        return new ResultSetIteratorMysql<ItemAssocVO<Integer,Integer>>(
-                getDataSource(), bulkSize, getItemAssocIteratorQueryString(), itemAssocVORowMapper);
+        return new KeysetResultSetIteratorMysql<ItemAssocVO<Integer,Integer>>(getDataSource(), bulkSize,
+                getItemAssocIteratorQueryString(), DEFAULT_ID_COLUMN_NAME, prefetcher, itemAssocVORowMapper);
     }
 
     /**
@@ -1045,7 +1338,15 @@ public class ItemAssocDAOMysqlImpl extends
         // remove trailing " AND "
         sqlString.delete(sqlString.length() - 5, sqlString.length());
 
-        return getJdbcTemplate().update(sqlString.toString(), args.toArray(), Ints.toArray(argt));
+        // an example with only an id does not tell which associations of the serving index are removed
+        ItemAssocVO<Integer,Integer> removed = itemAssoc;
+        if (servingIndex != null && itemAssoc.getId() != null && !isServingIndexKey(itemAssoc))
+            removed = loadItemAssocByPrimaryKey(itemAssoc.getId());
+
+        int rowsAffected = getJdbcTemplate().update(sqlString.toString(), args.toArray(), Ints.toArray(argt));
+        if (removed != null) invalidateServingIndex(removed);
+
+        return rowsAffected;
     }
 
     public int removeItemAssocByTenant(Integer tenantId, Integer assocType, Integer sourceType, Date changeDate) {
@@ -1099,7 +1400,10 @@ public class ItemAssocDAOMysqlImpl extends
         // remove trailing " AND "
         sqlString.delete(sqlString.length(), sqlString.length());
 
-        return getJdbcTemplate().update(sqlString.toString(), args.toArray(), Ints.toArray(argt));
+        int rowsAffected = getJdbcTemplate().update(sqlString.toString(), args.toArray(), Ints.toArray(argt));
+        invalidateServingIndex(tenantId, assocType);
+
+        return rowsAffected;
     }
 
     public int removeItemAssocByTenantAndThreshold(Integer tenantId, Integer assocType, Integer sourceType,
@@ -1160,7 +1464,10 @@ public class ItemAssocDAOMysqlImpl extends
         // remove trailing " AND "
         sqlString.delete(sqlString.length(), sqlString.length());
 
-        return getJdbcTemplate().update(sqlString.toString(), args.toArray(), Ints.toArray(argt));
+        int rowsAffected = getJdbcTemplate().update(sqlString.toString(), args.toArray(), Ints.toArray(argt));
+        invalidateServingIndex(tenantId, assocType);
+
+        return rowsAffected;
     }
 
     ///////////////////////////////////////////////////////////////////////////
@@ -1265,6 +1572,159 @@ public class ItemAssocDAOMysqlImpl extends
         }
     }
 
+    /**
+     * (Re-)loads the active associations of the given tenant and assoc type into the serving index. Every tenant
+     * and assoc type is published as a whole, so readers keep using the previous snapshot while loading.
+     *
+     * @param tenantId    the tenant to load, null for all tenants
+     * @param assocTypeId the assoc type to load, null for all assoc types
+     */
+    private void loadServingIndex(final Integer tenantId, final Integer assocTypeId) {
+        Monitor monitor = MonitorFactory.start("ItemAssocDAO.loadServingIndex");
+
+        StringBuilder sqlString = new StringBuilder("SELECT DISTINCT ");
+        sqlString.append(DEFAULT_TENANT_COLUMN_NAME);
+        sqlString.append(", ");
+        sqlString.append(DEFAULT_ASSOC_TYPE_COLUMN_NAME);
+        sqlString.append(" FROM ");
+        sqlString.append(DEFAULT_TABLE_NAME);
+        sqlString.append(" WHERE ");
+        sqlString.append(DEFAULT_ACTIVE_COLUMN_NAME);
+        sqlString.append("=1");
+
+        List<Object> args = Lists.newArrayList();
+        List<Integer> argt = Lists.newArrayList();
+
+        if (tenantId != null) {
+            sqlString.append(" AND ");
+            sqlString.append(DEFAULT_TENANT_COLUMN_NAME);
+            sqlString.append("=?");
+
+            args.add(tenantId);
+            argt.add(Types.INTEGER);
+        }
+
+        if (assocTypeId != null) {
+            sqlString.append(" AND ");
+            sqlString.append(DEFAULT_ASSOC_TYPE_COLUMN_NAME);
+            sqlString.append("=?");
+
+            args.add(assocTypeId);
+            argt.add(Types.INTEGER);
+        }
+
+        final List<int[]> scopes = Lists.newArrayList();
+        getJdbcTemplate().query(sqlString.toString(), args.toArray(), Ints.toArray(argt), new RowCallbackHandler() {
+            public void processRow(ResultSet rs) throws SQLException {
+                scopes.add(new int[]{rs.getInt(DEFAULT_TENANT_COLUMN_NAME), rs.getInt(DEFAULT_ASSOC_TYPE_COLUMN_NAME)});
+            }
+        });
+
+        String loadSql = "SELECT " + DEFAULT_ITEM_FROM_COLUMN_NAME + ", " + DEFAULT_ITEM_FROM_TYPE_COLUMN_NAME + ", " +
+                DEFAULT_ITEM_TO_COLUMN_NAME + ", " + DEFAULT_ITEM_TO_TYPE_COLUMN_NAME + ", " +
+                DEFAULT_ASSOC_VALUE_COLUMN_NAME + ", " + DEFAULT_ID_COLUMN_NAME + " FROM " + DEFAULT_TABLE_NAME +
+                " WHERE " + DEFAULT_TENANT_COLUMN_NAME + "=? AND " + DEFAULT_ASSOC_TYPE_COLUMN_NAME + "=? AND " +
+                DEFAULT_ACTIVE_COLUMN_NAME + "=1";
+        Set<Long> loaded = new HashSet<Long>();
+
+        for (int[] scope : scopes) {
+            final ItemAssocIndex.Builder builder = servingIndex.builder(scope[0], scope[1]);
+
+            try {
+                getJdbcTemplate().query(loadSql, new Object[]{scope[0], scope[1]},
+                        new int[]{Types.INTEGER, Types.INTEGER}, new RowCallbackHandler() {
+                    public void processRow(ResultSet rs) throws SQLException {
+                        builder.add(rs.getInt(DEFAULT_ITEM_FROM_COLUMN_NAME),
+                                rs.getInt(DEFAULT_ITEM_FROM_TYPE_COLUMN_NAME), rs.getInt(DEFAULT_ITEM_TO_COLUMN_NAME),
+                                rs.getInt(DEFAULT_ITEM_TO_TYPE_COLUMN_NAME),
+                                rs.getDouble(DEFAULT_ASSOC_VALUE_COLUMN_NAME), rs.getInt(DEFAULT_ID_COLUMN_NAME));
+                    }
+                });
+            } catch (RuntimeException e) {
+                servingIndex.discard(builder);
+                throw e;
+            }
+
+            servingIndex.put(builder.build());
+            loaded.add(((long) scope[0] << 32) | (scope[1] & 0xFFFFFFFFL));
+        }
+
+        // remove the snapshots within the refreshed scope that have no active associations anymore
+        for (ItemAssocIndex.Neighbourhoods snapshot : servingIndex.getAll()) {
+            if (tenantId != null && snapshot.getTenantId() != tenantId) continue;
+            if (assocTypeId != null && snapshot.getAssocTypeId() != assocTypeId) continue;
+
+            if (!loaded.contains(((long) snapshot.getTenantId() << 32) | (snapshot.getAssocTypeId() & 0xFFFFFFFFL)))
+                servingIndex.remove(snapshot.getTenantId(), snapshot.getAssocTypeId());
+        }
+
+        monitor.stop();
+
+        if (logger.isInfoEnabled()) {
+            logger.info("loaded " + scopes.size() + " tenant/assoc type combinations into the item assoc serving " +
+                    "index in " + (long) monitor.getLastValue() + "ms");
+        }
+    }
+
+    /**
+     * Invalidates the associations of the serving index that were changed by writing an item association, must be
+     * called after the change was written.
+     */
+    private void invalidateServingIndex(ItemAssocVO<Integer,Integer> itemAssoc) {
+        if (servingIndex == null) return;
+
+        if (!isServingIndexKey(itemAssoc) && itemAssoc.getId() != null) {
+            ItemAssocVO<Integer,Integer> loaded = loadItemAssocByPrimaryKey(itemAssoc.getId());
+
+            if (loaded != null) itemAssoc = loaded;
+        }
+
+        if (isServingIndexKey(itemAssoc))
+            servingIndex.invalidate(itemAssoc.getTenant(), itemAssoc.getAssocType(),
+                    itemAssoc.getItemFrom().getItem(), itemAssoc.getItemFrom().getType());
+        else
+            servingIndex.invalidate(itemAssoc.getTenant(), itemAssoc.getAssocType());
+    }
+
+    private static boolean isServingIndexKey(ItemAssocVO<Integer,Integer> itemAssoc) {
+        return itemAssoc.getTenant() != null && itemAssoc.getAssocType() != null && itemAssoc.getItemFrom() != null &&
+                itemAssoc.getItemFrom().getItem() != null && itemAssoc.getItemFrom().getType() != null;
+    }
+
+    private List<AssociatedItemVO<Integer, Integer>> getIndexedItemsTo(ItemVO<Integer, Integer> itemFrom,
+                                                                        Integer assocTypeId, Integer itemToTypeId,
+                                                                        IAConstraintVO<Integer, Integer> constraints) {
+        if (servingIndex == null || assocTypeId == null || itemFrom.getTenant() == null) return null;
+
+        // the index only holds the active associations of all source and view types sorted by assoc value
+        if (constraints.getSourceType() != null || constraints.getViewType() != null ||
+                !Boolean.TRUE.equals(constraints.isActive())) return null;
+        if (constraints.getTenant() != null && !constraints.getTenant().equals(itemFrom.getTenant())) return null;
+        if (constraints.getSortAsc() != null &&
+                (constraints.getSortAsc() || !DEFAULT_ASSOC_VALUE_COLUMN_NAME.equals(constraints.getSortField())))
+            return null;
+
+        ItemAssocIndex.Neighbourhoods neighbourhoods = servingIndex.get(itemFrom.getTenant(), assocTypeId);
+
+        return neighbourhoods != null ?
+                neighbourhoods.getItemsTo(itemFrom, itemToTypeId, constraints.getNumberOfResults()) : null;
+    }
+
+    private static void appendInList(StringBuilder sqlString, Collection<Integer> values, List<Object> args,
+                                     List<Integer> argt) {
+        sqlString.append(" IN (");
+        boolean first = true;
+        for (Integer value : values) {
+            if (!first) sqlString.append(",");
+            sqlString.append("?");
+            first = false;
+
+            args.add(value);
+            argt.add(Types.INTEGER);
+        }
+        sqlString.append(")");
+    }
+
     private void validateItemFrom(ItemVO<Integer, Integer> itemFrom) {
         if (itemFrom == null) {
             throw new IllegalArgumentException("missing ItemVO 'itemFrom'");
@@ -0,0 +1,357 @@
+/*
+ * Copyright 2010 Research Studios Austria Forschungsgesellschaft mBH
+ *
+ * This file is part of easyrec.
+ *
+ * easyrec is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * easyrec is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with easyrec.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.easyrec.store.dao.core.impl;
+
+import gnu.trove.map.hash.TIntIntHashMap;
+import gnu.trove.map.hash.TLongObjectHashMap;
+import gnu.trove.set.hash.TIntHashSet;
+import org.easyrec.model.core.AssociatedItemVO;
+import org.easyrec.model.core.ItemVO;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * In-memory serving index of the active item associations used by {@link ItemAssocDAOMysqlImpl}.
+ * <p/>
+ * For every tenant and assoc type the index holds an immutable {@link Neighbourhoods} snapshot which maps each
+ * itemFrom to primitive arrays of its top-K associated items per itemTo type sorted by descending assoc value.
+ * Snapshots are built off-line by a {@link Builder} and published by replacing the previous one, so readers never
+ * see a partially loaded tenant and never take a lock.
+ * <p/>
+ * Associations changed after a snapshot was read from the database are invalidated: the snapshot no longer answers
+ * for an invalidated itemFrom, and an invalidated tenant and assoc type is dropped, so these requests are read from
+ * the database until the snapshot is reloaded. Invalidations that happen while a snapshot is being loaded are
+ * applied to it when it is published.
+ */
+public class ItemAssocIndex {
+    public final static int DEFAULT_MAX_NEIGHBOURS = 100;
+
+    private final ConcurrentMap<Long, Neighbourhoods> neighbourhoods = new ConcurrentHashMap<Long, Neighbourhoods>();
+    // the invalidations of the snapshots that are being loaded, guarded by this
+    private final Set<Invalidations> loading = new HashSet<Invalidations>();
+    private final int maxNeighbours;
+
+    public ItemAssocIndex() {
+        this(DEFAULT_MAX_NEIGHBOURS);
+    }
+
+    public ItemAssocIndex(int maxNeighbours) {
+        this.maxNeighbours = maxNeighbours;
+    }
+
+    public int getMaxNeighbours() {
+        return maxNeighbours;
+    }
+
+    /**
+     * Starts loading a snapshot. Every builder must either be published with {@link #put(Neighbourhoods)} or be
+     * given up with {@link #discard(Builder)}.
+     */
+    public synchronized Builder builder(int tenantId, int assocTypeId) {
+        Builder builder = new Builder(new Invalidations(tenantId, assocTypeId), maxNeighbours);
+        loading.add(builder.invalidations);
+
+        return builder;
+    }
+
+    /**
+     * Gives up loading the snapshot of a builder.
+     */
+    public synchronized void discard(Builder builder) {
+        loading.remove(builder.invalidations);
+    }
+
+    /**
+     * Returns the snapshot of the given tenant and assoc type.
+     *
+     * @return the snapshot or null if the tenant and assoc type are not indexed
+     */
+    public Neighbourhoods get(int tenantId, int assocTypeId) {
+        return neighbourhoods.get(pack(tenantId, assocTypeId));
+    }
+
+    /**
+     * Publishes a snapshot, replacing the previous snapshot of its tenant and assoc type. A snapshot whose tenant and
+     * assoc type were invalidated while it was loaded is not published, the previous snapshot is dropped anyway.
+     */
+    public synchronized void put(Neighbourhoods snapshot) {
+        Invalidations invalidations = snapshot.invalidations;
+        loading.remove(invalidations);
+
+        long key = pack(invalidations.tenantId, invalidations.assocTypeId);
+
+        if (invalidations.all) neighbourhoods.remove(key);
+        else neighbourhoods.put(key, snapshot);
+    }
+
+    public synchronized void remove(int tenantId, int assocTypeId) {
+        neighbourhoods.remove(pack(tenantId, assocTypeId));
+    }
+
+    /**
+     * Invalidates the associations of an itemFrom after they were changed in the database.
+     */
+    public synchronized void invalidate(int tenantId, int assocTypeId, int itemFromId, int itemFromTypeId) {
+        long itemFrom = pack(itemFromId, itemFromTypeId);
+        Neighbourhoods snapshot = neighbourhoods.get(pack(tenantId, assocTypeId));
+
+        if (snapshot != null) snapshot.invalidations.itemsFrom.add(itemFrom);
+
+        for (Invalidations invalidations : loading)
+            if (invalidations.tenantId == tenantId && invalidations.assocTypeId == assocTypeId)
+                invalidations.itemsFrom.add(itemFrom);
+    }
+
+    /**
+     * Invalidates all associations of a tenant and assoc type after they were changed in the database.
+     *
+     * @param tenantId    the tenant, null for all tenants
+     * @param assocTypeId the assoc type, null for all assoc types
+     */
+    public synchronized void invalidate(Integer tenantId, Integer assocTypeId) {
+        for (Neighbourhoods snapshot : neighbourhoods.values())
+            if (snapshot.invalidations.matches(tenantId, assocTypeId))
+                neighbourhoods.remove(pack(snapshot.tenantId, snapshot.assocTypeId));
+
+        for (Invalidations invalidations : loading)
+            if (invalidations.matches(tenantId, assocTypeId)) invalidations.all = true;
+    }
+
+    public Collection<Neighbourhoods> getAll() {
+        return Collections.unmodifiableCollection(neighbourhoods.values());
+    }
+
+    public int size() {
+        return neighbourhoods.size();
+    }
+
+    public synchronized void clear() {
+        neighbourhoods.clear();
+    }
+
+    private static long pack(int high, int low) {
+        return ((long) high << 32) | (low & 0xFFFFFFFFL);
+    }
+
+    /**
+     * Immutable associations of a tenant and assoc type.
+     */
+    public static class Neighbourhoods {
+        private final int tenantId;
+        private final int assocTypeId;
+        private final int maxNeighbours;
+        private final TLongObjectHashMap<Neighbourhood> itemsFrom;
+        private final Invalidations invalidations;
+
+        private Neighbourhoods(Invalidations invalidations, int maxNeighbours,
+                               TLongObjectHashMap<Neighbourhood> itemsFrom) {
+            this.tenantId = invalidations.tenantId;
+            this.assocTypeId = invalidations.assocTypeId;
+            this.maxNeighbours = maxNeighbours;
+            this.itemsFrom = itemsFrom;
+            this.invalidations = invalidations;
+        }
+
+        public int getTenantId() {
+            return tenantId;
+        }
+
+        public int getAssocTypeId() {
+            return assocTypeId;
+        }
+
+        public int size() {
+            return itemsFrom.size();
+        }
+
+        /**
+         * Returns the associated items of <code>itemFrom</code> sorted by descending assoc value.
+         *
+         * @param itemToTypeId    only return associated items of this type, null for all types
+         * @param numberOfResults the maximum number of items to return, null or less than 1 for all items
+         * @return the associated items or null if the index cannot answer the request because it only kept the
+         *         top-K associations of the item and more results are requested or because the associations of the
+         *         item were changed since the snapshot was loaded
+         */
+        public List<AssociatedItemVO<Integer, Integer>> getItemsTo(ItemVO<Integer, Integer> itemFrom,
+                                                                    Integer itemToTypeId, Integer numberOfResults) {
+            long key = pack(itemFrom.getItem(), itemFrom.getType());
+
+            if (!invalidations.itemsFrom.isEmpty() && invalidations.itemsFrom.contains(key)) return null;
+
+            Neighbourhood neighbourhood = itemsFrom.get(key);
+
+            if (neighbourhood == null) return Collections.emptyList();
+
+            int limit = numberOfResults != null && numberOfResults > 0 ? numberOfResults : Integer.MAX_VALUE;
+
+            if (limit > maxNeighbours && neighbourhood.isTruncated(itemToTypeId)) return null;
+
+            List<AssociatedItemVO<Integer, Integer>> result =
+                    new ArrayList<AssociatedItemVO<Integer, Integer>>(Math.min(limit, neighbourhood.itemTo.length));
+
+            for (int i = 0; i < neighbourhood.itemTo.length && result.size() < limit; i++) {
+                if (itemToTypeId != null && neighbourhood.itemToType[i] != itemToTypeId) continue;
+
+                result.add(new AssociatedItemVO<Integer, Integer>(
+                        new ItemVO<Integer, Integer>(tenantId, neighbourhood.itemTo[i], neighbourhood.itemToType[i]),
+                        neighbourhood.assocValue[i], neighbourhood.id[i], assocTypeId));
+            }
+
+            return result;
+        }
+    }
+
+    /**
+     * The changes made to the associations of a tenant and assoc type since its snapshot was read.
+     */
+    private static class Invalidations {
+        private final int tenantId;
+        private final int assocTypeId;
+        private final Set<Long> itemsFrom = Collections.newSetFromMap(new ConcurrentHashMap<Long, Boolean>());
+        private volatile boolean all;
+
+        private Invalidations(int tenantId, int assocTypeId) {
+            this.tenantId = tenantId;
+            this.assocTypeId = assocTypeId;
+        }
+
+        private boolean matches(Integer tenantId, Integer assocTypeId) {
+            return (tenantId == null || tenantId == this.tenantId) &&
+                    (assocTypeId == null || assocTypeId == this.assocTypeId);
+        }
+    }
+
+    private static class Neighbourhood {
+        private final int[] itemTo;
+        private final int[] itemToType;
+        private final double[] assocValue;
+        private final int[] id;
+        // the itemTo types of which associations were dropped, usually empty
+        private final int[] truncatedTypes;
+
+        private Neighbourhood(int size, int[] truncatedTypes) {
+            itemTo = new int[size];
+            itemToType = new int[size];
+            assocValue = new double[size];
+            id = new int[size];
+            this.truncatedTypes = truncatedTypes;
+        }
+
+        private boolean isTruncated(Integer itemToTypeId) {
+            if (itemToTypeId == null) return truncatedTypes.length > 0;
+
+            for (int truncatedType : truncatedTypes)
+                if (truncatedType == itemToTypeId) return true;
+
+            return false;
+        }
+    }
+
+    /**
+     * Collects the associations of a tenant and assoc type in arbitrary order and builds the sorted snapshot.
+     * A builder is not thread-safe.
+     */
+    public static class Builder {
+        private final Invalidations invalidations;
+        private final int maxNeighbours;
+        private final TLongObjectHashMap<List<Entry>> itemsFrom = new TLongObjectHashMap<List<Entry>>();
+
+        private Builder(Invalidations invalidations, int maxNeighbours) {
+            this.invalidations = invalidations;
+            this.maxNeighbours = maxNeighbours;
+        }
+
+        public void add(int itemFromId, int itemFromTypeId, int itemToId, int itemToTypeId, double assocValue,
+                        int id) {
+            long key = pack(itemFromId, itemFromTypeId);
+            List<Entry> entries = itemsFrom.get(key);
+
+            if (entries == null) {
+                entries = new ArrayList<Entry>();
+                itemsFrom.put(key, entries);
+            }
+
+            entries.add(new Entry(itemToId, itemToTypeId, assocValue, id));
+        }
+
+        public Neighbourhoods build() {
+            TLongObjectHashMap<Neighbourhood> neighbourhoods = new TLongObjectHashMap<Neighbourhood>(itemsFrom.size());
+
+            for (long key : itemsFrom.keys()) {
+                List<Entry> entries = itemsFrom.get(key);
+                Collections.sort(entries);
+
+                // keep the top-K entries of each itemTo type, so that the top-K of any type and of all types
+                // together are exact
+                TIntIntHashMap countPerType = new TIntIntHashMap();
+                TIntHashSet truncatedTypes = new TIntHashSet();
+                List<Entry> kept = new ArrayList<Entry>(Math.min(entries.size(), maxNeighbours));
+
+                for (Entry entry : entries) {
+                    if (countPerType.adjustOrPutValue(entry.itemToType, 1, 1) <= maxNeighbours) kept.add(entry);
+                    else truncatedTypes.add(entry.itemToType);
+                }
+
+                Neighbourhood neighbourhood = new Neighbourhood(kept.size(), truncatedTypes.toArray());
+
+                for (int i = 0; i < kept.size(); i++) {
+                    Entry entry = kept.get(i);
+
+                    neighbourhood.itemTo[i] = entry.itemTo;
+                    neighbourhood.itemToType[i] = entry.itemToType;
+                    neighbourhood.assocValue[i] = entry.assocValue;
+                    neighbourhood.id[i] = entry.id;
+                }
+
+                neighbourhoods.put(key, neighbourhood);
+            }
+
+            return new Neighbourhoods(invalidations, maxNeighbours, neighbourhoods);
+        }
+    }
+
+    private static class Entry implements Comparable<Entry> {
+        private final int itemTo;
+        private final int itemToType;
+        private final double assocValue;
+        private final int id;
+
+        private Entry(int itemTo, int itemToType, double assocValue, int id) {
+            this.itemTo = itemTo;
+            this.itemToType = itemToType;
+            this.assocValue = assocValue;
+            this.id = id;
+        }
+
+        // descending by assoc value, ties by id to keep the order stable
+        public int compareTo(Entry that) {
+            int result = Double.compare(that.assocValue, assocValue);
+
+            return result != 0 ? result : (id < that.id ? -1 : (id == that.id ? 0 : 1));
+        }
+    }
+}
@@ -22,6 +22,8 @@ import com.google.common.base.Objects;
 import com.google.common.base.Strings;
 import com.google.common.collect.Lists;
 import com.google.common.primitives.Ints;
+import com.jamonapi.Monitor;
+import com.jamonapi.MonitorFactory;
 import org.easyrec.model.core.transfer.TimeConstraintVO;
 import org.easyrec.model.core.web.Item;
 import org.easyrec.model.core.web.RemoteTenant;
@@ -42,9 +44,19 @@ import javax.sql.DataSource;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Types;
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.AtomicLong;
 import net.sf.ehcache.Cache;
 import net.sf.ehcache.Element;
 import org.springframework.web.util.HtmlUtils;
@@ -68,6 +80,12 @@ import org.springframework.web.util.HtmlUtils;
  */
 
 public class ItemDAOMysqlImpl extends BasicDAOMysqlImpl implements ItemDAO {
+    private static final String JAMON_HIT = "ItemDAO.get.hit";
+    private static final String JAMON_NEGATIVE_HIT = "ItemDAO.get.negativeHit";
+    private static final String JAMON_MISS = "ItemDAO.get.miss";
+    private static final String JAMON_SHARED_LOAD = "ItemDAO.get.sharedLoad";
+    private static final String JAMON_LOAD = "ItemDAO.get.load";
+
     private static final String SQL_GET_ITEM;
     private static final String SQL_GET_ITEM_BY_ID;
     private static final String SQL_ADD_ITEM;
@@ -96,6 +114,12 @@ public class ItemDAOMysqlImpl extends BasicDAOMysqlImpl implements ItemDAO {
     private ItemDetailsRowMapper itemDetailsRowMapper = new ItemDetailsRowMapper();
 
     private Cache cache;
+    // seconds an unknown item is remembered, 0 disables negative caching
+    private int negativeTimeToLive = 30;
+    // loads in progress, concurrent misses for the same key wait for the running load instead of querying again
+    private ConcurrentMap<String, FutureTask<Item>> loading = new ConcurrentHashMap<String, FutureTask<Item>>();
+    // incremented on every eviction, a load only caches its result if no eviction happened while it was running
+    private AtomicLong invalidations = new AtomicLong();
     
     private HashMap<String, Item> itemCache = new HashMap<String, Item>();
 
@@ -213,6 +237,9 @@ public class ItemDAOMysqlImpl extends BasicDAOMysqlImpl implements ItemDAO {
         } catch (Exception e) {
             logger.error("An error occured adding an item!", e);
             return null;
+        } finally {
+            // drop a negative entry for the item
+            evict(makeCacheKey(tenantId, itemType, itemId));
         }
 
     }
@@ -225,7 +252,7 @@ public class ItemDAOMysqlImpl extends BasicDAOMysqlImpl implements ItemDAO {
         try {
             getJdbcTemplate().update(SQL_INSERT_OR_UPDATE_ITEM, args, ARGTYPES_INSERT_OR_UPDATE_ITEM);
             
-            cache.remove(makeCacheKey(tenantId, itemType, itemId));
+            evict(makeCacheKey(tenantId, itemType, itemId));
 //            itemCache.remove(makeCacheKey(tenantId, itemType, itemId));
             return null;
             /*return new Item(keyHolder.getKey().toString(),
@@ -266,24 +293,150 @@ public class ItemDAOMysqlImpl extends BasicDAOMysqlImpl implements ItemDAO {
 //        Item i = itemCache.get(cacheId);
 
         if (e != null) {
-            return (Item) e.getValue();
-        } else {
-            Object[] args = {remoteTenant.getId(), itemId, itemType};
+            Item i = (Item) e.getObjectValue();
+            MonitorFactory.add(i != null ? JAMON_HIT : JAMON_NEGATIVE_HIT, "lookups", 1);
+
+            return i;
+        }
+
+        MonitorFactory.add(JAMON_MISS, "lookups", 1);
+
+        return load(remoteTenant, itemId, itemType, cacheId);
+    }
+
+    private Item load(final RemoteTenant remoteTenant, final String itemId, final String itemType,
+                      final String cacheId) {
+        FutureTask<Item> load = new FutureTask<Item>(new Callable<Item>() {
+            public Item call() throws Exception {
+                return loadItem(remoteTenant, itemId, itemType, cacheId);
+            }
+        });
+        FutureTask<Item> running = loading.putIfAbsent(cacheId, load);
+
+        if (running == null) {
+            running = load;
 
             try {
-                Item i = getJdbcTemplate().query(PS_GET_ITEM.newPreparedStatementCreator(args), itemRowMapper).get(0);
+                load.run();
+            } finally {
+                loading.remove(cacheId, load);
+            }
+        } else MonitorFactory.add(JAMON_SHARED_LOAD, "lookups", 1);
+
+        try {
+            return running.get();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            return null;
+        } catch (ExecutionException ex) {
+            if (logger.isDebugEnabled())
+                logger.debug("failed to get item or failed to insert it into the cache", ex.getCause());
+            return null;
+        }
+    }
+
+    private Item loadItem(RemoteTenant remoteTenant, String itemId, String itemType, String cacheId) {
+        Object[] args = {remoteTenant.getId(), itemId, itemType};
+        long invalidationsBefore = invalidations.get();
+        List<Item> items;
+
+        Monitor monitor = MonitorFactory.start(JAMON_LOAD);
+
+        try {
+            items = getJdbcTemplate().query(PS_GET_ITEM.newPreparedStatementCreator(args), itemRowMapper);
+        } finally {
+            monitor.stop();
+        }
+
+        Item i = items.isEmpty() ? null : items.get(0);
+
+        if (i != null) {
+            i.setUrl(Text.matchMax(remoteTenant.getUrl(), i.getUrl()));
+            i.setImageUrl(Text.matchMax(remoteTenant.getUrl(), i.getImageUrl()));
+        }
+
+        if (invalidations.get() == invalidationsBefore) cacheItem(cacheId, i);
+
+        return i;
+    }
+
+    /**
+     * Caches a loaded item, a <code>null</code> item is cached as negative entry that expires after
+     * {@link #setNegativeTimeToLive(int) negativeTimeToLive} seconds.
+     */
+    private void cacheItem(String cacheId, Item item) {
+        if (item != null) cache.put(new Element(cacheId, item));
+        else if (negativeTimeToLive > 0) {
+            Element e = new Element(cacheId, null);
+            e.setTimeToLive(negativeTimeToLive);
+            cache.put(e);
+        }
+    }
+
+    private void evict(String cacheId) {
+        invalidations.incrementAndGet();
+        cache.remove(cacheId);
+    }
+
+    private void evictAll() {
+        invalidations.incrementAndGet();
+        cache.removeAll();
+    }
+
+    @Override
+    public Map<String, Item> get(RemoteTenant remoteTenant, Collection<String> itemIds, String itemType) {
+        Map<String, Item> result = new HashMap<String, Item>((int) (itemIds.size() / 0.75f) + 1);
+        List<String> missingIds = new ArrayList<String>();
+
+        for (String itemId : itemIds) {
+            if (itemId == null || result.containsKey(itemId)) continue;
+
+            Element e = cache.get(makeCacheKey(remoteTenant.getId(), itemType, itemId));
+
+            if (e == null) missingIds.add(itemId);
+            else if (e.getObjectValue() != null) result.put(itemId, (Item) e.getObjectValue());
+        }
+
+        if (missingIds.isEmpty()) return result;
+
+        long invalidationsBefore = invalidations.get();
+
+        StringBuilder sql = new StringBuilder(SQL_GET_ITEMS).append(" AND ITEMID IN (");
+        List<Object> args = new ArrayList<Object>(missingIds.size() + 2);
+        args.add(remoteTenant.getId());
+        args.add(itemType);
+
+        for (int i = 0; i < missingIds.size(); i++) {
+            sql.append(i > 0 ? ",?" : "?");
+            args.add(missingIds.get(i));
+        }
+        sql.append(")");
+
+        try {
+            List<Item> items = getJdbcTemplate().query(sql.toString(), args.toArray(), itemRowMapper);
+            // MySQL compares item ids case insensitive, so match the rows the same way
+            Map<String, Item> loaded = new TreeMap<String, Item>(String.CASE_INSENSITIVE_ORDER);
+
+            for (Item i : items) {
                 i.setUrl(Text.matchMax(remoteTenant.getUrl(), i.getUrl()));
                 i.setImageUrl(Text.matchMax(remoteTenant.getUrl(), i.getImageUrl()));
-                cache.put(new Element(cacheId, i));
-//                itemCache.put(cacheId, i);
-
-                return i;
-            } catch (Exception ex) {
-                if (logger.isDebugEnabled())
-                    logger.debug("failed to get item or failed to insert it into the cache", ex);
-                return null;
+                loaded.put(i.getItemId(), i);
+            }
+
+            boolean cacheable = invalidations.get() == invalidationsBefore;
+
+            for (String itemId : missingIds) {
+                Item i = loaded.get(itemId);
+
+                if (cacheable) cacheItem(makeCacheKey(remoteTenant.getId(), itemType, itemId), i);
+                if (i != null) result.put(itemId, i);
             }
+        } catch (Exception ex) {
+            if (logger.isDebugEnabled())
+                logger.debug("failed to get items or failed to insert them into the cache", ex);
         }
+
+        return result;
     }
 
     @Override
@@ -297,7 +450,7 @@ public class ItemDAOMysqlImpl extends BasicDAOMysqlImpl implements ItemDAO {
 
         try {
             getJdbcTemplate().update(SQL_ACTIVATE_ITEM, args, ARGTYPES_ITEM_KEY);
-            cache.remove(makeCacheKey(tenantId, itemType, itemId));
+            evict(makeCacheKey(tenantId, itemType, itemId));
 //            itemCache.remove(makeCacheKey(tenantId, itemType, itemId));
 
         } catch (Exception e) {
@@ -312,7 +465,7 @@ public class ItemDAOMysqlImpl extends BasicDAOMysqlImpl implements ItemDAO {
 
         try {
             getJdbcTemplate().update(SQL_DEACTIVATE_ITEM, args, ARGTYPES_ITEM_KEY);
-            cache.remove(makeCacheKey(tenantId, itemType, itemId));
+            evict(makeCacheKey(tenantId, itemType, itemId));
 //            itemCache.remove(makeCacheKey(tenantId, itemType, itemId));
 
         } catch (Exception e) {
@@ -353,7 +506,7 @@ public class ItemDAOMysqlImpl extends BasicDAOMysqlImpl implements ItemDAO {
 
         try {
             getJdbcTemplate().update(SQL_REMOVE_ITEM, args, ARGTYPES_ITEM_KEY);
-            cache.remove(makeCacheKey(tenantId, itemType, itemId));
+            evict(makeCacheKey(tenantId, itemType, itemId));
 //            itemCache.remove(makeCacheKey(tenantId, itemType, itemId));
         } catch (Exception e) {
             if (logger.isDebugEnabled()) logger.debug("failed to remove item from db or cache", e);
@@ -367,7 +520,7 @@ public class ItemDAOMysqlImpl extends BasicDAOMysqlImpl implements ItemDAO {
 
         try {
             getJdbcTemplate().update(SQL_REMOVE_ITEMS, args, argTypes);
-            cache.removeAll();
+            evictAll();
 //            itemCache.clear();
 
         } catch (Exception e) {
@@ -779,10 +932,14 @@ public class ItemDAOMysqlImpl extends BasicDAOMysqlImpl implements ItemDAO {
 
     @Override
     public void emptyCache() {
-        cache.removeAll();
+        evictAll();
 //        itemCache.clear();
     }
 
+    public void evict(Integer tenantId, String itemId, String itemType) {
+        evict(makeCacheKey(tenantId, itemType, itemId));
+    }
+
     private static class ItemRowMapper implements RowMapper<Item> {
         @Override
         public Item mapRow(ResultSet rs, int rowNum) throws SQLException {
@@ -817,6 +974,14 @@ public class ItemDAOMysqlImpl extends BasicDAOMysqlImpl implements ItemDAO {
     public void setCache(Cache cache) {
         this.cache = cache;
     }
+
+    public int getNegativeTimeToLive() {
+        return negativeTimeToLive;
+    }
+
+    public void setNegativeTimeToLive(int negativeTimeToLive) {
+        this.negativeTimeToLive = negativeTimeToLive;
+    }
     
     
 }
\ No newline at end of file
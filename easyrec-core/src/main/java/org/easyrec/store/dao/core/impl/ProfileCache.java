@@ -0,0 +1,170 @@
+/*
+ * Copyright 2010 Research Studios Austria Forschungsgesellschaft mBH
+ *
+ * This file is part of easyrec.
+ *
+ * easyrec is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * easyrec is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with easyrec.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.easyrec.store.dao.core.impl;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A least recently used cache of profile XML strings that is bounded by the estimated heap size of its entries
+ * rather than by their number, so a few large profiles cannot crowd the heap. Items without a profile are cached as
+ * <code>null</code>.
+ * <p/>
+ * Entries expire after <code>timeToLive</code> seconds so profiles changed by other easyrec instances sharing the
+ * database are picked up eventually.
+ */
+public class ProfileCache {
+    // estimated size of a map entry, the cache entry and the two string objects without their characters
+    private static final int ENTRY_OVERHEAD = 160;
+
+    private final long maxBytes;
+    private final long timeToLive;
+
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<String, Entry>(256, 0.75f, true);
+    private long bytes = 0;
+    // incremented on every removal, see putAll
+    private long generation = 0;
+
+    /**
+     * @param maxBytes   the maximum estimated heap size of all cached profiles
+     * @param timeToLive seconds a profile stays cached
+     */
+    public ProfileCache(long maxBytes, int timeToLive) {
+        if (maxBytes <= 0) throw new IllegalArgumentException("maxBytes must be positive");
+        if (timeToLive <= 0) throw new IllegalArgumentException("timeToLive must be positive");
+
+        this.maxBytes = maxBytes;
+        this.timeToLive = timeToLive * 1000L;
+    }
+
+    /**
+     * @return the cached profiles of the given keys, keys that are not cached are missing from the map while keys of
+     *         items without a profile are mapped to <code>null</code>
+     */
+    public synchronized Map<String, String> getAll(Collection<String> keys) {
+        Map<String, String> result = new HashMap<String, String>();
+        long now = System.currentTimeMillis();
+
+        for (String key : keys) {
+            Entry entry = entries.get(key);
+
+            if (entry == null) continue;
+
+            if (entry.expires < now) {
+                remove(entry, key);
+                continue;
+            }
+
+            result.put(key, entry.profile);
+        }
+
+        return result;
+    }
+
+    /**
+     * @return the current generation, pass it to {@link #putAll(Map, long)} for profiles loaded afterwards
+     */
+    public synchronized long getGeneration() {
+        return generation;
+    }
+
+    /**
+     * Caches profiles loaded from the database. The profiles are dropped if any entry was removed since
+     * <code>generation</code> was read, because the load might have read a profile that was changed meanwhile.
+     */
+    public synchronized void putAll(Map<String, String> profiles, long generation) {
+        if (this.generation != generation) return;
+
+        long expires = System.currentTimeMillis() + timeToLive;
+
+        for (Map.Entry<String, String> profile : profiles.entrySet()) {
+            String key = profile.getKey();
+            Entry entry = new Entry(profile.getValue(), sizeOf(key, profile.getValue()), expires);
+
+            if (entry.size > maxBytes) continue;
+
+            Entry old = entries.put(key, entry);
+
+            if (old != null) bytes -= old.size;
+
+            bytes += entry.size;
+        }
+
+        // evict the least recently used profiles
+        Iterator<Entry> it = entries.values().iterator();
+
+        while (bytes > maxBytes && it.hasNext()) {
+            bytes -= it.next().size;
+            it.remove();
+        }
+    }
+
+    public synchronized void remove(String key) {
+        generation++;
+
+        Entry entry = entries.remove(key);
+
+        if (entry != null) bytes -= entry.size;
+    }
+
+    public synchronized void clear() {
+        generation++;
+        entries.clear();
+        bytes = 0;
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    /**
+     * @return the estimated heap size of all cached profiles
+     */
+    public synchronized long getBytes() {
+        return bytes;
+    }
+
+    public long getMaxBytes() {
+        return maxBytes;
+    }
+
+    private void remove(Entry entry, String key) {
+        entries.remove(key);
+        bytes -= entry.size;
+    }
+
+    private static long sizeOf(String key, String profile) {
+        return ENTRY_OVERHEAD + 2L * key.length() + (profile != null ? 2L * profile.length() : 0);
+    }
+
+    private static class Entry {
+        private final String profile;
+        private final long size;
+        private final long expires;
+
+        private Entry(String profile, long size, long expires) {
+            this.profile = profile;
+            this.size = size;
+            this.expires = expires;
+        }
+    }
+}
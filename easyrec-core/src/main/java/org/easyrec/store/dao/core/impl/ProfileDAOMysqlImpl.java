@@ -20,11 +20,14 @@ package org.easyrec.store.dao.core.impl;
 
 import com.google.common.collect.Lists;
 import com.google.common.primitives.Ints;
+import com.jamonapi.MonitorFactory;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.easyrec.model.core.ItemVO;
 import org.easyrec.store.dao.IDMappingDAO;
+import org.easyrec.store.dao.core.ItemDAO;
 import org.easyrec.store.dao.core.ProfileDAO;
+import org.easyrec.store.dao.core.ProfileDimensionDAO;
 import org.easyrec.store.dao.core.types.ItemTypeDAO;
 import org.easyrec.store.dao.core.types.impl.ItemTypeDAOMysqlImpl;
 import org.easyrec.store.dao.impl.AbstractBaseProfileDAOMysqlImpl;
@@ -33,16 +36,24 @@ import org.easyrec.utils.spring.store.dao.DaoUtils;
 import org.easyrec.utils.spring.store.dao.annotation.DAO;
 import org.easyrec.utils.spring.store.service.sqlscript.SqlScriptService;
 import org.springframework.jdbc.core.PreparedStatementCreatorFactory;
+import org.springframework.jdbc.core.RowCallbackHandler;
 import org.springframework.jdbc.core.RowMapper;
 
 import javax.sql.DataSource;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Types;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.StringTokenizer;
+import java.util.TreeMap;
 
 /**
  * @author szavrel
@@ -54,10 +65,17 @@ public class ProfileDAOMysqlImpl extends AbstractBaseProfileDAOMysqlImpl<Integer
 
     // constants
     private final static String TABLE_CREATING_SQL_SCRIPT_NAME = "classpath:sql/core/Profile.sql";
+    private final static String JAMON_PROFILES_HIT = "ProfileDAO.getProfiles.hit";
+    private final static String JAMON_PROFILES_MISS = "ProfileDAO.getProfiles.miss";
     private final String GET_PROFILE_QUERY = new StringBuilder("SELECT ").append(DEFAULT_PROFILE_DATA_COLUMN_NAME)
             .append(" FROM ").append(DEFAULT_TABLE_NAME).append(" WHERE ").append(DEFAULT_TENANT_ID_COLUMN_NAME)
             .append("=? AND ").append(DEFAULT_ITEM_ID_COLUMN_NAME).append("=? AND ")
             .append(DEFAULT_ITEM_TYPE_ID_COLUMN_NAME).append("=?").toString();
+    private final String GET_PROFILES_QUERY = new StringBuilder("SELECT ").append(DEFAULT_ITEM_ID_COLUMN_NAME)
+            .append(", ").append(DEFAULT_PROFILE_DATA_COLUMN_NAME).append(" FROM ").append(DEFAULT_TABLE_NAME)
+            .append(" WHERE ").append(DEFAULT_TENANT_ID_COLUMN_NAME).append("=? AND ")
+            .append(DEFAULT_ITEM_TYPE_ID_COLUMN_NAME).append("=? AND ").append(DEFAULT_ITEM_ID_COLUMN_NAME)
+            .append(" IN (").toString();
     private final String GET_ACTIVE_PROFILE_QUERY = new StringBuilder("SELECT ").append(DEFAULT_PROFILE_DATA_COLUMN_NAME)
             .append(" FROM ").append(DEFAULT_TABLE_NAME).append(" WHERE ").append(DEFAULT_TENANT_ID_COLUMN_NAME)
             .append("=? AND ").append(DEFAULT_ITEM_ID_COLUMN_NAME).append("=? AND ")
@@ -90,6 +108,12 @@ public class ProfileDAOMysqlImpl extends AbstractBaseProfileDAOMysqlImpl<Integer
 
     private IDMappingDAO idMappingDAO;
     private ItemTypeDAO itemTypeDAO;
+    // optional, caches the profiles loaded by getProfiles
+    private ProfileCache profileCache;
+    // optional, indexes the profile values for getItemsByDimensionValue
+    private ProfileDimensionDAO profileDimensionDAO;
+    // optional, its cached items are evicted when a profile creates or changes an item
+    private ItemDAO itemDAO;
 
     // constructor
     public ProfileDAOMysqlImpl(DataSource dataSource, SqlScriptService sqlScriptService) {
@@ -158,6 +182,82 @@ public class ProfileDAOMysqlImpl extends AbstractBaseProfileDAOMysqlImpl<Integer
         return getProfile(tenantId, itemId, itemTypeId, null);
     }
 
+    public Map<String, String> getProfiles(Integer tenantId, Collection<String> itemIds, String itemType) {
+        if (tenantId == null) {
+            throw new IllegalArgumentException("tenantId must not be 'null'!");
+        }
+        if (itemType == null) {
+            throw new IllegalArgumentException("itemType must not be 'null'");
+        }
+
+        Map<String, String> result = new HashMap<String, String>();
+        Set<String> missingIds = new LinkedHashSet<String>(itemIds);
+        missingIds.remove(null);
+
+        long generation = 0;
+
+        if (profileCache != null && !missingIds.isEmpty()) {
+            List<String> keys = new ArrayList<String>(missingIds.size());
+
+            for (String itemId : missingIds)
+                keys.add(makeCacheKey(tenantId, itemType, itemId));
+
+            // read the generation before the cache so a profile stored from now on is not overwritten by the load
+            generation = profileCache.getGeneration();
+            Map<String, String> cached = profileCache.getAll(keys);
+
+            for (Iterator<String> it = missingIds.iterator(); it.hasNext(); ) {
+                String itemId = it.next();
+                String key = makeCacheKey(tenantId, itemType, itemId);
+
+                if (cached.containsKey(key)) {
+                    result.put(itemId, cached.get(key));
+                    it.remove();
+                }
+            }
+
+            MonitorFactory.add(JAMON_PROFILES_HIT, "profiles", result.size());
+        }
+
+        if (missingIds.isEmpty()) return result;
+
+        MonitorFactory.add(JAMON_PROFILES_MISS, "profiles", missingIds.size());
+
+        StringBuilder sql = new StringBuilder(GET_PROFILES_QUERY);
+        List<Object> args = new ArrayList<Object>(missingIds.size() + 2);
+        args.add(tenantId);
+        args.add(itemType);
+
+        for (String itemId : missingIds) {
+            sql.append(args.size() > 2 ? ",?" : "?");
+            args.add(itemId);
+        }
+        sql.append(")");
+
+        // MySQL compares item ids case insensitive, so match the rows the same way
+        final Map<String, String> loaded = new TreeMap<String, String>(String.CASE_INSENSITIVE_ORDER);
+
+        getJdbcTemplate().query(sql.toString(), args.toArray(), new RowCallbackHandler() {
+            public void processRow(ResultSet rs) throws SQLException {
+                loaded.put(rs.getString(DEFAULT_ITEM_ID_COLUMN_NAME), rs.getString(DEFAULT_PROFILE_DATA_COLUMN_NAME));
+            }
+        });
+
+        Map<String, String> toCache = new HashMap<String, String>();
+
+        for (String itemId : missingIds) {
+            if (!loaded.containsKey(itemId)) continue;
+
+            String profile = loaded.get(itemId);
+            result.put(itemId, profile);
+            toCache.put(makeCacheKey(tenantId, itemType, itemId), profile);
+        }
+
+        if (profileCache != null) profileCache.putAll(toCache, generation);
+
+        return result;
+    }
+
     public int storeProfile(Integer tenantId, Integer itemId, Integer itemTypeId, String profileXML) {
 
 
@@ -184,6 +284,9 @@ public class ProfileDAOMysqlImpl extends AbstractBaseProfileDAOMysqlImpl<Integer
         PreparedStatementCreatorFactory factory = new PreparedStatementCreatorFactory(STORE_PROFILE_QUERY, argTypes);
 
         int rowsAffected = getJdbcTemplate().update(factory.newPreparedStatementCreator(args));
+        evictProfile(tenantId, mappedItemId, itemType);
+        if (profileDimensionDAO != null)
+            profileDimensionDAO.storeDimensions(tenantId, mappedItemId, itemType, profileXML);
         return rowsAffected;
     }
 
@@ -196,6 +299,7 @@ public class ProfileDAOMysqlImpl extends AbstractBaseProfileDAOMysqlImpl<Integer
 
         try {
             getJdbcTemplate().update(SQL_ACTIVATE_PROFILE, args, ARGTYPES_PROFILE_KEY);
+            evictProfile(tenant, mappedItemId, (String) args[2]);
         } catch (Exception e) {
             logger.debug(e);
         }
@@ -212,6 +316,7 @@ public class ProfileDAOMysqlImpl extends AbstractBaseProfileDAOMysqlImpl<Integer
 
         try {
             getJdbcTemplate().update(SQL_DEACTIVATE_PROFILE, args, ARGTYPES_PROFILE_KEY);
+            evictProfile(tenant, mappedItemId, (String) args[2]);
         } catch (Exception e) {
             logger.debug(e);
         }
@@ -332,12 +437,27 @@ public class ProfileDAOMysqlImpl extends AbstractBaseProfileDAOMysqlImpl<Integer
         PreparedStatementCreatorFactory factory = new PreparedStatementCreatorFactory(STORE_PROFILE_QUERY, argTypes);
 
         int rowsAffected = getJdbcTemplate().update(factory.newPreparedStatementCreator(args));
+        evictProfile(tenantId, mappedItemId, itemType);
+        if (profileDimensionDAO != null) profileDimensionDAO.storeDimensions(tenantId, mappedItemId, itemType, null);
         return (rowsAffected > 0);
     }
 
 
     public List<ItemVO<Integer, Integer>> getItemsByDimensionValue(Integer tenantId, Integer itemType,
                                                                    String dimensionXPath, String value) {
+        if (tenantId != null && itemType != null && profileDimensionDAO != null &&
+                profileDimensionDAO.isIndexed(dimensionXPath, value)) {
+            List<String> itemIds = profileDimensionDAO.getItemIds(tenantId, itemTypeDAO.getTypeById(tenantId, itemType),
+                    dimensionXPath, value);
+            List<ItemVO<Integer, Integer>> items = new ArrayList<ItemVO<Integer, Integer>>(itemIds.size());
+
+            for (String itemId : itemIds)
+                items.add(new ItemVO<Integer, Integer>(tenantId, idMappingDAO.lookup(itemId), itemType));
+
+            return items;
+        }
+
+        // lookups by arbitrary XPath expressions or across tenants and item types scan the profiles
         List<Object> args = Lists.newArrayList();
         List<Integer> argt = Lists.newArrayList();
 
@@ -362,7 +482,7 @@ public class ProfileDAOMysqlImpl extends AbstractBaseProfileDAOMysqlImpl<Integer
         }
 
         sqlString.append("ExtractValue(").append(DEFAULT_PROFILE_DATA_COLUMN_NAME);
-        sqlString.append(",?)=?");
+        sqlString.append(",?)=? ORDER BY id");
 
         args.add(dimensionXPath);
         argt.add(Types.VARCHAR);
@@ -404,6 +524,42 @@ public class ProfileDAOMysqlImpl extends AbstractBaseProfileDAOMysqlImpl<Integer
         return getJdbcTemplate().query(sqlString.toString(), args.toArray(), Ints.toArray(argt), itemRowMapper);
     }
 
+    public ProfileCache getProfileCache() {
+        return profileCache;
+    }
+
+    public void setProfileCache(ProfileCache profileCache) {
+        this.profileCache = profileCache;
+    }
+
+    public ProfileDimensionDAO getProfileDimensionDAO() {
+        return profileDimensionDAO;
+    }
+
+    public void setProfileDimensionDAO(ProfileDimensionDAO profileDimensionDAO) {
+        this.profileDimensionDAO = profileDimensionDAO;
+    }
+
+    public ItemDAO getItemDAO() {
+        return itemDAO;
+    }
+
+    public void setItemDAO(ItemDAO itemDAO) {
+        this.itemDAO = itemDAO;
+    }
+
+    // storing a profile inserts the item if it does not exist yet, so a cached unknown item must be dropped too
+    private void evictProfile(Integer tenantId, String itemId, String itemType) {
+        if (profileCache != null) profileCache.remove(makeCacheKey(tenantId, itemType, itemId));
+        if (itemDAO != null) itemDAO.evict(tenantId, itemId, itemType);
+    }
+
+    // item ids and types are compared case insensitive by MySQL
+    private static String makeCacheKey(Integer tenantId, String itemType, String itemId) {
+        return new StringBuilder().append(tenantId).append('\t').append(itemType).append('\t').append(itemId)
+                .toString().toLowerCase();
+    }
+
     //////////////////////////////////////////////////////////////////////////////
     // private inner classes
     private class ItemVORowMapper implements RowMapper<ItemVO<Integer, Integer>> {
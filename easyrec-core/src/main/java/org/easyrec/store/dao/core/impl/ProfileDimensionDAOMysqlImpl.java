@@ -0,0 +1,476 @@
+/*
+ * Copyright 2010 Research Studios Austria Forschungsgesellschaft mBH
+ *
+ * This file is part of easyrec.
+ *
+ * easyrec is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * easyrec is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with easyrec.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.easyrec.store.dao.core.impl;
+
+import org.easyrec.store.dao.core.ProfileDimensionDAO;
+import org.easyrec.store.dao.core.impl.ProfileDimensionIndex.Dimension;
+import org.easyrec.utils.spring.store.dao.annotation.DAO;
+import org.easyrec.utils.spring.store.dao.impl.AbstractTableCreatingDAOImpl;
+import org.easyrec.utils.spring.store.service.sqlscript.SqlScriptService;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+
+import javax.sql.DataSource;
+import javax.xml.stream.XMLStreamException;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.Timer;
+import java.util.TimerTask;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Stores the profile dimensions in the <code>profiledimension</code> table. The table is filled from the existing
+ * profiles in a staging table that replaces it when complete, so the table only exists with a complete index. It is
+ * built when it does not exist on startup and again in the background after an update of the index failed; until
+ * then profiles are searched with <code>ExtractValue</code>. Profiles stored by other instances while a rebuild runs
+ * might be missed, rebuilds should run while no other instance stores profiles.
+ * <p/>
+ * With <code>inMemory</code> set the dimensions are also held in a {@link ProfileDimensionIndex} that answers the
+ * lookups. It is reloaded from the table every <code>refreshInterval</code> seconds to see the profiles stored by
+ * other instances. Unlike the table lookups, which skip items that were removed from the item table, the in-memory
+ * index only forgets an item when its profile is deleted or it is reloaded.
+ * <p/>
+ * Items are returned in the order of the item table, like the <code>ExtractValue</code> lookup.
+ */
+@DAO
+public class ProfileDimensionDAOMysqlImpl extends AbstractTableCreatingDAOImpl implements ProfileDimensionDAO {
+    private final static String TABLE_CREATING_SQL_SCRIPT_NAME = "classpath:sql/core/ProfileDimension.sql";
+    private final static String STAGING_TABLE_NAME = DEFAULT_TABLE_NAME + "_rebuild";
+    private final static String REPLACED_TABLE_NAME = DEFAULT_TABLE_NAME + "_old";
+    private final static int INSERT_BATCH_SIZE = 500;
+    private final static int LOCK_STRIPES = 64;
+    // failures are collected for a while, so a failing database is not hit by a rebuild per stored profile
+    private final static long REBUILD_DELAY = 60000L;
+
+    private final static String SQL_DELETE_DIMENSIONS = new StringBuilder("DELETE FROM ").append(DEFAULT_TABLE_NAME)
+            .append(" WHERE tenantId=? AND itemType=? AND itemId=?").toString();
+    private final static String SQL_INSERT_DIMENSIONS =
+            " (tenantId, itemType, itemId, dimension, value) VALUES ";
+    private final static String SQL_GET_ITEM_IDS = new StringBuilder("SELECT i.itemid FROM ").append(DEFAULT_TABLE_NAME)
+            .append(" d INNER JOIN item i ON (i.tenantId = d.tenantId AND i.itemid = d.itemId AND i.itemtype = d.itemType)")
+            .append(" WHERE d.tenantId=? AND d.itemType=? AND d.dimension=? AND d.value=?")
+            .append(" GROUP BY i.id ORDER BY i.id").toString();
+    private final static String SQL_GET_DIMENSIONS = new StringBuilder("SELECT d.tenantId, d.itemType, d.itemId, ")
+            .append("d.dimension, d.value, i.id FROM ").append(DEFAULT_TABLE_NAME)
+            .append(" d INNER JOIN item i ON (i.tenantId = d.tenantId AND i.itemid = d.itemId AND i.itemtype = d.itemType)")
+            .append(" ORDER BY d.tenantId, d.itemType, d.itemId").toString();
+    private final static String SQL_GET_PROFILES =
+            "SELECT id, tenantId, itemid, itemtype, profileData FROM item WHERE profileData IS NOT NULL";
+    private final static String SQL_GET_PROFILE =
+            "SELECT id, profileData FROM item WHERE tenantId=? AND itemid=? AND itemtype=?";
+    private final static String SQL_GET_ROW_ID = "SELECT id FROM item WHERE tenantId=? AND itemid=? AND itemtype=?";
+
+    private final static int[] ARGTYPES_ITEM = {Types.INTEGER, Types.VARCHAR, Types.VARCHAR};
+    private final static int[] ARGTYPES_DIMENSION = {Types.INTEGER, Types.VARCHAR, Types.VARCHAR, Types.VARCHAR};
+
+    // writes of the same item are serialized, so the delete and insert of two updates cannot interleave
+    private final Object[] locks = new Object[LOCK_STRIPES];
+    // writes hold the read lock, replacing the table or the in-memory index holds the write lock
+    private final ReadWriteLock replaceLock = new ReentrantReadWriteLock();
+    // the items stored while the index is rebuilt or reloaded, they are indexed again after it was replaced
+    private final Set<List<Object>> storedDuringRefresh = new HashSet<List<Object>>();
+    private final AtomicBoolean rebuildScheduled = new AtomicBoolean(false);
+    private final Object timerLock = new Object();
+    private boolean refreshing = false;
+    private boolean inMemory = false;
+    private int refreshInterval = 0;
+    private Timer timer;
+    private volatile ProfileDimensionIndex memoryIndex;
+    private volatile boolean available = false;
+
+    public ProfileDimensionDAOMysqlImpl(DataSource dataSource, SqlScriptService sqlScriptService) {
+        super(sqlScriptService);
+        setDataSource(dataSource);
+
+        for (int i = 0; i < locks.length; i++)
+            locks[i] = new Object();
+    }
+
+    @Override
+    protected void initDao() throws Exception {
+        try {
+            if (!existsTable()) rebuild();
+            else {
+                if (inMemory) loadMemoryIndex();
+
+                available = true;
+            }
+        } catch (Exception e) {
+            logger.warn("profile dimension index is not available, profiles are searched with ExtractValue", e);
+            scheduleRebuild();
+        }
+
+        if (inMemory && refreshInterval > 0) {
+            long period = refreshInterval * 1000L;
+
+            getTimer().schedule(new TimerTask() {
+                @Override
+                public void run() {
+                    refresh();
+                }
+            }, period, period);
+        }
+    }
+
+    public void destroy() {
+        synchronized (timerLock) {
+            if (timer != null) timer.cancel();
+        }
+    }
+
+    @Override
+    public String getDefaultTableName() {
+        return DEFAULT_TABLE_NAME;
+    }
+
+    @Override
+    public String getTableCreatingSQLScriptName() {
+        return TABLE_CREATING_SQL_SCRIPT_NAME;
+    }
+
+    public boolean isIndexed(String dimensionXPath, String value) {
+        return available && ProfileDimensionIndex.isIndexable(dimensionXPath, value);
+    }
+
+    public void storeDimensions(Integer tenantId, String itemId, String itemType, String profileXML) {
+        RuntimeException failure = null;
+
+        replaceLock.readLock().lock();
+
+        try {
+            try {
+                synchronized (locks[(itemId.toLowerCase().hashCode() & 0x7fffffff) % LOCK_STRIPES]) {
+                    write(tenantId, itemType, itemId, profileXML, null);
+                }
+            } catch (RuntimeException e) {
+                failure = e;
+            }
+
+            // the write went to the table or index that is about to be replaced or failed because the table does
+            // not exist yet, the item is indexed again when the refresh is finished
+            synchronized (storedDuringRefresh) {
+                if (refreshing) {
+                    storedDuringRefresh.add(Arrays.<Object>asList(tenantId, itemType, itemId));
+                    failure = null;
+                }
+            }
+        } finally {
+            replaceLock.readLock().unlock();
+        }
+
+        if (failure != null) failed(itemId, itemType, failure);
+    }
+
+    public List<String> getItemIds(Integer tenantId, String itemType, String dimensionXPath, String value) {
+        ProfileDimensionIndex index = memoryIndex;
+
+        if (index != null) return index.getItemIds(tenantId, itemType, dimensionXPath, value);
+
+        return getJdbcTemplate().queryForList(SQL_GET_ITEM_IDS, new Object[]{tenantId, itemType, dimensionXPath, value},
+                ARGTYPES_DIMENSION, String.class);
+    }
+
+    public synchronized void rebuild() {
+        logger.info("rebuilding the profile dimension index");
+
+        // lookups scan the profiles until the new index is complete
+        available = false;
+        startRefresh();
+
+        try {
+            getJdbcTemplate().execute("DROP TABLE IF EXISTS " + STAGING_TABLE_NAME);
+            getJdbcTemplate().execute(getSqlScriptService().parseSqlScript(TABLE_CREATING_SQL_SCRIPT_NAME).get(0)
+                    .replaceFirst("(?i)CREATE TABLE " + DEFAULT_TABLE_NAME, "CREATE TABLE " + STAGING_TABLE_NAME));
+
+            final ProfileDimensionIndex index = inMemory ? new ProfileDimensionIndex() : null;
+            final List<Object[]> rows = new ArrayList<Object[]>(INSERT_BATCH_SIZE);
+
+            // stream the profiles instead of loading all of them into memory
+            JdbcTemplate streamingTemplate = new JdbcTemplate(getDataSource());
+            streamingTemplate.setFetchSize(Integer.MIN_VALUE);
+            streamingTemplate.query(SQL_GET_PROFILES, new RowCallbackHandler() {
+                public void processRow(ResultSet rs) throws SQLException {
+                    Integer tenantId = rs.getInt("tenantId");
+                    String itemId = rs.getString("itemid");
+                    String itemType = rs.getString("itemtype");
+                    Collection<Dimension> dimensions = extract(rs.getString("profileData"), itemId);
+
+                    for (Dimension dimension : dimensions)
+                        rows.add(new Object[]{tenantId, itemType, itemId, dimension.getPath(), dimension.getValue()});
+
+                    if (index != null) index.put(tenantId, itemType, itemId, rs.getInt("id"), dimensions);
+
+                    if (rows.size() >= INSERT_BATCH_SIZE) {
+                        insert(STAGING_TABLE_NAME, rows);
+                        rows.clear();
+                    }
+                }
+            });
+
+            insert(STAGING_TABLE_NAME, rows);
+
+            replaceLock.writeLock().lock();
+
+            try {
+                if (existsTable()) {
+                    getJdbcTemplate().execute("DROP TABLE IF EXISTS " + REPLACED_TABLE_NAME);
+                    getJdbcTemplate().execute(new StringBuilder("RENAME TABLE ").append(DEFAULT_TABLE_NAME)
+                            .append(" TO ").append(REPLACED_TABLE_NAME).append(", ").append(STAGING_TABLE_NAME)
+                            .append(" TO ").append(DEFAULT_TABLE_NAME).toString());
+                    getJdbcTemplate().execute("DROP TABLE " + REPLACED_TABLE_NAME);
+                } else
+                    getJdbcTemplate().execute("RENAME TABLE " + STAGING_TABLE_NAME + " TO " + DEFAULT_TABLE_NAME);
+
+                memoryIndex = index;
+                available = true;
+            } finally {
+                replaceLock.writeLock().unlock();
+            }
+
+            logger.info("rebuilt the profile dimension index");
+        } finally {
+            finishRefresh();
+        }
+    }
+
+    public boolean isInMemory() {
+        return inMemory;
+    }
+
+    public void setInMemory(boolean inMemory) {
+        this.inMemory = inMemory;
+    }
+
+    public int getRefreshInterval() {
+        return refreshInterval;
+    }
+
+    /**
+     * @param refreshInterval the seconds after which the in-memory index is reloaded from the table, 0 to never
+     *                        reload it
+     */
+    public void setRefreshInterval(int refreshInterval) {
+        this.refreshInterval = refreshInterval;
+    }
+
+    private Timer getTimer() {
+        synchronized (timerLock) {
+            if (timer == null) timer = new Timer("profile-dimensions", true);
+
+            return timer;
+        }
+    }
+
+    private void scheduleRebuild() {
+        if (!rebuildScheduled.compareAndSet(false, true)) return;
+
+        getTimer().schedule(new TimerTask() {
+            @Override
+            public void run() {
+                rebuildScheduled.set(false);
+
+                try {
+                    rebuild();
+                } catch (RuntimeException e) {
+                    logger.error("failed to rebuild the profile dimension index", e);
+                }
+            }
+        }, REBUILD_DELAY);
+    }
+
+    private void refresh() {
+        try {
+            if (!available) rebuild();
+            else loadMemoryIndex();
+        } catch (RuntimeException e) {
+            logger.error("failed to refresh the profile dimension index", e);
+        }
+    }
+
+    private synchronized void loadMemoryIndex() {
+        final ProfileDimensionIndex index = new ProfileDimensionIndex();
+        final List<Dimension> dimensions = new ArrayList<Dimension>();
+        final Object[] item = new Object[4];
+
+        startRefresh();
+
+        try {
+            // the rows are ordered by item, collect the dimensions of an item and index them at once
+            JdbcTemplate streamingTemplate = new JdbcTemplate(getDataSource());
+            streamingTemplate.setFetchSize(Integer.MIN_VALUE);
+            streamingTemplate.query(SQL_GET_DIMENSIONS, new RowCallbackHandler() {
+                public void processRow(ResultSet rs) throws SQLException {
+                    Integer tenantId = rs.getInt("tenantId");
+                    String itemType = rs.getString("itemType");
+                    String itemId = rs.getString("itemId");
+
+                    if (!(tenantId.equals(item[0]) && itemType.equals(item[1]) && itemId.equals(item[2]))) {
+                        if (item[0] != null)
+                            index.put((Integer) item[0], (String) item[1], (String) item[2], (Integer) item[3],
+                                    dimensions);
+
+                        dimensions.clear();
+                        item[0] = tenantId;
+                        item[1] = itemType;
+                        item[2] = itemId;
+                        item[3] = rs.getInt("id");
+                    }
+
+                    dimensions.add(new Dimension(rs.getString("dimension"), rs.getString("value")));
+                }
+            });
+
+            if (item[0] != null)
+                index.put((Integer) item[0], (String) item[1], (String) item[2], (Integer) item[3], dimensions);
+
+            replaceLock.writeLock().lock();
+
+            try {
+                memoryIndex = index;
+            } finally {
+                replaceLock.writeLock().unlock();
+            }
+        } finally {
+            finishRefresh();
+        }
+
+        logger.info("loaded " + index.size() + " profile values into memory");
+    }
+
+    private void startRefresh() {
+        replaceLock.writeLock().lock();
+
+        try {
+            synchronized (storedDuringRefresh) {
+                refreshing = true;
+            }
+        } finally {
+            replaceLock.writeLock().unlock();
+        }
+    }
+
+    private void finishRefresh() {
+        List<List<Object>> stored;
+
+        replaceLock.writeLock().lock();
+
+        try {
+            synchronized (storedDuringRefresh) {
+                refreshing = false;
+                stored = new ArrayList<List<Object>>(storedDuringRefresh);
+                storedDuringRefresh.clear();
+            }
+        } finally {
+            replaceLock.writeLock().unlock();
+        }
+
+        for (List<Object> item : stored) {
+            try {
+                reindex((Integer) item.get(0), (String) item.get(1), (String) item.get(2));
+            } catch (RuntimeException e) {
+                failed((String) item.get(2), (String) item.get(1), e);
+            }
+        }
+    }
+
+    private void failed(String itemId, String itemType, RuntimeException e) {
+        available = false;
+        logger.error("failed to index the profile of item " + itemId + " of type " + itemType +
+                ", profiles are searched with ExtractValue until the index is rebuilt", e);
+        scheduleRebuild();
+    }
+
+    // indexes the current profile of the item again
+    private void reindex(Integer tenantId, String itemType, String itemId) {
+        replaceLock.readLock().lock();
+
+        try {
+            synchronized (locks[(itemId.toLowerCase().hashCode() & 0x7fffffff) % LOCK_STRIPES]) {
+                List<Map<String, Object>> profiles = getJdbcTemplate().queryForList(SQL_GET_PROFILE,
+                        new Object[]{tenantId, itemId, itemType}, ARGTYPES_ITEM);
+
+                if (profiles.isEmpty()) write(tenantId, itemType, itemId, null, null);
+                else
+                    write(tenantId, itemType, itemId, (String) profiles.get(0).get("profileData"),
+                            ((Number) profiles.get(0).get("id")).intValue());
+            }
+        } finally {
+            replaceLock.readLock().unlock();
+        }
+    }
+
+    // replaces the dimensions of the item in the table and the in-memory index, the caller holds the item's lock
+    private void write(Integer tenantId, String itemType, String itemId, String profileXML, Integer rowId) {
+        Collection<Dimension> dimensions = extract(profileXML, itemId);
+
+        getJdbcTemplate().update(SQL_DELETE_DIMENSIONS, new Object[]{tenantId, itemType, itemId}, ARGTYPES_ITEM);
+
+        List<Object[]> rows = new ArrayList<Object[]>(dimensions.size());
+
+        for (Dimension dimension : dimensions)
+            rows.add(new Object[]{tenantId, itemType, itemId, dimension.getPath(), dimension.getValue()});
+
+        insert(DEFAULT_TABLE_NAME, rows);
+
+        ProfileDimensionIndex index = memoryIndex;
+
+        if (index == null) return;
+
+        if (rowId == null && !dimensions.isEmpty())
+            rowId = getJdbcTemplate().queryForInt(SQL_GET_ROW_ID, new Object[]{tenantId, itemId, itemType}, ARGTYPES_ITEM);
+
+        index.put(tenantId, itemType, itemId, rowId, dimensions);
+    }
+
+    private void insert(String tableName, List<Object[]> rows) {
+        if (rows.isEmpty()) return;
+
+        StringBuilder sql = new StringBuilder("INSERT INTO ").append(tableName).append(SQL_INSERT_DIMENSIONS);
+        List<Object> args = new ArrayList<Object>(rows.size() * 5);
+
+        for (Object[] row : rows) {
+            sql.append(args.isEmpty() ? "(?,?,?,?,?)" : ",(?,?,?,?,?)");
+
+            for (Object value : row)
+                args.add(value);
+        }
+
+        getJdbcTemplate().update(sql.toString(), args.toArray());
+    }
+
+    private Collection<Dimension> extract(String profileXML, String itemId) {
+        try {
+            return ProfileDimensionIndex.extract(profileXML);
+        } catch (XMLStreamException e) {
+            if (logger.isDebugEnabled()) logger.debug("profile of item " + itemId + " is malformed, not indexed", e);
+
+            return new ArrayList<Dimension>(0);
+        }
+    }
+}
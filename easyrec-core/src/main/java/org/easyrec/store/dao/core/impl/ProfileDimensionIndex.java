@@ -0,0 +1,236 @@
+/*
+ * Copyright 2010 Research Studios Austria Forschungsgesellschaft mBH
+ *
+ * This file is part of easyrec.
+ *
+ * easyrec is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * easyrec is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with easyrec.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.easyrec.store.dao.core.impl;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import java.io.StringReader;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.regex.Pattern;
+
+/**
+ * An in-memory inverted index of profile values that maps tenant, item type, element path and value to the ids of
+ * the items with that value. Like MySQL it compares item types and values case insensitive, while paths are
+ * compared case sensitive like the element names matched by <code>ExtractValue</code>. The ids are returned in the
+ * order of the items in the item table, i.e. by <code>item.id</code>.
+ * <p/>
+ * The class also extracts the indexed values from a profile: every element that directly contains text is indexed
+ * with its text under its absolute element path, e.g. <code>&lt;profile&gt;&lt;genre&gt;rock&lt;/genre&gt;
+ * &lt;/profile&gt;</code> yields <code>/profile/genre = rock</code>. Paths and values longer than the columns of the
+ * <code>profiledimension</code> table are not indexed.
+ */
+public class ProfileDimensionIndex {
+    public final static int MAX_LENGTH = 255;
+
+    // a plain absolute element path without predicates, wildcards, attributes or namespaces
+    private final static Pattern ELEMENT_PATH = Pattern.compile("(/[A-Za-z_][\\w.\\-]*)+");
+    private final static XMLInputFactory XML_INPUT_FACTORY = XMLInputFactory.newInstance();
+
+    static {
+        XML_INPUT_FACTORY.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+        XML_INPUT_FACTORY.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+        XML_INPUT_FACTORY.setProperty(XMLInputFactory.IS_COALESCING, true);
+    }
+
+    // value key -> row id -> id of the items with the value
+    private final ConcurrentMap<String, ConcurrentNavigableMap<Integer, String>> itemIds =
+            new ConcurrentHashMap<String, ConcurrentNavigableMap<Integer, String>>();
+    // item key -> value keys of the item, used to remove the old values when the profile changes
+    private final Map<String, List<String>> valueKeys = new HashMap<String, List<String>>();
+    // item key -> the row id the item was indexed with
+    private final Map<String, Integer> indexedRowIds = new HashMap<String, Integer>();
+
+    /**
+     * @return <code>true</code> if items can be looked up by this path and value
+     */
+    public static boolean isIndexable(String dimensionXPath, String value) {
+        return dimensionXPath != null && value != null && dimensionXPath.length() <= MAX_LENGTH &&
+                value.length() <= MAX_LENGTH && ELEMENT_PATH.matcher(dimensionXPath).matches();
+    }
+
+    /**
+     * @return the indexable values of the profile in document order, empty for a <code>null</code> profile
+     * @throws XMLStreamException if the profile is malformed
+     */
+    public static Set<Dimension> extract(String profileXML) throws XMLStreamException {
+        Set<Dimension> dimensions = new LinkedHashSet<Dimension>();
+
+        if (profileXML == null) return dimensions;
+
+        XMLStreamReader reader = XML_INPUT_FACTORY.createXMLStreamReader(new StringReader(profileXML));
+        StringBuilder path = new StringBuilder();
+        LinkedList<Integer> parentPathLengths = new LinkedList<Integer>();
+        LinkedList<StringBuilder> texts = new LinkedList<StringBuilder>();
+
+        try {
+            while (reader.hasNext()) {
+                switch (reader.next()) {
+                    case XMLStreamConstants.START_ELEMENT:
+                        parentPathLengths.push(path.length());
+                        path.append('/');
+
+                        if (reader.getPrefix() != null && reader.getPrefix().length() > 0)
+                            path.append(reader.getPrefix()).append(':');
+
+                        path.append(reader.getLocalName());
+                        texts.push(new StringBuilder());
+                        break;
+                    case XMLStreamConstants.CHARACTERS:
+                    case XMLStreamConstants.CDATA:
+                    case XMLStreamConstants.SPACE:
+                        if (!texts.isEmpty()) texts.peek().append(reader.getText());
+                        break;
+                    case XMLStreamConstants.END_ELEMENT:
+                        String text = texts.pop().toString();
+
+                        if (text.trim().length() > 0 && isIndexable(path.toString(), text))
+                            dimensions.add(new Dimension(path.toString(), text));
+
+                        path.setLength(parentPathLengths.pop());
+                        break;
+                }
+            }
+        } finally {
+            reader.close();
+        }
+
+        return dimensions;
+    }
+
+    /**
+     * Replaces the indexed values of an item.
+     *
+     * @param rowId the <code>item.id</code> of the item, may be <code>null</code> if there are no dimensions
+     */
+    public synchronized void put(Integer tenantId, String itemType, String itemId, Integer rowId,
+                                 Collection<Dimension> dimensions) {
+        String itemKey = key(tenantId, itemType, itemId);
+        List<String> oldKeys = valueKeys.remove(itemKey);
+        Integer oldRowId = indexedRowIds.remove(itemKey);
+
+        if (oldKeys != null) {
+            for (String valueKey : oldKeys) {
+                Map<Integer, String> ids = itemIds.get(valueKey);
+                ids.remove(oldRowId);
+
+                if (ids.isEmpty()) itemIds.remove(valueKey);
+            }
+        }
+
+        if (dimensions.isEmpty()) return;
+
+        if (rowId == null) throw new IllegalArgumentException("rowId must not be 'null'");
+
+        List<String> keys = new ArrayList<String>(dimensions.size());
+
+        for (Dimension dimension : dimensions) {
+            String valueKey = valueKey(tenantId, itemType, dimension.getPath(), dimension.getValue());
+            ConcurrentNavigableMap<Integer, String> ids = itemIds.get(valueKey);
+
+            if (ids == null) {
+                ids = new ConcurrentSkipListMap<Integer, String>();
+                itemIds.put(valueKey, ids);
+            }
+
+            // case insensitive duplicates of a value share the key
+            if (ids.put(rowId, itemId) == null) keys.add(valueKey);
+        }
+
+        valueKeys.put(itemKey, keys);
+        indexedRowIds.put(itemKey, rowId);
+    }
+
+    /**
+     * @return the ids of the items with the given value, ordered by <code>item.id</code>
+     */
+    public List<String> getItemIds(Integer tenantId, String itemType, String dimensionXPath, String value) {
+        Map<Integer, String> ids = itemIds.get(valueKey(tenantId, itemType, dimensionXPath, value));
+
+        if (ids == null) return new ArrayList<String>(0);
+
+        return new ArrayList<String>(ids.values());
+    }
+
+    /**
+     * @return the number of indexed values
+     */
+    public int size() {
+        return itemIds.size();
+    }
+
+    private static String key(Object... parts) {
+        StringBuilder key = new StringBuilder();
+
+        for (Object part : parts)
+            key.append(part).append('\t');
+
+        return key.toString().toLowerCase();
+    }
+
+    private static String valueKey(Integer tenantId, String itemType, String path, String value) {
+        return new StringBuilder(key(tenantId, itemType)).append(path).append('\t').append(key(value)).toString();
+    }
+
+    /**
+     * A value of a profile and the path of the element containing it.
+     */
+    public static class Dimension {
+        private final String path;
+        private final String value;
+
+        public Dimension(String path, String value) {
+            this.path = path;
+            this.value = value;
+        }
+
+        public String getPath() {
+            return path;
+        }
+
+        public String getValue() {
+            return value;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof Dimension)) return false;
+
+            Dimension dimension = (Dimension) o;
+
+            return path.equals(dimension.path) && value.equals(dimension.value);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * path.hashCode() + value.hashCode();
+        }
+
+        @Override
+        public String toString() {
+            return path + "=" + value;
+        }
+    }
+}
@@ -24,7 +24,7 @@ import org.easyrec.model.core.transfer.TimeConstraintVO;
 import org.easyrec.store.dao.core.RecommendationDAO;
 import org.easyrec.store.dao.core.RecommendedItemDAO;
 import org.easyrec.store.dao.impl.AbstractBaseRecommendationDAOMysqlImpl;
-import org.easyrec.utils.spring.store.ResultSetIteratorMysql;
+import org.easyrec.utils.spring.store.KeysetResultSetIteratorMysql;
 import org.easyrec.utils.spring.store.dao.DaoUtils;
 import org.easyrec.utils.spring.store.dao.annotation.DAO;
 import org.easyrec.utils.spring.store.service.sqlscript.SqlScriptService;
@@ -37,7 +37,10 @@ import javax.sql.DataSource;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Types;
+import java.util.ArrayList;
 import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
 
 /**
  * This class provides a Mysql implementation of the {@link org.easyrec.store.dao.core.RecommendationDAO} interface.
@@ -142,6 +145,97 @@ public class RecommendationDAOMysqlImpl extends
         return rowsAffected;
     }
 
+    public int insertRecommendations(List<RecommendationVO<Integer, Integer>> recommendations) {
+        if (recommendations.isEmpty()) return 0;
+
+        StringBuilder query = new StringBuilder("INSERT INTO ");
+        query.append(DEFAULT_TABLE_NAME);
+        query.append(" (");
+        query.append(DEFAULT_TENANT_COLUMN_NAME);
+        query.append(", ");
+        query.append(DEFAULT_USER_COLUMN_NAME);
+        query.append(", ");
+        query.append(DEFAULT_QUERIED_ITEM_COLUMN_NAME);
+        query.append(", ");
+        query.append(DEFAULT_QUERIED_ITEM_TYPE_COLUMN_NAME);
+        query.append(", ");
+        query.append(DEFAULT_QUERIED_ASSOC_TYPE_COLUMN_NAME);
+        query.append(", ");
+        query.append(DEFAULT_RELATED_ACTION_TYPE_COLUMN_NAME);
+        query.append(", ");
+        query.append(DEFAULT_RECOMMENDATION_STRATEGY_COLUMN_NAME);
+        query.append(", ");
+        query.append(DEFAULT_EXPLANATION_COLUMN_NAME);
+        query.append(", ");
+        query.append(DEFAULT_RECOMMENDATION_TIME_COLUMN_NAME);
+        query.append(") VALUES ");
+
+        Object[] args = new Object[recommendations.size() * 9];
+        int[] argTypes = new int[args.length];
+        int i = 0;
+
+        for (RecommendationVO<Integer, Integer> recommendation : recommendations) {
+            // validate unique key
+            validateUniqueKey(recommendation);
+
+            if (i > 0) query.append(", ");
+            query.append("(?, ?, ?, ?, ?, ?, ?, ?, COALESCE(?, NOW()))");
+
+            argTypes[i] = Types.INTEGER;
+            args[i++] = recommendation.getTenant();
+            argTypes[i] = Types.INTEGER;
+            args[i++] = recommendation.getUser();
+            argTypes[i] = Types.INTEGER;
+            args[i++] = recommendation.getQueriedItem();
+            argTypes[i] = Types.INTEGER;
+            args[i++] = recommendation.getQueriedItemType();
+            argTypes[i] = Types.INTEGER;
+            args[i++] = recommendation.getQueriedAssocType();
+            argTypes[i] = Types.INTEGER;
+            args[i++] = recommendation.getRelatedActionType();
+            argTypes[i] = Types.VARCHAR;
+            args[i++] = recommendation.getRecommendationStrategy();
+            argTypes[i] = Types.VARCHAR;
+            args[i++] = recommendation.getExplanation();
+            argTypes[i] = Types.TIMESTAMP;
+            args[i++] = recommendation.getRecommendationTime();
+        }
+
+        PreparedStatementCreatorFactory factory = new PreparedStatementCreatorFactory(query.toString(), argTypes);
+        factory.setReturnGeneratedKeys(true);
+        KeyHolder keyHolder = new GeneratedKeyHolder();
+
+        int rowsAffected = getJdbcTemplate().update(factory.newPreparedStatementCreator(args), keyHolder);
+
+        // the driver reports one generated key per inserted row in the order of the VALUES list
+        List<Map<String, Object>> keys = keyHolder.getKeyList();
+
+        if (keys.size() != recommendations.size()) {
+            logger.warn("expected " + recommendations.size() + " generated keys but got " + keys.size() +
+                    ", the recommended items of the inserted recommendations are not stored");
+            return rowsAffected;
+        }
+
+        List<RecommendedItemVO<Integer, Integer>> recommendedItems = new ArrayList<RecommendedItemVO<Integer, Integer>>();
+
+        for (int j = 0; j < recommendations.size(); j++) {
+            RecommendationVO<Integer, Integer> recommendation = recommendations.get(j);
+            recommendation.setId(((Number) keys.get(j).values().iterator().next()).intValue());
+
+            if (recommendation.getRecommendedItems() != null) {
+                for (RecommendedItemVO<Integer, Integer> recommendedItem : recommendation.getRecommendedItems()) {
+                    // store auto increment id to all RecommendedItemVOs
+                    recommendedItem.setRecommendationId(recommendation.getId());
+                    recommendedItems.add(recommendedItem);
+                }
+            }
+        }
+
+        recommendedItemDAO.insertRecommendedItems(recommendedItems);
+
+        return rowsAffected;
+    }
+
     @Override
     public RecommendationVO<Integer, Integer> loadRecommendation(
             Integer recommendationId) {
@@ -163,8 +257,8 @@ public class RecommendationDAOMysqlImpl extends
     @Override
     public Iterator<RecommendationVO<Integer, Integer>> getRecommendationIterator(
             int bulkSize) {
-        return new ResultSetIteratorMysql<RecommendationVO<Integer, Integer>>(
-                getDataSource(), bulkSize, getRecommendationIteratorQueryString(), recommendationVORowMapper);
+        return new KeysetResultSetIteratorMysql<RecommendationVO<Integer, Integer>>(getDataSource(), bulkSize,
+                getRecommendationIteratorQueryString(), DEFAULT_ID_COLUMN_NAME, null, recommendationVORowMapper);
     }
 
     @Override
@@ -179,8 +273,8 @@ public class RecommendationDAOMysqlImpl extends
         DaoUtils.ArgsAndTypesHolder holder = new DaoUtils.ArgsAndTypesHolder(args, argTypes);
         String s = getRecommendationIteratorQueryString(timeConstraints, holder);
 
-        return new ResultSetIteratorMysql<RecommendationVO<Integer, Integer>>(
-                getDataSource(), bulkSize, s, holder.getArgs(), holder.getArgTypes(), recommendationVORowMapper);
+        return new KeysetResultSetIteratorMysql<RecommendationVO<Integer, Integer>>(getDataSource(), bulkSize, s,
+                holder.getArgs(), holder.getArgTypes(), DEFAULT_ID_COLUMN_NAME, null, recommendationVORowMapper);
     }
 
     //////////////////////////////////////////////////////////////////////////////
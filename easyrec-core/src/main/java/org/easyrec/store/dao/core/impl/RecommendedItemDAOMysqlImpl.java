@@ -24,7 +24,7 @@ import org.easyrec.model.core.transfer.TimeConstraintVO;
 import org.easyrec.store.dao.core.RecommendationDAO;
 import org.easyrec.store.dao.core.RecommendedItemDAO;
 import org.easyrec.store.dao.impl.AbstractBaseRecommendedItemDAOMysqlImpl;
-import org.easyrec.utils.spring.store.ResultSetIteratorMysql;
+import org.easyrec.utils.spring.store.KeysetResultSetIteratorMysql;
 import org.easyrec.utils.spring.store.dao.DaoUtils;
 import org.easyrec.utils.spring.store.dao.annotation.DAO;
 import org.easyrec.utils.spring.store.service.sqlscript.SqlScriptService;
@@ -122,6 +122,53 @@ public class RecommendedItemDAOMysqlImpl
         return rowsAffected;
     }
 
+    public int insertRecommendedItems(List<RecommendedItemVO<Integer, Integer>> recommendedItems) {
+        if (recommendedItems.isEmpty()) return 0;
+
+        StringBuilder query = new StringBuilder("INSERT INTO ");
+        query.append(DEFAULT_TABLE_NAME);
+        query.append(" (");
+        query.append(DEFAULT_ITEM_COLUMN_NAME);
+        query.append(", ");
+        query.append(DEFAULT_ITEM_TYPE_COLUMN_NAME);
+        query.append(", ");
+        query.append(DEFAULT_RECOMMENDATION_COLUMN_NAME);
+        query.append(", ");
+        query.append(DEFAULT_PREDICTION_VALUE_COLUMN_NAME);
+        query.append(", ");
+        query.append(DEFAULT_ITEM_ASSOC_COLUMN_NAME);
+        query.append(", ");
+        query.append(DEFAULT_EXPLANATION_COLUMN_NAME);
+        query.append(") VALUES ");
+
+        Object[] args = new Object[recommendedItems.size() * 6];
+        int[] argTypes = new int[args.length];
+        int i = 0;
+
+        for (RecommendedItemVO<Integer, Integer> recommendedItem : recommendedItems) {
+            // validate unique key
+            validateUniqueKey(recommendedItem);
+
+            if (i > 0) query.append(", ");
+            query.append("(?, ?, ?, ?, ?, ?)");
+
+            argTypes[i] = Types.INTEGER;
+            args[i++] = recommendedItem.getItem().getItem();
+            argTypes[i] = Types.INTEGER;
+            args[i++] = recommendedItem.getItem().getType();
+            argTypes[i] = Types.INTEGER;
+            args[i++] = recommendedItem.getRecommendationId();
+            argTypes[i] = Types.DOUBLE;
+            args[i++] = recommendedItem.getPredictionValue();
+            argTypes[i] = Types.INTEGER;
+            args[i++] = recommendedItem.getItemAssocId();
+            argTypes[i] = Types.VARCHAR;
+            args[i++] = recommendedItem.getExplanation();
+        }
+
+        return getJdbcTemplate().update(query.toString(), args, argTypes);
+    }
+
     @Override
     public RecommendedItemVO<Integer, Integer> loadRecommendedItem(Integer recommendedItemId) {
         // validate input
@@ -141,8 +188,9 @@ public class RecommendedItemDAOMysqlImpl
 
     @Override
     public Iterator<RecommendedItemVO<Integer, Integer>> getRecommendedItemIterator(int bulkSize) {
-        return new ResultSetIteratorMysql<RecommendedItemVO<Integer, Integer>>(getDataSource(), bulkSize,
-                getRecommendedItemIteratorQueryString(), recommendedItemVORowMapper);
+        return new KeysetResultSetIteratorMysql<RecommendedItemVO<Integer, Integer>>(getDataSource(), bulkSize,
+                getRecommendedItemIteratorQueryString(), getRecommendedItemIteratorKeyColumn(), null,
+                recommendedItemVORowMapper);
     }
 
     @Override
@@ -157,8 +205,9 @@ public class RecommendedItemDAOMysqlImpl
         DaoUtils.ArgsAndTypesHolder holder = new DaoUtils.ArgsAndTypesHolder(args, argTypes);
         String s = getRecommendedItemIteratorQueryString(timeConstraints, holder);
 
-        return new ResultSetIteratorMysql<RecommendedItemVO<Integer, Integer>>(getDataSource(), bulkSize, s,
-                holder.getArgs(), holder.getArgTypes(), recommendedItemVORowMapper);
+        return new KeysetResultSetIteratorMysql<RecommendedItemVO<Integer, Integer>>(getDataSource(), bulkSize, s,
+                holder.getArgs(), holder.getArgTypes(), getRecommendedItemIteratorKeyColumn(), null,
+                recommendedItemVORowMapper);
     }
 
     @Override
@@ -226,7 +226,7 @@ public class ActionTypeDAOMysqlImpl extends AbstractTableCreatingDAOImpl impleme
     }
 
     @Override
-    @InvalidatesCache
+    @InvalidatesCache(regions = "SAT_TENANT_CACHE", key = "#p0")
     public int insertOrUpdate(Integer tenantId, String actionType, Boolean visible) {
         Integer newId = existsType(tenantId, actionType);
         if (newId == null) {
@@ -190,7 +190,7 @@ public class AssocTypeDAOMysqlImpl extends AbstractTableCreatingDAOImpl implemen
         return insertOrUpdate(tenantId, assocType, id, null);
     }
 
-    @InvalidatesCache
+    @InvalidatesCache(regions = "SAT_TENANT_CACHE", key = "#p0")
     public int insertOrUpdate(Integer tenantId, String assocType, Integer id, Boolean visible) {
         Preconditions.checkNotNull(tenantId, "missing constraints: missing 'tenantId'");
         Preconditions.checkNotNull(assocType, "missing constraints: missing 'assocType'");
@@ -256,7 +256,7 @@ public class AssocTypeDAOMysqlImpl extends AbstractTableCreatingDAOImpl implemen
         return insertOrUpdate(tenantId, assocType, (Boolean) null);
     }
 
-    @InvalidatesCache
+    @InvalidatesCache(regions = "SAT_TENANT_CACHE", key = "#p0")
     public int insertOrUpdate(Integer tenantId, String assocType, Boolean visible) {
         Integer newId = existsType(tenantId, assocType);
         if (newId == null) {
@@ -219,7 +219,7 @@ public class ItemTypeDAOMysqlImpl extends AbstractTableCreatingDAOImpl implement
         return insertOrUpdate(tenantId, itemType, (Boolean) null);
     }
 
-    @InvalidatesCache
+    @InvalidatesCache(regions = "SAT_TENANT_CACHE", key = "#p0")
     public int insertOrUpdate(Integer tenantId, String itemType, Boolean visible) {
         Integer newId = existsType(tenantId, itemType);
         if (newId == null) {
@@ -233,7 +233,7 @@ public class ItemTypeDAOMysqlImpl extends AbstractTableCreatingDAOImpl implement
         return insertOrUpdate(tenantId, itemType, id, null);
     }
 
-    @InvalidatesCache
+    @InvalidatesCache(regions = "SAT_TENANT_CACHE", key = "#p0")
     public int insertOrUpdate(Integer tenantId, String itemType, Integer id, Boolean visible) {
         Preconditions.checkNotNull(tenantId, "missing constraints: missing 'tenantId'");
         Preconditions.checkNotNull(itemType, "missing constraints: missing 'itemType'");
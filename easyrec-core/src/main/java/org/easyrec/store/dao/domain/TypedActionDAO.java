@@ -23,6 +23,8 @@ import org.easyrec.model.core.RankedItemVO;
 import org.easyrec.model.core.RatingVO;
 import org.easyrec.store.dao.BaseActionDAO;
 
+import java.util.List;
+
 /**
  * This interface provides methods to store data into and read <code>Action</code> entries from a SAT recommender database.
  * Typed version, uses java enums.
@@ -43,4 +45,9 @@ import org.easyrec.store.dao.BaseActionDAO;
 public interface TypedActionDAO extends
         BaseActionDAO<ActionVO<Integer, String>, RankedItemVO<Integer, String>, String, String, ItemVO<Integer, String>, RatingVO<Integer, String>, Integer, Integer> {
 
+    /**
+     * Inserts several actions with one multi-row INSERT, see
+     * {@link org.easyrec.store.dao.core.ActionDAO#insertActions(java.util.List, boolean)}.
+     */
+    public int insertActions(List<ActionVO<Integer, String>> typedActions, boolean useDateFromVO);
 }
@@ -24,9 +24,10 @@ import org.easyrec.model.core.RatingVO;
 import org.easyrec.model.core.transfer.TimeConstraintVO;
 import org.easyrec.service.domain.TypeMappingService;
 import org.easyrec.store.dao.core.ActionDAO;
+import org.easyrec.store.dao.core.impl.ActionWriteBehindQueue;
 import org.easyrec.store.dao.domain.TypedActionDAO;
 import org.easyrec.store.dao.impl.AbstractBaseActionDAOMysqlImpl;
-import org.easyrec.utils.spring.store.ResultSetIteratorMysql;
+import org.easyrec.utils.spring.store.KeysetResultSetIteratorMysql;
 import org.easyrec.utils.spring.store.dao.DaoUtils;
 import org.easyrec.utils.spring.store.dao.annotation.DAO;
 import org.easyrec.utils.spring.store.service.sqlscript.SqlScriptService;
@@ -36,6 +37,7 @@ import javax.sql.DataSource;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Types;
+import java.util.ArrayList;
 import java.util.Date;
 import java.util.Iterator;
 import java.util.List;
@@ -66,6 +68,7 @@ public class TypedActionDAOMysqlImpl extends
 
     private ActionDAO actionDAO;
     private TypeMappingService typeMappingService;
+    private ActionWriteBehindQueue actionWriteBehindQueue;
 
     // constructor
     public TypedActionDAOMysqlImpl(DataSource dataSource, ActionDAO actionDAO, TypeMappingService typeMappingService,
@@ -85,6 +88,14 @@ public class TypedActionDAOMysqlImpl extends
         }
     }
 
+    /**
+     * @param actionWriteBehindQueue if set, actions are inserted through the queue and the generated ids are not
+     *                               set on the inserted actions
+     */
+    public void setActionWriteBehindQueue(ActionWriteBehindQueue actionWriteBehindQueue) {
+        this.actionWriteBehindQueue = actionWriteBehindQueue;
+    }
+
     // abstract (generic) method implementation of 'AbstractBaseActionDAOMysqlImpl<TypedActionVO>'
     @Override
     public int insertAction(ActionVO<Integer, String> typedAction, boolean useDateFromVO) {
@@ -92,18 +103,38 @@ public class TypedActionDAOMysqlImpl extends
         if (tenantId == null) {
             throw new IllegalArgumentException("tenant not specified, can not retrieve type mapping without tenant");
         }
-        return actionDAO.insertAction(typeMappingService.convertTypedActionVO(tenantId, typedAction), useDateFromVO);
+        ActionVO<Integer, Integer> action = typeMappingService.convertTypedActionVO(tenantId, typedAction);
+
+        if (actionWriteBehindQueue != null) return actionWriteBehindQueue.insertAction(action, useDateFromVO);
+
+        return actionDAO.insertAction(action, useDateFromVO);
+    }
+
+    public int insertActions(List<ActionVO<Integer, String>> typedActions, boolean useDateFromVO) {
+        List<ActionVO<Integer, Integer>> actions = new ArrayList<ActionVO<Integer, Integer>>(typedActions.size());
+
+        for (ActionVO<Integer, String> typedAction : typedActions) {
+            Integer tenantId = typedAction.getTenant();
+            if (tenantId == null) {
+                throw new IllegalArgumentException("tenant not specified, can not retrieve type mapping without tenant");
+            }
+            actions.add(typeMappingService.convertTypedActionVO(tenantId, typedAction));
+        }
+
+        return actionDAO.insertActions(actions, useDateFromVO);
     }
 
     @Override
     public int removeActionsByTenant(Integer tenantId) {
+        if (actionWriteBehindQueue != null) actionWriteBehindQueue.removeTenant(tenantId);
+
         return actionDAO.removeActionsByTenant(tenantId);
     }
 
     @Override
     public Iterator<ActionVO<Integer, String>> getActionIterator(int bulkSize) {
-        return new ResultSetIteratorMysql<ActionVO<Integer, String>>(getDataSource(),
-                bulkSize, getActionIteratorQueryString(), actionVORowMapper);
+        return new KeysetResultSetIteratorMysql<ActionVO<Integer, String>>(getDataSource(), bulkSize,
+                getActionIteratorQueryString(), DEFAULT_ID_COLUMN_NAME, prefetcher, actionVORowMapper);
     }
 
     @Override
@@ -118,8 +149,8 @@ public class TypedActionDAOMysqlImpl extends
         DaoUtils.ArgsAndTypesHolder holder = new DaoUtils.ArgsAndTypesHolder(args, argTypes);
         String s = getActionIteratorQueryString(timeConstraints, holder);
 
-        return new ResultSetIteratorMysql<ActionVO<Integer, String>>(getDataSource(),
-                bulkSize, s, holder.getArgs(), holder.getArgTypes(), actionVORowMapper);
+        return new KeysetResultSetIteratorMysql<ActionVO<Integer, String>>(getDataSource(), bulkSize, s,
+                holder.getArgs(), holder.getArgTypes(), DEFAULT_ID_COLUMN_NAME, prefetcher, actionVORowMapper);
     }
 
     @Override
@@ -25,7 +25,7 @@ import org.easyrec.service.domain.TypeMappingService;
 import org.easyrec.store.dao.core.ItemAssocDAO;
 import org.easyrec.store.dao.domain.TypedItemAssocDAO;
 import org.easyrec.store.dao.impl.AbstractBaseItemAssocDAOMysqlImpl;
-import org.easyrec.utils.spring.store.ResultSetIteratorMysql;
+import org.easyrec.utils.spring.store.KeysetResultSetIteratorMysql;
 import org.easyrec.utils.spring.store.dao.DaoUtils;
 import org.easyrec.utils.spring.store.dao.annotation.DAO;
 import org.easyrec.utils.spring.store.service.sqlscript.SqlScriptService;
@@ -87,8 +87,8 @@ public class TypedItemAssocDAOMysqlImpl extends
     // abstract (generic) method implementation of 'AbstractBaseItemAssocDAOMysqlImpl<TypedItemAssocVO, TypedAssociatedItemVO, ItemType, AssocType, TypedItemVO, TypedIAConstraintVO>'
     @Override
     public Iterator<ItemAssocVO<Integer, String>> getItemAssocIterator(int bulkSize) {
-        return new ResultSetIteratorMysql<ItemAssocVO<Integer, String>>(
-                getDataSource(), bulkSize, getItemAssocIteratorQueryString(), itemAssocVORowMapper);
+        return new KeysetResultSetIteratorMysql<ItemAssocVO<Integer, String>>(getDataSource(), bulkSize,
+                getItemAssocIteratorQueryString(), DEFAULT_ID_COLUMN_NAME, prefetcher, itemAssocVORowMapper);
 
     }
 
@@ -25,7 +25,7 @@ import org.easyrec.store.dao.core.RecommendationDAO;
 import org.easyrec.store.dao.core.RecommendedItemDAO;
 import org.easyrec.store.dao.domain.TypedRecommendedItemDAO;
 import org.easyrec.store.dao.impl.AbstractBaseRecommendedItemDAOMysqlImpl;
-import org.easyrec.utils.spring.store.ResultSetIteratorMysql;
+import org.easyrec.utils.spring.store.KeysetResultSetIteratorMysql;
 import org.easyrec.utils.spring.store.dao.DaoUtils;
 import org.easyrec.utils.spring.store.dao.annotation.DAO;
 import org.easyrec.utils.spring.store.service.sqlscript.SqlScriptService;
@@ -113,8 +113,9 @@ public class TypedRecommendedItemDAOMysqlImpl
 
     @Override
     public Iterator<RecommendedItemVO<Integer, String>> getRecommendedItemIterator(int bulkSize) {
-        return new ResultSetIteratorMysql<RecommendedItemVO<Integer, String>>(getDataSource(), bulkSize,
-                getRecommendedItemIteratorQueryString(), recommendedItemVORowMapper);
+        return new KeysetResultSetIteratorMysql<RecommendedItemVO<Integer, String>>(getDataSource(), bulkSize,
+                getRecommendedItemIteratorQueryString(), getRecommendedItemIteratorKeyColumn(), null,
+                recommendedItemVORowMapper);
     }
 
     @Override
@@ -129,8 +130,9 @@ public class TypedRecommendedItemDAOMysqlImpl
         DaoUtils.ArgsAndTypesHolder holder = new DaoUtils.ArgsAndTypesHolder(args, argTypes);
         String s = getRecommendedItemIteratorQueryString(timeConstraints, holder);
 
-        return new ResultSetIteratorMysql<RecommendedItemVO<Integer, String>>(getDataSource(), bulkSize, s,
-                holder.getArgs(), holder.getArgTypes(), recommendedItemVORowMapper);
+        return new KeysetResultSetIteratorMysql<RecommendedItemVO<Integer, String>>(getDataSource(), bulkSize, s,
+                holder.getArgs(), holder.getArgTypes(), getRecommendedItemIteratorKeyColumn(), null,
+                recommendedItemVORowMapper);
     }
 
     @Override
@@ -35,6 +35,7 @@ import java.sql.Types;
 import java.util.Date;
 import java.util.Iterator;
 import java.util.List;
+import java.util.concurrent.Executor;
 
 
 /**
@@ -62,12 +63,22 @@ public abstract class AbstractBaseActionDAOMysqlImpl<A, RI, AT, IT, I, RAT, T, U
 
     // members
     protected ResultSetExtractor<Date> dateResultSetExtractor = new DateResultSetExtractor();
+    // optional, fetches the next bulk of the action iterators in the background
+    protected Executor prefetcher;
 
     // constructor
     protected AbstractBaseActionDAOMysqlImpl(SqlScriptService sqlScriptService) {
         super(sqlScriptService);
     }
 
+    /**
+     * Sets the executor the action iterators fetch their next bulk on while the current bulk is processed. Without it
+     * every bulk is fetched when it is needed.
+     */
+    public void setPrefetcher(Executor prefetcher) {
+        this.prefetcher = prefetcher;
+    }
+
     // abstract template method implementation of 'AbstractTableCreatingDAOImpl' 
     @Override
     public String getDefaultTableName() {
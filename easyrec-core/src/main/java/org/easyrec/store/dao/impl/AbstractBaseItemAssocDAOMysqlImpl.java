@@ -24,6 +24,7 @@ import org.easyrec.utils.spring.store.service.sqlscript.SqlScriptService;
 
 import java.util.Iterator;
 import java.util.List;
+import java.util.concurrent.Executor;
 
 /**
  * This class provides a Mysql implementation of the {@link org.easyrec.store.dao.BaseItemAssocDAO} interface.
@@ -48,11 +49,23 @@ public abstract class AbstractBaseItemAssocDAOMysqlImpl<IA, AI, IT, AT, I, C> ex
     // constants
     private final static String TABLE_CREATING_SQL_SCRIPT_NAME = "classpath:sql/core/ItemAssoc.sql";
 
+    // members
+    // optional, fetches the next bulk of the item assoc iterators in the background
+    protected Executor prefetcher;
+
     // constructor
     protected AbstractBaseItemAssocDAOMysqlImpl(SqlScriptService sqlScriptService) {
         super(sqlScriptService);
     }
 
+    /**
+     * Sets the executor the item assoc iterators fetch their next bulk on while the current bulk is processed. Without it
+     * every bulk is fetched when it is needed.
+     */
+    public void setPrefetcher(Executor prefetcher) {
+        this.prefetcher = prefetcher;
+    }
+
     // abstract template method implementation of 'TableCreatingDAOImpl'
     @Override
     public String getDefaultTableName() {
@@ -116,6 +116,13 @@ public abstract class AbstractBaseRecommendedItemDAOMysqlImpl<RI, T> extends Abs
         return sqlString.toString();
     }
 
+    /**
+     * @return the column the results of the iterator queries are paged by
+     */
+    protected String getRecommendedItemIteratorKeyColumn() {
+        return "recItem." + DEFAULT_ID_COLUMN_NAME;
+    }
+
     protected String getRecommendedItemIteratorQueryString(TimeConstraintVO timeConstraints,
                                                            ArgsAndTypesHolder holder) {
         String recAlias = "rec";
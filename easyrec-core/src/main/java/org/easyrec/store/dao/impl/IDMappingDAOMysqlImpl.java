@@ -18,16 +18,18 @@
  */
 package org.easyrec.store.dao.impl;
 
+import com.jamonapi.MonitorFactory;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
-import org.easyrec.utils.spring.cache.annotation.LongCacheable;
 import org.easyrec.utils.spring.store.dao.DaoUtils;
 import org.easyrec.store.dao.IDMappingDAO;
 import org.easyrec.utils.spring.store.dao.annotation.DAO;
 import org.easyrec.utils.spring.store.dao.impl.AbstractTableCreatingDAOImpl;
 import org.easyrec.utils.spring.store.service.sqlscript.SqlScriptService;
+import org.springframework.beans.factory.DisposableBean;
 import org.springframework.dao.DataIntegrityViolationException;
 import org.springframework.jdbc.core.PreparedStatementCreatorFactory;
+import org.springframework.jdbc.core.RowCallbackHandler;
 import org.springframework.jdbc.core.RowMapper;
 import org.springframework.jdbc.support.GeneratedKeyHolder;
 import org.springframework.jdbc.support.KeyHolder;
@@ -36,12 +38,33 @@ import javax.sql.DataSource;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Types;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 /**
  * This class provides a Mysql implementation of the {@link org.easyrec.store.dao.IDMappingDAO} interface.
  * It provides methods to map Integer IDs to String IDs;
  * <p/>
+ * All known mappings are kept in an {@link IDMappingIndex}, which is warmed up with the contents of the idmapping
+ * table on startup. Lookups of known IDs are answered from the index without touching the database or taking a
+ * lock. Unknown String IDs are queued and allocated in batches by a background thread, which reads the existing
+ * mappings with a single SELECT and inserts only the missing String IDs with a single multi-row INSERT IGNORE;
+ * concurrent lookups of the same unknown String share one allocation.
+ * A caller waits at most <code>allocationTimeout</code> milliseconds for the batch and then allocates its ID itself.
+ * After {@link #destroy()} no more allocations are accepted.
+ * <p/>
  * <p><b>Company:&nbsp;</b>
  * SAT, Research Studios Austria</p>
  * <p/>
@@ -57,12 +80,13 @@ import java.util.List;
  */
 
 @DAO
-public class IDMappingDAOMysqlImpl extends AbstractTableCreatingDAOImpl implements IDMappingDAO {
+public class IDMappingDAOMysqlImpl extends AbstractTableCreatingDAOImpl implements IDMappingDAO, DisposableBean {
     // constants
     private final static String TABLE_CREATING_SQL_SCRIPT_NAME = "classpath:/sql/IDMapping.sql";
     private final static String LOOKUP_BY_INT_QUERY;
     private final static String INSERT_BY_STRING_QUERY;
     private final static String LOOKUP_BY_STRING_QUERY;
+    private final static String WARM_UP_QUERY;
 
     private final static int[] ARG_TYPES_INSERT_BY_STRING;
     private final static int[] ARG_TYPES_LOOKUP_BY_STRING;
@@ -71,8 +95,13 @@ public class IDMappingDAOMysqlImpl extends AbstractTableCreatingDAOImpl implemen
     private static final PreparedStatementCreatorFactory PS_LOOKUP_BY_STRING;
     private static final PreparedStatementCreatorFactory PS_LOOKUP_BY_INT;
 
+    public final static int DEFAULT_ALLOCATION_BATCH_SIZE = 100;
+    public final static int DEFAULT_WARM_UP_SIZE = 1000000;
+    public final static long DEFAULT_ALLOCATION_TIMEOUT = 5000;
+    private final static int WARM_UP_BULK_SIZE = 10000;
 
-    private final Object dbLock = new Object();
+    private final static String JAMON_ALLOCATION_BATCH = "IDMappingDAO.allocationBatch";
+    private final static String JAMON_INDEX_SIZE = "IDMappingDAO.indexSize";
 
     // logging
     private final Log logger = LogFactory.getLog(this.getClass());
@@ -80,6 +109,16 @@ public class IDMappingDAOMysqlImpl extends AbstractTableCreatingDAOImpl implemen
     private IntRowMapper intRowMapper = new IntRowMapper();
     private StringRowMapper stringRowMapper = new StringRowMapper();
 
+    private IDMappingIndex index = new IDMappingIndex();
+    private final ConcurrentMap<String, Allocation> pendingAllocations = new ConcurrentHashMap<String, Allocation>();
+    private final BlockingQueue<Allocation> allocationQueue = new LinkedBlockingQueue<Allocation>();
+    private final AtomicBoolean allocatorStarted = new AtomicBoolean(false);
+    private volatile Allocator allocator;
+    private volatile boolean shutdown = false;
+
+    private int allocationBatchSize = DEFAULT_ALLOCATION_BATCH_SIZE;
+    private int warmUpSize = DEFAULT_WARM_UP_SIZE;
+    private long allocationTimeout = DEFAULT_ALLOCATION_TIMEOUT;
 
     static {
 
@@ -94,6 +133,11 @@ public class IDMappingDAOMysqlImpl extends AbstractTableCreatingDAOImpl implemen
                 .append(" FROM ").append(DEFAULT_TABLE_NAME).append(" WHERE ").append(DEFAULT_STRING_ID_COLUMN_NAME)
                 .append("=?").toString();
 
+        WARM_UP_QUERY = new StringBuilder().append("SELECT ").append(DEFAULT_INT_ID_COLUMN_NAME).append(", ")
+                .append(DEFAULT_STRING_ID_COLUMN_NAME).append(" FROM ").append(DEFAULT_TABLE_NAME).append(" WHERE ")
+                .append(DEFAULT_INT_ID_COLUMN_NAME).append(">? ORDER BY ").append(DEFAULT_INT_ID_COLUMN_NAME)
+                .append(" LIMIT ?").toString();
+
         ARG_TYPES_INSERT_BY_STRING = new int[]{Types.VARCHAR};
         ARG_TYPES_LOOKUP_BY_STRING = new int[]{Types.VARCHAR};
         ARG_TYPES_LOOKUP_BY_INT = new int[]{Types.INTEGER};
@@ -131,53 +175,437 @@ public class IDMappingDAOMysqlImpl extends AbstractTableCreatingDAOImpl implemen
         return TABLE_CREATING_SQL_SCRIPT_NAME;
     }
 
-    @LongCacheable
+    @Override
+    protected void initDao() throws Exception {
+        if (warmUpSize <= 0) return;
+
+        try {
+            warmUp();
+        } catch (Exception e) {
+            logger.warn("could not warm up id mapping index, mappings are loaded on demand", e);
+        }
+    }
+
+    public void destroy() throws Exception {
+        shutdown = true;
+
+        Allocator stopped = allocator;
+        allocator = null;
+
+        if (stopped != null) stopped.interrupt();
+    }
+
     public Integer lookup(String id) {
-        List<Integer> retList;
         if (id == null) {
             return null;
         }
         if (id.length() == 0) {
             throw new IllegalArgumentException("id must not be an empty String!");
         }
+
+        Integer intId = index.get(id);
+        if (intId != null) {
+            return intId;
+        }
+
         if (logger.isDebugEnabled()) {
             logger.debug("looking up mapping for String: " + id);
         }
 
+        if (shutdown) throw new IllegalStateException("id mapping allocator was shut down");
+
+        Allocation allocation = new Allocation(id);
+        Allocation pending = pendingAllocations.putIfAbsent(id, allocation);
+
+        if (pending == null) {
+            startAllocator();
+            allocationQueue.add(allocation);
+
+            // the allocator may have stopped before the allocation was queued
+            if (shutdown && allocationQueue.remove(allocation))
+                allocation.complete(null, new IllegalStateException("id mapping allocator was shut down"));
+        } else {
+            allocation = pending;
+        }
+
+        return allocation.await();
+    }
+
+    public Integer lookupExisting(String id) {
+        if (id == null || id.length() == 0) {
+            return null;
+        }
+
+        Integer intId = index.get(id);
+        if (intId != null) {
+            return intId;
+        }
+
         Object[] args = new Object[]{id};
-        KeyHolder keyHolder = new GeneratedKeyHolder();
-        synchronized (dbLock) {
-            try {
+        List<Integer> retList = getJdbcTemplate()
+                .query(PS_LOOKUP_BY_STRING.newPreparedStatementCreator(args), intRowMapper);
 
-                int rowsAffected = getJdbcTemplate()
-                        .update(PS_INSERT_BY_STRING.newPreparedStatementCreator(args), keyHolder);
-                assert rowsAffected == 1;
-                return keyHolder.getKey().intValue();
-            } catch (DataIntegrityViolationException e) {
-                retList = getJdbcTemplate().query(PS_LOOKUP_BY_STRING.newPreparedStatementCreator(args), intRowMapper);
-            }
+        if (retList.isEmpty()) {
+            return null;
         }
-        return (!retList.isEmpty()) ? retList.get(0) : null;
+
+        intId = retList.get(0);
+        index.putAlias(id, intId);
+
+        return intId;
     }
 
-    @LongCacheable
     public String lookup(Integer id) {
         List<String> retList;
         if (id == null) {
             return null;
         }
+
+        String stringId = index.get(id);
+        if (stringId != null) {
+            return stringId;
+        }
+
         if (logger.isDebugEnabled()) {
             logger.debug("looking up mapping for Integer: " + id);
         }
         Object[] args = new Object[]{id};
-        synchronized (dbLock) {
-            //PS_LOOKUP_BY_INT
-            retList = getJdbcTemplate().query(PS_LOOKUP_BY_INT.newPreparedStatementCreator(args), stringRowMapper);
+        retList = getJdbcTemplate().query(PS_LOOKUP_BY_INT.newPreparedStatementCreator(args), stringRowMapper);
+
+        if (retList.isEmpty()) {
+            return null;
+        }
+
+        stringId = retList.get(0);
+        index.put(stringId, id);
+
+        return stringId;
+    }
+
+    public Map<Integer, String> lookupStringIds(Collection<Integer> ids) {
+        Map<Integer, String> result = new HashMap<Integer, String>((int) (ids.size() / 0.75f) + 1);
+        List<Integer> unknownIds = new ArrayList<Integer>();
+
+        for (Integer id : ids) {
+            if (id == null) continue;
+
+            String stringId = index.get(id);
+
+            if (stringId != null) result.put(id, stringId);
+            else unknownIds.add(id);
+        }
+
+        if (unknownIds.isEmpty()) return result;
+
+        StringBuilder query = new StringBuilder("SELECT ").append(DEFAULT_INT_ID_COLUMN_NAME).append(", ")
+                .append(DEFAULT_STRING_ID_COLUMN_NAME).append(" FROM ").append(DEFAULT_TABLE_NAME).append(" WHERE ")
+                .append(DEFAULT_INT_ID_COLUMN_NAME).append(" IN (");
+        for (int i = 0; i < unknownIds.size(); i++)
+            query.append(i > 0 ? ",?" : "?");
+        query.append(")");
+
+        if (logger.isDebugEnabled()) {
+            logger.debug("looking up mappings for " + unknownIds.size() + " Integers");
+        }
+
+        final Map<Integer, String> loaded = result;
+        getJdbcTemplate().query(query.toString(), unknownIds.toArray(), new RowCallbackHandler() {
+            public void processRow(ResultSet rs) throws SQLException {
+                int intId = rs.getInt(DEFAULT_INT_ID_COLUMN_NAME);
+                String stringId = rs.getString(DEFAULT_STRING_ID_COLUMN_NAME);
+
+                index.put(stringId, intId);
+                loaded.put(intId, stringId);
+            }
+        });
+
+        return result;
+    }
+
+    /**
+     * Loads up to {@code warmUpSize} mappings into the in-memory index in bulks ordered by the Integer ID.
+     */
+    public void warmUp() {
+        if (!existsTable()) return;
+
+        final int[] lastIntId = new int[]{0};
+        final int[] bulkCount = new int[1];
+        int loaded = 0;
+
+        do {
+            int bulkSize = Math.min(WARM_UP_BULK_SIZE, warmUpSize - loaded);
+            bulkCount[0] = 0;
+
+            getJdbcTemplate().query(WARM_UP_QUERY, new Object[]{lastIntId[0], bulkSize},
+                    new int[]{Types.INTEGER, Types.INTEGER}, new RowCallbackHandler() {
+                        public void processRow(ResultSet rs) throws SQLException {
+                            int intId = rs.getInt(DEFAULT_INT_ID_COLUMN_NAME);
+
+                            index.put(rs.getString(DEFAULT_STRING_ID_COLUMN_NAME), intId);
+                            lastIntId[0] = intId;
+                            bulkCount[0]++;
+                        }
+                    });
+
+            loaded += bulkCount[0];
+        } while (bulkCount[0] == WARM_UP_BULK_SIZE && loaded < warmUpSize);
+
+        MonitorFactory.add(JAMON_INDEX_SIZE, "mappings", index.size());
+
+        if (logger.isInfoEnabled()) {
+            logger.info("warmed up id mapping index with " + loaded + " mappings");
+        }
+    }
+
+    /**
+     * Allocates Integer IDs for a batch of unknown String IDs. The existing mappings are read with one SELECT first,
+     * since the String IDs missing from a full index usually exist already, and only the String IDs without a
+     * mapping are inserted with one multi-row INSERT IGNORE and read with a second SELECT. This way known String IDs
+     * do not use up auto increment values. String IDs the database considers equal to an existing one (e.g.
+     * differing only in case) are not returned verbatim by the SELECT and are resolved individually.
+     *
+     * @param stringIds the String IDs to allocate Integer IDs for
+     * @return the allocated Integer ID for each String ID
+     */
+    protected Map<String, Integer> allocate(List<String> stringIds) {
+        Map<String, Integer> result = selectMappings(stringIds);
+        // existing String IDs returned in another case must not be inserted again
+        Set<String> existing = new TreeSet<String>(String.CASE_INSENSITIVE_ORDER);
+        List<String> missing = new ArrayList<String>();
+
+        existing.addAll(result.keySet());
+
+        for (String stringId : stringIds) {
+            if (!existing.contains(stringId)) missing.add(stringId);
+        }
+
+        if (!missing.isEmpty()) {
+            insertMappings(missing);
+            result.putAll(selectMappings(missing));
+        }
+
+        for (Map.Entry<String, Integer> mapping : result.entrySet())
+            index.put(mapping.getKey(), mapping.getValue());
+
+        for (String stringId : stringIds) {
+            if (result.containsKey(stringId)) continue;
+
+            Integer intId = allocateSingle(stringId);
+
+            if (intId != null) {
+                result.put(stringId, intId);
+                index.putAlias(stringId, intId);
+            }
+        }
+
+        return result;
+    }
+
+    /**
+     * Reads the mappings of the given String IDs with one SELECT.
+     *
+     * @return the Integer ID of each String ID found, keyed by the String ID as stored in the database
+     */
+    protected Map<String, Integer> selectMappings(List<String> stringIds) {
+        StringBuilder select = new StringBuilder("SELECT ").append(DEFAULT_INT_ID_COLUMN_NAME).append(", ")
+                .append(DEFAULT_STRING_ID_COLUMN_NAME).append(" FROM ").append(DEFAULT_TABLE_NAME).append(" WHERE ")
+                .append(DEFAULT_STRING_ID_COLUMN_NAME).append(" IN (");
+
+        for (int i = 0; i < stringIds.size(); i++)
+            select.append(i > 0 ? ",?" : "?");
+        select.append(")");
+
+        final Map<String, Integer> result = new HashMap<String, Integer>((int) (stringIds.size() / 0.75f) + 1);
+
+        getJdbcTemplate().query(select.toString(), stringIds.toArray(), new RowCallbackHandler() {
+            public void processRow(ResultSet rs) throws SQLException {
+                result.put(rs.getString(DEFAULT_STRING_ID_COLUMN_NAME), rs.getInt(DEFAULT_INT_ID_COLUMN_NAME));
+            }
+        });
+
+        return result;
+    }
+
+    /**
+     * Inserts the given String IDs with one multi-row INSERT IGNORE, String IDs inserted concurrently are skipped.
+     */
+    protected void insertMappings(List<String> stringIds) {
+        StringBuilder insert = new StringBuilder("INSERT IGNORE INTO ").append(DEFAULT_TABLE_NAME).append(" (")
+                .append(DEFAULT_STRING_ID_COLUMN_NAME).append(") VALUES ");
+
+        for (int i = 0; i < stringIds.size(); i++)
+            insert.append(i > 0 ? ",(?)" : "(?)");
+
+        getJdbcTemplate().update(insert.toString(), stringIds.toArray());
+    }
+
+    /**
+     * Allocates the Integer ID for a single String ID, used when the caller cannot wait for the batch.
+     */
+    protected Integer allocateSingle(String stringId) {
+        Object[] args = new Object[]{stringId};
+        List<Integer> retList = getJdbcTemplate()
+                .query(PS_LOOKUP_BY_STRING.newPreparedStatementCreator(args), intRowMapper);
+
+        if (!retList.isEmpty()) {
+            return retList.get(0);
+        }
+
+        KeyHolder keyHolder = new GeneratedKeyHolder();
+        try {
+            int rowsAffected = getJdbcTemplate()
+                    .update(PS_INSERT_BY_STRING.newPreparedStatementCreator(args), keyHolder);
+            assert rowsAffected == 1;
+            return keyHolder.getKey().intValue();
+        } catch (DataIntegrityViolationException e) {
+            retList = getJdbcTemplate().query(PS_LOOKUP_BY_STRING.newPreparedStatementCreator(args), intRowMapper);
         }
 
         return (!retList.isEmpty()) ? retList.get(0) : null;
     }
 
+    private void startAllocator() {
+        if (shutdown || allocatorStarted.get() || !allocatorStarted.compareAndSet(false, true)) return;
+
+        allocator = new Allocator();
+        allocator.start();
+    }
+
+    // getter/setter
+    public int getAllocationBatchSize() {
+        return allocationBatchSize;
+    }
+
+    public void setAllocationBatchSize(int allocationBatchSize) {
+        this.allocationBatchSize = allocationBatchSize;
+    }
+
+    public int getWarmUpSize() {
+        return warmUpSize;
+    }
+
+    /**
+     * @param warmUpSize maximum number of mappings loaded on startup, 0 disables the warm up.
+     */
+    public void setWarmUpSize(int warmUpSize) {
+        this.warmUpSize = warmUpSize;
+    }
+
+    public long getAllocationTimeout() {
+        return allocationTimeout;
+    }
+
+    /**
+     * @param allocationTimeout milliseconds a lookup waits for the batch allocation of an unknown String ID before
+     *                          it allocates the ID itself.
+     */
+    public void setAllocationTimeout(long allocationTimeout) {
+        this.allocationTimeout = allocationTimeout;
+    }
+
+    public int getMaxIndexSize() {
+        return index.getMaxSize();
+    }
+
+    /**
+     * @param maxIndexSize maximum number of String IDs kept in memory, further mappings are looked up in the
+     *                     database.
+     */
+    public void setMaxIndexSize(int maxIndexSize) {
+        index = new IDMappingIndex(IDMappingIndex.DEFAULT_SHARDS, maxIndexSize);
+    }
+
+    /******************************************************************************************/
+    /************************************** Allocation ****************************************/
+    /**
+     * **************************************************************************************
+     */
+
+    private class Allocation {
+        private final String stringId;
+        private final CountDownLatch done = new CountDownLatch(1);
+        private volatile Integer intId;
+        private volatile RuntimeException error;
+
+        Allocation(String stringId) {
+            this.stringId = stringId;
+        }
+
+        void complete(Integer intId, RuntimeException error) {
+            this.intId = intId;
+            this.error = error;
+            pendingAllocations.remove(stringId, this);
+            done.countDown();
+        }
+
+        Integer await() {
+            try {
+                if (!done.await(allocationTimeout, TimeUnit.MILLISECONDS)) {
+                    logger.warn("allocation of id " + stringId + " timed out, allocating it directly");
+
+                    return allocateSingle(stringId);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return allocateSingle(stringId);
+            }
+
+            if (error != null) throw error;
+
+            return intId;
+        }
+    }
+
+    private class Allocator extends Thread {
+
+        Allocator() {
+            super("IDMappingAllocator");
+            setDaemon(true);
+        }
+
+        @Override
+        public void run() {
+            List<Allocation> batch = new ArrayList<Allocation>(allocationBatchSize);
+            List<String> stringIds = new ArrayList<String>(allocationBatchSize);
+
+            while (!isInterrupted() && allocator == this) {
+                try {
+                    batch.add(allocationQueue.take());
+                } catch (InterruptedException e) {
+                    break;
+                }
+                allocationQueue.drainTo(batch, allocationBatchSize - 1);
+
+                for (Allocation allocation : batch)
+                    stringIds.add(allocation.stringId);
+
+                try {
+                    Map<String, Integer> allocated = allocate(stringIds);
+
+                    for (Allocation allocation : batch)
+                        allocation.complete(allocated.get(allocation.stringId), null);
+
+                    MonitorFactory.add(JAMON_ALLOCATION_BATCH, "ids", batch.size());
+                } catch (RuntimeException e) {
+                    logger.error("allocation of " + batch.size() + " ids failed", e);
+
+                    for (Allocation allocation : batch)
+                        allocation.complete(null, e);
+                }
+
+                batch.clear();
+                stringIds.clear();
+            }
+
+            // hand over remaining allocations to their callers
+            List<Allocation> remaining = new ArrayList<Allocation>();
+            allocationQueue.drainTo(remaining);
+            for (Allocation allocation : remaining)
+                allocation.complete(null, new IllegalStateException("id mapping allocator was shut down"));
+
+            allocatorStarted.set(false);
+        }
+    }
 
     /******************************************************************************************/
     /************************************** Rowmappers ****************************************/
@@ -0,0 +1,155 @@
+/*
+ * Copyright 2010 Research Studios Austria Forschungsgesellschaft mBH
+ *
+ * This file is part of easyrec.
+ *
+ * easyrec is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * easyrec is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with easyrec.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.easyrec.store.dao.impl;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * In-memory, bidirectional String <-> Integer index used by {@link IDMappingDAOMysqlImpl}.
+ * <p/>
+ * The String -> Integer direction is held in a {@link ConcurrentHashMap} striped into a configurable number of
+ * segments. The Integer -> String direction exploits the fact that the integer ids are generated by an
+ * AUTO_INCREMENT column and are therefore dense: they are stored in lazily allocated pages of an
+ * {@link AtomicReferenceArray} addressed directly by the primitive int id. Both directions share the same
+ * String instance, so every mapping keeps its string only once.
+ * <p/>
+ * Neither reads nor writes take a monitor; mappings are immutable once published, so concurrent writers of the
+ * same mapping are harmless.
+ * <p/>
+ * The index holds at most <code>maxSize</code> String IDs. Once it is full further mappings are not indexed and
+ * have to be looked up in the database by the caller.
+ */
+public class IDMappingIndex {
+    // constants
+    private final static int PAGE_BITS = 16;
+    private final static int PAGE_SIZE = 1 << PAGE_BITS;
+    private final static int PAGE_MASK = PAGE_SIZE - 1;
+    private final static int PAGE_COUNT = (Integer.MAX_VALUE >>> PAGE_BITS) + 1;
+
+    public final static int DEFAULT_SHARDS = 64;
+    public final static int DEFAULT_MAX_SIZE = 2000000;
+
+    private final ConcurrentHashMap<String, Integer> stringToInt;
+    private final AtomicReferenceArray<AtomicReferenceArray<String>> intToString;
+    private final AtomicInteger size = new AtomicInteger();
+    private final int maxSize;
+
+    public IDMappingIndex() {
+        this(DEFAULT_SHARDS, DEFAULT_MAX_SIZE);
+    }
+
+    public IDMappingIndex(int shards, int maxSize) {
+        this.maxSize = maxSize;
+        stringToInt = new ConcurrentHashMap<String, Integer>(1024, 0.75f, shards);
+        intToString = new AtomicReferenceArray<AtomicReferenceArray<String>>(PAGE_COUNT);
+    }
+
+    /**
+     * Returns the Integer ID indexed for the given String ID.
+     *
+     * @param stringId the String to look up
+     * @return the mapped Integer or null if the mapping is not (yet) indexed
+     */
+    public Integer get(String stringId) {
+        return stringToInt.get(stringId);
+    }
+
+    /**
+     * Returns the String ID indexed for the given Integer ID.
+     *
+     * @param intId the Integer to look up
+     * @return the mapped String or null if the mapping is not (yet) indexed
+     */
+    public String get(int intId) {
+        if (intId < 0) return null;
+
+        AtomicReferenceArray<String> page = intToString.get(intId >>> PAGE_BITS);
+
+        return page != null ? page.get(intId & PAGE_MASK) : null;
+    }
+
+    /**
+     * Adds a mapping in both directions, unless the index is full.
+     *
+     * @param stringId the String ID as stored in the database
+     * @param intId    the Integer ID as stored in the database
+     */
+    public void put(String stringId, int intId) {
+        if (stringId == null || intId < 0) return;
+
+        if (add(stringId, intId)) putReverse(intId, stringId);
+    }
+
+    /**
+     * Adds an alias for an existing mapping in the String -> Integer direction only. This is needed since the
+     * database compares strings case insensitive, i.e. several String IDs may resolve to the same Integer while
+     * the reverse direction always returns the String as stored.
+     *
+     * @param alias the String ID as requested by the caller
+     * @param intId the Integer ID the alias resolves to
+     */
+    public void putAlias(String alias, int intId) {
+        if (alias == null || intId < 0) return;
+
+        add(alias, intId);
+    }
+
+    public int size() {
+        return size.get();
+    }
+
+    public int getMaxSize() {
+        return maxSize;
+    }
+
+    public void clear() {
+        stringToInt.clear();
+        for (int i = 0; i < intToString.length(); i++)
+            intToString.set(i, null);
+        size.set(0);
+    }
+
+    // adds the String -> Integer direction if the String is indexed already or the index is not full
+    private boolean add(String stringId, int intId) {
+        if (stringToInt.containsKey(stringId)) return true;
+
+        if (size.incrementAndGet() > maxSize) {
+            size.decrementAndGet();
+            return false;
+        }
+
+        if (stringToInt.putIfAbsent(stringId, intId) != null) size.decrementAndGet();
+
+        return true;
+    }
+
+    private void putReverse(int intId, String stringId) {
+        int pageIndex = intId >>> PAGE_BITS;
+        AtomicReferenceArray<String> page = intToString.get(pageIndex);
+
+        if (page == null) {
+            intToString.compareAndSet(pageIndex, null, new AtomicReferenceArray<String>(PAGE_SIZE));
+            page = intToString.get(pageIndex);
+        }
+
+        page.compareAndSet(intId & PAGE_MASK, null, stringId);
+    }
+}
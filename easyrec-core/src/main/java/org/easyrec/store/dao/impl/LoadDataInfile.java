@@ -0,0 +1,105 @@
+/*
+ * Copyright 2010 Research Studios Austria Forschungsgesellschaft mBH
+ *
+ * This file is part of easyrec.
+ *
+ * easyrec is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * easyrec is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with easyrec.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.easyrec.store.dao.impl;
+
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.sql.Types;
+import java.text.SimpleDateFormat;
+import java.util.Collection;
+import java.util.Date;
+
+/**
+ * Stores rows in bulk with <code>LOAD DATA LOCAL INFILE ... REPLACE</code>: the rows are written to a temporary
+ * tab separated file that MySQL reads in one statement. Existing rows with the same unique key are replaced.
+ *
+ * @param <T> the type of the stored rows
+ */
+public class LoadDataInfile<T> {
+    private final String sql;
+    private final String tempFilePrefix;
+    private final RowWriter<T> rowWriter;
+
+    /**
+     * @param columns the columns in the order they are written by the row writer
+     */
+    public LoadDataInfile(String tableName, RowWriter<T> rowWriter, String... columns) {
+        StringBuilder sql = new StringBuilder("LOAD DATA LOCAL INFILE ? REPLACE INTO TABLE ");
+        sql.append(tableName).append(" (");
+
+        for (int i = 0; i < columns.length; i++)
+            sql.append(i > 0 ? ", " : "").append(columns[i]);
+
+        this.sql = sql.append(")").toString();
+        this.tempFilePrefix = "insert_" + tableName;
+        this.rowWriter = rowWriter;
+    }
+
+    /**
+     * @return the number of rows given
+     */
+    public int load(JdbcTemplate jdbcTemplate, Collection<? extends T> rows) {
+        if (rows.isEmpty()) return 0;
+
+        File tempFile = null;
+
+        try {
+            tempFile = File.createTempFile(tempFilePrefix, ".tmp");
+            Writer writer = new BufferedWriter(new FileWriter(tempFile));
+
+            try {
+                for (T row : rows)
+                    rowWriter.write(writer, row);
+            } finally {
+                writer.close();
+            }
+
+            jdbcTemplate.update(sql, new Object[]{tempFile.getAbsolutePath()}, new int[]{Types.VARCHAR});
+
+            return rows.size();
+        } catch (IOException e) {
+            throw new RuntimeException("could not write the rows to load to a temporary file", e);
+        } finally {
+            if (tempFile != null) tempFile.delete();
+        }
+    }
+
+    public String getSql() {
+        return sql;
+    }
+
+    /**
+     * @return the date in the format of a DATETIME column
+     */
+    public static String formatDate(Date date) {
+        return new SimpleDateFormat("yyyy-MM-dd HH:mm:ss").format(date);
+    }
+
+    /**
+     * Writes the values of a row separated by tabs and terminated by a newline.
+     */
+    public interface RowWriter<T> {
+        void write(Writer writer, T row) throws IOException;
+    }
+}
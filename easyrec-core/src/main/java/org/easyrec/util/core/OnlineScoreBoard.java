@@ -0,0 +1,164 @@
+/*
+ * Copyright 2010 Research Studios Austria Forschungsgesellschaft mBH
+ *
+ * This file is part of easyrec.
+ *
+ * easyrec is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * easyrec is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with easyrec.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.easyrec.util.core;
+
+import org.easyrec.model.core.ItemVO;
+import org.easyrec.model.core.RecommendedItemVO;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+
+/**
+ * Accumulates the candidate scores of a single online recommendation request.
+ * <p/>
+ * The work per request is bounded twice: no more than <code>maxCandidates</code> distinct items are tracked (scores
+ * for further items are dropped) and scorers are expected to stop as soon as {@link #isExpired()} returns true.
+ * The best items are selected with a bounded min-heap, so the candidates are never sorted as a whole.
+ * <p/>
+ * A score board is used by one request only and is not thread-safe.
+ */
+public class OnlineScoreBoard {
+    private final Map<ItemVO<Integer, Integer>, Candidate> candidates;
+    private final int maxCandidates;
+    private final long deadline;
+    private int droppedScores = 0;
+
+    /**
+     * @param maxCandidates the maximum number of distinct items to track
+     * @param timeBudget    the time in milliseconds scorers may spend on the request, less than 1 for no limit
+     */
+    public OnlineScoreBoard(int maxCandidates, long timeBudget) {
+        this.maxCandidates = maxCandidates;
+        this.candidates = new HashMap<ItemVO<Integer, Integer>, Candidate>(Math.min(maxCandidates, 256));
+        this.deadline = timeBudget > 0 ? System.currentTimeMillis() + timeBudget : Long.MAX_VALUE;
+    }
+
+    /**
+     * Adds a score to the given item.
+     *
+     * @param item        the candidate item
+     * @param score       the score to add
+     * @param itemAssocId the association the score is based on, kept for the strongest contribution only
+     * @param explanation explains the score, kept for the strongest contribution only
+     * @return false if the item was dropped because the maximum number of candidates is reached
+     */
+    public boolean add(ItemVO<Integer, Integer> item, double score, Integer itemAssocId, String explanation) {
+        Candidate candidate = candidates.get(item);
+
+        if (candidate == null) {
+            if (candidates.size() >= maxCandidates) {
+                droppedScores++;
+                return false;
+            }
+
+            candidate = new Candidate(item);
+            candidates.put(item, candidate);
+        }
+
+        candidate.score += score;
+
+        if (score > candidate.bestContribution) {
+            candidate.bestContribution = score;
+            candidate.itemAssocId = itemAssocId;
+            candidate.explanation = explanation;
+        }
+
+        return true;
+    }
+
+    public boolean isExpired() {
+        return System.currentTimeMillis() > deadline;
+    }
+
+    public boolean isFull() {
+        return candidates.size() >= maxCandidates;
+    }
+
+    public int size() {
+        return candidates.size();
+    }
+
+    public int getDroppedScores() {
+        return droppedScores;
+    }
+
+    /**
+     * Returns the <code>k</code> best scored items in descending order of their score.
+     *
+     * @param k        the number of items to return
+     * @param excluded items that must not be returned (e.g. the items acted on), may be null
+     */
+    public List<RecommendedItemVO<Integer, Integer>> getTopItems(int k, Collection<ItemVO<Integer, Integer>> excluded) {
+        if (k < 1) return new ArrayList<RecommendedItemVO<Integer, Integer>>(0);
+
+        PriorityQueue<Candidate> heap = new PriorityQueue<Candidate>(k + 1, ASCENDING_SCORE);
+
+        for (Candidate candidate : candidates.values()) {
+            if (excluded != null && excluded.contains(candidate.item)) continue;
+
+            if (heap.size() < k) heap.add(candidate);
+            else if (ASCENDING_SCORE.compare(candidate, heap.peek()) > 0) {
+                heap.poll();
+                heap.add(candidate);
+            }
+        }
+
+        List<RecommendedItemVO<Integer, Integer>> result = new ArrayList<RecommendedItemVO<Integer, Integer>>(
+                heap.size());
+
+        while (!heap.isEmpty()) {
+            Candidate candidate = heap.poll();
+            result.add(new RecommendedItemVO<Integer, Integer>(candidate.item, candidate.score,
+                    candidate.itemAssocId, candidate.explanation));
+        }
+
+        Collections.reverse(result);
+
+        return result;
+    }
+
+    // ties are broken by item id so the selection does not depend on the hash order
+    private static final Comparator<Candidate> ASCENDING_SCORE = new Comparator<Candidate>() {
+        public int compare(Candidate c1, Candidate c2) {
+            int result = Double.compare(c1.score, c2.score);
+
+            if (result != 0) return result;
+
+            return c2.item.getItem().compareTo(c1.item.getItem());
+        }
+    };
+
+    private static class Candidate {
+        private final ItemVO<Integer, Integer> item;
+        private double score = 0.0;
+        private double bestContribution = Double.NEGATIVE_INFINITY;
+        private Integer itemAssocId;
+        private String explanation;
+
+        private Candidate(ItemVO<Integer, Integer> item) {
+            this.item = item;
+        }
+    }
+}
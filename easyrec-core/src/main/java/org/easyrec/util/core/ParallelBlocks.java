@@ -0,0 +1,139 @@
+/*
+ * Copyright 2010 Research Studios Austria Forschungsgesellschaft mBH
+ *
+ * This file is part of easyrec.
+ *
+ * easyrec is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * easyrec is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with easyrec.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.easyrec.util.core;
+
+import java.util.LinkedList;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Calculates the indexes <code>0</code> to <code>count - 1</code> in consecutive blocks on several threads and hands
+ * the results to a consumer in the order of the blocks. Only a few blocks are calculated ahead of the block being
+ * consumed, so the memory needed for the results is bounded by the block size.
+ */
+public class ParallelBlocks {
+    private static final AtomicInteger threadNumber = new AtomicInteger(1);
+
+    private ParallelBlocks() {
+    }
+
+    /**
+     * @param threads the number of threads, 0 uses one thread per processor
+     */
+    public static int getThreadCount(int threads) {
+        return threads > 0 ? threads : Runtime.getRuntime().availableProcessors();
+    }
+
+    /**
+     * @return the block size that gives every thread several blocks to even out blocks that take longer
+     */
+    public static int getBalancedBlockSize(int count, int threadCount) {
+        return (int) Math.max(1, (count + 4L * threadCount - 1) / (4L * threadCount));
+    }
+
+    /**
+     * Runs the calculation of all blocks, the threads are stopped when this method returns.
+     *
+     * @param name the name of the threads and of the calculation in error messages
+     * @throws RuntimeException the exception of a calculation or consumer that failed
+     */
+    public static <T> void run(String name, int count, int blockSize, int threadCount,
+                               final Calculation<T> calculation, Consumer<T> consumer) {
+        if (blockSize < 1) throw new IllegalArgumentException("'blockSize' must be positive");
+
+        ExecutorService executor = Executors.newFixedThreadPool(threadCount, new NamedThreadFactory(name));
+
+        try {
+            // the blocks being calculated and the block being consumed
+            LinkedList<Future<T>> blocks = new LinkedList<Future<T>>();
+            int next = 0;
+            int current = 0;
+
+            while (next < count || !blocks.isEmpty()) {
+                while (next < count && blocks.size() <= threadCount) {
+                    final int start = next;
+                    final int end = (int) Math.min(count, (long) start + blockSize);
+
+                    blocks.add(executor.submit(new Callable<T>() {
+                        public T call() {
+                            return calculation.calculate(start, end);
+                        }
+                    }));
+
+                    next = end;
+                }
+
+                int end = (int) Math.min(count, (long) current + blockSize);
+
+                consumer.consume(current, end, await(name, blocks.removeFirst()));
+                current = end;
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private static <T> T await(String name, Future<T> future) {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("interrupted during " + name, e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) throw (RuntimeException) e.getCause();
+            if (e.getCause() instanceof Error) throw (Error) e.getCause();
+
+            throw new IllegalStateException(name + " failed", e.getCause());
+        }
+    }
+
+    /**
+     * Calculates one block, it is called from several threads at once.
+     */
+    public interface Calculation<T> {
+        T calculate(int start, int end);
+    }
+
+    /**
+     * Receives the result of the blocks in their order, it is called from the thread that runs the blocks.
+     */
+    public interface Consumer<T> {
+        void consume(int start, int end, T result);
+    }
+
+    private static class NamedThreadFactory implements ThreadFactory {
+        private final String name;
+
+        private NamedThreadFactory(String name) {
+            this.name = name;
+        }
+
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, name + "-" + threadNumber.getAndIncrement());
+            thread.setDaemon(true);
+
+            return thread;
+        }
+    }
+}
@@ -0,0 +1,88 @@
+/*
+ * Copyright 2010 Research Studios Austria Forschungsgesellschaft mBH
+ *
+ * This file is part of easyrec.
+ *
+ * easyrec is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * easyrec is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with easyrec.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.easyrec.util.core;
+
+import gnu.trove.list.array.TDoubleArrayList;
+import gnu.trove.list.array.TIntArrayList;
+
+/**
+ * The scores of the rows <code>start</code> to <code>end - 1</code> to other indexes in compressed rows, e.g. the
+ * similarities of a block of items to other items. The scores of row <code>r</code> are the entries
+ * <code>getRowStart(r)</code> to <code>getRowEnd(r) - 1</code>.
+ */
+public class ScoreBlock {
+    private final int start;
+    private final int end;
+    private final int[] offsets;
+    private final TIntArrayList indexes = new TIntArrayList();
+    private final TDoubleArrayList scores = new TDoubleArrayList();
+    private int row = 0;
+
+    public ScoreBlock(int start, int end) {
+        this.start = start;
+        this.end = end;
+        offsets = new int[end - start + 1];
+    }
+
+    /**
+     * Adds a score to the current row.
+     */
+    public void add(int index, double score) {
+        indexes.add(index);
+        scores.add(score);
+    }
+
+    /**
+     * Ends the current row, the next scores are added to the following row.
+     */
+    public void endRow() {
+        offsets[++row] = indexes.size();
+    }
+
+    public int getStart() {
+        return start;
+    }
+
+    public int getEnd() {
+        return end;
+    }
+
+    /**
+     * @param row a row between {@link #getStart()} and {@link #getEnd()}
+     */
+    public int getRowStart(int row) {
+        return offsets[row - start];
+    }
+
+    public int getRowEnd(int row) {
+        return offsets[row - start + 1];
+    }
+
+    public int getIndex(int entry) {
+        return indexes.get(entry);
+    }
+
+    public double getScore(int entry) {
+        return scores.get(entry);
+    }
+
+    public int size() {
+        return indexes.size();
+    }
+}
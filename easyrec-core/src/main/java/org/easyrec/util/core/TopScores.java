@@ -0,0 +1,97 @@
+/*
+ * Copyright 2010 Research Studios Austria Forschungsgesellschaft mBH
+ *
+ * This file is part of easyrec.
+ *
+ * easyrec is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * easyrec is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with easyrec.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.easyrec.util.core;
+
+/**
+ * Keeps the users or items with the highest scores in a bounded min-heap of primitive arrays, the entry with the lowest
+ * score of a full heap is replaced when an entry with a higher score is offered.
+ */
+public class TopScores {
+    private final int[] indexes;
+    private final double[] scores;
+    private int size;
+
+    public TopScores(int capacity) {
+        if (capacity < 1) throw new IllegalArgumentException("'capacity' must be positive");
+
+        indexes = new int[capacity];
+        scores = new double[capacity];
+    }
+
+    public void offer(int index, double score) {
+        if (size < scores.length) {
+            // sift up
+            int child = size++;
+
+            while (child > 0) {
+                int parent = (child - 1) >>> 1;
+
+                if (scores[parent] <= score) break;
+
+                indexes[child] = indexes[parent];
+                scores[child] = scores[parent];
+                child = parent;
+            }
+
+            indexes[child] = index;
+            scores[child] = score;
+            return;
+        }
+
+        if (score <= scores[0]) return;
+
+        // replace the root and sift down
+        int parent = 0;
+
+        while (true) {
+            int child = 2 * parent + 1;
+
+            if (child >= size) break;
+            if (child + 1 < size && scores[child + 1] < scores[child]) child++;
+            if (score <= scores[child]) break;
+
+            indexes[parent] = indexes[child];
+            scores[parent] = scores[child];
+            parent = child;
+        }
+
+        indexes[parent] = index;
+        scores[parent] = score;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @param position a position below {@link #size()}, the positions are in no particular order
+     */
+    public int getIndex(int position) {
+        return indexes[position];
+    }
+
+    public double getScore(int position) {
+        return scores[position];
+    }
+
+    public void clear() {
+        size = 0;
+    }
+}
@@ -0,0 +1,17 @@
+###############################################################
+# $Author$
+# $Revision$
+# $Date$
+###############################################################
+
+# ATTENTION: do not add other sql statements than the CREATE TABLE statement
+
+CREATE TABLE profiledimension (
+  tenantId INT(11) NOT NULL,
+  itemType VARCHAR(20) NOT NULL,
+  itemId VARCHAR(250) NOT NULL,
+  dimension VARCHAR(255) COLLATE latin1_bin NOT NULL,
+  value VARCHAR(255) NOT NULL,
+  KEY dimension_value (tenantId, itemType, dimension, value),
+  KEY dimension_item (tenantId, itemType, itemId)
+) DEFAULT CHARSET=latin1 COMMENT='Table containing the values of item profiles by element path, derived from item.profileData';
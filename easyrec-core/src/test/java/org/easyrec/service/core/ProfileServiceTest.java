@@ -23,6 +23,7 @@ package org.easyrec.service.core;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.easyrec.model.core.ItemVO;
+import org.easyrec.model.core.web.Item;
 import org.easyrec.service.core.impl.ProfileServiceImpl;
 
 import org.junit.Test;
@@ -35,6 +36,7 @@ import org.unitils.spring.annotation.SpringApplicationContext;
 import org.unitils.spring.annotation.SpringBeanByName;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
@@ -74,6 +76,22 @@ public class ProfileServiceTest {
         Assert.assertEquals(profileExpected, profileActual);
     }
 
+    @Test
+    public void testGetProfiles() {
+        List<String> profiles = profileService.getProfiles(Arrays.asList(
+                createItem(ITEM_ID_SINGLE_VALUE, ITEM_TYPE),
+                createItem("4", "ANOTHER_ITEM"),
+                createItem(ITEM_ID_NOT_EXISTING, ITEM_TYPE),
+                createItem(ITEM_ID_SINGLE_VALUE, ITEM_TYPE)));
+
+        String profileExpected = profileService.getProfile(TENANT_ID, ITEM_ID_SINGLE_VALUE, ITEM_TYPE);
+        Assert.assertEquals(4, profiles.size());
+        Assert.assertEquals(profileExpected, profiles.get(0));
+        Assert.assertEquals(profileService.getProfile(TENANT_ID, "4", "ANOTHER_ITEM"), profiles.get(1));
+        Assert.assertNull(profiles.get(2));
+        Assert.assertEquals(profileExpected, profiles.get(3));
+    }
+
     @Test
     public void testStoreProfile() {
         String profileExpected = "<?xml version=\"1.0\" encoding=\"UTF-8\" standalone=\"yes\"?><profile><description>Description stored as a profile. Plus an additional sentence.</description><name>profileItem</name></profile>";
@@ -209,4 +227,8 @@ public class ProfileServiceTest {
         actualResult = profileService.getItemsByItemType(TENANT_ID, "ANOTHER_ITEM", 1);
         Assert.assertEquals(1, actualResult.size());
     }
+
+    private static Item createItem(String itemId, String itemType) {
+        return new Item(null, TENANT_ID, itemId, itemType, null, null, null, null, true, null);
+    }
 }
@@ -0,0 +1,154 @@
+/*
+ * Copyright 2010 Research Studios Austria Forschungsgesellschaft mBH
+ *
+ * This file is part of easyrec.
+ *
+ * easyrec is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * easyrec is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with easyrec.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.easyrec.service.core.impl;
+
+import org.w3c.dom.Document;
+import org.w3c.dom.Node;
+import org.xml.sax.InputSource;
+
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.transform.OutputKeys;
+import javax.xml.transform.Transformer;
+import javax.xml.transform.TransformerFactory;
+import javax.xml.transform.dom.DOMSource;
+import javax.xml.transform.stream.StreamResult;
+import javax.xml.xpath.XPath;
+import javax.xml.xpath.XPathConstants;
+import javax.xml.xpath.XPathFactory;
+import java.io.StringReader;
+import java.io.StringWriter;
+
+/**
+ * Micro benchmark of the profile reads and updates of the {@link ProfileServiceImpl} before and with the
+ * {@link ProfileXMLProcessor}: reading a field through a new XPath and DOM, through a pooled worker and by streaming,
+ * and updating a field through a new XPath and DOM and through a pooled worker. Run the main method with a JIT
+ * enabled JVM, e.g. <code>java -server -cp ... org.easyrec.service.core.impl.ProfileXMLProcessorBenchmark</code>.
+ */
+public class ProfileXMLProcessorBenchmark {
+
+    private static final int ITERATIONS = 5000;
+    private static final int ROUNDS = 5;
+    // profile sizes in elements, a few properties up to a product with a long attribute list
+    private static final int[] PROFILE_SIZES = {10, 100, 1000};
+
+    private static final String READ_XPATH = "/profile/name/text()";
+    private static final String UPDATE_XPATH = "/profile/name";
+
+    private static volatile Object sink;
+
+    public static void main(String[] args) throws Exception {
+        DocumentBuilderFactory dbf = DocumentBuilderFactory.newInstance();
+        dbf.setNamespaceAware(true);
+        ProfileXMLProcessor processor = new ProfileXMLProcessor(dbf);
+
+        for (int size : PROFILE_SIZES) {
+            String profile = createProfile(size);
+
+            System.out.println(size + " elements, " + profile.length() + " characters");
+
+            for (int round = 0; round < ROUNDS; round++) {
+                long start = System.nanoTime();
+                for (int i = 0; i < ITERATIONS; i++)
+                    sink = readUncached(dbf, profile);
+                long uncachedRead = System.nanoTime() - start;
+
+                start = System.nanoTime();
+                for (int i = 0; i < ITERATIONS; i++) {
+                    ProfileXMLProcessor.Worker worker = processor.borrow();
+                    try {
+                        sink = worker.compile(READ_XPATH).evaluate(worker.parse(profile), XPathConstants.NODESET);
+                    } finally {
+                        processor.release(worker);
+                    }
+                }
+                long pooledRead = System.nanoTime() - start;
+
+                start = System.nanoTime();
+                for (int i = 0; i < ITERATIONS; i++)
+                    sink = processor.streamField(profile, READ_XPATH);
+                long streamedRead = System.nanoTime() - start;
+
+                start = System.nanoTime();
+                for (int i = 0; i < ITERATIONS; i++)
+                    sink = updateUncached(dbf, profile);
+                long uncachedUpdate = System.nanoTime() - start;
+
+                start = System.nanoTime();
+                for (int i = 0; i < ITERATIONS; i++) {
+                    ProfileXMLProcessor.Worker worker = processor.borrow();
+                    try {
+                        Document doc = worker.parse(profile);
+                        ((Node) worker.compile(UPDATE_XPATH).evaluate(doc, XPathConstants.NODE))
+                                .appendChild(doc.createTextNode("x"));
+                        sink = worker.serialize(doc);
+                    } finally {
+                        processor.release(worker);
+                    }
+                }
+                long pooledUpdate = System.nanoTime() - start;
+
+                System.out.println("round " + round + ": read " + (uncachedRead / ITERATIONS) + " ns uncached, " +
+                        (pooledRead / ITERATIONS) + " ns pooled, " + (streamedRead / ITERATIONS) +
+                        " ns streamed; update " + (uncachedUpdate / ITERATIONS) + " ns uncached, " +
+                        (pooledUpdate / ITERATIONS) + " ns pooled");
+            }
+        }
+    }
+
+    /**
+     * A read as done by the {@link ProfileServiceImpl} before the introduction of {@link ProfileXMLProcessor}.
+     */
+    private static Object readUncached(DocumentBuilderFactory dbf, String profile) throws Exception {
+        Document doc = dbf.newDocumentBuilder().parse(new InputSource(new StringReader(profile)));
+        XPath xp = XPathFactory.newInstance().newXPath();
+
+        return xp.evaluate(READ_XPATH, doc, XPathConstants.NODESET);
+    }
+
+    /**
+     * An update as done by the {@link ProfileServiceImpl} before the introduction of {@link ProfileXMLProcessor},
+     * the transformer was shared but is created here as it could not be used by concurrent requests.
+     */
+    private static String updateUncached(DocumentBuilderFactory dbf, String profile) throws Exception {
+        Document doc = dbf.newDocumentBuilder().parse(new InputSource(new StringReader(profile)));
+        XPath xp = XPathFactory.newInstance().newXPath();
+        ((Node) xp.evaluate(UPDATE_XPATH, doc, XPathConstants.NODE)).appendChild(doc.createTextNode("x"));
+
+        Transformer trans = TransformerFactory.newInstance().newTransformer();
+        trans.setOutputProperty(OutputKeys.OMIT_XML_DECLARATION, "yes");
+        StringWriter writer = new StringWriter();
+        trans.transform(new DOMSource(doc), new StreamResult(writer));
+
+        return writer.toString();
+    }
+
+    private static String createProfile(int elements) {
+        StringBuilder profile = new StringBuilder("<profile><name>item</name><description>");
+
+        for (int i = 0; i < 20; i++)
+            profile.append("A description of the item. ");
+
+        profile.append("</description><properties>");
+
+        for (int i = 0; i < elements; i++)
+            profile.append("<property name=\"p").append(i).append("\">value ").append(i).append("</property>");
+
+        return profile.append("</properties></profile>").toString();
+    }
+}
@@ -0,0 +1,134 @@
+/*
+ * Copyright 2010 Research Studios Austria Forschungsgesellschaft mBH
+ *
+ * This file is part of easyrec.
+ *
+ * easyrec is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * easyrec is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with easyrec.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.easyrec.service.core.impl;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.w3c.dom.Document;
+import org.w3c.dom.NodeList;
+
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.xpath.XPathConstants;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.sameInstance;
+import static org.junit.Assert.assertThat;
+
+public class ProfileXMLProcessorTest {
+
+    private static final String PROFILE = "<profile id=\"p1\"><name>profileItem</name>" +
+            "<genre>g1</genre><genre>g2</genre><genre>g1</genre>" +
+            "<details><year>2010</year><note>a &amp; b<!-- comment -->c<sub>x</sub>  </note></details>" +
+            "<x:name xmlns:x=\"urn:x\">other</x:name></profile>";
+
+    private ProfileXMLProcessor processor;
+
+    @Before
+    public void setUp() {
+        DocumentBuilderFactory dbf = DocumentBuilderFactory.newInstance();
+        dbf.setNamespaceAware(true);
+        processor = new ProfileXMLProcessor(dbf, 2);
+    }
+
+    @Test
+    public void isStreamable_acceptsTextAndAttributesOfPlainPaths() {
+        assertThat(ProfileXMLProcessor.isStreamable("/profile/name/text()"), is(true));
+        assertThat(ProfileXMLProcessor.isStreamable("/profile/@id"), is(true));
+        assertThat(ProfileXMLProcessor.isStreamable("/profile/name"), is(false));
+        assertThat(ProfileXMLProcessor.isStreamable("//name/text()"), is(false));
+        assertThat(ProfileXMLProcessor.isStreamable("/profile/genre[1]/text()"), is(false));
+        assertThat(ProfileXMLProcessor.isStreamable(null), is(false));
+    }
+
+    @Test
+    public void streamField_returnsTheNodeValuesOfTheDOM() throws Exception {
+        for (String xPath : Arrays.asList("/profile/name/text()", "/profile/genre/text()", "/profile/@id",
+                "/profile/details/year/text()", "/profile/details/note/text()", "/profile/details/text()",
+                "/profile/missing/text()", "/other/name/text()", "/profile/name/@id")) {
+            assertThat(xPath, processor.streamField(PROFILE, xPath), is(evaluate(PROFILE, xPath)));
+        }
+
+        assertThat(processor.streamField(PROFILE, "/profile/genre/text()"),
+                is((Set<String>) new HashSet<String>(Arrays.asList("g1", "g2"))));
+    }
+
+    @Test
+    public void streamField_returnsNothingForAnEmptyProfile() throws Exception {
+        assertThat(processor.streamField(null, "/profile/name/text()").isEmpty(), is(true));
+        assertThat(processor.streamField("", "/profile/name/text()").isEmpty(), is(true));
+    }
+
+    @Test(expected = XMLStreamException.class)
+    public void streamField_leavesCDATASectionsToTheDOM() throws Exception {
+        processor.streamField("<profile><name><![CDATA[a]]></name></profile>", "/profile/name/text()");
+    }
+
+    @Test(expected = XMLStreamException.class)
+    public void streamField_rejectsMalformedProfiles() throws Exception {
+        processor.streamField("<profile><name>a</profile>", "/profile/name/text()");
+    }
+
+    @Test
+    public void getTextValues_mergesAdjacentTextAndCDATA() throws Exception {
+        ProfileXMLProcessor.Worker worker = processor.borrow();
+        Document doc = worker.parse("<genre>a<![CDATA[b]]>c<x/>d</genre>");
+
+        assertThat(ProfileXMLProcessor.getTextValues(doc.getDocumentElement()), is(Arrays.asList("abc", "d")));
+    }
+
+    @Test
+    public void worker_cachesCompiledExpressionsAndIsReused() throws Exception {
+        ProfileXMLProcessor.Worker worker = processor.borrow();
+
+        assertThat(worker.compile("/profile/name"), sameInstance(worker.compile("/profile/name")));
+
+        processor.release(worker);
+
+        assertThat(processor.borrow(), sameInstance(worker));
+    }
+
+    @Test
+    public void worker_serializesWithoutXMLDeclaration() throws Exception {
+        ProfileXMLProcessor.Worker worker = processor.borrow();
+
+        assertThat(worker.serialize(worker.parse("<?xml version=\"1.0\"?><profile><name>a</name></profile>")),
+                is("<profile><name>a</name></profile>"));
+    }
+
+    private Set<String> evaluate(String profile, String xPath) throws Exception {
+        ProfileXMLProcessor.Worker worker = processor.borrow();
+        Set<String> result = new HashSet<String>();
+
+        try {
+            NodeList nodeList = (NodeList) worker.compile(xPath).evaluate(worker.parse(profile),
+                    XPathConstants.NODESET);
+
+            for (int i = 0; i < nodeList.getLength(); i++)
+                result.add(nodeList.item(i).getNodeValue());
+        } finally {
+            processor.release(worker);
+        }
+
+        return result;
+    }
+}
@@ -132,6 +132,23 @@ public class ActionDAOTest {
     }
 
 
+    @Test
+    @ExpectedDataSet(DATA_FILENAME_SOME_MORE_WITH_ALL_FIELDS_SET)
+    public void testInsertActions() {
+        List<ActionVO<Integer, Integer>> actions = new ArrayList<ActionVO<Integer, Integer>>();
+        // search (failed)
+        actions.add(new ActionVO<Integer, Integer>(2, 2, "abc6", "192.168.124.1",
+                new ItemVO<Integer, Integer>(2, null, 2), 4, null, false, 0, "modana"));
+        // search (succeeded)
+        actions.add(new ActionVO<Integer, Integer>(2, 2, "abc6", "192.168.124.2",
+                new ItemVO<Integer, Integer>(2, 13, 2), 4, null, true, 1, "madonna"));
+        // ratingValue set
+        actions.add(new ActionVO<Integer, Integer>(2, 2, "abc6", "192.168.124.3",
+                new ItemVO<Integer, Integer>(2, 19, 1), 3, 7, null, null, null));
+
+        assertThat(actionDAO.insertActions(actions, false), is(3));
+    }
+
     @Test
     public void testInsertActionMissingConstraint() {
         ActionVO<Integer, Integer> action = null;
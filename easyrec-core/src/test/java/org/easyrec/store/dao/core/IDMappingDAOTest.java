@@ -29,6 +29,8 @@ import org.unitils.spring.annotation.SpringApplicationContext;
 import org.unitils.spring.annotation.SpringBean;
 
 import javax.sql.DataSource;
+import java.util.Arrays;
+import java.util.Map;
 
 import static org.hamcrest.CoreMatchers.*;
 import static org.junit.Assert.assertThat;
@@ -85,6 +87,16 @@ public class IDMappingDAOTest {
         mappingDAO.lookup("test3");
     }
 
+    @Test
+    @DataSet("/dbunit/core/dao/IDMappingDAO/dbunit.idmapping.one_less.xml")
+    @ExpectedDataSet("/dbunit/core/dao/IDMappingDAO/dbunit.idmapping.one_less.xml")
+    public void lookupExisting_doesNotInsertUnknownStrings() {
+        assertThat(mappingDAO.lookupExisting("test1"), is(1));
+        assertThat(mappingDAO.lookupExisting("test3"), is(nullValue()));
+        assertThat(mappingDAO.lookupExisting(""), is(nullValue()));
+        assertThat(mappingDAO.lookupExisting(null), is(nullValue()));
+    }
+
     @Test(expected = IllegalArgumentException.class)
     public void lookup_emptyString() {
         mappingDAO.lookup("");
@@ -159,6 +171,16 @@ public class IDMappingDAOTest {
         // test successful lookup
     }
 
+    @Test
+    public void lookupStringIds() {
+        Map<Integer, String> returnedNames = mappingDAO.lookupStringIds(Arrays.asList(1, 3, 7));
+
+        assertThat(returnedNames.size(), is(2));
+        assertThat(returnedNames.get(1), is("test1"));
+        assertThat(returnedNames.get(3), is("test3"));
+        assertThat(returnedNames.get(7), is(nullValue()));
+    }
+
     @Test
     public void lookup_Integer() {
         // test successful lookup
@@ -35,6 +35,7 @@ import java.util.ArrayList;
 import java.util.Date;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
 
 import static org.hamcrest.CoreMatchers.is;
 import static org.hamcrest.CoreMatchers.not;
@@ -457,6 +458,30 @@ public class ItemAssocDAOTest {
         // HINT: hardcoded check if list equals expected list (Mantis Issue: #721)
     }
 
+    @Test
+    public void testGetItemsToMultiple() {
+        ItemVO<Integer, Integer> item1 = new ItemVO<Integer, Integer>(1, 1, 1);
+        ItemVO<Integer, Integer> item2 = new ItemVO<Integer, Integer>(1, 2, 1);
+        ItemVO<Integer, Integer> item3 = new ItemVO<Integer, Integer>(1, 3, 1);
+        List<ItemVO<Integer, Integer>> itemsFrom = new ArrayList<ItemVO<Integer, Integer>>();
+        itemsFrom.add(item1);
+        itemsFrom.add(item2);
+        itemsFrom.add(item3);
+
+        Map<ItemVO<Integer, Integer>, List<AssociatedItemVO<Integer, Integer>>> associatedItems = itemAssocDAO
+                .getItemsTo(itemsFrom, 1, 1,
+                        new IAConstraintVO<Integer, Integer>(3, false));
+        assertEquals(3, associatedItems.size());
+
+        // the number of results is limited per item
+        assertEquals(3, associatedItems.get(item1).size());
+        assertEquals(0.9, associatedItems.get(item1).get(0).getAssocValue(), 0.0);
+        assertEquals(0.5, associatedItems.get(item1).get(2).getAssocValue(), 0.0);
+        assertEquals(1, associatedItems.get(item2).size());
+        assertEquals(Integer.valueOf(7), associatedItems.get(item2).get(0).getItem().getItem());
+        assertTrue(associatedItems.get(item3).isEmpty());
+    }
+
     @Test
     public void testGetItemsToEmptyDB() {
         Unitils.getInstance().getModulesRepository().getModuleOfType(DatabaseModule.class).cleanSchemas();
@@ -8,15 +8,19 @@ import org.easyrec.model.core.web.statistic.ItemDetails;
 import org.easyrec.store.dao.core.ItemDAO;
 import org.junit.Test;
 import org.junit.runner.RunWith;
+import org.springframework.jdbc.core.JdbcTemplate;
 import org.unitils.UnitilsJUnit4TestClassRunner;
 import org.unitils.dbunit.annotation.DataSet;
 import org.unitils.spring.annotation.SpringApplicationContext;
 import org.unitils.spring.annotation.SpringBeanByName;
 
+import javax.sql.DataSource;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Calendar;
 import java.util.Date;
 import java.util.List;
+import java.util.Map;
 
 /**
  * Tests for the ItemDAO class
@@ -47,6 +51,9 @@ public class ItemDAOTest {
     @SpringBeanByName
     protected ItemDAO itemDAO;
 
+    @SpringBeanByName
+    protected DataSource easyrecDataSource;
+
     @Test
     @DataSet("/dbunit/core/dao/itemDaoTest.xml")
     public void testAdd() {
@@ -99,6 +106,55 @@ public class ItemDAOTest {
         Assert.assertNull(itemLoaded);
     }
 
+    @Test
+    @DataSet("/dbunit/core/dao/itemDaoTest.xml")
+    public void testGetAfterAddOfUnknownItem() {
+        increaseItemId();
+        // the miss is cached as negative entry, adding the item must drop it
+        Assert.assertNull(itemDAO.get(createRemoteTenant(TENANT_ID), currentItemId.toString(), ITEM_TYPE[0]));
+        Assert.assertFalse(itemDAO.exists(createRemoteTenant(TENANT_ID), currentItemId.toString(), ITEM_TYPE[0]));
+
+        Item item = addDummyItem(0);
+        Item itemLoaded = itemDAO.get(createRemoteTenant(TENANT_ID), currentItemId.toString(), ITEM_TYPE[0]);
+        checkItemEquality(item, itemLoaded);
+    }
+
+    @Test
+    @DataSet("/dbunit/core/dao/itemDaoTest.xml")
+    public void testGetAfterEvictOfItemInsertedElsewhere() {
+        increaseItemId();
+        Assert.assertNull(itemDAO.get(createRemoteTenant(TENANT_ID), currentItemId.toString(), ITEM_TYPE[0]));
+
+        // e.g. storing a profile inserts the item without the ItemDAO
+        new JdbcTemplate(easyrecDataSource).update(
+                "INSERT INTO item (tenantId, itemid, itemtype, description, active) VALUES (?, ?, ?, ?, 1)",
+                TENANT_ID, currentItemId.toString(), ITEM_TYPE[0], ITEM_DESCRIPTION[0]);
+        itemDAO.evict(TENANT_ID, currentItemId.toString(), ITEM_TYPE[0]);
+
+        Item itemLoaded = itemDAO.get(createRemoteTenant(TENANT_ID), currentItemId.toString(), ITEM_TYPE[0]);
+        Assert.assertNotNull(itemLoaded);
+        Assert.assertEquals(ITEM_DESCRIPTION[0], itemLoaded.getDescription());
+    }
+
+    @Test
+    @DataSet("/dbunit/core/dao/itemDaoTest.xml")
+    public void testGetMultiple() {
+        increaseItemId();
+        Item first = addDummyItem(0);
+        increaseItemId();
+        Item second = addDummyItem(0);
+        increaseItemId();
+        String missingItemId = currentItemId.toString();
+
+        Map<String, Item> items = itemDAO.get(createRemoteTenant(TENANT_ID),
+                Arrays.asList(first.getItemId(), second.getItemId(), missingItemId), ITEM_TYPE[0]);
+
+        Assert.assertEquals(2, items.size());
+        checkItemEquality(first, items.get(first.getItemId()));
+        checkItemEquality(second, items.get(second.getItemId()));
+        Assert.assertNull(items.get(missingItemId));
+    }
+
     @Test
     @DataSet("/dbunit/core/dao/itemDaoTest.xml")
     public void testExists() {
@@ -104,6 +104,27 @@ public class RecommendationDAOTest {
         assertThat(recommendation.getRecommendedItems().get(1).getId(), is(greaterThan(9)));
     }
 
+    @Test
+    @DataSet(DATA_FILENAME_ONE_LESS)
+    @ExpectedDataSet(DATA_FILENAME_NO_TIME)
+    public void testInsertRecommendations() {
+        List<RecommendedItemVO<Integer, Integer>> recommendedItems = new ArrayList<RecommendedItemVO<Integer, Integer>>();
+        recommendedItems.add(new RecommendedItemVO<Integer, Integer>(
+                new ItemVO<Integer, Integer>(1, 33, 1), 0.89d, 1, "x"));
+        recommendedItems.add(new RecommendedItemVO<Integer, Integer>(
+                new ItemVO<Integer, Integer>(1, 34, 1), 0.88d, 1, "x"));
+        RecommendationVO<Integer, Integer> recommendation = new RecommendationVO<Integer, Integer>(1, 3, 1, 1, 1,
+                1, "a", "b", recommendedItems);
+        List<RecommendationVO<Integer, Integer>> recommendations = new ArrayList<RecommendationVO<Integer, Integer>>();
+        recommendations.add(recommendation);
+
+        assertEquals(1, recommendationDAO.insertRecommendations(recommendations));
+
+        assertThat(recommendation.getId(), is(greaterThan(4)));
+        assertEquals(recommendation.getId(), recommendation.getRecommendedItems().get(0).getRecommendationId());
+        assertEquals(recommendation.getId(), recommendation.getRecommendedItems().get(1).getRecommendationId());
+    }
+
     @Test
     public void testLoadRecommendation() {
         RecommendationVO<Integer, Integer> loadedRecommendation = recommendationDAO
@@ -0,0 +1,180 @@
+/*
+ * Copyright 2010 Research Studios Austria Forschungsgesellschaft mBH
+ *
+ * This file is part of easyrec.
+ *
+ * easyrec is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * easyrec is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with easyrec.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.easyrec.store.dao.core.impl;
+
+import org.easyrec.model.core.ItemVO;
+import org.easyrec.model.core.RankedItemVO;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.junit.Assert.assertThat;
+
+public class ActionRankingIndexTest {
+
+    private static final long HOUR = ActionRankingIndex.BUCKET_MILLIS;
+    private static final int VIEW = 1;
+    private static final int BUY = 2;
+    private static final int ITEM = 1;
+    private static final int OTHER = 2;
+
+    private long now;
+    private ActionRankingIndex index;
+
+    @Before
+    public void setUp() {
+        now = 1000 * HOUR + HOUR / 2;
+        index = new ActionRankingIndex(48) {
+            @Override
+            protected long currentTimeMillis() {
+                return now;
+            }
+        };
+    }
+
+    @Test
+    public void getRanking_sortsByDescendingCountAndItem() {
+        add(1, VIEW, ITEM, 3, now);
+        add(1, VIEW, ITEM, 2, now);
+        add(1, VIEW, ITEM, 2, now);
+        add(1, VIEW, ITEM, 1, now);
+        add(1, BUY, ITEM, 3, now);
+        add(2, VIEW, ITEM, 3, now);
+
+        assertThat(ranking(index.getRanking(1, VIEW, null, null, null, null)), is(Arrays.asList("2:2", "1:1", "3:1")));
+        assertThat(ranking(index.getRanking(1, VIEW, null, null, null, 2)), is(Arrays.asList("2:2", "1:1")));
+        assertThat(ranking(index.getRanking(1, BUY, null, null, null, 0)), is(Arrays.asList("3:1")));
+
+        RankedItemVO<Integer, Integer> first = index.getRanking(1, VIEW, null, null, null, 1).get(0);
+
+        assertThat(first.getItem(), is(new ItemVO<Integer, Integer>(1, 2, ITEM)));
+        assertThat(first.getActionType(), is(VIEW));
+        assertThat(first.getRank(), is(1));
+    }
+
+    @Test
+    public void getRanking_filtersByItemType() {
+        add(1, VIEW, ITEM, 1, now);
+        add(1, VIEW, OTHER, 1, now);
+        add(1, VIEW, OTHER, 1, now);
+
+        assertThat(ranking(index.getRanking(1, VIEW, ITEM, null, null, null)), is(Arrays.asList("1:1")));
+        assertThat(ranking(index.getRanking(1, VIEW, OTHER, null, null, null)), is(Arrays.asList("1:2")));
+    }
+
+    @Test
+    public void getRanking_countsTheActionsSinceTheHourOfTheStart() {
+        add(1, VIEW, ITEM, 1, now - 30 * HOUR);
+        add(1, VIEW, ITEM, 2, now - 2 * HOUR);
+        add(1, VIEW, ITEM, 2, now - 2 * HOUR);
+        add(1, VIEW, ITEM, 3, now);
+
+        assertThat(ranking(index.getRanking(1, VIEW, null, new Date(now - 24 * HOUR), null, null)),
+                is(Arrays.asList("2:2", "3:1")));
+        assertThat(ranking(index.getRanking(1, VIEW, null, new Date(now - HOUR), null, null)),
+                is(Arrays.asList("3:1")));
+        assertThat(ranking(index.getRanking(1, VIEW, null, new Date(now - 40 * HOUR), null, null)),
+                is(Arrays.asList("2:2", "1:1", "3:1")));
+    }
+
+    @Test
+    public void getRanking_movesWindowsWithTheTime() {
+        add(1, VIEW, ITEM, 1, now - 23 * HOUR);
+        add(1, VIEW, ITEM, 2, now);
+
+        assertThat(ranking(index.getRanking(1, VIEW, null, new Date(now - 24 * HOUR), null, null)),
+                is(Arrays.asList("1:1", "2:1")));
+
+        now += 2 * HOUR;
+        add(1, VIEW, ITEM, 2, now);
+
+        assertThat(ranking(index.getRanking(1, VIEW, null, new Date(now - 24 * HOUR), null, null)),
+                is(Arrays.asList("2:2")));
+
+        now -= 2 * HOUR;
+
+        assertThat(ranking(index.getRanking(1, VIEW, null, new Date(now - 24 * HOUR), null, null)),
+                is(Arrays.asList("2:2", "1:1")));
+    }
+
+    @Test
+    public void getRanking_leavesTimeRangesBeforeTheRetainedHoursToTheDatabase() {
+        add(1, VIEW, ITEM, 1, now - 50 * HOUR);
+
+        assertThat(index.getRanking(1, VIEW, null, new Date(now - 48 * HOUR), null, null), nullValue());
+        assertThat(index.getRanking(2, VIEW, null, new Date(now - 48 * HOUR), null, null), nullValue());
+        assertThat(index.getRanking(2, VIEW, null, new Date(now - 24 * HOUR), null, null).isEmpty(), is(true));
+        assertThat(ranking(index.getRanking(1, VIEW, null, null, null, null)), is(Arrays.asList("1:1")));
+        assertThat(index.getRanking(1, VIEW, null, new Date(now - 24 * HOUR), null, null).isEmpty(), is(true));
+    }
+
+    @Test
+    public void getRanking_leavesRankingsEndingBeforeTheCurrentHourToTheDatabase() {
+        add(1, VIEW, ITEM, 1, now);
+
+        assertThat(index.getRanking(1, VIEW, null, null, new Date(now - HOUR), null), nullValue());
+        assertThat(index.getRanking(2, VIEW, null, new Date(now - 24 * HOUR), new Date(now - HOUR), null),
+                nullValue());
+        assertThat(ranking(index.getRanking(1, VIEW, null, null, new Date(now - HOUR / 4), null)),
+                is(Arrays.asList("1:1")));
+        assertThat(ranking(index.getRanking(1, VIEW, null, new Date(now - 24 * HOUR), new Date(now + HOUR), null)),
+                is(Arrays.asList("1:1")));
+    }
+
+    @Test
+    public void loader_replacesTheCountersOfTheTenant() {
+        add(1, VIEW, ITEM, 1, now);
+        add(1, BUY, ITEM, 1, now);
+        add(2, VIEW, ITEM, 1, now);
+
+        ActionRankingIndex.Loader loader = index.loader(1);
+        loader.addTotal(1, VIEW, ITEM, 5, 10);
+        loader.addBucket(1, VIEW, ITEM, 5, new Date(now - HOUR), 3);
+        loader.publish();
+
+        assertThat(ranking(index.getRanking(1, VIEW, null, null, null, null)), is(Arrays.asList("5:10")));
+        assertThat(ranking(index.getRanking(1, VIEW, null, new Date(now - 5 * HOUR), null, null)),
+                is(Arrays.asList("5:3")));
+        assertThat(index.getRanking(1, BUY, null, null, null, null).isEmpty(), is(true));
+        assertThat(ranking(index.getRanking(2, VIEW, null, null, null, null)), is(Arrays.asList("1:1")));
+
+        index.removeTenant(2);
+
+        assertThat(index.size(), is(1));
+    }
+
+    private void add(int tenantId, int actionTypeId, int itemTypeId, int itemId, long time) {
+        index.add(tenantId, actionTypeId, itemTypeId, itemId, new Date(time));
+    }
+
+    private static List<String> ranking(List<RankedItemVO<Integer, Integer>> rankedItems) {
+        List<String> result = new ArrayList<String>();
+
+        for (RankedItemVO<Integer, Integer> rankedItem : rankedItems)
+            result.add(rankedItem.getItem().getItem() + ":" + rankedItem.getCount());
+
+        return result;
+    }
+}
@@ -0,0 +1,305 @@
+/*
+ * Copyright 2010 Research Studios Austria Forschungsgesellschaft mBH
+ *
+ * This file is part of easyrec.
+ *
+ * easyrec is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * easyrec is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with easyrec.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.easyrec.store.dao.core.impl;
+
+import org.easyrec.model.core.ActionVO;
+import org.easyrec.model.core.ItemVO;
+import org.easyrec.store.dao.core.ActionDAO;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+
+import static org.hamcrest.CoreMatchers.*;
+import static org.junit.Assert.assertThat;
+
+public class ActionWriteBehindQueueTest {
+    private File directory;
+    private RecordingActionDAO recorder;
+    private ActionDAO actionDAO;
+
+    @Before
+    public void setUp() throws IOException {
+        directory = File.createTempFile("actions", "");
+        directory.delete();
+        directory.mkdirs();
+
+        recorder = new RecordingActionDAO();
+        actionDAO = (ActionDAO) Proxy.newProxyInstance(ActionDAO.class.getClassLoader(),
+                new Class<?>[]{ActionDAO.class}, recorder);
+    }
+
+    @After
+    public void tearDown() {
+        File[] files = directory.listFiles();
+
+        if (files != null) {
+            for (File file : files)
+                file.delete();
+        }
+
+        directory.delete();
+    }
+
+    @Test
+    public void insertAction_writesTheQueuedActionsInBatches() throws Exception {
+        ActionWriteBehindQueue queue = createQueue(100, 2, null);
+        ActionVO<Integer, Integer> action = action(1, 1, "session");
+
+        queue.insertAction(action, true);
+        queue.insertAction(action(1, 2, "session"), true);
+        queue.insertAction(action(1, 3, "session"), true);
+
+        // later changes of the caller must not be stored
+        action.setSessionId("changed");
+
+        queue.destroy();
+
+        assertThat(recorder.written(), is(actions(action(1, 1, "session"), action(1, 2, "session"),
+                action(1, 3, "session"))));
+
+        for (List<ActionVO<Integer, Integer>> batch : recorder.batches)
+            assertThat(batch.size() <= 2, is(true));
+    }
+
+    @Test
+    public void insertAction_insertsTheActionItselfWhenTheQueueIsFull() throws Exception {
+        ActionWriteBehindQueue queue = createQueue(1, 10, null);
+
+        queue.insertAction(action(1, 1, "session"), true);
+        queue.insertAction(action(1, 2, "session"), true);
+
+        assertThat(recorder.written(), is(actions(action(1, 2, "session"))));
+        assertThat(queue.getPending(), is(1));
+
+        queue.destroy();
+
+        assertThat(recorder.written().size(), is(2));
+    }
+
+    @Test
+    public void removeTenant_dropsTheQueuedActionsOfTheTenant() throws Exception {
+        ActionWriteBehindQueue queue = createQueue(100, 10, directory);
+
+        queue.insertAction(action(1, 1, "session"), true);
+        queue.insertAction(action(2, 2, "session"), true);
+        queue.removeTenant(1);
+
+        assertThat(recorder.written(), is(actions(action(2, 2, "session"))));
+        // the journal still holding the action of the removed tenant is deleted
+        assertThat(journals().size(), is(1));
+        assertThat(ActionWriteBehindQueue.Journal.read(journals().get(0)).isEmpty(), is(true));
+
+        queue.destroy();
+
+        assertThat(recorder.written().size(), is(1));
+        assertThat(journals().isEmpty(), is(true));
+    }
+
+    @Test
+    public void afterPropertiesSet_recoversLeftOverJournals() throws Exception {
+        File leftOver = new File(directory, "actions-1.journal");
+        ActionWriteBehindQueue.Journal.write(leftOver, actions(action(1, 1, "session"), action(1, 2, null)));
+
+        ActionWriteBehindQueue queue = createQueue(100, 10, directory);
+
+        assertThat(recorder.written(), is(actions(action(1, 1, "session"), action(1, 2, null))));
+        assertThat(leftOver.exists(), is(false));
+
+        queue.destroy();
+    }
+
+    @Test
+    public void afterPropertiesSet_keepsOnlyTheActionsThatCouldNotBeRecovered() throws Exception {
+        File leftOver = new File(directory, "actions-1.journal");
+        ActionWriteBehindQueue.Journal.write(leftOver, actions(action(1, 1, "session"), action(2, 2, "session")));
+        recorder.failingTenant = 2;
+
+        ActionWriteBehindQueue queue = createQueue(100, 1, directory);
+
+        // the stored action is not inserted a second time on the next start
+        assertThat(recorder.written(), is(actions(action(1, 1, "session"))));
+        assertThat(ActionWriteBehindQueue.Journal.read(leftOver), is(actions(action(2, 2, "session"))));
+
+        queue.destroy();
+    }
+
+    @Test
+    public void flush_journalsOnlyTheActionsThatCouldNotBeWritten() throws Exception {
+        recorder.failingTenant = 2;
+        ActionWriteBehindQueue queue = createQueue(100, 1, directory);
+
+        queue.insertAction(action(1, 1, "session"), true);
+        queue.insertAction(action(2, 2, "session"), true);
+        queue.destroy();
+
+        assertThat(recorder.written(), is(actions(action(1, 1, "session"))));
+
+        List<ActionVO<Integer, Integer>> journaled = new ArrayList<ActionVO<Integer, Integer>>();
+
+        for (File journal : journals())
+            journaled.addAll(ActionWriteBehindQueue.Journal.read(journal));
+
+        assertThat(journaled, is(actions(action(2, 2, "session"))));
+    }
+
+    @Test
+    public void rotate_continuesInANewFile() throws IOException {
+        ActionWriteBehindQueue.Journal journal = new ActionWriteBehindQueue.Journal(directory, false);
+
+        journal.append(action(1, 1, "session"));
+        List<File> closed = journal.rotate();
+        journal.append(action(1, 2, "session"));
+        journal.close();
+
+        assertThat(closed.size(), is(1));
+        assertThat(ActionWriteBehindQueue.Journal.read(closed.get(0)),
+                is(actions(action(1, 1, "session"))));
+
+        List<File> journals = journals();
+        journals.removeAll(closed);
+
+        assertThat(journals.size(), is(1));
+        assertThat(ActionWriteBehindQueue.Journal.read(journals.get(0)),
+                is(actions(action(1, 2, "session"))));
+    }
+
+    @Test
+    public void read_returnsTheWrittenActions() throws IOException {
+        ActionVO<Integer, Integer> special = new ActionVO<Integer, Integer>(1, null, "a\tb\nc\\d\re",
+                null, new ItemVO<Integer, Integer>(1, 5, 2), 3, 4, true, null, "\\N", new Date(1234567L));
+        File file = new File(directory, "actions-1.journal");
+
+        ActionWriteBehindQueue.Journal.write(file, actions(special, action(1, 1, "session")));
+
+        assertThat(ActionWriteBehindQueue.Journal.read(file), is(actions(special, action(1, 1, "session"))));
+    }
+
+    @Test
+    public void read_discardsATornLastRecord() throws IOException {
+        File file = new File(directory, "actions-1.journal");
+        String record = ActionWriteBehindQueue.Journal.format(action(1, 2, "session"));
+        Writer out = new OutputStreamWriter(new FileOutputStream(file), "UTF-8");
+
+        try {
+            out.write(ActionWriteBehindQueue.Journal.format(action(1, 1, "session")));
+            // the crash cut the action time short, the record has all fields but no newline
+            out.write(record.substring(0, record.length() - 3));
+        } finally {
+            out.close();
+        }
+
+        assertThat(ActionWriteBehindQueue.Journal.read(file), is(actions(action(1, 1, "session"))));
+    }
+
+    @Test
+    public void escape_isReversedByUnescape() {
+        String value = "tab\tnewline\nreturn\rbackslash\\N";
+
+        assertThat(ActionWriteBehindQueue.Journal.escape(value).indexOf('\t'), is(-1));
+        assertThat(ActionWriteBehindQueue.Journal.escape(value).indexOf('\n'), is(-1));
+        assertThat(ActionWriteBehindQueue.Journal.unescape(ActionWriteBehindQueue.Journal.escape(value)), is(value));
+        assertThat(ActionWriteBehindQueue.Journal.unescape(ActionWriteBehindQueue.Journal.escape(null)),
+                is(nullValue()));
+    }
+
+    // the writer only writes when flushSize actions are queued or the queue is destroyed
+    private ActionWriteBehindQueue createQueue(int capacity, int flushSize, File journalDirectory) throws Exception {
+        ActionWriteBehindQueue queue = new ActionWriteBehindQueue(actionDAO);
+        queue.setCapacity(capacity);
+        queue.setFlushSize(flushSize);
+        queue.setFlushInterval(60000);
+
+        if (journalDirectory != null) queue.setJournalDirectory(journalDirectory.getPath());
+
+        queue.afterPropertiesSet();
+
+        return queue;
+    }
+
+    private List<File> journals() {
+        File[] files = directory.listFiles();
+        List<File> journals = new ArrayList<File>(Arrays.asList(files));
+        Collections.sort(journals);
+
+        return journals;
+    }
+
+    // takes wildcard types, a generic varargs array would cause an unchecked warning at every call
+    @SuppressWarnings("unchecked")
+    private static List<ActionVO<Integer, Integer>> actions(ActionVO<?, ?>... actions) {
+        List<ActionVO<Integer, Integer>> result = new ArrayList<ActionVO<Integer, Integer>>(actions.length);
+
+        for (ActionVO<?, ?> action : actions)
+            result.add((ActionVO<Integer, Integer>) action);
+
+        return result;
+    }
+
+    private static ActionVO<Integer, Integer> action(int tenant, int item, String sessionId) {
+        return new ActionVO<Integer, Integer>(tenant, 7, sessionId, "127.0.0.1",
+                new ItemVO<Integer, Integer>(tenant, item, 1), 1, null, null, null, null, new Date(1000L * item));
+    }
+
+    // records the batches passed to insertActions, batches containing failingTenant throw
+    private static class RecordingActionDAO implements InvocationHandler {
+        private final List<List<ActionVO<Integer, Integer>>> batches =
+                Collections.synchronizedList(new ArrayList<List<ActionVO<Integer, Integer>>>());
+        private volatile Integer failingTenant;
+
+        @SuppressWarnings("unchecked")
+        public Object invoke(Object proxy, Method method, Object[] args) {
+            if (!method.getName().equals("insertActions"))
+                throw new UnsupportedOperationException(method.getName());
+
+            List<ActionVO<Integer, Integer>> batch = (List<ActionVO<Integer, Integer>>) args[0];
+
+            for (ActionVO<Integer, Integer> action : batch)
+                if (action.getTenant().equals(failingTenant)) throw new IllegalStateException("insert failed");
+
+            batches.add(new ArrayList<ActionVO<Integer, Integer>>(batch));
+
+            return batch.size();
+        }
+
+        private List<ActionVO<Integer, Integer>> written() {
+            List<ActionVO<Integer, Integer>> written = new ArrayList<ActionVO<Integer, Integer>>();
+
+            synchronized (batches) {
+                for (List<ActionVO<Integer, Integer>> batch : batches)
+                    written.addAll(batch);
+            }
+
+            return written;
+        }
+    }
+}
@@ -0,0 +1,173 @@
+/*
+ * Copyright 2010 Research Studios Austria Forschungsgesellschaft mBH
+ *
+ * This file is part of easyrec.
+ *
+ * easyrec is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * easyrec is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with easyrec.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.easyrec.store.dao.core.impl;
+
+import org.easyrec.model.core.AssociatedItemVO;
+import org.easyrec.model.core.ItemVO;
+import org.junit.Test;
+
+import java.util.List;
+
+import static org.hamcrest.CoreMatchers.*;
+import static org.junit.Assert.assertThat;
+
+public class ItemAssocIndexTest {
+
+    @Test
+    public void getItemsTo_returnsItemsSortedByAssocValue() {
+        ItemAssocIndex index = new ItemAssocIndex();
+        ItemAssocIndex.Builder builder = index.builder(1, 2);
+
+        builder.add(10, 1, 20, 1, 0.5, 1);
+        builder.add(10, 1, 21, 1, 0.9, 2);
+        builder.add(10, 1, 22, 2, 0.7, 3);
+        builder.add(11, 1, 20, 1, 0.1, 4);
+        index.put(builder.build());
+
+        List<AssociatedItemVO<Integer, Integer>> items =
+                index.get(1, 2).getItemsTo(new ItemVO<Integer, Integer>(1, 10, 1), null, null);
+
+        assertThat(items.size(), is(3));
+        assertThat(items.get(0).getItem().getItem(), is(21));
+        assertThat(items.get(1).getItem().getItem(), is(22));
+        assertThat(items.get(2).getItem().getItem(), is(20));
+        assertThat(items.get(0).getAssocValue(), is(0.9));
+        assertThat(items.get(0).getItemAssocId(), is(2));
+        assertThat(items.get(0).getAssocType(), is(2));
+        assertThat(items.get(0).getItem().getTenant(), is(1));
+    }
+
+    @Test
+    public void getItemsTo_filtersByTypeAndLimitsResults() {
+        ItemAssocIndex index = new ItemAssocIndex();
+        ItemAssocIndex.Builder builder = index.builder(1, 2);
+
+        builder.add(10, 1, 20, 1, 0.5, 1);
+        builder.add(10, 1, 21, 1, 0.9, 2);
+        builder.add(10, 1, 22, 2, 0.7, 3);
+        index.put(builder.build());
+
+        ItemAssocIndex.Neighbourhoods neighbourhoods = index.get(1, 2);
+        ItemVO<Integer, Integer> itemFrom = new ItemVO<Integer, Integer>(1, 10, 1);
+
+        assertThat(neighbourhoods.getItemsTo(itemFrom, 2, null).size(), is(1));
+        assertThat(neighbourhoods.getItemsTo(itemFrom, 1, 1).size(), is(1));
+        assertThat(neighbourhoods.getItemsTo(itemFrom, 1, 1).get(0).getItem().getItem(), is(21));
+        assertThat(neighbourhoods.getItemsTo(new ItemVO<Integer, Integer>(1, 99, 1), null, null).isEmpty(),
+                is(true));
+    }
+
+    @Test
+    public void getItemsTo_keepsTopKPerTypeAndRejectsLargerRequests() {
+        ItemAssocIndex index = new ItemAssocIndex(2);
+        ItemAssocIndex.Builder builder = index.builder(1, 2);
+
+        builder.add(10, 1, 20, 1, 0.1, 1);
+        builder.add(10, 1, 21, 1, 0.2, 2);
+        builder.add(10, 1, 22, 1, 0.3, 3);
+        builder.add(10, 1, 23, 2, 0.05, 4);
+        index.put(builder.build());
+
+        ItemAssocIndex.Neighbourhoods neighbourhoods = index.get(1, 2);
+        ItemVO<Integer, Integer> itemFrom = new ItemVO<Integer, Integer>(1, 10, 1);
+
+        List<AssociatedItemVO<Integer, Integer>> items = neighbourhoods.getItemsTo(itemFrom, 1, 2);
+        assertThat(items.size(), is(2));
+        assertThat(items.get(0).getItem().getItem(), is(22));
+        assertThat(items.get(1).getItem().getItem(), is(21));
+
+        // type 2 was not truncated, so it can be answered completely
+        assertThat(neighbourhoods.getItemsTo(itemFrom, 2, 10).size(), is(1));
+        // type 1 was truncated, so more results than kept must be read from the database
+        assertThat(neighbourhoods.getItemsTo(itemFrom, 1, 3), is(nullValue()));
+        assertThat(neighbourhoods.getItemsTo(itemFrom, null, null), is(nullValue()));
+    }
+
+    @Test
+    public void put_replacesSnapshotOfTenantAndAssocType() {
+        ItemAssocIndex index = new ItemAssocIndex();
+        ItemAssocIndex.Builder builder = index.builder(1, 2);
+        builder.add(10, 1, 20, 1, 0.5, 1);
+        index.put(builder.build());
+
+        builder = index.builder(1, 2);
+        builder.add(11, 1, 20, 1, 0.5, 2);
+        index.put(builder.build());
+
+        assertThat(index.size(), is(1));
+        assertThat(index.get(1, 2).size(), is(1));
+        assertThat(index.get(1, 2).getItemsTo(new ItemVO<Integer, Integer>(1, 10, 1), null, null).isEmpty(),
+                is(true));
+        assertThat(index.get(1, 3), is(nullValue()));
+
+        index.remove(1, 2);
+
+        assertThat(index.get(1, 2), is(nullValue()));
+    }
+
+    @Test
+    public void invalidate_readsChangedItemsFromTheDatabase() {
+        ItemAssocIndex index = new ItemAssocIndex();
+        ItemAssocIndex.Builder builder = index.builder(1, 2);
+        builder.add(10, 1, 20, 1, 0.5, 1);
+        builder.add(11, 1, 20, 1, 0.5, 2);
+        index.put(builder.build());
+
+        index.invalidate(1, 2, 10, 1);
+        // an itemFrom without associations in the snapshot, e.g. a manually added rule
+        index.invalidate(1, 2, 12, 1);
+
+        ItemAssocIndex.Neighbourhoods neighbourhoods = index.get(1, 2);
+
+        assertThat(neighbourhoods.getItemsTo(new ItemVO<Integer, Integer>(1, 10, 1), null, null), is(nullValue()));
+        assertThat(neighbourhoods.getItemsTo(new ItemVO<Integer, Integer>(1, 12, 1), null, null), is(nullValue()));
+        assertThat(neighbourhoods.getItemsTo(new ItemVO<Integer, Integer>(1, 11, 1), null, null).size(), is(1));
+
+        index.invalidate(1, null);
+
+        assertThat(index.get(1, 2), is(nullValue()));
+    }
+
+    @Test
+    public void invalidate_appliesChangesMadeWhileLoading() {
+        ItemAssocIndex index = new ItemAssocIndex();
+        ItemAssocIndex.Builder builder = index.builder(1, 2);
+        builder.add(10, 1, 20, 1, 0.5, 1);
+        builder.add(11, 1, 20, 1, 0.5, 2);
+
+        index.invalidate(1, 2, 10, 1);
+        index.invalidate(1, 3, 11, 1);
+        index.put(builder.build());
+
+        ItemAssocIndex.Neighbourhoods neighbourhoods = index.get(1, 2);
+
+        assertThat(neighbourhoods.getItemsTo(new ItemVO<Integer, Integer>(1, 10, 1), null, null), is(nullValue()));
+        assertThat(neighbourhoods.getItemsTo(new ItemVO<Integer, Integer>(1, 11, 1), null, null).size(), is(1));
+
+        // the snapshot of a tenant that was changed as a whole while loading is dropped
+        builder = index.builder(1, 2);
+        builder.add(10, 1, 20, 1, 0.5, 1);
+
+        index.invalidate(null, 2);
+        index.put(builder.build());
+
+        assertThat(index.get(1, 2), is(nullValue()));
+        assertThat(index.size(), is(0));
+    }
+}
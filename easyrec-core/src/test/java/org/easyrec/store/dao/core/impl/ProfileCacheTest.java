@@ -0,0 +1,89 @@
+/*
+ * Copyright 2010 Research Studios Austria Forschungsgesellschaft mBH
+ *
+ * This file is part of easyrec.
+ *
+ * easyrec is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * easyrec is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with easyrec.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.easyrec.store.dao.core.impl;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.hamcrest.CoreMatchers.*;
+import static org.junit.Assert.assertThat;
+
+public class ProfileCacheTest {
+
+    @Test
+    public void getAll_returnsCachedProfilesAndMissingProfiles() {
+        ProfileCache cache = new ProfileCache(10000, 60);
+        Map<String, String> profiles = new HashMap<String, String>();
+        profiles.put("a", "<profile/>");
+        profiles.put("b", null);
+        cache.putAll(profiles, cache.getGeneration());
+
+        Map<String, String> cached = cache.getAll(Arrays.asList("a", "b", "c"));
+
+        assertThat(cached.size(), is(2));
+        assertThat(cached.get("a"), is("<profile/>"));
+        assertThat(cached.containsKey("b"), is(true));
+        assertThat(cached.get("b"), is(nullValue()));
+        assertThat(cached.containsKey("c"), is(false));
+    }
+
+    @Test
+    public void putAll_evictsLeastRecentlyUsedProfilesWhenFull() {
+        String profile = new String(new char[1000]);
+        // room for two profiles
+        ProfileCache cache = new ProfileCache(5000, 60);
+
+        cache.putAll(Collections.singletonMap("a", profile), cache.getGeneration());
+        cache.putAll(Collections.singletonMap("b", profile), cache.getGeneration());
+        cache.getAll(Arrays.asList("a"));
+        cache.putAll(Collections.singletonMap("c", profile), cache.getGeneration());
+
+        assertThat(cache.size(), is(2));
+        assertThat(cache.getBytes() <= cache.getMaxBytes(), is(true));
+        Map<String, String> cached = cache.getAll(Arrays.asList("a", "b", "c"));
+        assertThat(cached.containsKey("a"), is(true));
+        assertThat(cached.containsKey("b"), is(false));
+        assertThat(cached.containsKey("c"), is(true));
+    }
+
+    @Test
+    public void putAll_skipsProfilesLargerThanTheCache() {
+        ProfileCache cache = new ProfileCache(1000, 60);
+
+        cache.putAll(Collections.singletonMap("a", new String(new char[1000])), cache.getGeneration());
+
+        assertThat(cache.size(), is(0));
+        assertThat(cache.getBytes(), is(0L));
+    }
+
+    @Test
+    public void putAll_dropsProfilesLoadedBeforeARemoval() {
+        ProfileCache cache = new ProfileCache(10000, 60);
+        long generation = cache.getGeneration();
+
+        cache.remove("a");
+        cache.putAll(Collections.singletonMap("a", "<profile>old</profile>"), generation);
+
+        assertThat(cache.getAll(Arrays.asList("a")).isEmpty(), is(true));
+    }
+}
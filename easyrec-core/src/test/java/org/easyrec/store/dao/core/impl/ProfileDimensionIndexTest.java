@@ -0,0 +1,114 @@
+/*
+ * Copyright 2010 Research Studios Austria Forschungsgesellschaft mBH
+ *
+ * This file is part of easyrec.
+ *
+ * easyrec is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * easyrec is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with easyrec.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.easyrec.store.dao.core.impl;
+
+import org.easyrec.store.dao.core.impl.ProfileDimensionIndex.Dimension;
+import org.junit.Test;
+
+import javax.xml.stream.XMLStreamException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+public class ProfileDimensionIndexTest {
+
+    @Test
+    public void extract_indexesTheTextOfEveryElement() throws XMLStreamException {
+        List<Dimension> dimensions = new ArrayList<Dimension>(ProfileDimensionIndex.extract(
+                "<profile><name>item</name><genre>g1</genre><genre>g2</genre><genre>g1</genre>" +
+                        "<details><year> 2010 </year><empty>  </empty></details></profile>"));
+
+        assertThat(dimensions, is(Arrays.asList(
+                new Dimension("/profile/name", "item"),
+                new Dimension("/profile/genre", "g1"),
+                new Dimension("/profile/genre", "g2"),
+                new Dimension("/profile/details/year", " 2010 "))));
+    }
+
+    @Test
+    public void extract_skipsValuesThatDoNotFitTheTable() throws XMLStreamException {
+        String longValue = new String(new char[ProfileDimensionIndex.MAX_LENGTH + 1]).replace('\0', 'x');
+
+        assertThat(ProfileDimensionIndex.extract("<profile><a>" + longValue + "</a></profile>").isEmpty(), is(true));
+        assertThat(ProfileDimensionIndex.extract(null).isEmpty(), is(true));
+    }
+
+    @Test(expected = XMLStreamException.class)
+    public void extract_rejectsMalformedProfiles() throws XMLStreamException {
+        ProfileDimensionIndex.extract("<profile><a>1</profile>");
+    }
+
+    @Test
+    public void isIndexable_acceptsPlainElementPathsOnly() {
+        assertThat(ProfileDimensionIndex.isIndexable("/profile/genre", "rock"), is(true));
+        assertThat(ProfileDimensionIndex.isIndexable("/profile/genre[1]", "rock"), is(false));
+        assertThat(ProfileDimensionIndex.isIndexable("//genre", "rock"), is(false));
+        assertThat(ProfileDimensionIndex.isIndexable("/profile/@id", "1"), is(false));
+        assertThat(ProfileDimensionIndex.isIndexable("/profile/genre", null), is(false));
+    }
+
+    @Test
+    public void getItemIds_comparesValuesCaseInsensitive() {
+        ProfileDimensionIndex index = new ProfileDimensionIndex();
+        index.put(1, "ITEM", "a", 1, Arrays.asList(new Dimension("/profile/genre", "Rock")));
+        index.put(1, "ITEM", "b", 2, Arrays.asList(new Dimension("/profile/genre", "rock")));
+        index.put(2, "ITEM", "c", 3, Arrays.asList(new Dimension("/profile/genre", "rock")));
+
+        assertThat(index.getItemIds(1, "item", "/profile/genre", "ROCK"), is(Arrays.asList("a", "b")));
+        assertThat(index.getItemIds(1, "ITEM", "/profile/genre", "pop").isEmpty(), is(true));
+    }
+
+    @Test
+    public void getItemIds_comparesPathsCaseSensitiveLikeExtractValue() {
+        ProfileDimensionIndex index = new ProfileDimensionIndex();
+        index.put(1, "ITEM", "a", 1, Arrays.asList(new Dimension("/profile/Genre", "rock")));
+        index.put(1, "ITEM", "b", 2, Arrays.asList(new Dimension("/profile/genre", "rock")));
+
+        assertThat(index.getItemIds(1, "ITEM", "/profile/Genre", "rock"), is(Arrays.asList("a")));
+        assertThat(index.getItemIds(1, "ITEM", "/PROFILE/genre", "rock").isEmpty(), is(true));
+    }
+
+    @Test
+    public void getItemIds_returnsTheItemsInTheOrderOfTheItemTable() {
+        ProfileDimensionIndex index = new ProfileDimensionIndex();
+        index.put(1, "ITEM", "a", 7, Arrays.asList(new Dimension("/profile/genre", "rock")));
+        index.put(1, "ITEM", "c", 2, Arrays.asList(new Dimension("/profile/genre", "rock")));
+        index.put(1, "ITEM", "b", 5, Arrays.asList(new Dimension("/profile/genre", "rock")));
+
+        assertThat(index.getItemIds(1, "ITEM", "/profile/genre", "rock"), is(Arrays.asList("c", "b", "a")));
+    }
+
+    @Test
+    public void put_replacesTheValuesOfAnItem() {
+        ProfileDimensionIndex index = new ProfileDimensionIndex();
+        index.put(1, "ITEM", "Item1", 1, Arrays.asList(new Dimension("/profile/genre", "rock")));
+        index.put(1, "ITEM", "item1", 1, Arrays.asList(new Dimension("/profile/genre", "pop")));
+
+        assertThat(index.getItemIds(1, "ITEM", "/profile/genre", "rock").isEmpty(), is(true));
+        assertThat(index.getItemIds(1, "ITEM", "/profile/genre", "pop"), is(Arrays.asList("item1")));
+
+        index.put(1, "ITEM", "item1", null, Collections.<Dimension>emptyList());
+
+        assertThat(index.size(), is(0));
+    }
+}
@@ -0,0 +1,175 @@
+/*
+ * Copyright 2010 Research Studios Austria Forschungsgesellschaft mBH
+ *
+ * This file is part of easyrec.
+ *
+ * easyrec is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * easyrec is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with easyrec.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.easyrec.store.dao.impl;
+
+import org.junit.After;
+import org.junit.Test;
+
+import javax.sql.DataSource;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.CountDownLatch;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+public class IDMappingDAOMysqlImplTest {
+    private final CountDownLatch release = new CountDownLatch(1);
+    private final StubIDMappingDAO dao = new StubIDMappingDAO();
+
+    @After
+    public void tearDown() throws Exception {
+        release.countDown();
+        dao.destroy();
+    }
+
+    @Test
+    public void lookup_allocatesTheIdsInTheBatch() {
+        release.countDown();
+
+        assertThat(dao.lookup("item1"), is(1001));
+        assertThat(dao.lookup("item2"), is(1002));
+        assertThat(dao.singleAllocations, is(0));
+    }
+
+    @Test
+    public void lookup_allocatesTheIdItselfWhenTheBatchTakesTooLong() {
+        dao.setAllocationTimeout(50);
+
+        // the batch never finishes
+        assertThat(dao.lookup("item2"), is(2));
+        assertThat(dao.singleAllocations, is(1));
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void lookup_rejectsUnknownIdsAfterDestroy() throws Exception {
+        release.countDown();
+        dao.lookup("item1");
+        dao.destroy();
+
+        dao.lookup("item3");
+    }
+
+    @Test
+    public void allocate_insertsOnlyTheIdsWithoutMapping() throws Exception {
+        TableIDMappingDAO tableDAO = new TableIDMappingDAO();
+        tableDAO.table.put("item1", 1);
+        tableDAO.table.put("Item3", 3);
+
+        try {
+            Map<String, Integer> allocated = tableDAO.allocate(Arrays.asList("item1", "item2", "item3"));
+
+            assertThat(tableDAO.inserted, is(Arrays.asList("item2")));
+            assertThat(allocated.get("item1"), is(1));
+            assertThat(allocated.get("item2"), is(4));
+            assertThat(allocated.get("item3"), is(3));
+            assertThat(tableDAO.lookup("item2"), is(4));
+        } finally {
+            tableDAO.destroy();
+        }
+    }
+
+    private static DataSource unusedDataSource() {
+        return (DataSource) Proxy.newProxyInstance(DataSource.class.getClassLoader(),
+                new Class<?>[]{DataSource.class}, new InvocationHandler() {
+                    public Object invoke(Object proxy, Method method, Object[] args) {
+                        throw new UnsupportedOperationException(method.getName());
+                    }
+                });
+    }
+
+    // allocates "item<n>" as 1000 + n in the batch and as n when allocated directly
+    private class StubIDMappingDAO extends IDMappingDAOMysqlImpl {
+        private volatile int singleAllocations = 0;
+
+        StubIDMappingDAO() {
+            super(unusedDataSource(), null);
+        }
+
+        @Override
+        protected Map<String, Integer> allocate(List<String> stringIds) {
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                throw new IllegalStateException(e);
+            }
+
+            Map<String, Integer> result = new HashMap<String, Integer>();
+
+            for (String stringId : stringIds)
+                result.put(stringId, 1000 + id(stringId));
+
+            return result;
+        }
+
+        @Override
+        protected Integer allocateSingle(String stringId) {
+            singleAllocations++;
+
+            return id(stringId);
+        }
+
+        private int id(String stringId) {
+            return Integer.parseInt(stringId.substring("item".length()));
+        }
+    }
+
+    // keeps the mappings in a map that compares the String IDs case insensitive like MySQL
+    private static class TableIDMappingDAO extends IDMappingDAOMysqlImpl {
+        private final Map<String, Integer> table = new TreeMap<String, Integer>(String.CASE_INSENSITIVE_ORDER);
+        private final List<String> inserted = new ArrayList<String>();
+
+        TableIDMappingDAO() {
+            super(unusedDataSource(), null);
+        }
+
+        @Override
+        protected Map<String, Integer> selectMappings(List<String> stringIds) {
+            Map<String, Integer> result = new HashMap<String, Integer>();
+
+            for (Map.Entry<String, Integer> mapping : table.entrySet()) {
+                for (String stringId : stringIds)
+                    if (mapping.getKey().equalsIgnoreCase(stringId)) result.put(mapping.getKey(), mapping.getValue());
+            }
+
+            return result;
+        }
+
+        @Override
+        protected void insertMappings(List<String> stringIds) {
+            for (String stringId : stringIds) {
+                inserted.add(stringId);
+
+                if (!table.containsKey(stringId)) table.put(stringId, table.size() + 2);
+            }
+        }
+
+        @Override
+        protected Integer allocateSingle(String stringId) {
+            return table.get(stringId);
+        }
+    }
+}
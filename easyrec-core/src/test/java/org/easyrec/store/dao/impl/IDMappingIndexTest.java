@@ -0,0 +1,117 @@
+/*
+ * Copyright 2010 Research Studios Austria Forschungsgesellschaft mBH
+ *
+ * This file is part of easyrec.
+ *
+ * easyrec is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * easyrec is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with easyrec.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.easyrec.store.dao.impl;
+
+import org.junit.Test;
+
+import static org.hamcrest.CoreMatchers.*;
+import static org.junit.Assert.assertThat;
+
+public class IDMappingIndexTest {
+
+    @Test
+    public void put_mapsBothDirections() {
+        IDMappingIndex index = new IDMappingIndex();
+
+        index.put("test1", 1);
+        index.put("test2", 70000);
+
+        assertThat(index.get("test1"), is(1));
+        assertThat(index.get("test2"), is(70000));
+        assertThat(index.get(1), is("test1"));
+        assertThat(index.get(70000), is("test2"));
+        assertThat(index.size(), is(2));
+    }
+
+    @Test
+    public void get_unknownIdsReturnNull() {
+        IDMappingIndex index = new IDMappingIndex();
+
+        index.put("test1", 1);
+
+        assertThat(index.get("test2"), is(nullValue()));
+        assertThat(index.get(2), is(nullValue()));
+        assertThat(index.get(Integer.MAX_VALUE), is(nullValue()));
+        assertThat(index.get(-1), is(nullValue()));
+    }
+
+    @Test
+    public void putAlias_onlyMapsStringToInt() {
+        IDMappingIndex index = new IDMappingIndex();
+
+        index.put("Test1", 1);
+        index.putAlias("TEST1", 1);
+
+        assertThat(index.get("TEST1"), is(1));
+        assertThat(index.get(1), is("Test1"));
+    }
+
+    @Test
+    public void put_isConsistentUnderConcurrentWriters() throws InterruptedException {
+        final IDMappingIndex index = new IDMappingIndex();
+        Thread[] writers = new Thread[4];
+
+        for (int t = 0; t < writers.length; t++) {
+            writers[t] = new Thread() {
+                @Override
+                public void run() {
+                    for (int i = 0; i < 100000; i++)
+                        index.put("item" + i, i);
+                }
+            };
+            writers[t].start();
+        }
+        for (Thread writer : writers)
+            writer.join();
+
+        assertThat(index.size(), is(100000));
+        for (int i = 0; i < 100000; i++) {
+            assertThat(index.get("item" + i), is(i));
+            assertThat(index.get(i), is("item" + i));
+        }
+    }
+
+    @Test
+    public void put_doesNotIndexMoreThanMaxSizeStrings() {
+        IDMappingIndex index = new IDMappingIndex(4, 2);
+
+        index.put("test1", 1);
+        index.putAlias("TEST1", 1);
+        index.put("test2", 2);
+        index.put("test1", 1);
+
+        assertThat(index.size(), is(2));
+        assertThat(index.get("test1"), is(1));
+        assertThat(index.get("TEST1"), is(1));
+        assertThat(index.get("test2"), is(nullValue()));
+        assertThat(index.get(2), is(nullValue()));
+    }
+
+    @Test
+    public void clear_removesAllMappings() {
+        IDMappingIndex index = new IDMappingIndex();
+
+        index.put("test1", 1);
+        index.clear();
+
+        assertThat(index.get("test1"), is(nullValue()));
+        assertThat(index.get(1), is(nullValue()));
+        assertThat(index.size(), is(0));
+    }
+}
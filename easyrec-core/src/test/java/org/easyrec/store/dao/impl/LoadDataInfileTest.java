@@ -0,0 +1,98 @@
+/*
+ * Copyright 2010 Research Studios Austria Forschungsgesellschaft mBH
+ *
+ * This file is part of easyrec.
+ *
+ * easyrec is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * easyrec is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with easyrec.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.easyrec.store.dao.impl;
+
+import org.junit.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.hamcrest.CoreMatchers.*;
+import static org.junit.Assert.assertThat;
+
+public class LoadDataInfileTest {
+    private static final LoadDataInfile<int[]> LOAD_PAIRS = new LoadDataInfile<int[]>("pairs",
+            new LoadDataInfile.RowWriter<int[]>() {
+                public void write(Writer writer, int[] row) throws IOException {
+                    writer.append(Integer.toString(row[0])).append('\t');
+                    writer.append(Integer.toString(row[1])).append('\n');
+                }
+            }, "first", "second");
+
+    @Test
+    public void getSql_listsTheColumnsInOrder() {
+        assertThat(LOAD_PAIRS.getSql(), is("LOAD DATA LOCAL INFILE ? REPLACE INTO TABLE pairs (first, second)"));
+    }
+
+    @Test
+    public void load_writesTheRowsAndDeletesTheFile() {
+        FileReadingJdbcTemplate jdbcTemplate = new FileReadingJdbcTemplate();
+
+        int rows = LOAD_PAIRS.load(jdbcTemplate, Arrays.asList(new int[]{1, 2}, new int[]{3, 4}));
+
+        assertThat(rows, is(2));
+        assertThat(jdbcTemplate.sql, is(LOAD_PAIRS.getSql()));
+        assertThat(jdbcTemplate.lines, is(Arrays.asList("1\t2", "3\t4")));
+        assertThat(jdbcTemplate.file.exists(), is(false));
+    }
+
+    @Test
+    public void load_doesNotQueryWithoutRows() {
+        FileReadingJdbcTemplate jdbcTemplate = new FileReadingJdbcTemplate();
+
+        assertThat(LOAD_PAIRS.load(jdbcTemplate, Collections.<int[]>emptyList()), is(0));
+        assertThat(jdbcTemplate.sql, is(nullValue()));
+    }
+
+    // reads the file passed to the statement instead of running it
+    private static class FileReadingJdbcTemplate extends JdbcTemplate {
+        private String sql;
+        private File file;
+        private final List<String> lines = new ArrayList<String>();
+
+        @Override
+        public int update(String sql, Object[] args, int[] argTypes) {
+            this.sql = sql;
+            this.file = new File((String) args[0]);
+
+            try {
+                BufferedReader reader = new BufferedReader(new FileReader(file));
+
+                try {
+                    for (String line = reader.readLine(); line != null; line = reader.readLine())
+                        lines.add(line);
+                } finally {
+                    reader.close();
+                }
+            } catch (IOException e) {
+                throw new IllegalStateException(e);
+            }
+
+            return lines.size();
+        }
+    }
+}
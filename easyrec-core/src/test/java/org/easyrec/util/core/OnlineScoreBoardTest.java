@@ -0,0 +1,96 @@
+/*
+ * Copyright 2010 Research Studios Austria Forschungsgesellschaft mBH
+ *
+ * This file is part of easyrec.
+ *
+ * easyrec is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * easyrec is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with easyrec.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.easyrec.util.core;
+
+import org.easyrec.model.core.ItemVO;
+import org.easyrec.model.core.RecommendedItemVO;
+import org.junit.Test;
+
+import java.util.Collections;
+import java.util.List;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+public class OnlineScoreBoardTest {
+
+    @Test
+    public void getTopItems_sumsScoresAndReturnsBestFirst() {
+        OnlineScoreBoard scores = new OnlineScoreBoard(100, 0);
+
+        scores.add(item(1), 0.5, 10, "a");
+        scores.add(item(2), 0.4, 11, "b");
+        scores.add(item(2), 0.3, 12, "c");
+        scores.add(item(3), 0.1, 13, "d");
+
+        List<RecommendedItemVO<Integer, Integer>> top = scores.getTopItems(2, null);
+
+        assertThat(top.size(), is(2));
+        assertThat(top.get(0).getItem(), is(item(2)));
+        assertThat(top.get(0).getPredictionValue(), is(0.7));
+        // the strongest contribution explains the item
+        assertThat(top.get(0).getItemAssocId(), is(11));
+        assertThat(top.get(0).getExplanation(), is("b"));
+        assertThat(top.get(1).getItem(), is(item(1)));
+    }
+
+    @Test
+    public void getTopItems_skipsExcludedItems() {
+        OnlineScoreBoard scores = new OnlineScoreBoard(100, 0);
+
+        scores.add(item(1), 0.5, null, null);
+        scores.add(item(2), 0.4, null, null);
+
+        List<RecommendedItemVO<Integer, Integer>> top = scores.getTopItems(5, Collections.singleton(item(1)));
+
+        assertThat(top.size(), is(1));
+        assertThat(top.get(0).getItem(), is(item(2)));
+    }
+
+    @Test
+    public void add_dropsCandidatesBeyondMaximum() {
+        OnlineScoreBoard scores = new OnlineScoreBoard(2, 0);
+
+        assertThat(scores.add(item(1), 0.5, null, null), is(true));
+        assertThat(scores.add(item(2), 0.4, null, null), is(true));
+        assertThat(scores.add(item(3), 0.9, null, null), is(false));
+        // known candidates still accumulate
+        assertThat(scores.add(item(1), 0.5, null, null), is(true));
+
+        assertThat(scores.isFull(), is(true));
+        assertThat(scores.size(), is(2));
+        assertThat(scores.getDroppedScores(), is(1));
+        assertThat(scores.getTopItems(1, null).get(0).getPredictionValue(), is(1.0));
+    }
+
+    @Test
+    public void isExpired_onlyWithTimeBudget() throws Exception {
+        OnlineScoreBoard unlimited = new OnlineScoreBoard(10, 0);
+        OnlineScoreBoard limited = new OnlineScoreBoard(10, 1);
+
+        Thread.sleep(5);
+
+        assertThat(unlimited.isExpired(), is(false));
+        assertThat(limited.isExpired(), is(true));
+    }
+
+    private static ItemVO<Integer, Integer> item(int id) {
+        return new ItemVO<Integer, Integer>(1, id, 1);
+    }
+}
@@ -0,0 +1,101 @@
+/*
+ * Copyright 2010 Research Studios Austria Forschungsgesellschaft mBH
+ *
+ * This file is part of easyrec.
+ *
+ * easyrec is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * easyrec is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with easyrec.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.easyrec.util.core;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+
+public class ParallelBlocksTest {
+
+    @Test
+    public void run_consumesTheBlocksInOrder() {
+        final Random random = new Random(42);
+        final List<Integer> consumed = new ArrayList<Integer>();
+
+        ParallelBlocks.run("Test", 103, 10, 4, new ParallelBlocks.Calculation<int[]>() {
+            public int[] calculate(int start, int end) {
+                // blocks that take different times finish out of order
+                sleep(random.nextInt(5));
+
+                return new int[]{start, end};
+            }
+        }, new ParallelBlocks.Consumer<int[]>() {
+            public void consume(int start, int end, int[] result) {
+                assertThat(result[0], is(start));
+                assertThat(result[1], is(end));
+
+                for (int i = start; i < end; i++)
+                    consumed.add(i);
+            }
+        });
+
+        assertThat(consumed.size(), is(103));
+
+        for (int i = 0; i < consumed.size(); i++)
+            assertThat(consumed.get(i), is(i));
+    }
+
+    @Test
+    public void run_throwsTheExceptionOfACalculation() {
+        final List<Integer> consumed = new ArrayList<Integer>();
+
+        try {
+            ParallelBlocks.run("Test", 50, 10, 2, new ParallelBlocks.Calculation<Integer>() {
+                public Integer calculate(int start, int end) {
+                    if (start == 20) throw new IllegalArgumentException("block " + start);
+
+                    return start;
+                }
+            }, new ParallelBlocks.Consumer<Integer>() {
+                public void consume(int start, int end, Integer result) {
+                    consumed.add(result);
+                }
+            });
+
+            fail("the exception of the calculation was not thrown");
+        } catch (IllegalArgumentException e) {
+            assertThat(e.getMessage(), is("block 20"));
+        }
+
+        assertThat(consumed, is(Arrays.asList(0, 10)));
+    }
+
+    @Test
+    public void getBalancedBlockSize_givesEveryThreadSeveralBlocks() {
+        assertThat(ParallelBlocks.getBalancedBlockSize(1000, 5), is(50));
+        assertThat(ParallelBlocks.getBalancedBlockSize(3, 5), is(1));
+        assertThat(ParallelBlocks.getBalancedBlockSize(0, 5), is(1));
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
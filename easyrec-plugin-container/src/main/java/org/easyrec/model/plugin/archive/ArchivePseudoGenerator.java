@@ -21,6 +21,7 @@ package org.easyrec.model.plugin.archive;
 
 import org.easyrec.plugin.model.PluginId;
 import org.easyrec.plugin.support.GeneratorPluginSupport;
+import org.easyrec.store.dao.core.ActionDAO;
 import org.easyrec.store.dao.core.ArchiveDAO;
 
 import java.util.Date;
@@ -35,11 +36,19 @@ public class ArchivePseudoGenerator
     public static final PluginId ID = new PluginId("http://www.easyrec.org/internal/Archive", "0.96");
 
     private ArchiveDAO archiveDAO;
+    private ActionDAO actionDAO;
 
     public void setArchiveDAO(ArchiveDAO archiveDAO) {
         this.archiveDAO = archiveDAO;
     }
 
+    /**
+     * Optional, the ranking index of the action DAO is refreshed after actions have been archived.
+     */
+    public void setActionDAO(ActionDAO actionDAO) {
+        this.actionDAO = actionDAO;
+    }
+
     public ArchivePseudoGenerator() {
         super(DISPLAY_NAME, ID.getUri(), ID.getVersion(), ArchivePseudoConfiguration.class,
                 ArchivePseudoStatistics.class);
@@ -71,6 +80,15 @@ public class ArchivePseudoGenerator
             }
             // move actions to archive
             archiveDAO.moveActions(actualArchiveTableName, getConfiguration().getTenantId(), refDate);
+
+            if (actionDAO != null) {
+                try {
+                    actionDAO.refreshRankingIndex(getConfiguration().getTenantId());
+                } catch (Exception e) {
+                    logger.warn("could not refresh the action ranking index of tenant " +
+                            getConfiguration().getTenantId(), e);
+                }
+            }
         }
 
         stats.setReferenceDate(refDate);
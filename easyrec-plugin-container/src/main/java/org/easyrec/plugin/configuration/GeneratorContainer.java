@@ -4,22 +4,37 @@ import com.google.common.base.Preconditions;
 import com.google.common.base.Predicate;
 import com.google.common.base.Predicates;
 import com.google.common.collect.Lists;
+import com.jamonapi.Monitor;
+import com.jamonapi.MonitorFactory;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.easyrec.model.plugin.LogEntry;
 import org.easyrec.model.plugin.NamedConfiguration;
+import org.easyrec.model.plugin.archive.ArchivePseudoGenerator;
 import org.easyrec.plugin.container.PluginRegistry;
 import org.easyrec.plugin.generator.Generator;
 import org.easyrec.plugin.generator.GeneratorConfiguration;
 import org.easyrec.plugin.stats.GeneratorStatistics;
 import org.easyrec.plugin.stats.StatisticsConstants;
+import org.easyrec.store.dao.core.ItemAssocDAO;
 import org.easyrec.store.dao.core.types.AssocTypeDAO;
 import org.easyrec.store.dao.plugin.LogEntryDAO;
 import org.easyrec.store.dao.plugin.NamedConfigurationDAO;
+import org.springframework.context.ConfigurableApplicationContext;
 
 import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
 
 public class GeneratorContainer {
 
@@ -37,6 +52,52 @@ public class GeneratorContainer {
     private NamedConfigurationDAO namedConfigurationDAO;
     private LogEntryDAO logEntryDAO;
     private PluginRegistry registry;
+    // optional, used to refresh the item assoc serving index after a generator run
+    private ItemAssocDAO itemAssocDAO;
+    // number of generators of a tenant run at the same time, 1 runs them one after the other
+    private volatile int parallelGenerators = 1;
+    // the pools of the running runGeneratorsForTenant calls, shut down by destroy
+    private final Set<ExecutorService> generatorPools = new HashSet<ExecutorService>();
+    private boolean destroyed = false;
+    // the locks of the tenants' generators with a run in progress, by "tenant/plugin id"
+    private final Map<String, RunLock> runLocks = new HashMap<String, RunLock>();
+
+    public void setItemAssocDAO(ItemAssocDAO itemAssocDAO) {
+        this.itemAssocDAO = itemAssocDAO;
+    }
+
+    /**
+     * Sets the number of generators {@link #runGeneratorsForTenant(int, Predicate, boolean)} runs at the same time.
+     * Every call gets its own threads, so a run waiting for a generator used by another tenant does not hold up the
+     * runs of other tenants.
+     *
+     * @param parallelGenerators maximum number of concurrent generator runs of a tenant, 1 (the default) runs them
+     *                           sequentially
+     */
+    public void setParallelGenerators(int parallelGenerators) {
+        Preconditions.checkArgument(parallelGenerators > 0, "'parallelGenerators' must be positive");
+
+        this.parallelGenerators = parallelGenerators;
+    }
+
+    public int getParallelGenerators() {
+        return parallelGenerators;
+    }
+
+    /**
+     * Interrupts the parallel generator runs of {@link #runGeneratorsForTenant(int, Predicate, boolean)}, later
+     * parallel runs are rejected.
+     */
+    public void destroy() {
+        synchronized (generatorPools) {
+            destroyed = true;
+
+            for (ExecutorService pool : generatorPools)
+                pool.shutdownNow();
+
+            generatorPools.clear();
+        }
+    }
 
     public LogEntry runGenerator(NamedConfiguration namedConfiguration) {
         return runGenerator(namedConfiguration, Predicates.<GeneratorStatistics>alwaysTrue());
@@ -67,34 +128,25 @@ public class GeneratorContainer {
         Preconditions.checkNotNull(namedConfiguration.getPluginId());
         Preconditions.checkNotNull(writeLog);
 
-        Generator<GeneratorConfiguration, GeneratorStatistics> generator =
-                registry.getGenerators().get(namedConfiguration.getPluginId());
         GeneratorConfiguration configuration = namedConfiguration.getConfiguration();
 
         // is this needed? tenant should be set in the configuration stored in
         configuration.setTenantId(namedConfiguration.getTenantId());
-        generator.setConfiguration(configuration);
 
         LogEntry logEntry = new LogEntry(namedConfiguration.getTenantId(), namedConfiguration.getPluginId(), new Date(),
                 namedConfiguration.getAssocTypeId(), configuration);
         GeneratorStatistics statistics;
 
-        try {
-            if (!writeLogLast) logEntryDAO.startEntry(logEntry);
+        // the runs of a tenant's generator must not overlap
+        String runKey = namedConfiguration.getTenantId() + "/" + namedConfiguration.getPluginId();
+        RunLock runLock = lockRun(runKey);
 
-            //switch classloader to the generator's own classloader so its exclusive classes are visible
-            ClassLoader currentClassLoader = Thread.currentThread().getContextClassLoader();
-            ClassLoader generatorClassLoader = generator.getClass().getClassLoader();
-            Thread.currentThread().setContextClassLoader(generatorClassLoader);
-            statistics = generator.execute();
-            Thread.currentThread().setContextClassLoader(currentClassLoader);
-
-        } catch (Throwable e) {
-            logger.error(
-                    String.format("Running plugin %s with configuration \"%s\" for tenant %d with assocType %d failed",
-                            namedConfiguration.getPluginId(), namedConfiguration.getName(),
-                            namedConfiguration.getTenantId(), namedConfiguration.getAssocTypeId()), e);
-            statistics = new StatisticsConstants.ExecutionFailedStatistics(e);
+        try {
+            synchronized (runLock) {
+                statistics = execute(namedConfiguration, configuration, logEntry, writeLogLast);
+            }
+        } finally {
+            unlockRun(runKey, runLock);
         }
 
         boolean doWriteLog = writeLog.apply(statistics);
@@ -109,9 +161,80 @@ public class GeneratorContainer {
         } else if (!writeLogLast)
             logEntryDAO.deleteEntry(logEntry);
 
+        if (itemAssocDAO != null) {
+            try {
+                itemAssocDAO.refreshServingIndex(namedConfiguration.getTenantId(),
+                        namedConfiguration.getAssocTypeId());
+            } catch (Exception e) {
+                logger.warn(String.format("Refreshing the item assoc serving index for tenant %d with assocType %d " +
+                        "failed", namedConfiguration.getTenantId(), namedConfiguration.getAssocTypeId()), e);
+            }
+        }
+
         return logEntry;
     }
 
+    // runs the generator on an instance of its own if it is loaded from a plugin jar, the registry creates it for
+    // the run because plugins keep the state of a run in the generator and its beans, e.g. the ARM tuple counter
+    private GeneratorStatistics execute(NamedConfiguration namedConfiguration, GeneratorConfiguration configuration,
+                                        LogEntry logEntry, boolean writeLogLast) {
+        ConfigurableApplicationContext runContext = null;
+        //switch classloader to the generator's own classloader so its exclusive classes are visible
+        ClassLoader currentClassLoader = Thread.currentThread().getContextClassLoader();
+
+        try {
+            if (!writeLogLast) logEntryDAO.startEntry(logEntry);
+
+            runContext = registry.createGeneratorContext(namedConfiguration.getPluginId());
+
+            Generator<GeneratorConfiguration, GeneratorStatistics> generator = runContext != null ?
+                    PluginRegistry.getGenerator(runContext) :
+                    registry.getGenerators().get(namedConfiguration.getPluginId());
+
+            // the few generators shared by all tenants must not run for two tenants at the same time
+            synchronized (generator) {
+                generator.setConfiguration(configuration);
+
+                ClassLoader generatorClassLoader = generator.getClass().getClassLoader();
+                Thread.currentThread().setContextClassLoader(generatorClassLoader);
+
+                return generator.execute();
+            }
+        } catch (Throwable e) {
+            logger.error(String.format(
+                    "Running plugin %s with configuration \"%s\" for tenant %d with assocType %d failed",
+                    namedConfiguration.getPluginId(), namedConfiguration.getName(),
+                    namedConfiguration.getTenantId(), namedConfiguration.getAssocTypeId()), e);
+
+            return new StatisticsConstants.ExecutionFailedStatistics(e);
+        } finally {
+            Thread.currentThread().setContextClassLoader(currentClassLoader);
+            registry.closeGeneratorContext(runContext);
+        }
+    }
+
+    // the lock of the runs of a tenant's generator, it is kept only while a run uses it
+    private RunLock lockRun(String runKey) {
+        synchronized (runLocks) {
+            RunLock runLock = runLocks.get(runKey);
+
+            if (runLock == null) {
+                runLock = new RunLock();
+                runLocks.put(runKey, runLock);
+            }
+
+            runLock.users++;
+
+            return runLock;
+        }
+    }
+
+    private void unlockRun(String runKey, RunLock runLock) {
+        synchronized (runLocks) {
+            if (--runLock.users == 0) runLocks.remove(runKey);
+        }
+    }
+
     public List<LogEntry> runGeneratorsForTenant(int tenantId) {
         return runGeneratorsForTenant(tenantId, Predicates.<GeneratorStatistics>alwaysTrue());
     }
@@ -120,10 +243,16 @@ public class GeneratorContainer {
         return runGeneratorsForTenant(tenantId, writeLog, false);
     }
 
-    public List<LogEntry> runGeneratorsForTenant(int tenantId, Predicate<GeneratorStatistics> writeLog,
-                                                 boolean writeLogLast) {
+    /**
+     * Runs the active generator of each assoc type of a tenant. If {@link #setParallelGenerators(int)} is greater
+     * than 1 the generators run concurrently, after the archiving which changes the actions they read is done.
+     *
+     * @return the log entries of the runs, in the order of the tenant's assoc types
+     */
+    public List<LogEntry> runGeneratorsForTenant(int tenantId, final Predicate<GeneratorStatistics> writeLog,
+                                                 final boolean writeLogLast) {
         Map<String, Integer> assocTypes = assocTypeDAO.getMapping(tenantId);
-        List<LogEntry> result = Lists.newArrayList();
+        List<NamedConfiguration> namedConfigurations = Lists.newArrayList();
 
         for (Integer assocTypeId : assocTypes.values()) {
             NamedConfiguration namedConfiguration = namedConfigurationDAO.readActiveConfiguration(tenantId,
@@ -131,10 +260,111 @@ public class GeneratorContainer {
 
             if (namedConfiguration == null) continue;
 
-            result.add(runGenerator(namedConfiguration, writeLog, writeLogLast));
+            namedConfigurations.add(namedConfiguration);
+        }
+
+        ExecutorService pool = null;
+        Monitor monitor = MonitorFactory.start("GeneratorContainer.runGeneratorsForTenant");
+        List<LogEntry> result = Lists.newArrayList();
+
+        try {
+            if (parallelGenerators < 2 || namedConfigurations.size() < 2) {
+                for (NamedConfiguration namedConfiguration : namedConfigurations)
+                    result.add(runGenerator(namedConfiguration, writeLog, writeLogLast));
+
+                return result;
+            }
+
+            pool = startPool(tenantId, Math.min(parallelGenerators, namedConfigurations.size()));
+
+            LogEntry[] logEntries = new LogEntry[namedConfigurations.size()];
+            List<Future<LogEntry>> runs = Lists.newArrayList();
+
+            for (int i = 0; i < logEntries.length; i++) {
+                if (ArchivePseudoGenerator.ID.equals(namedConfigurations.get(i).getPluginId()))
+                    logEntries[i] = runGenerator(namedConfigurations.get(i), writeLog, writeLogLast);
+            }
+
+            for (int i = 0; i < logEntries.length; i++) {
+                final NamedConfiguration namedConfiguration = namedConfigurations.get(i);
+
+                runs.add(logEntries[i] != null ? null : pool.submit(new Callable<LogEntry>() {
+                    public LogEntry call() {
+                        return runGenerator(namedConfiguration, writeLog, writeLogLast);
+                    }
+                }));
+            }
+
+            for (int i = 0; i < logEntries.length; i++) {
+                if (runs.get(i) != null) logEntries[i] = await(runs.get(i));
+
+                result.add(logEntries[i]);
+            }
+
+            return result;
+        } finally {
+            if (pool != null) stopPool(pool);
+
+            monitor.stop();
+
+            if (logger.isInfoEnabled()) {
+                logger.info(String.format("Ran %d generator(s) for tenant %d in %d ms", result.size(), tenantId,
+                        (long) monitor.getLastValue()));
+            }
+        }
+    }
+
+    private ExecutorService startPool(final int tenantId, int threads) {
+        ExecutorService pool = Executors.newFixedThreadPool(threads, new ThreadFactory() {
+            private final AtomicInteger number = new AtomicInteger();
+
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable,
+                        "GeneratorContainer-" + tenantId + "-" + number.incrementAndGet());
+                thread.setDaemon(true);
+
+                return thread;
+            }
+        });
+
+        synchronized (generatorPools) {
+            if (destroyed) {
+                pool.shutdown();
+                throw new IllegalStateException("generator container was destroyed");
+            }
+
+            generatorPools.add(pool);
         }
 
-        return result;
+        return pool;
+    }
+
+    private void stopPool(ExecutorService pool) {
+        synchronized (generatorPools) {
+            generatorPools.remove(pool);
+        }
+
+        pool.shutdown();
+    }
+
+    private static LogEntry await(Future<LogEntry> run) {
+        try {
+            return run.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("interrupted while waiting for a generator run", e);
+        } catch (ExecutionException e) {
+            // runGenerator catches the generator's exceptions, only failures of the log or serving index remain
+            if (e.getCause() instanceof RuntimeException) throw (RuntimeException) e.getCause();
+            if (e.getCause() instanceof Error) throw (Error) e.getCause();
+
+            throw new IllegalStateException("generator run failed", e.getCause());
+        }
+    }
+
+    private static class RunLock {
+        // the runs holding or waiting for the lock
+        private int users = 0;
     }
 
     /*
@@ -42,6 +42,7 @@ import org.springframework.beans.BeansException;
 import org.springframework.beans.factory.config.AutowireCapableBeanFactory;
 import org.springframework.context.ApplicationContext;
 import org.springframework.context.ApplicationContextAware;
+import org.springframework.context.ConfigurableApplicationContext;
 import org.springframework.context.support.ClassPathXmlApplicationContext;
 import org.springframework.core.io.Resource;
 
@@ -277,6 +278,72 @@ public class PluginRegistry implements ApplicationContextAware {
         }
     }
 
+    /**
+     * Creates an instance of a generator loaded from a plugin jar for a single run, from a fresh copy of the plugin's
+     * context, so that runs for different tenants do not share the state of the generator and its beans. The
+     * registry is not locked while the context is created. The caller must pass the context to
+     * {@link #closeGeneratorContext(ConfigurableApplicationContext)} when the run is done.
+     *
+     * @return the context of the new instance, see {@link #getGenerator(ApplicationContext)}, or <code>null</code>
+     *         if the generator is shared by all tenants because it is not loaded from a plugin jar
+     */
+    public ConfigurableApplicationContext createGeneratorContext(PluginId pluginId) {
+        ClassPathXmlApplicationContext cax = contexts.get(pluginId);
+
+        if (cax == null) return null;
+
+        ClassPathXmlApplicationContext runCax =
+                new ClassPathXmlApplicationContext(new String[]{DEFAULT_PLUGIN_CONFIG_FILE}, false, appContext);
+        runCax.setClassLoader(cax.getClassLoader());
+
+        try {
+            runCax.refresh();
+
+            Generator<GeneratorConfiguration, GeneratorStatistics> generator = getGenerator(runCax);
+
+            runCax.getAutowireCapableBeanFactory()
+                    .autowireBeanProperties(generator, AutowireCapableBeanFactory.AUTOWIRE_BY_NAME, false);
+
+            if (generator.getConfiguration() == null) generator.setConfiguration(generator.newConfiguration());
+
+            // the plugin is installed already
+            generator.install(false);
+            generator.initialize();
+
+            return runCax;
+        } catch (RuntimeException e) {
+            runCax.close();
+
+            throw e;
+        }
+    }
+
+    /**
+     * Cleans up the generator of a context created by {@link #createGeneratorContext(PluginId)} and closes the
+     * context, <code>null</code> is ignored.
+     */
+    public void closeGeneratorContext(ConfigurableApplicationContext runCax) {
+        if (runCax == null) return;
+
+        try {
+            Generator<GeneratorConfiguration, GeneratorStatistics> generator = getGenerator(runCax);
+
+            if (LifecyclePhase.INITIALIZED.equals(generator.getLifecyclePhase())) generator.cleanup();
+        } catch (Exception e) {
+            logger.warn("could not clean up the instance of a generator run", e);
+        } finally {
+            runCax.close();
+        }
+    }
+
+    /**
+     * @return the generator of a plugin's context
+     */
+    @SuppressWarnings({"unchecked"})
+    public static Generator<GeneratorConfiguration, GeneratorStatistics> getGenerator(ApplicationContext cax) {
+        return cax.getBeansOfType(GeneratorPluginSupport.class).values().iterator().next();
+    }
+
     public void deactivatePlugin(URI pluginId, Version version) {
         PluginId key = new PluginId(pluginId, version);
         Generator<GeneratorConfiguration, GeneratorStatistics> generator = generators.get(key);
@@ -320,6 +387,8 @@ public class PluginRegistry implements ApplicationContextAware {
                 logger.info(String.format(
                         "Removed %d item assocs of source type %d for tenant %d because plugin is deactivating.",
                         removedRows, sourceTypeId, tenant.getId()));
+
+                itemAssocDAO.refreshServingIndex(tenant.getId(), null);
             }
         }
     }
@@ -0,0 +1,296 @@
+/*
+ * Copyright 2010 Research Studios Austria Forschungsgesellschaft mBH
+ *
+ * This file is part of easyrec.
+ *
+ * easyrec is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * easyrec is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with easyrec.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.easyrec.plugin.configuration;
+
+import com.google.common.base.Predicate;
+import org.easyrec.model.plugin.LogEntry;
+import org.easyrec.model.plugin.NamedConfiguration;
+import org.easyrec.model.plugin.archive.ArchivePseudoGenerator;
+import org.easyrec.plugin.Plugin.LifecyclePhase;
+import org.easyrec.plugin.container.PluginRegistry;
+import org.easyrec.plugin.generator.GeneratorConfiguration;
+import org.easyrec.plugin.model.PluginId;
+import org.easyrec.plugin.stats.GeneratorStatistics;
+import org.easyrec.plugin.stats.StatisticsConstants.ErrorStatistics;
+import org.easyrec.plugin.support.ExecutablePluginSupport.ExecutionControl;
+import org.easyrec.plugin.support.GeneratorPluginSupport;
+import org.easyrec.store.dao.core.types.AssocTypeDAO;
+import org.easyrec.store.dao.plugin.LogEntryDAO;
+import org.easyrec.store.dao.plugin.NamedConfigurationDAO;
+import org.junit.After;
+import org.junit.Test;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.context.support.GenericApplicationContext;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+public class GeneratorContainerTest {
+    private static final PluginId GENERATOR = new PluginId("http://www.easyrec.org/test/Generator", "1.0");
+
+    // tenant 1 has the assoc types 1 and 2, tenant 2 has 3 and 4, assoc type 1 of tenant 3 is the archive
+    private final Stub stub = new Stub();
+    private final List<String> runs = Collections.synchronizedList(new ArrayList<String>());
+    private final CountDownLatch tenant1Started = new CountDownLatch(2);
+    private final CountDownLatch releaseTenant1 = new CountDownLatch(1);
+    private final ExecutorService caller = Executors.newFixedThreadPool(2);
+
+    // runs of tenant 1 wait like runs of a generator that is busy with another tenant
+    private final GeneratorContainer container = new GeneratorContainer(
+            proxy(AssocTypeDAO.class, stub), proxy(NamedConfigurationDAO.class, stub), null, null) {
+        @Override
+        public LogEntry runGenerator(NamedConfiguration namedConfiguration,
+                                     Predicate<GeneratorStatistics> writeLog, boolean writeLogLast) {
+            runs.add(namedConfiguration.getTenantId() + "/" + namedConfiguration.getAssocTypeId());
+
+            if (namedConfiguration.getTenantId() == 1) {
+                tenant1Started.countDown();
+
+                try {
+                    releaseTenant1.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+
+            return new LogEntry(namedConfiguration.getTenantId(), namedConfiguration.getPluginId(), new Date(),
+                    namedConfiguration.getAssocTypeId(), null);
+        }
+    };
+
+    @After
+    public void tearDown() {
+        releaseTenant1.countDown();
+        caller.shutdownNow();
+        container.destroy();
+    }
+
+    @Test
+    public void runGeneratorsForTenant_doesNotWaitForTheRunsOfOtherTenants() throws Exception {
+        container.setParallelGenerators(2);
+
+        Future<List<LogEntry>> tenant1 = runGeneratorsForTenant(1);
+
+        assertThat(tenant1Started.await(5, TimeUnit.SECONDS), is(true));
+
+        // both runs of tenant 1 are waiting, tenant 2 still gets threads of its own
+        List<LogEntry> tenant2 = runGeneratorsForTenant(2).get(5, TimeUnit.SECONDS);
+
+        assertThat(assocTypes(tenant2), is(Arrays.asList(3, 4)));
+        assertThat(tenant1.isDone(), is(false));
+
+        releaseTenant1.countDown();
+
+        assertThat(assocTypes(tenant1.get(5, TimeUnit.SECONDS)), is(Arrays.asList(1, 2)));
+    }
+
+    @Test
+    public void runGeneratorsForTenant_runsTheArchiveBeforeTheOtherGenerators() {
+        container.setParallelGenerators(2);
+
+        List<LogEntry> logEntries = container.runGeneratorsForTenant(3);
+
+        assertThat(assocTypes(logEntries), is(Arrays.asList(1, 2, 3)));
+        assertThat(runs.get(0), is("3/1"));
+        assertThat(runs.size(), is(3));
+    }
+
+    @Test
+    public void runGeneratorsForTenant_runsTheGeneratorsOneAfterTheOtherByDefault() {
+        List<LogEntry> logEntries = container.runGeneratorsForTenant(3);
+
+        assertThat(assocTypes(logEntries), is(Arrays.asList(1, 2, 3)));
+        assertThat(runs, is(Arrays.asList("3/1", "3/2", "3/3")));
+    }
+
+    @Test
+    public void runGenerator_runsAPluginForOtherTenantsOnInstancesOfTheirOwn() throws Exception {
+        final BlockingRegistry registry = new BlockingRegistry();
+        final GeneratorContainer pluginContainer = new GeneratorContainer(null, null,
+                proxy(LogEntryDAO.class, new Ignore()), registry);
+        Future<LogEntry> tenant1 = caller.submit(new Callable<LogEntry>() {
+            public LogEntry call() {
+                return pluginContainer.runGenerator(registry.configuration(1));
+            }
+        });
+
+        assertThat(registry.tenant1Running.await(5, TimeUnit.SECONDS), is(true));
+
+        // the run of tenant 1 holds its instance, tenant 2 gets another one
+        LogEntry tenant2 = caller.submit(new Callable<LogEntry>() {
+            public LogEntry call() {
+                return pluginContainer.runGenerator(registry.configuration(2));
+            }
+        }).get(5, TimeUnit.SECONDS);
+
+        assertThat(tenant2.getStatistics() instanceof ErrorStatistics, is(false));
+        assertThat(tenant1.isDone(), is(false));
+
+        registry.releaseTenant1.countDown();
+
+        assertThat(tenant1.get(5, TimeUnit.SECONDS).getStatistics() instanceof ErrorStatistics, is(false));
+        assertThat(registry.runContexts.size(), is(2));
+
+        // the instances are cleaned up and closed after their run
+        for (ConfigurableApplicationContext context : registry.runContexts)
+            assertThat(context.isActive(), is(false));
+
+        for (BlockingGenerator generator : registry.runGenerators)
+            assertThat(generator.getLifecyclePhase(), is(LifecyclePhase.INSTALLED));
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void runGeneratorsForTenant_rejectsParallelRunsAfterDestroy() {
+        container.setParallelGenerators(2);
+        container.destroy();
+
+        container.runGeneratorsForTenant(2);
+    }
+
+    private Future<List<LogEntry>> runGeneratorsForTenant(final int tenantId) {
+        return caller.submit(new Callable<List<LogEntry>>() {
+            public List<LogEntry> call() {
+                return container.runGeneratorsForTenant(tenantId);
+            }
+        });
+    }
+
+    private static List<Integer> assocTypes(List<LogEntry> logEntries) {
+        List<Integer> assocTypes = new ArrayList<Integer>();
+
+        for (LogEntry logEntry : logEntries)
+            assocTypes.add(logEntry.getAssocTypeId());
+
+        return assocTypes;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> T proxy(Class<T> type, InvocationHandler handler) {
+        return (T) Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[]{type}, handler);
+    }
+
+    private static class Ignore implements InvocationHandler {
+        public Object invoke(Object proxy, Method method, Object[] args) {
+            return null;
+        }
+    }
+
+    // creates an instance of BlockingGenerator for every run
+    private static class BlockingRegistry extends PluginRegistry {
+        private final List<ConfigurableApplicationContext> runContexts =
+                Collections.synchronizedList(new ArrayList<ConfigurableApplicationContext>());
+        private final List<BlockingGenerator> runGenerators =
+                Collections.synchronizedList(new ArrayList<BlockingGenerator>());
+        private final CountDownLatch tenant1Running = new CountDownLatch(1);
+        private final CountDownLatch releaseTenant1 = new CountDownLatch(1);
+
+        private BlockingRegistry() {
+            super(null, null, null, null, null, null);
+        }
+
+        @Override
+        public ConfigurableApplicationContext createGeneratorContext(PluginId pluginId) {
+            GenericApplicationContext context = new GenericApplicationContext();
+            BlockingGenerator generator = new BlockingGenerator(tenant1Running, releaseTenant1);
+
+            context.getBeanFactory().registerSingleton("generator", generator);
+            context.refresh();
+            generator.install(false);
+            generator.initialize();
+            runContexts.add(context);
+            runGenerators.add(generator);
+
+            return context;
+        }
+
+        private NamedConfiguration configuration(int tenantId) {
+            return new NamedConfiguration(tenantId, 1, GENERATOR, "default", new GeneratorConfiguration(), true);
+        }
+    }
+
+    // runs of tenant 1 wait until they are released
+    private static class BlockingGenerator extends GeneratorPluginSupport<GeneratorConfiguration, GeneratorStatistics> {
+        private final CountDownLatch tenant1Running;
+        private final CountDownLatch releaseTenant1;
+
+        private BlockingGenerator(CountDownLatch tenant1Running, CountDownLatch releaseTenant1) {
+            super("Blocking", GENERATOR.getUri(), GENERATOR.getVersion(), GeneratorConfiguration.class,
+                    GeneratorStatistics.class);
+
+            this.tenant1Running = tenant1Running;
+            this.releaseTenant1 = releaseTenant1;
+        }
+
+        public String getPluginDescription() {
+            return "";
+        }
+
+        @Override
+        protected void doExecute(ExecutionControl control, GeneratorStatistics stats) throws Exception {
+            if (getConfiguration().getTenantId() != 1) return;
+
+            tenant1Running.countDown();
+
+            if (!releaseTenant1.await(5, TimeUnit.SECONDS)) throw new IllegalStateException("not released");
+        }
+    }
+
+    // answers getMapping and readActiveConfiguration for the tenants of the test
+    private static class Stub implements InvocationHandler {
+        public Object invoke(Object proxy, Method method, Object[] args) {
+            int tenantId = (Integer) args[0];
+
+            if (method.getName().equals("getMapping")) {
+                LinkedHashMap<String, Integer> mapping = new LinkedHashMap<String, Integer>();
+                int first = tenantId == 2 ? 3 : 1;
+                int count = tenantId == 3 ? 3 : 2;
+
+                for (int assocTypeId = first; assocTypeId < first + count; assocTypeId++)
+                    mapping.put("ASSOC" + assocTypeId, assocTypeId);
+
+                return mapping;
+            }
+
+            if (method.getName().equals("readActiveConfiguration")) {
+                int assocTypeId = (Integer) args[1];
+                PluginId pluginId = tenantId == 3 && assocTypeId == 1 ? ArchivePseudoGenerator.ID : GENERATOR;
+
+                return new NamedConfiguration(tenantId, assocTypeId, pluginId, "default", null, true);
+            }
+
+            throw new UnsupportedOperationException(method.getName());
+        }
+    }
+}
@@ -91,7 +91,7 @@ public class ARMGenerator extends GeneratorPluginSupport<ARMConfiguration, ARMSt
 
             if (control.isAbortRequested()) throw new Exception("ARM was manually aborted!");
             control.updateProgress(4, 6, "Defining set L2.");
-            List<TupleVO> L2 = assocRuleMiningService.defineL2(L1, tupleCounter, intConfiguration, stats);
+            Collection<TupleVO> L2 = assocRuleMiningService.defineL2(L1, tupleCounter, intConfiguration, stats);
             stats.setSizeL2(L2.size());
 
             if (control.isAbortRequested()) throw new Exception("ARM was manually aborted!");
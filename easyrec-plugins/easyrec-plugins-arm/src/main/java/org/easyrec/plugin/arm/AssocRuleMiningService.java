@@ -66,15 +66,15 @@ public interface AssocRuleMiningService {
 
     public TObjectIntHashMap<ItemVO<Integer, Integer>> defineL1(ARMConfigurationInt configuration);
 
-    public List<TupleVO> defineL2(TObjectIntHashMap<ItemVO<Integer, Integer>> L1, TupleCounter tupleCounter, ARMConfigurationInt configuration, ARMStatistics stats);
+    public Collection<TupleVO> defineL2(TObjectIntHashMap<ItemVO<Integer, Integer>> L1, TupleCounter tupleCounter, ARMConfigurationInt configuration, ARMStatistics stats);
 
-    public List<ItemAssocVO<Integer,Integer>> createRules(List<TupleVO> tuples,
+    public List<ItemAssocVO<Integer,Integer>> createRules(Collection<TupleVO> tuples,
                                                                                                 TObjectIntHashMap<ItemVO<Integer, Integer>> L1,
                                                                                                 ARMConfigurationInt configuration,
                                                                                                 ARMStatistics stats,
                                                                                                 Double minConfidence);
     
-    public Collection<SortedSet<ItemAssocVO<Integer,Integer>>> createBestRules(List<TupleVO> tuples,
+    public Collection<SortedSet<ItemAssocVO<Integer,Integer>>> createBestRules(Collection<TupleVO> tuples,
                                                                                                 TObjectIntHashMap<ItemVO<Integer, Integer>> L1,
                                                                                                 ARMConfigurationInt configuration,
                                                                                                 ARMStatistics stats,
@@ -17,7 +17,7 @@
  */
 package org.easyrec.plugin.arm;
 
-import java.util.ArrayList;
+import java.util.Collection;
 import org.easyrec.model.core.ItemVO;
 
 import org.easyrec.plugin.arm.model.TupleVO;
@@ -28,7 +28,7 @@ public interface TupleCounter {
 
     public void init();
 
-    public ArrayList<TupleVO> getTuples(int support) throws Exception;
+    public Collection<TupleVO> getTuples(int support) throws Exception;
 
     public int size() throws Exception;
 
@@ -155,7 +155,7 @@ public class AssocRuleMiningServiceImpl implements AssocRuleMiningService {
         return ruleminingActionDAO.defineL1(configuration);
     }
 
-    public List<TupleVO> defineL2(TObjectIntHashMap<ItemVO<Integer, Integer>> L1, TupleCounter tupleCounter, ARMConfigurationInt configuration, ARMStatistics stats) {
+    public Collection<TupleVO> defineL2(TObjectIntHashMap<ItemVO<Integer, Integer>> L1, TupleCounter tupleCounter, ARMConfigurationInt configuration, ARMStatistics stats) {
 
         return ruleminingActionDAO.defineL2(L1, tupleCounter, configuration, stats);
     }
@@ -237,7 +237,7 @@ public class AssocRuleMiningServiceImpl implements AssocRuleMiningService {
      * @param minConfidence minConfidence
      * @return Vector
      */
-    public List<ItemAssocVO<Integer, Integer>> createRules(List<TupleVO> tuples,
+    public List<ItemAssocVO<Integer, Integer>> createRules(Collection<TupleVO> tuples,
                                                            TObjectIntHashMap<ItemVO<Integer, Integer>> L1,
                                                            ARMConfigurationInt configuration,
                                                            ARMStatistics stats,
@@ -347,7 +347,7 @@ public class AssocRuleMiningServiceImpl implements AssocRuleMiningService {
     }
 
     public Collection<SortedSet<ItemAssocVO<Integer, Integer>>> createBestRules(
-            List<TupleVO> tuples,
+            Collection<TupleVO> tuples,
             TObjectIntHashMap<ItemVO<Integer, Integer>> L1,
             ARMConfigurationInt configuration,
             ARMStatistics stats,
@@ -0,0 +1,248 @@
+/*
+ * Copyright 2010 Research Studios Austria Forschungsgesellschaft mBH
+ *
+ * This file is part of easyrec.
+ *
+ * easyrec is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * easyrec is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with easyrec.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.easyrec.plugin.arm.impl;
+
+import gnu.trove.map.hash.TObjectIntHashMap;
+import org.easyrec.model.core.ItemVO;
+import org.easyrec.plugin.arm.TupleCounter;
+import org.easyrec.plugin.arm.model.TupleVO;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.LongBuffer;
+import java.util.AbstractCollection;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/**
+ * Counts the tuples in an open addressing table of primitive longs and ints.
+ * <p/>
+ * Every item gets a dense index when it is counted first, a tuple is stored as the packed long
+ * <code>indexA &lt;&lt; 32 | indexB</code> (with <code>indexA &lt; indexB</code>) next to its int count. A tuple takes
+ * 12 bytes of the table instead of the map entry and the two boxed <code>ItemVO</code> of
+ * {@link TupleCounterMemoryTroveImpl}. With <code>offHeap</code> the table is allocated in direct buffers outside the
+ * java heap, the JVM's <code>-XX:MaxDirectMemorySize</code> limits its size then.
+ * <p/>
+ * {@link #getTuples(int)} doesn't copy the tuples but returns a view that creates them while it is iterated, the view
+ * is valid until the counter is initialized again.
+ */
+public class TupleCounterMemoryPackedImpl implements TupleCounter {
+
+    static final int INITIAL_CAPACITY = 1 << 12;
+    // the largest table whose longs still fit into a single buffer
+    static final int MAXIMUM_CAPACITY = 1 << 27;
+    private static final float LOAD_FACTOR = 0.7f;
+    // 0 is never a tuple as indexA < indexB
+    private static final long FREE = 0L;
+
+    private boolean offHeap = false;
+
+    private TObjectIntHashMap<ItemVO<Integer, Integer>> itemIndexes;
+    private List<ItemVO<Integer, Integer>> items;
+    private LongBuffer tuples;
+    private IntBuffer counts;
+    private int size;
+    private int threshold;
+
+    public TupleCounterMemoryPackedImpl() {
+        init();
+    }
+
+    public void init() {
+        itemIndexes = new TObjectIntHashMap<ItemVO<Integer, Integer>>();
+        items = new ArrayList<ItemVO<Integer, Integer>>();
+        allocate(INITIAL_CAPACITY);
+    }
+
+    public void count(ItemVO<Integer, Integer> item1, ItemVO<Integer, Integer> item2) throws Exception {
+        int index1 = indexOf(item1);
+        int index2 = indexOf(item2);
+
+        if (index1 == index2) return;
+
+        long tuple = index1 < index2 ? pack(index1, index2) : pack(index2, index1);
+        int slot = slotOf(tuple, tuples.capacity());
+
+        while (true) {
+            long current = tuples.get(slot);
+
+            if (current == tuple) {
+                counts.put(slot, counts.get(slot) + 1);
+                return;
+            }
+
+            if (current == FREE) break;
+
+            slot = (slot + 1) & (tuples.capacity() - 1);
+        }
+
+        tuples.put(slot, tuple);
+        counts.put(slot, 1);
+
+        if (++size > threshold) grow();
+    }
+
+    public Collection<TupleVO> getTuples(final int support) throws Exception {
+        return new AbstractCollection<TupleVO>() {
+            private int size = -1;
+
+            @Override
+            public Iterator<TupleVO> iterator() {
+                return new TupleIterator(support);
+            }
+
+            @Override
+            public int size() {
+                if (size < 0) {
+                    size = 0;
+
+                    for (int slot = 0; slot < tuples.capacity(); slot++) {
+                        if (tuples.get(slot) != FREE && counts.get(slot) >= support) size++;
+                    }
+                }
+
+                return size;
+            }
+        };
+    }
+
+    public int size() throws Exception {
+        return size;
+    }
+
+    public boolean isOffHeap() {
+        return offHeap;
+    }
+
+    /**
+     * @param offHeap allocate the table in direct buffers outside the java heap, takes effect on the next
+     *                {@link #init()}
+     */
+    public void setOffHeap(boolean offHeap) {
+        this.offHeap = offHeap;
+    }
+
+    int getCapacity() {
+        return tuples.capacity();
+    }
+
+    private int indexOf(ItemVO<Integer, Integer> item) {
+        if (itemIndexes.containsKey(item)) return itemIndexes.get(item);
+
+        int index = items.size();
+        itemIndexes.put(item, index);
+        items.add(item);
+
+        return index;
+    }
+
+    private static long pack(int lowerIndex, int higherIndex) {
+        return ((long) lowerIndex << 32) | higherIndex;
+    }
+
+    private static int slotOf(long tuple, int capacity) {
+        // fibonacci hashing spreads the consecutive indexes over the table
+        return (int) ((tuple * 0x9E3779B97F4A7C15L) >>> 33) & (capacity - 1);
+    }
+
+    private void allocate(int capacity) {
+        if (offHeap) {
+            tuples = ByteBuffer.allocateDirect(capacity * 8).order(ByteOrder.nativeOrder()).asLongBuffer();
+            counts = ByteBuffer.allocateDirect(capacity * 4).order(ByteOrder.nativeOrder()).asIntBuffer();
+        } else {
+            tuples = LongBuffer.allocate(capacity);
+            counts = IntBuffer.allocate(capacity);
+        }
+
+        size = 0;
+        threshold = capacity < MAXIMUM_CAPACITY ? (int) (capacity * LOAD_FACTOR) : capacity - 1;
+    }
+
+    private void grow() {
+        if (tuples.capacity() == MAXIMUM_CAPACITY)
+            throw new IllegalStateException("more than " + threshold + " tuples can't be counted");
+
+        LongBuffer oldTuples = tuples;
+        IntBuffer oldCounts = counts;
+        int oldSize = size;
+
+        allocate(oldTuples.capacity() * 2);
+
+        int mask = tuples.capacity() - 1;
+
+        for (int oldSlot = 0; oldSlot < oldTuples.capacity(); oldSlot++) {
+            long tuple = oldTuples.get(oldSlot);
+
+            if (tuple == FREE) continue;
+
+            int slot = slotOf(tuple, tuples.capacity());
+
+            while (tuples.get(slot) != FREE) {
+                slot = (slot + 1) & mask;
+            }
+
+            tuples.put(slot, tuple);
+            counts.put(slot, oldCounts.get(oldSlot));
+        }
+
+        size = oldSize;
+    }
+
+    private class TupleIterator implements Iterator<TupleVO> {
+        private final int support;
+        private final LongBuffer tuples = TupleCounterMemoryPackedImpl.this.tuples;
+        private final IntBuffer counts = TupleCounterMemoryPackedImpl.this.counts;
+        private int slot = -1;
+
+        private TupleIterator(int support) {
+            this.support = support;
+            advance();
+        }
+
+        public boolean hasNext() {
+            return slot < tuples.capacity();
+        }
+
+        public TupleVO next() {
+            if (!hasNext()) throw new NoSuchElementException("no tuple to return");
+
+            long tuple = tuples.get(slot);
+            TupleVO result = new TupleVO(items.get((int) (tuple >>> 32)), items.get((int) tuple),
+                    counts.get(slot));
+
+            advance();
+
+            return result;
+        }
+
+        public void remove() {
+            throw new UnsupportedOperationException("This iterator does not support removal");
+        }
+
+        private void advance() {
+            do {
+                slot++;
+            } while (slot < tuples.capacity() && (tuples.get(slot) == FREE || counts.get(slot) < support));
+        }
+    }
+}
@@ -20,6 +20,7 @@ package org.easyrec.plugin.arm.store.dao;
 import gnu.trove.map.hash.TObjectIntHashMap;
 import org.easyrec.model.core.ItemVO;
 
+import java.util.Collection;
 import java.util.HashMap;
 import java.util.List;
 import org.easyrec.plugin.arm.TupleCounter;
@@ -52,7 +53,7 @@ public interface RuleminingActionDAO {
 
     public TObjectIntHashMap<ItemVO<Integer, Integer>> defineL1(ARMConfigurationInt configuration);
 
-   public List<TupleVO> defineL2(TObjectIntHashMap<ItemVO<Integer, Integer>> L1,
+   public Collection<TupleVO> defineL2(TObjectIntHashMap<ItemVO<Integer, Integer>> L1,
                                   TupleCounter tupleCounter,
                                   ARMConfigurationInt configuration,
                                   ARMStatistics stats);
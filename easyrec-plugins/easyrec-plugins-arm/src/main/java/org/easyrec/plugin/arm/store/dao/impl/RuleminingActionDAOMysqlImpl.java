@@ -26,8 +26,9 @@ import org.apache.commons.logging.LogFactory;
 import org.easyrec.model.core.ItemVO;
 import org.easyrec.store.dao.BaseActionDAO;
 import org.easyrec.utils.spring.store.dao.annotation.DAO;
+import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.jdbc.core.ResultSetExtractor;
-import org.springframework.jdbc.core.RowMapper;
+import org.springframework.jdbc.core.RowCallbackHandler;
 import org.springframework.jdbc.core.support.JdbcDaoSupport;
 
 import javax.sql.DataSource;
@@ -36,7 +37,10 @@ import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Types;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
 import org.easyrec.plugin.arm.TupleCounter;
 import org.easyrec.plugin.arm.model.ARMConfigurationInt;
 import org.easyrec.plugin.arm.model.ARMStatistics;
@@ -269,33 +273,29 @@ public class RuleminingActionDAOMysqlImpl extends JdbcDaoSupport implements Rule
         return ret;
     }
 
-    public List<TupleVO> defineL2(TObjectIntHashMap<ItemVO<Integer, Integer>> L1,
-                                  TupleCounter tupleCounter,
+    public Collection<TupleVO> defineL2(final TObjectIntHashMap<ItemVO<Integer, Integer>> L1,
+                                  final TupleCounter tupleCounter,
                                   ARMConfigurationInt configuration,
                                   ARMStatistics stats) {
 
-        List<TupleVO> ret = null;
+        Collection<TupleVO> ret = null;
 
         List<Object> args = Lists.newArrayList();
         List<Integer> argt = Lists.newArrayList();
 
-        RowMapper<ItemVO<Integer, Integer>> itemVOMapper = new RowMapper<ItemVO<Integer, Integer>>() {
-            public ItemVO<Integer, Integer> mapRow(ResultSet rs, int rowNum) throws SQLException {
-                return new ItemVO<Integer, Integer>(rs.getInt(BaseActionDAO.DEFAULT_TENANT_COLUMN_NAME),
-                        rs.getInt(BaseActionDAO.DEFAULT_ITEM_COLUMN_NAME),
-                        rs.getInt(BaseActionDAO.DEFAULT_ITEM_TYPE_COLUMN_NAME));
-            }
-        };
-
         try {
-            // get all Baskets with at least 2 items
+            // scan the actions once ordered by basket, the baskets are built while the rows are streamed
             StringBuilder query = new StringBuilder();
-            query.append("SELECT ").append(BaseActionDAO.DEFAULT_USER_COLUMN_NAME);
+            query.append("SELECT ").append(BaseActionDAO.DEFAULT_USER_COLUMN_NAME).append(", ");
+            query.append(BaseActionDAO.DEFAULT_ITEM_COLUMN_NAME).append(", ");
+            query.append(BaseActionDAO.DEFAULT_ITEM_TYPE_COLUMN_NAME).append(", ");
+            query.append(BaseActionDAO.DEFAULT_TENANT_COLUMN_NAME);
             query.append(" FROM ").append(BaseActionDAO.DEFAULT_TABLE_NAME);
             query.append(" WHERE ").append(BaseActionDAO.DEFAULT_TENANT_COLUMN_NAME).append("=")
                     .append(configuration.getTenantId());
             query.append(" AND ").append(BaseActionDAO.DEFAULT_ACTION_TYPE_COLUMN_NAME).append("=")
                     .append(configuration.getActionType());
+            query.append(" AND ").append(BaseActionDAO.DEFAULT_USER_COLUMN_NAME).append(" IS NOT NULL");
 
             if (configuration.getRatingNeutral() != null) {
                 query.append(" AND ").append(BaseActionDAO.DEFAULT_RATING_VALUE_COLUMN_NAME).append(">")
@@ -316,73 +316,77 @@ public class RuleminingActionDAOMysqlImpl extends JdbcDaoSupport implements Rule
                     }
                 }
             }
-            query.append(" GROUP BY ").append(BaseActionDAO.DEFAULT_USER_COLUMN_NAME);
-            query.append(" HAVING count(*)>=2");
-
-            List<Integer> baskets = getJdbcTemplate().queryForList(query.toString(), args.toArray(),
-                    Ints.toArray(argt), Integer.class);
-
-            for (Integer basket : baskets) {
-                StringBuilder query2 = new StringBuilder();
-                query2.append("SELECT DISTINCT ");
-                query2.append(BaseActionDAO.DEFAULT_ITEM_COLUMN_NAME).append(", ");
-                query2.append(BaseActionDAO.DEFAULT_ITEM_TYPE_COLUMN_NAME).append(", ");
-                query2.append(BaseActionDAO.DEFAULT_TENANT_COLUMN_NAME);
-                query2.append(" FROM ").append(BaseActionDAO.DEFAULT_TABLE_NAME);
-                query2.append(" WHERE ").append(BaseActionDAO.DEFAULT_USER_COLUMN_NAME).append("=").append(basket);
-                query2.append(" AND ").append(BaseActionDAO.DEFAULT_TENANT_COLUMN_NAME).append("=")
-                        .append(configuration.getTenantId());
-                query2.append(" AND ").append(BaseActionDAO.DEFAULT_ACTION_TYPE_COLUMN_NAME).append("=")
-                        .append(configuration.getActionType());
-
-                if (configuration.getRatingNeutral() != null) {
-                    query2.append(" AND ").append(BaseActionDAO.DEFAULT_RATING_VALUE_COLUMN_NAME).append(">")
-                            .append(configuration.getRatingNeutral());
-                }
+            query.append(" ORDER BY ").append(BaseActionDAO.DEFAULT_USER_COLUMN_NAME);
 
-                if (!configuration.getItemTypes().isEmpty()) {
-                    query2.append(" AND ").append(BaseActionDAO.DEFAULT_ITEM_TYPE_COLUMN_NAME).append(" IN (");
+            BasketCallbackHandler basketHandler = new BasketCallbackHandler(L1, tupleCounter);
 
-                    for (int i = 0; i < configuration.getItemTypes().size(); i++) {
-                        query2.append(configuration.getItemTypes().get(i));
-                        if (i < configuration.getItemTypes().size() - 1) {
-                            query2.append(",");
-                        } else {
-                            query2.append(")");
-                        }
-                    }
-                }
+            // stream the actions instead of loading all of them into memory
+            JdbcTemplate streamingTemplate = new JdbcTemplate(getDataSource());
+            streamingTemplate.setFetchSize(Integer.MIN_VALUE);
+            streamingTemplate.query(query.toString(), args.toArray(), Ints.toArray(argt), basketHandler);
+            basketHandler.countBasket();
 
-                List<ItemVO<Integer, Integer>> items = getJdbcTemplate()
-                        .query(query2.toString(), itemVOMapper);
+            stats.setSizeCountMap(tupleCounter.size());
+            ret = tupleCounter.getTuples(configuration.getSupport());
 
-                ArrayList<ItemVO<Integer, Integer>> v = new ArrayList<ItemVO<Integer, Integer>>();
+        } catch (Exception e) {
+            logger.error(e);
+        }
 
-                for (ItemVO<Integer, Integer> itemVO : items) {
-                    if (!L1.containsKey(itemVO)) {
-                        continue;
-                    }
-                    v.add(itemVO);
-                }
+        return ret;
+    }
 
-                if (v.size() <= 1) {
-                    continue;
-                }
-                for (int i = 0; i < v.size() - 1; i++) {
-                    for (int j = i + 1; j < v.size(); j++) {
-                        tupleCounter.count(v.get(i), v.get(j));
-                    }
+    /**
+     * Collects the distinct L1 items of the basket of consecutive rows with the same user and counts their pairs
+     * when the next basket starts.
+     */
+    static class BasketCallbackHandler implements RowCallbackHandler {
+
+        private final TObjectIntHashMap<ItemVO<Integer, Integer>> L1;
+        private final TupleCounter tupleCounter;
+        private final List<ItemVO<Integer, Integer>> basket = new ArrayList<ItemVO<Integer, Integer>>();
+        private final Set<ItemVO<Integer, Integer>> basketItems = new HashSet<ItemVO<Integer, Integer>>();
+        // the user of the current basket, null before the first basket
+        private Integer userId;
+
+        BasketCallbackHandler(TObjectIntHashMap<ItemVO<Integer, Integer>> L1, TupleCounter tupleCounter) {
+            this.L1 = L1;
+            this.tupleCounter = tupleCounter;
+        }
+
+        public void processRow(ResultSet rs) throws SQLException {
+            int rowUserId = rs.getInt(BaseActionDAO.DEFAULT_USER_COLUMN_NAME);
+
+            // actions without a user belong to no basket
+            if (rs.wasNull()) return;
+
+            if (userId == null || rowUserId != userId) {
+                try {
+                    countBasket();
+                } catch (Exception e) {
+                    throw new SQLException("counting the tuples of basket " + userId + " failed", e);
                 }
+                userId = rowUserId;
             }
 
-            stats.setSizeCountMap(tupleCounter.size());
-            ret = tupleCounter.getTuples(configuration.getSupport());
+            ItemVO<Integer, Integer> itemVO = new ItemVO<Integer, Integer>(
+                    rs.getInt(BaseActionDAO.DEFAULT_TENANT_COLUMN_NAME),
+                    rs.getInt(BaseActionDAO.DEFAULT_ITEM_COLUMN_NAME),
+                    rs.getInt(BaseActionDAO.DEFAULT_ITEM_TYPE_COLUMN_NAME));
 
-        } catch (Exception e) {
-            logger.error(e);
+            if (L1.containsKey(itemVO) && basketItems.add(itemVO)) basket.add(itemVO);
         }
 
-        return ret;
+        void countBasket() throws Exception {
+            for (int i = 0; i < basket.size() - 1; i++) {
+                for (int j = i + 1; j < basket.size(); j++) {
+                    tupleCounter.count(basket.get(i), basket.get(j));
+                }
+            }
+
+            basket.clear();
+            basketItems.clear();
+        }
     }
 
 
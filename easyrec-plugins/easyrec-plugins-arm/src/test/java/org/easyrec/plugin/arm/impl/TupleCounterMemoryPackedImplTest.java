@@ -0,0 +1,148 @@
+/*
+ * Copyright 2010 Research Studios Austria Forschungsgesellschaft mBH
+ *
+ * This file is part of easyrec.
+ *
+ * easyrec is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * easyrec is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with easyrec.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.easyrec.plugin.arm.impl;
+
+import org.easyrec.model.core.ItemVO;
+import org.easyrec.plugin.arm.model.TupleVO;
+import org.junit.Test;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class TupleCounterMemoryPackedImplTest {
+
+    @Test
+    public void count_countsTuplesRegardlessOfTheOrderOfTheItems() throws Exception {
+        TupleCounterMemoryPackedImpl tupleCounter = new TupleCounterMemoryPackedImpl();
+
+        tupleCounter.count(item(1, 1), item(2, 1));
+        tupleCounter.count(item(2, 1), item(1, 1));
+        tupleCounter.count(item(1, 1), item(1, 2));
+        tupleCounter.count(item(1, 1), item(1, 1));
+
+        assertEquals(2, tupleCounter.size());
+
+        Map<String, Integer> tuples = toMap(tupleCounter.getTuples(1));
+
+        assertEquals(2, tuples.size());
+        assertEquals(Integer.valueOf(2), tuples.get("1/1-2/1"));
+        assertEquals(Integer.valueOf(1), tuples.get("1/1-1/2"));
+    }
+
+    @Test
+    public void getTuples_returnsTheTuplesWithTheSupport() throws Exception {
+        TupleCounterMemoryPackedImpl tupleCounter = new TupleCounterMemoryPackedImpl();
+
+        tupleCounter.count(item(1, 1), item(2, 1));
+        tupleCounter.count(item(1, 1), item(2, 1));
+        tupleCounter.count(item(1, 1), item(3, 1));
+
+        Collection<TupleVO> tuples = tupleCounter.getTuples(2);
+
+        assertEquals(1, tuples.size());
+        assertEquals(Integer.valueOf(2), toMap(tuples).get("1/1-2/1"));
+        assertTrue(tupleCounter.getTuples(3).isEmpty());
+    }
+
+    @Test
+    public void count_growsTheTable() throws Exception {
+        countMany(new TupleCounterMemoryPackedImpl());
+    }
+
+    @Test
+    public void count_growsTheTableOffHeap() throws Exception {
+        TupleCounterMemoryPackedImpl tupleCounter = new TupleCounterMemoryPackedImpl();
+        tupleCounter.setOffHeap(true);
+        tupleCounter.init();
+
+        countMany(tupleCounter);
+    }
+
+    @Test
+    public void init_clearsTheCounts() throws Exception {
+        TupleCounterMemoryPackedImpl tupleCounter = new TupleCounterMemoryPackedImpl();
+        tupleCounter.count(item(1, 1), item(2, 1));
+
+        tupleCounter.init();
+
+        assertEquals(0, tupleCounter.size());
+        assertTrue(tupleCounter.getTuples(0).isEmpty());
+    }
+
+    private static void countMany(TupleCounterMemoryPackedImpl tupleCounter) throws Exception {
+        int items = 200;
+
+        for (int i = 0; i < items; i++) {
+            for (int j = i + 1; j < items; j++) {
+                tupleCounter.count(item(j, 1), item(i, 1));
+                if (j % 2 == 0) tupleCounter.count(item(i, 1), item(j, 1));
+            }
+        }
+
+        int tuples = items * (items - 1) / 2;
+
+        assertEquals(tuples, tupleCounter.size());
+        assertTrue(tupleCounter.getCapacity() > TupleCounterMemoryPackedImpl.INITIAL_CAPACITY);
+
+        Map<String, Integer> counts = toMap(tupleCounter.getTuples(1));
+
+        assertEquals(tuples, counts.size());
+        assertEquals(Integer.valueOf(1), counts.get("198/1-199/1"));
+        assertEquals(Integer.valueOf(2), counts.get("3/1-4/1"));
+        assertEquals(countEvenPairs(items), tupleCounter.getTuples(2).size());
+    }
+
+    // the pairs whose higher item is even are counted twice
+    private static int countEvenPairs(int items) {
+        int result = 0;
+
+        for (int j = 2; j < items; j += 2)
+            result += j;
+
+        return result;
+    }
+
+    private static ItemVO<Integer, Integer> item(int itemId, int itemTypeId) {
+        return new ItemVO<Integer, Integer>(1, itemId, itemTypeId);
+    }
+
+    // tuples as "item/type-item/type" with the lower item id first
+    private static Map<String, Integer> toMap(Collection<TupleVO> tuples) {
+        Map<String, Integer> result = new HashMap<String, Integer>();
+
+        for (TupleVO tuple : tuples) {
+            ItemVO<Integer, Integer> first = tuple.getItem1();
+            ItemVO<Integer, Integer> second = tuple.getItem2();
+
+            if (first.getItem() > second.getItem()) {
+                first = tuple.getItem2();
+                second = tuple.getItem1();
+            }
+
+            result.put(first.getItem() + "/" + first.getType() + "-" + second.getItem() + "/" + second.getType(),
+                    tuple.getSupport());
+        }
+
+        return result;
+    }
+}
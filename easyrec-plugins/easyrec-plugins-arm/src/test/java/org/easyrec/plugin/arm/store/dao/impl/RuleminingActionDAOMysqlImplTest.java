@@ -0,0 +1,206 @@
+/*
+ * Copyright 2010 Research Studios Austria Forschungsgesellschaft mBH
+ *
+ * This file is part of easyrec.
+ *
+ * easyrec is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * easyrec is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with easyrec.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.easyrec.plugin.arm.store.dao.impl;
+
+import gnu.trove.map.hash.TObjectIntHashMap;
+import org.easyrec.model.core.ItemVO;
+import org.easyrec.plugin.arm.impl.TupleCounterMemoryPackedImpl;
+import org.easyrec.plugin.arm.model.TupleVO;
+import org.easyrec.store.dao.BaseActionDAO;
+import org.junit.Test;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.ResultSet;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class RuleminingActionDAOMysqlImplTest {
+
+    @Test
+    public void basketCallbackHandler_countsTheSameTuplesAsTheQueryPerBasket() throws Exception {
+        Random random = new Random(42);
+        List<Integer[]> actions = new ArrayList<Integer[]>();
+
+        // users 0 to 49 and actions without a user, items of two types
+        for (int i = 0; i < 2000; i++) {
+            Integer userId = random.nextInt(10) == 0 ? null : random.nextInt(50);
+
+            actions.add(new Integer[]{userId, random.nextInt(30), 1 + random.nextInt(2)});
+        }
+
+        TObjectIntHashMap<ItemVO<Integer, Integer>> L1 = new TObjectIntHashMap<ItemVO<Integer, Integer>>();
+
+        for (int itemId = 0; itemId < 30; itemId += 2) {
+            L1.put(item(itemId, 1), 1);
+            L1.put(item(itemId, 2), 1);
+        }
+
+        Map<String, Integer> expected = countPerBasket(actions, L1);
+        Map<String, Integer> streamed = countStreamed(actions, L1);
+
+        assertTrue(expected.size() > 100);
+        assertEquals(expected, streamed);
+    }
+
+    @Test
+    public void basketCallbackHandler_separatesActionsWithoutUserFromUserZero() throws Exception {
+        TObjectIntHashMap<ItemVO<Integer, Integer>> L1 = new TObjectIntHashMap<ItemVO<Integer, Integer>>();
+        L1.put(item(1, 1), 1);
+        L1.put(item(2, 1), 1);
+        L1.put(item(3, 1), 1);
+
+        // the action without a user must not join the basket of user 0
+        List<Integer[]> actions = new ArrayList<Integer[]>();
+        actions.add(new Integer[]{null, 3, 1});
+        actions.add(new Integer[]{0, 1, 1});
+        actions.add(new Integer[]{0, 2, 1});
+
+        Map<String, Integer> streamed = countStreamed(actions, L1);
+
+        assertEquals(1, streamed.size());
+        assertEquals(Integer.valueOf(1), streamed.get("1/1-2/1"));
+    }
+
+    // the tuples counted by the handler from the actions ordered by user, as streamed by defineL2
+    private static Map<String, Integer> countStreamed(List<Integer[]> actions,
+                                                      TObjectIntHashMap<ItemVO<Integer, Integer>> L1)
+            throws Exception {
+        List<Integer[]> ordered = new ArrayList<Integer[]>(actions);
+
+        // MySQL sorts NULL first
+        Collections.sort(ordered, new Comparator<Integer[]>() {
+            public int compare(Integer[] a, Integer[] b) {
+                int userA = a[0] == null ? Integer.MIN_VALUE : a[0];
+                int userB = b[0] == null ? Integer.MIN_VALUE : b[0];
+
+                return userA < userB ? -1 : (userA == userB ? 0 : 1);
+            }
+        });
+
+        TupleCounterMemoryPackedImpl tupleCounter = new TupleCounterMemoryPackedImpl();
+        RuleminingActionDAOMysqlImpl.BasketCallbackHandler handler =
+                new RuleminingActionDAOMysqlImpl.BasketCallbackHandler(L1, tupleCounter);
+        ActionRow row = new ActionRow();
+        ResultSet rs = (ResultSet) Proxy.newProxyInstance(ResultSet.class.getClassLoader(),
+                new Class<?>[]{ResultSet.class}, row);
+
+        for (Integer[] action : ordered) {
+            row.action = action;
+            handler.processRow(rs);
+        }
+
+        handler.countBasket();
+
+        return toMap(tupleCounter.getTuples(1));
+    }
+
+    // the tuples counted the way defineL2 did before: the distinct items of every user with two or more actions
+    private static Map<String, Integer> countPerBasket(List<Integer[]> actions,
+                                                       TObjectIntHashMap<ItemVO<Integer, Integer>> L1)
+            throws Exception {
+        Map<Integer, List<Integer[]>> baskets = new LinkedHashMap<Integer, List<Integer[]>>();
+
+        for (Integer[] action : actions) {
+            // "userId=null" matched no action
+            if (action[0] == null) continue;
+
+            if (!baskets.containsKey(action[0])) baskets.put(action[0], new ArrayList<Integer[]>());
+
+            baskets.get(action[0]).add(action);
+        }
+
+        TupleCounterMemoryPackedImpl tupleCounter = new TupleCounterMemoryPackedImpl();
+
+        for (List<Integer[]> basket : baskets.values()) {
+            if (basket.size() < 2) continue;
+
+            Set<ItemVO<Integer, Integer>> items = new LinkedHashSet<ItemVO<Integer, Integer>>();
+
+            for (Integer[] action : basket)
+                items.add(item(action[1], action[2]));
+
+            List<ItemVO<Integer, Integer>> v = new ArrayList<ItemVO<Integer, Integer>>();
+
+            for (ItemVO<Integer, Integer> itemVO : items)
+                if (L1.containsKey(itemVO)) v.add(itemVO);
+
+            for (int i = 0; i < v.size() - 1; i++)
+                for (int j = i + 1; j < v.size(); j++)
+                    tupleCounter.count(v.get(i), v.get(j));
+        }
+
+        return toMap(tupleCounter.getTuples(1));
+    }
+
+    private static ItemVO<Integer, Integer> item(int itemId, int itemTypeId) {
+        return new ItemVO<Integer, Integer>(1, itemId, itemTypeId);
+    }
+
+    // tuples as "item/type-item/type" with the lower item first
+    private static Map<String, Integer> toMap(Collection<TupleVO> tuples) {
+        Map<String, Integer> result = new HashMap<String, Integer>();
+
+        for (TupleVO tuple : tuples) {
+            String first = tuple.getItem1().getItem() + "/" + tuple.getItem1().getType();
+            String second = tuple.getItem2().getItem() + "/" + tuple.getItem2().getType();
+
+            result.put(first.compareTo(second) < 0 ? first + "-" + second : second + "-" + first,
+                    tuple.getSupport());
+        }
+
+        return result;
+    }
+
+    // the current row of a result set with the columns read by the handler
+    private static class ActionRow implements InvocationHandler {
+        private Integer[] action;
+        private boolean wasNull;
+
+        public Object invoke(Object proxy, Method method, Object[] args) {
+            if (method.getName().equals("wasNull")) return wasNull;
+
+            if (!method.getName().equals("getInt")) throw new UnsupportedOperationException(method.getName());
+
+            Integer value;
+
+            if (BaseActionDAO.DEFAULT_USER_COLUMN_NAME.equals(args[0])) value = action[0];
+            else if (BaseActionDAO.DEFAULT_ITEM_COLUMN_NAME.equals(args[0])) value = action[1];
+            else if (BaseActionDAO.DEFAULT_ITEM_TYPE_COLUMN_NAME.equals(args[0])) value = action[2];
+            else value = 1;
+
+            wasNull = value == null;
+
+            return wasNull ? 0 : value;
+        }
+    }
+}
@@ -22,12 +22,12 @@ package org.easyrec.plugin.itemitem;
 import org.easyrec.model.core.TenantVO;
 import org.easyrec.plugin.Progress;
 import org.easyrec.plugin.itemitem.model.ItemItemConfiguration;
+import org.easyrec.plugin.itemitem.model.ItemItemStatistics;
 import org.easyrec.plugin.itemitem.model.PredictionComputationType;
 import org.easyrec.plugin.itemitem.model.SimilarityCalculationType;
 import org.easyrec.plugin.itemitem.store.dao.ActionDAO;
 import org.easyrec.plugin.itemitem.store.dao.UserAssocDAO;
 import org.easyrec.plugin.model.Version;
-import org.easyrec.plugin.stats.GeneratorStatistics;
 import org.easyrec.plugin.support.GeneratorPluginSupport;
 import org.easyrec.service.core.ItemAssocService;
 import org.easyrec.service.domain.TypeMappingService;
@@ -45,7 +45,7 @@ import java.util.Map;
  *
  * @author Patrick Marschik
  */
-public class ItemItemGenerator extends GeneratorPluginSupport<ItemItemConfiguration, GeneratorStatistics> {
+public class ItemItemGenerator extends GeneratorPluginSupport<ItemItemConfiguration, ItemItemStatistics> {
     // ------------------------------ FIELDS ------------------------------
 
     public static final String DISPLAY_NAME = "Item-Item";
@@ -62,7 +62,7 @@ public class ItemItemGenerator extends GeneratorPluginSupport<ItemItemConfigurat
     // --------------------------- CONSTRUCTORS ---------------------------
 
     public ItemItemGenerator() {
-        super(DISPLAY_NAME, ID, VERSION, ItemItemConfiguration.class, GeneratorStatistics.class);
+        super(DISPLAY_NAME, ID, VERSION, ItemItemConfiguration.class, ItemItemStatistics.class);
     }
 
     // --------------------- GETTER / SETTER METHODS ---------------------
@@ -119,7 +119,7 @@ public class ItemItemGenerator extends GeneratorPluginSupport<ItemItemConfigurat
     }
 
     @Override
-    protected void doExecute(final ExecutionControl control, GeneratorStatistics stats) throws Exception {
+    protected void doExecute(final ExecutionControl control, ItemItemStatistics stats) throws Exception {
         TypeMappingService typeMappingService = (TypeMappingService) getTypeMappingService();
         ItemItemConfiguration configuration = getConfiguration();
 
@@ -140,6 +140,16 @@ public class ItemItemGenerator extends GeneratorPluginSupport<ItemItemConfigurat
                 .get(configuration.getSimilarityType());
         similarityCalculationStrategy.setItemAssocService(itemAssocService);
         similarityCalculationStrategy.setActionDAO(actionDAO);
+        similarityCalculationStrategy.setMinCoRatedCount(configuration.getMinCoRatedCount() != null ?
+                configuration.getMinCoRatedCount() : ItemItemConfiguration.DEFAULT_MINCORATEDCOUNT);
+        similarityCalculationStrategy.setMaxRecsPerItem(configuration.getMaxRecsPerItem() != null ?
+                configuration.getMaxRecsPerItem() : ItemItemConfiguration.DEFAULT_MAXRECSPERITEM);
+        similarityCalculationStrategy.setThreads(configuration.getThreads() != null ?
+                configuration.getThreads() : ItemItemConfiguration.DEFAULT_THREADS);
+        similarityCalculationStrategy.setBlockSize(configuration.getBlockSize() != null ?
+                configuration.getBlockSize() : ItemItemConfiguration.DEFAULT_BLOCKSIZE);
+        similarityCalculationStrategy.setMaxBlockMemory(configuration.getMaxBlockMemory() != null ?
+                configuration.getMaxBlockMemory() : ItemItemConfiguration.DEFAULT_MAXBLOCKMEMORY);
 
         PredictionComputationStrategy predictionComputationStrategy = predictionComputationTypes
                 .get(configuration.getPredictionType());
@@ -156,8 +166,10 @@ public class ItemItemGenerator extends GeneratorPluginSupport<ItemItemConfigurat
 
         control.updateProgress(new Progress(1, 4, "Generating actions"));
 
+        long start = System.currentTimeMillis();
         int generatedActions = actionDAO.generateActions(tenantId, null);
         stats.setNumberOfActionsConsidered(generatedActions);
+        stats.setActionDuration(System.currentTimeMillis() - start);
 
         // similarity calculation
 
@@ -20,7 +20,7 @@
 package org.easyrec.plugin.itemitem;
 
 import org.easyrec.plugin.itemitem.model.ItemItemConfiguration;
-import org.easyrec.plugin.stats.GeneratorStatistics;
+import org.easyrec.plugin.itemitem.model.ItemItemStatistics;
 import org.easyrec.plugin.support.ExecutablePluginSupport;
 
 import java.util.Date;
@@ -52,10 +52,11 @@ public interface ItemItemService {
      * @param viewTypeId   View type id.
      * @param sourceTypeId Source type id.
      * @param changeDate   Date to set for generated {@link org.easyrec.model.core.ItemAssocVO}s.
+     * @param stats        Statistics of the run.
      * @param control      Control to update progress.
      */
     void calculateSimilarity(Integer tenantId, Integer actionTypeId, Integer itemTypeId, Integer assocTypeId,
-                             Integer viewTypeId, Integer sourceTypeId, Date changeDate, GeneratorStatistics stats,
+                             Integer viewTypeId, Integer sourceTypeId, Date changeDate, ItemItemStatistics stats,
                              final ExecutablePluginSupport.ExecutionControl control);
 
     /**
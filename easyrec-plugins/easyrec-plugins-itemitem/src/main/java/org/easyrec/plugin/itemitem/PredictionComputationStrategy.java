@@ -21,6 +21,8 @@ package org.easyrec.plugin.itemitem;
 
 import org.easyrec.model.core.AssociatedItemVO;
 import org.easyrec.model.core.ItemVO;
+import org.easyrec.model.core.RatingMatrix;
+import org.easyrec.plugin.itemitem.model.SimilarityIndex;
 import org.easyrec.plugin.itemitem.model.UserAssoc;
 import org.easyrec.plugin.itemitem.store.dao.ActionDAO;
 import org.easyrec.plugin.itemitem.store.dao.UserAssocDAO;
@@ -68,6 +70,27 @@ public interface PredictionComputationStrategy {
     void predictForUserAndItem(Integer userId, ItemVO<Integer, Integer> item,
                                List<AssociatedItemVO<Integer, Integer>> itemAssocs);
 
+    /**
+     * Calculates the predictions of a user for all items that are similar to an item the user rated and that the user
+     * did not rate. The predictions are not stored, so this method may be called for different users concurrently
+     * between {@link #beginPrediction(org.easyrec.plugin.itemitem.model.UserAssoc, int, int, boolean)} and {@link
+     * #endPrediction()}.
+     *
+     * @param userIndex    Index of the user in {@code ratings}.
+     * @param ratings      Ratings of all users.
+     * @param similarities Similarities of the items, indexed by the items of {@code ratings}.
+     * @return The predictions for the user.
+     */
+    List<UserAssoc> predictForUser(int userIndex, RatingMatrix ratings, SimilarityIndex similarities);
+
+    /**
+     * Stores predictions created by {@link #predictForUser(int, org.easyrec.model.core.RatingMatrix,
+     * org.easyrec.plugin.itemitem.model.SimilarityIndex)} at once.
+     *
+     * @param predictions Predictions to store.
+     */
+    void storePredictions(List<UserAssoc> predictions);
+
     /**
      * Set the action DAO to use for quering actions.
      *
@@ -22,6 +22,7 @@
  */
 package org.easyrec.plugin.itemitem;
 
+import org.easyrec.plugin.itemitem.model.ItemItemStatistics;
 import org.easyrec.plugin.itemitem.store.dao.ActionDAO;
 import org.easyrec.plugin.support.ExecutablePluginSupport;
 import org.easyrec.service.core.ItemAssocService;
@@ -46,10 +47,11 @@ public interface SimilarityCalculationStrategy {
      * @param sourceTypeId Source type id used for storing generated similarities.
      * @param viewTypeId   View type id used for storing generated similarities.
      * @param changeDate   Change date used for storing generated similarities.
+     * @param stats        Statistics to report the duration of the phases to, may be {@code null}.
      * @param control      Control to update progress.
      */
     int calculateSimilarity(Integer tenantId, Integer actionTypeId, Integer itemTypeId, Integer assocTypeId,
-                            Integer sourceTypeId, Integer viewTypeId, Date changeDate,
+                            Integer sourceTypeId, Integer viewTypeId, Date changeDate, ItemItemStatistics stats,
                             final ExecutablePluginSupport.ExecutionControl control);
 
     /**
@@ -67,6 +69,44 @@ public interface SimilarityCalculationStrategy {
      */
     void setActionDAO(ActionDAO actionDAO);
 
+    /**
+     * The minimum number of users that must have rated two items for storing their similarity.
+     *
+     * @param minCoRatedCount The minimum number of users that must have rated two items.
+     */
+    void setMinCoRatedCount(int minCoRatedCount);
+
+    /**
+     * The maximum number of similarities stored for each item, only the most similar items are kept. {@code 0} keeps
+     * all similarities.
+     *
+     * @param maxRecsPerItem The maximum number of similarities stored for each item.
+     */
+    void setMaxRecsPerItem(int maxRecsPerItem);
+
+    /**
+     * The number of threads calculating similarities in parallel. {@code 0} uses a thread per available processor.
+     *
+     * @param threads The number of threads calculating similarities in parallel.
+     */
+    void setThreads(int threads);
+
+    /**
+     * The number of items whose similarities are calculated together by a thread. {@code 0} derives the block size from
+     * {@link #setMaxBlockMemory(int) maxBlockMemory}.
+     *
+     * @param blockSize The number of items whose similarities are calculated together by a thread.
+     */
+    void setBlockSize(int blockSize);
+
+    /**
+     * The memory in megabytes the similarities of the blocks being calculated and the sums of the threads may take
+     * when the block size is derived.
+     *
+     * @param maxBlockMemory The memory in megabytes the similarities of the blocks being calculated may take.
+     */
+    void setMaxBlockMemory(int maxBlockMemory);
+
     /**
      * The item assocation service to use for storing generated similarities.
      *
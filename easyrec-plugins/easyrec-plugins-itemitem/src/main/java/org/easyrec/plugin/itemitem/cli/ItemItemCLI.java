@@ -22,7 +22,7 @@ package org.easyrec.plugin.itemitem.cli;
 import org.easyrec.plugin.cli.AbstractGeneratorCLI;
 import org.easyrec.plugin.itemitem.ItemItemGenerator;
 import org.easyrec.plugin.itemitem.model.ItemItemConfiguration;
-import org.easyrec.plugin.stats.GeneratorStatistics;
+import org.easyrec.plugin.itemitem.model.ItemItemStatistics;
 import org.springframework.beans.factory.config.AutowireCapableBeanFactory;
 
 /**
@@ -32,7 +32,7 @@ import org.springframework.beans.factory.config.AutowireCapableBeanFactory;
  *
  * @author Patrick Marschik
  */
-public class ItemItemCLI extends AbstractGeneratorCLI<ItemItemConfiguration, GeneratorStatistics> {
+public class ItemItemCLI extends AbstractGeneratorCLI<ItemItemConfiguration, ItemItemStatistics> {
     // ------------------------------ FIELDS ------------------------------
 
     private ItemItemGenerator itemItemGenerator;
@@ -22,14 +22,20 @@
  */
 package org.easyrec.plugin.itemitem.impl;
 
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
 import org.easyrec.model.core.ItemAssocVO;
 import org.easyrec.model.core.ItemVO;
+import org.easyrec.model.core.RatingMatrix;
 import org.easyrec.model.core.RatingVO;
 import org.easyrec.plugin.itemitem.SimilarityCalculationStrategy;
+import org.easyrec.plugin.itemitem.model.ItemItemStatistics;
 import org.easyrec.plugin.itemitem.store.dao.ActionDAO;
-import org.easyrec.plugin.itemitem.store.dao.ActionDAO.RatedTogether;
 import org.easyrec.plugin.support.ExecutablePluginSupport;
 import org.easyrec.service.core.ItemAssocService;
+import org.easyrec.util.core.ParallelBlocks;
+import org.easyrec.util.core.ScoreBlock;
+import org.easyrec.util.core.TopScores;
 
 import java.util.ArrayList;
 import java.util.Date;
@@ -40,16 +46,34 @@ import java.util.Map;
  * Common denominator for calculating similarities. Since each method for calculating similarities is of the form:<br/>
  * a = rating1 - x<br/> b = rating2 - y<br/> similarity = sum over all items( a * b ) / ( sqrt(sum over all items (a^2))
  * * sqrt(sum over all items (b^2)) )<br/> Where x or y might be 0 or an average only methods for providing x and y need
- * to be overridden. <p/> <p/> <p> <b>Company:&nbsp;</b> SAT, Research Studios Austria </p> <p/> <p>
- * <b>Copyright:&nbsp;</b> (c) 2009 </p> <p/> <p> <b>last modified:</b><br/> $Author$<br/> $Date$<br/> $Revision$ </p>
+ * to be overridden. <p/> The ratings are loaded once into a {@link RatingMatrix}. For every item the sums of all items
+ * rated together with it are accumulated in one pass over the ratings of the users that rated the item, so only pairs
+ * of items that were actually rated together are visited. <p/> The items are split into blocks that are calculated
+ * in parallel, every block holds the similarities of its items to all other items. Only a few blocks are calculated
+ * ahead of the block being stored, so the memory needed for the similarities is bounded by the block size. <p/> <p>
+ * <b>Company:&nbsp;</b> SAT, Research Studios Austria </p> <p/> <p> <b>Copyright:&nbsp;</b> (c) 2009 </p> <p/> <p>
+ * <b>last modified:</b><br/> $Author$<br/> $Date$<br/> $Revision$ </p>
  *
  * @author Patrick Marschik
  */
 abstract class AbstractSimilarityCalculationStrategy implements SimilarityCalculationStrategy {
     // ------------------------------ FIELDS ------------------------------
 
+    private static final int ITEM_ASSOC_BUFFER = 10000;
+    // an int for the other item and a double for the similarity value
+    private static final int BYTES_PER_SIMILARITY = 12;
+    // three doubles and two ints in the sums of every thread
+    private static final int BYTES_PER_SUM = 32;
+
+    private final Log logger = LogFactory.getLog(getClass());
+
     private ItemAssocService itemAssocService;
     private ActionDAO actionDao;
+    private int minCoRatedCount = 1;
+    private int maxRecsPerItem = 0;
+    private int threads = 1;
+    private int blockSize = 0;
+    private int maxBlockMemory = 64;
 
     // --------------------------- CONSTRUCTORS ---------------------------
 
@@ -68,6 +92,26 @@ abstract class AbstractSimilarityCalculationStrategy implements SimilarityCalcul
         this.itemAssocService = itemAssocService;
     }
 
+    public void setMinCoRatedCount(final int minCoRatedCount) {
+        this.minCoRatedCount = minCoRatedCount;
+    }
+
+    public void setMaxRecsPerItem(final int maxRecsPerItem) {
+        this.maxRecsPerItem = maxRecsPerItem;
+    }
+
+    public void setThreads(final int threads) {
+        this.threads = threads;
+    }
+
+    public void setBlockSize(final int blockSize) {
+        this.blockSize = blockSize;
+    }
+
+    public void setMaxBlockMemory(final int maxBlockMemory) {
+        this.maxBlockMemory = maxBlockMemory;
+    }
+
     // ------------------------ INTERFACE METHODS ------------------------
 
 
@@ -75,86 +119,76 @@ abstract class AbstractSimilarityCalculationStrategy implements SimilarityCalcul
 
     public int calculateSimilarity(final Integer tenantId, final Integer actionTypeId, final Integer itemTypeId,
                                    final Integer assocTypeId, final Integer sourceTypeId, final Integer viewTypeId,
-                                   final Date changeDate, final ExecutablePluginSupport.ExecutionControl control) {
+                                   final Date changeDate, final ItemItemStatistics stats,
+                                   final ExecutablePluginSupport.ExecutionControl control) {
         validateState();
 
-        final List<ItemVO<Integer, Integer>> allItems = actionDao
-                .getAvailableItemsForTenant(tenantId, itemTypeId);
+        long start = System.currentTimeMillis();
+
+        final RatingMatrix ratings = actionDao.getRatingMatrix(tenantId, itemTypeId, actionTypeId);
 
         final Map<Integer, RatingVO<Integer, Integer>> averageItemRatings = getAverageItemRatings(
                 tenantId, itemTypeId);
 
-        final int ITEM_ASSOC_BUFFER = 10000;
-        int itemAssocsCreated = 0;
-        List<ItemAssocVO<Integer,Integer>> itemAssocs = new ArrayList<ItemAssocVO<Integer,Integer>>(
-                ITEM_ASSOC_BUFFER);
-
-        final int TOTAL_STEPS = allItems.size();
-
-        for (int i = 0; i < TOTAL_STEPS; i++) {
-            if (control != null) control.updateProgress(
-                    String.format("Calculating similarity %d/%d - %.2f%%", i, TOTAL_STEPS,
-                            ((double) i / (double) TOTAL_STEPS) * 100.0));
-
-            final ItemVO<Integer, Integer> item1 = allItems.get(i);
-
-            for (int j = i + 1; j < allItems.size(); j++) {
-                double numerator = 0.0;
-                double denominator1 = 0.0;
-                double denominator2 = 0.0;
-
-                final ItemVO<Integer, Integer> item2 = allItems.get(j);
-
-                final List<RatedTogether<Integer, Integer>> ratedTogether = actionDao
-                        .getItemsRatedTogether(tenantId, itemTypeId, item1.getItem(), item2.getItem(), actionTypeId);
-
-                for (final RatedTogether<Integer, Integer> rated : ratedTogether) {
-                    final double averageItem1 = getAverage1(rated, averageItemRatings);
-                    final double averageItem2 = getAverage2(rated, averageItemRatings);
-
-                    final RatingVO<Integer, Integer> rating1 = rated.getRating1();
-                    final RatingVO<Integer, Integer> rating2 = rated.getRating2();
-
-                    final double rating1diff = rating1.getRatingValue() - averageItem1;
-                    final double rating2diff = rating2.getRatingValue() - averageItem2;
-                    final double rating1diffSquared = Math.pow(rating1diff, 2);
-                    final double rating2diffSquared = Math.pow(rating2diff, 2);
-
-                    numerator += rating1diff * rating2diff;
-                    denominator1 += rating1diffSquared;
-                    denominator2 += rating2diffSquared;
-                }
-
-                denominator1 = Math.sqrt(denominator1);
-                denominator2 = Math.sqrt(denominator2);
+        // subtract x respectively y from every rating once
+        final double[] diffs = new double[ratings.getRatingCount()];
 
-                if (denominator1 == 0.0 || denominator2 == 0.0) continue;
+        for (int entry = 0; entry < diffs.length; entry++) {
+            final int userId = ratings.getUserId(ratings.getEntryUser(entry));
+            final int itemId = ratings.getItemId(ratings.getEntryItem(entry));
 
-                final double similarityValue = numerator / (denominator1 * denominator2);
+            diffs[entry] = ratings.getEntryRating(entry) - getAverage(userId, itemId, averageItemRatings);
+        }
 
-                if (Double.isNaN(similarityValue)) continue;
+        if (stats != null) {
+            stats.setNoUsers(ratings.getUserCount());
+            stats.setNoItems(ratings.getItemCount());
+            stats.setRatingDuration(System.currentTimeMillis() - start);
+        }
 
-                final ItemAssocVO<Integer,Integer> itemAssoc1 = new ItemAssocVO<Integer,Integer>(
-                        tenantId, item1, assocTypeId, similarityValue, item2, sourceTypeId, getSourceInfo(), viewTypeId,
-                        null, changeDate);
-                final ItemAssocVO<Integer,Integer> itemAssoc2 = new ItemAssocVO<Integer,Integer>(
-                        tenantId, item2, assocTypeId, similarityValue, item1, sourceTypeId, getSourceInfo(), viewTypeId,
-                        null, changeDate);
+        start = System.currentTimeMillis();
 
-                itemAssocs.add(itemAssoc1);
-                itemAssocs.add(itemAssoc2);
+        final int TOTAL_STEPS = ratings.getItemCount();
+        final int threadCount = ParallelBlocks.getThreadCount(threads);
+        final int itemsPerBlock = blockSize > 0 ? blockSize : getBlockSize(TOTAL_STEPS, threadCount);
 
-                itemAssocsCreated += 2;
+        if (logger.isInfoEnabled())
+            logger.info(String.format("Calculating similarities of %d items in blocks of %d items on %d threads",
+                    TOTAL_STEPS, itemsPerBlock, threadCount));
 
-                if (itemAssocs.size() >= ITEM_ASSOC_BUFFER) {
-                    itemAssocService.insertOrUpdateItemAssocs(itemAssocs);
-                    itemAssocs.clear();
-                }
+        // the sums of every thread, indexed by the item rated together with the item being calculated
+        final ThreadLocal<Sums> sums = new ThreadLocal<Sums>() {
+            @Override
+            protected Sums initialValue() {
+                return new Sums(TOTAL_STEPS);
             }
+        };
+
+        final SimilarityWriter writer = new SimilarityWriter(ratings, tenantId, itemTypeId, assocTypeId,
+                sourceTypeId, viewTypeId, changeDate);
+
+        ParallelBlocks.run("SimilarityCalculation", TOTAL_STEPS, itemsPerBlock, threadCount,
+                new ParallelBlocks.Calculation<ScoreBlock>() {
+                    public ScoreBlock calculate(int start, int end) {
+                        return calculateBlock(ratings, diffs, sums.get(), start, end);
+                    }
+                }, new ParallelBlocks.Consumer<ScoreBlock>() {
+                    public void consume(int start, int end, ScoreBlock block) {
+                        if (control != null) control.updateProgress(
+                                String.format("Calculating similarity %d/%d - %.2f%%", end, TOTAL_STEPS,
+                                        ((double) end / (double) TOTAL_STEPS) * 100.0));
+
+                        writer.write(block);
+                    }
+                });
+
+        int itemAssocsCreated = writer.flush();
+
+        if (stats != null) {
+            stats.setSimilarityDuration(System.currentTimeMillis() - start);
+            stats.setWriteDuration(writer.getWriteDuration());
         }
 
-        if (itemAssocs.size() > 0) itemAssocService.insertOrUpdateItemAssocs(itemAssocs);
-
         return itemAssocsCreated;
     }
 
@@ -165,24 +199,15 @@ abstract class AbstractSimilarityCalculationStrategy implements SimilarityCalcul
     // -------------------------- OTHER METHODS --------------------------
 
     /**
-     * Get x as defined in the class documentation.
-     *
-     * @param ratedTogether  Two vector component of items to use for getting x.
-     * @param averageRatings The map precalculated by {@link #getAverageItemRatings(Integer, Integer)}.
-     * @return X.
-     */
-    protected abstract double getAverage1(RatedTogether<Integer, Integer> ratedTogether,
-                                          Map<Integer, RatingVO<Integer, Integer>> averageRatings);
-
-    /**
-     * Get y as defined in the class documentation.
+     * Get x respectively y as defined in the class documentation for a rating.
      *
-     * @param ratedTogether  Two vector component of items to use for getting y.
+     * @param userId         The user that gave the rating.
+     * @param itemId         The item that was rated.
      * @param averageRatings The map precalculated by {@link #getAverageItemRatings(Integer, Integer)}.
-     * @return Y.
+     * @return X respectively y.
      */
-    protected abstract double getAverage2(RatedTogether<Integer, Integer> ratedTogether,
-                                          Map<Integer, RatingVO<Integer, Integer>> averageRatings);
+    protected abstract double getAverage(int userId, int itemId,
+                                         Map<Integer, RatingVO<Integer, Integer>> averageRatings);
 
     /**
      * Allows precalulation of the averages.
@@ -196,7 +221,184 @@ abstract class AbstractSimilarityCalculationStrategy implements SimilarityCalcul
 
     protected ActionDAO getLatestActionDao() { return actionDao; }
 
+    /**
+     * The number of items per block so that the blocks in memory at the same time fit into {@code maxBlockMemory}
+     * megabytes together with the sums of every thread, assuming every item is similar to all other items unless the
+     * similarities per item are limited. Every thread gets several blocks to even out blocks that take longer.
+     */
+    int getBlockSize(final int items, final int threadCount) {
+        final long similaritiesPerItem = Math.max(1, maxRecsPerItem > 0 ? Math.min(maxRecsPerItem, items - 1) :
+                items - 1);
+        final long sumsMemory = (long) threadCount * items * BYTES_PER_SUM;
+        final long blockMemory = Math.max(0, (long) maxBlockMemory * 1024 * 1024 - sumsMemory) / (threadCount + 1);
+        final long itemsPerBlock = blockMemory / (similaritiesPerItem * BYTES_PER_SIMILARITY);
+        final long balancedItemsPerBlock = ParallelBlocks.getBalancedBlockSize(items, threadCount);
+
+        return (int) Math.max(1, Math.min(itemsPerBlock, balancedItemsPerBlock));
+    }
+
+    private ScoreBlock calculateBlock(final RatingMatrix ratings, final double[] diffs, final Sums sums,
+                                      final int blockStart, final int blockEnd) {
+        final ScoreBlock block = new ScoreBlock(blockStart, blockEnd);
+        final TopScores topSimilarities = maxRecsPerItem > 0 ? new TopScores(maxRecsPerItem) : null;
+
+        for (int item1 = blockStart; item1 < blockEnd; item1++) {
+            int ratedTogetherCount = 0;
+
+            for (int position = ratings.getItemStart(item1); position < ratings.getItemEnd(item1); position++) {
+                final int entry1 = ratings.getItemEntry(position);
+                final int user = ratings.getEntryUser(entry1);
+                final double rating1diff = diffs[entry1];
+                final double rating1diffSquared = rating1diff * rating1diff;
+
+                for (int entry2 = ratings.getUserStart(user); entry2 < ratings.getUserEnd(user); entry2++) {
+                    if (entry2 == entry1) continue;
+
+                    final int item2 = ratings.getEntryItem(entry2);
+                    final double rating2diff = diffs[entry2];
+
+                    if (sums.counts[item2]++ == 0) sums.ratedTogether[ratedTogetherCount++] = item2;
+
+                    sums.numerators[item2] += rating1diff * rating2diff;
+                    sums.denominators1[item2] += rating1diffSquared;
+                    sums.denominators2[item2] += rating2diff * rating2diff;
+                }
+            }
+
+            for (int i = 0; i < ratedTogetherCount; i++) {
+                final int item2 = sums.ratedTogether[i];
+                final double numerator = sums.numerators[item2];
+                final double denominator1 = Math.sqrt(sums.denominators1[item2]);
+                final double denominator2 = Math.sqrt(sums.denominators2[item2]);
+                final int count = sums.counts[item2];
+
+                sums.clear(item2);
+
+                if (count < minCoRatedCount) continue;
+
+                if (denominator1 == 0.0 || denominator2 == 0.0) continue;
+
+                final double similarityValue = numerator / (denominator1 * denominator2);
+
+                if (Double.isNaN(similarityValue)) continue;
+
+                if (topSimilarities != null) topSimilarities.offer(item2, similarityValue);
+                else block.add(item2, similarityValue);
+            }
+
+            if (topSimilarities != null) {
+                for (int position = 0; position < topSimilarities.size(); position++)
+                    block.add(topSimilarities.getIndex(position), topSimilarities.getScore(position));
+
+                topSimilarities.clear();
+            }
+
+            block.endRow();
+        }
+
+        return block;
+    }
+
     private void validateState() {
         if (actionDao == null || itemAssocService == null) throw new IllegalStateException("DAOs not initialized");
     }
-}
\ No newline at end of file
+
+    // -------------------------- INNER CLASSES --------------------------
+
+    /**
+     * The sums of the items rated together with the item being calculated, they are cleared again while they are
+     * read.
+     */
+    private static class Sums {
+        private final double[] numerators;
+        private final double[] denominators1;
+        private final double[] denominators2;
+        private final int[] counts;
+        private final int[] ratedTogether;
+
+        private Sums(final int items) {
+            numerators = new double[items];
+            denominators1 = new double[items];
+            denominators2 = new double[items];
+            counts = new int[items];
+            ratedTogether = new int[items];
+        }
+
+        private void clear(final int item) {
+            numerators[item] = 0.0;
+            denominators1[item] = 0.0;
+            denominators2[item] = 0.0;
+            counts[item] = 0;
+        }
+    }
+
+    /**
+     * Buffers the similarities of items given by their index in the rating matrix and stores them in bulks.
+     */
+    private class SimilarityWriter {
+        private final RatingMatrix ratings;
+        private final Integer tenantId;
+        private final Integer itemTypeId;
+        private final Integer assocTypeId;
+        private final Integer sourceTypeId;
+        private final Integer viewTypeId;
+        private final Date changeDate;
+        private final String sourceInfo = getSourceInfo();
+        private final List<ItemAssocVO<Integer, Integer>> itemAssocs = new ArrayList<ItemAssocVO<Integer, Integer>>(
+                ITEM_ASSOC_BUFFER);
+        private int itemAssocsCreated = 0;
+        private long writeDuration = 0;
+
+        private SimilarityWriter(final RatingMatrix ratings, final Integer tenantId, final Integer itemTypeId,
+                                 final Integer assocTypeId, final Integer sourceTypeId, final Integer viewTypeId,
+                                 final Date changeDate) {
+            this.ratings = ratings;
+            this.tenantId = tenantId;
+            this.itemTypeId = itemTypeId;
+            this.assocTypeId = assocTypeId;
+            this.sourceTypeId = sourceTypeId;
+            this.viewTypeId = viewTypeId;
+            this.changeDate = changeDate;
+        }
+
+        private void write(final ScoreBlock block) {
+            for (int item = block.getStart(); item < block.getEnd(); item++) {
+                final ItemVO<Integer, Integer> itemFrom = new ItemVO<Integer, Integer>(tenantId,
+                        ratings.getItemId(item), itemTypeId);
+
+                for (int i = block.getRowStart(item); i < block.getRowEnd(item); i++) {
+                    itemAssocs.add(new ItemAssocVO<Integer, Integer>(tenantId, itemFrom, assocTypeId,
+                            block.getScore(i),
+                            new ItemVO<Integer, Integer>(tenantId, ratings.getItemId(block.getIndex(i)),
+                                    itemTypeId), sourceTypeId, sourceInfo, viewTypeId, null, changeDate));
+
+                    itemAssocsCreated++;
+
+                    if (itemAssocs.size() >= ITEM_ASSOC_BUFFER) store();
+                }
+            }
+        }
+
+        /**
+         * @return the number of similarities written in total
+         */
+        private int flush() {
+            if (itemAssocs.size() > 0) store();
+
+            return itemAssocsCreated;
+        }
+
+        private long getWriteDuration() {
+            return writeDuration;
+        }
+
+        private void store() {
+            long start = System.currentTimeMillis();
+
+            itemAssocService.insertOrUpdateItemAssocs(itemAssocs);
+            itemAssocs.clear();
+
+            writeDuration += System.currentTimeMillis() - start;
+        }
+    }
+}
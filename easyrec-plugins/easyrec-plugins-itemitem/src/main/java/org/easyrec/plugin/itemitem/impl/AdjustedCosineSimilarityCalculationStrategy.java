@@ -22,7 +22,6 @@ package org.easyrec.plugin.itemitem.impl;
 import org.easyrec.model.core.RatingVO;
 import org.easyrec.plugin.itemitem.ItemItemService;
 import org.easyrec.plugin.itemitem.store.dao.ActionDAO;
-import org.easyrec.plugin.itemitem.store.dao.ActionDAO.RatedTogether;
 import org.easyrec.service.core.ItemAssocService;
 
 import java.util.HashMap;
@@ -62,15 +61,9 @@ public class AdjustedCosineSimilarityCalculationStrategy extends AbstractSimilar
     // -------------------------- OTHER METHODS --------------------------
 
     @Override
-    protected double getAverage1(final RatedTogether<Integer, Integer> ratedTogether,
-                                 final Map<Integer, RatingVO<Integer, Integer>> averageRatings) {
-        return averageRatings.get(ratedTogether.getRating1().getUser()).getRatingValue();
-    }
-
-    @Override
-    protected double getAverage2(final RatedTogether<Integer, Integer> ratedTogether,
-                                 final Map<Integer, RatingVO<Integer, Integer>> averageRatings) {
-        return averageRatings.get(ratedTogether.getRating1().getUser()).getRatingValue();
+    protected double getAverage(final int userId, final int itemId,
+                                final Map<Integer, RatingVO<Integer, Integer>> averageRatings) {
+        return averageRatings.get(userId).getRatingValue();
     }
 
     @Override
@@ -25,7 +25,6 @@ package org.easyrec.plugin.itemitem.impl;
 import org.easyrec.model.core.RatingVO;
 import org.easyrec.plugin.itemitem.ItemItemService;
 import org.easyrec.plugin.itemitem.store.dao.ActionDAO;
-import org.easyrec.plugin.itemitem.store.dao.ActionDAO.RatedTogether;
 import org.easyrec.service.core.ItemAssocService;
 
 import java.util.HashMap;
@@ -67,14 +66,8 @@ public class CosineSimilarityCalculationStrategy extends AbstractSimilarityCalcu
     // -------------------------- OTHER METHODS --------------------------
 
     @Override
-    protected double getAverage1(final RatedTogether<Integer, Integer> ratedTogether,
-                                 final Map<Integer, RatingVO<Integer, Integer>> averageRatings) {
-        return 0;
-    }
-
-    @Override
-    protected double getAverage2(final RatedTogether<Integer, Integer> ratedTogether,
-                                 final Map<Integer, RatingVO<Integer, Integer>> averageRatings) {
+    protected double getAverage(final int userId, final int itemId,
+                                final Map<Integer, RatingVO<Integer, Integer>> averageRatings) {
         return 0;
     }
 
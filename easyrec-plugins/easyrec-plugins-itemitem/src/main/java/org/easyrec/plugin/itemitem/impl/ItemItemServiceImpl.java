@@ -19,26 +19,34 @@
 
 package org.easyrec.plugin.itemitem.impl;
 
+import gnu.trove.set.hash.TIntHashSet;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.easyrec.model.core.AssociatedItemVO;
 import org.easyrec.model.core.ItemVO;
+import org.easyrec.model.core.RatingMatrix;
 import org.easyrec.model.core.transfer.IAConstraintVO;
 import org.easyrec.plugin.itemitem.ItemItemService;
 import org.easyrec.plugin.itemitem.PredictionComputationStrategy;
 import org.easyrec.plugin.itemitem.SimilarityCalculationStrategy;
 import org.easyrec.plugin.itemitem.model.ItemItemConfiguration;
+import org.easyrec.plugin.itemitem.model.ItemItemStatistics;
+import org.easyrec.plugin.itemitem.model.SimilarityIndex;
 import org.easyrec.plugin.itemitem.model.UserAssoc;
 import org.easyrec.plugin.itemitem.store.dao.ActionDAO;
-import org.easyrec.plugin.stats.GeneratorStatistics;
 import org.easyrec.plugin.support.ExecutablePluginSupport;
 import org.easyrec.service.core.ItemAssocService;
+import org.easyrec.util.core.ParallelBlocks;
 
+import java.util.ArrayList;
 import java.util.Date;
 import java.util.List;
+import java.util.Map;
 
 /**
- * Implementation of the item-item algorithm. <p/> <p> <b>Company:&nbsp;</b> SAT, Research Studios Austria </p> <p/> <p>
+ * Implementation of the item-item algorithm. <p/> Predictions are calculated per user from the ratings loaded once into
+ * a {@link RatingMatrix} and the similarities inverted into a {@link SimilarityIndex}, the users are split into blocks
+ * that are predicted in parallel and the predictions are stored in bulks. <p/> <p> <b>Company:&nbsp;</b> SAT, Research Studios Austria </p> <p/> <p>
  * <b>Copyright:&nbsp;</b> (c) 2009 </p> <p/> <p> <b>last modified:</b><br/> $Author$<br/> $Date$<br/> $Revision$ </p>
  *
  * @author Patrick Marschik
@@ -46,6 +54,11 @@ import java.util.List;
 public class ItemItemServiceImpl implements ItemItemService {
     // ------------------------------ FIELDS ------------------------------
 
+    private static final int PREDICTION_BUFFER = 10000;
+    private static final int MAX_USERS_PER_BLOCK = 1000;
+    // the number of rated items whose similarities are read with one query
+    private static final int SIMILARITY_BULK = 1000;
+
     protected final Log logger = LogFactory.getLog(getClass());
     private final ItemAssocService itemAssocService;
     private final ActionDAO actionDao;
@@ -89,7 +102,7 @@ public class ItemItemServiceImpl implements ItemItemService {
 
     public void calculateSimilarity(final Integer tenantId, final Integer actionTypeId, final Integer itemTypeId,
                                     final Integer assocTypeId, final Integer viewTypeId, final Integer sourceTypeId,
-                                    final Date changeDate, final GeneratorStatistics stats,
+                                    final Date changeDate, final ItemItemStatistics stats,
                                     final ExecutablePluginSupport.ExecutionControl control) {
         validateStrategies();
 
@@ -99,7 +112,7 @@ public class ItemItemServiceImpl implements ItemItemService {
 
         int assocsCreated = similarityCalculationStrategy
                 .calculateSimilarity(tenantId, actionTypeId, itemTypeId, assocTypeId, sourceTypeId, viewTypeId,
-                        changeDate, control);
+                        changeDate, stats, control);
         stats.setNumberOfRulesCreated(assocsCreated);
 
         Date end = new Date();
@@ -119,9 +132,10 @@ public class ItemItemServiceImpl implements ItemItemService {
 
         Date start = new Date();
 
-        final List<Integer> users = actionDao.getUsersForTenant(tenantId);
-        final List<ItemVO<Integer, Integer>> items = actionDao
-                .getAvailableItemsForTenant(tenantId, itemTypeId);
+        // the ratings of every user are loaded once instead of asking for every user and item whether it was rated
+        final RatingMatrix ratings = actionDao.getRatingMatrix(tenantId, itemTypeId, actionTypeId);
+        final SimilarityIndex similarities = getSimilarityIndex(tenantId, itemTypeId, assocTypeId, viewTypeId,
+                sourceTypeId, sourceInfo, ratings);
 
         final ItemVO<Integer, Integer> itemSample = new ItemVO<Integer, Integer>(tenantId, null,
                 itemTypeId);
@@ -130,36 +144,85 @@ public class ItemItemServiceImpl implements ItemItemService {
         predictionComputationStrategy
                 .beginPrediction(sample, minRatingValue, maxRatingValue, configuration.isNormalizePredictions());
 
-        final int TOTAL_STEPS = items.size();
-        int currentStep = 0;
+        final int TOTAL_STEPS = ratings.getUserCount();
+        final int threadCount = ParallelBlocks.getThreadCount(
+                configuration.getThreads() != null ? configuration.getThreads() : 0);
+        final int usersPerBlock = Math.min(MAX_USERS_PER_BLOCK,
+                ParallelBlocks.getBalancedBlockSize(TOTAL_STEPS, threadCount));
+        final PredictionWriter writer = new PredictionWriter(TOTAL_STEPS, control);
+        int predictionsCreated;
+
+        try {
+            ParallelBlocks.run("Prediction", TOTAL_STEPS, usersPerBlock, threadCount,
+                    new ParallelBlocks.Calculation<List<UserAssoc>>() {
+                        public List<UserAssoc> calculate(int start, int end) {
+                            final List<UserAssoc> result = new ArrayList<UserAssoc>();
+
+                            for (int user = start; user < end; user++)
+                                result.addAll(predictionComputationStrategy.predictForUser(user, ratings,
+                                        similarities));
+
+                            return result;
+                        }
+                    }, writer);
+
+            predictionsCreated = writer.flush();
+        } finally {
+            predictionComputationStrategy.endPrediction();
+        }
+
+        Date end = new Date();
+        double time = (end.getTime() - start.getTime()) / 1000L;
+
+        if (logger.isInfoEnabled())
+            logger.info(String.format("Calculating %d predictions for %d took %.2f seconds", predictionsCreated,
+                    tenantId, time));
+    }
+
+    // -------------------------- OTHER METHODS --------------------------
+
+    /**
+     * Reads the similarities of all items that can be predicted, that are the available items similar to a rated item.
+     * The similarities of the rated items are read in bulks of {@code SIMILARITY_BULK} items.
+     */
+    private SimilarityIndex getSimilarityIndex(final Integer tenantId, final Integer itemTypeId,
+                                               final Integer assocTypeId, final Integer viewTypeId,
+                                               final Integer sourceTypeId, final String sourceInfo,
+                                               final RatingMatrix ratings) {
+        final TIntHashSet availableItems = new TIntHashSet();
+
+        for (final ItemVO<Integer, Integer> item : actionDao.getAvailableItemsForTenant(tenantId, itemTypeId))
+            availableItems.add(item.getItem());
 
         final IAConstraintVO<Integer, Integer> constraints = new IAConstraintVO<Integer, Integer>(
                 null, viewTypeId, sourceTypeId, sourceInfo, tenantId, true, null);
+        final SimilarityIndex.Builder similarities = new SimilarityIndex.Builder(ratings);
 
-        for (final ItemVO<Integer, Integer> item : items) {
-            if (control != null) control.updateProgress(
-                    String.format("Calculating predictions %d/%d - %.2f%%", currentStep, TOTAL_STEPS,
-                            ((double) currentStep / (double) TOTAL_STEPS) * 100.00));
+        for (int bulkStart = 0; bulkStart < ratings.getItemCount(); bulkStart += SIMILARITY_BULK) {
+            final int bulkEnd = Math.min(ratings.getItemCount(), bulkStart + SIMILARITY_BULK);
+            final List<ItemVO<Integer, Integer>> ratedItems = new ArrayList<ItemVO<Integer, Integer>>(
+                    bulkEnd - bulkStart);
 
-            final List<AssociatedItemVO<Integer, Integer>> itemAssocs = itemAssocService
-                    .getItemsFrom(itemTypeId, assocTypeId, item, constraints);
+            for (int ratedItem = bulkStart; ratedItem < bulkEnd; ratedItem++)
+                ratedItems.add(new ItemVO<Integer, Integer>(tenantId, ratings.getItemId(ratedItem), itemTypeId));
 
-            for (final Integer user : users)
-                if (!actionDao.didUserRateItem(user, item, actionTypeId))
-                    predictionComputationStrategy.predictForUserAndItem(user, item, itemAssocs);
-        }
+            final Map<ItemVO<Integer, Integer>, List<AssociatedItemVO<Integer, Integer>>> itemAssocs =
+                    itemAssocService.getItemsTo(ratedItems, assocTypeId, itemTypeId, constraints);
 
-        predictionComputationStrategy.endPrediction();
+            for (final Map.Entry<ItemVO<Integer, Integer>, List<AssociatedItemVO<Integer, Integer>>> ratedItem :
+                    itemAssocs.entrySet()) {
+                for (final AssociatedItemVO<Integer, Integer> itemAssoc : ratedItem.getValue()) {
+                    final int itemId = itemAssoc.getItem().getItem();
 
-        Date end = new Date();
-        double time = (end.getTime() - start.getTime()) / 1000L;
+                    if (availableItems.contains(itemId))
+                        similarities.add(itemId, ratedItem.getKey().getItem(), itemAssoc.getAssocValue());
+                }
+            }
+        }
 
-        if (logger.isInfoEnabled())
-            logger.info(String.format("Calculating similarities for %d took %.2f seconds", tenantId, time));
+        return similarities.build();
     }
 
-    // -------------------------- OTHER METHODS --------------------------
-
     private void validateStrategies() {
         if (similarityCalculationStrategy == null)
             throw new NullPointerException("similarityCalculationStrategy can't be null.");
@@ -167,4 +230,48 @@ public class ItemItemServiceImpl implements ItemItemService {
         if (predictionComputationStrategy == null)
             throw new NullPointerException("predictionComputationStrategy can't be null.");
     }
+
+    // -------------------------- INNER CLASSES --------------------------
+
+    /**
+     * Stores the predictions of the blocks of users in bulks.
+     */
+    private class PredictionWriter implements ParallelBlocks.Consumer<List<UserAssoc>> {
+        private final int userCount;
+        private final ExecutablePluginSupport.ExecutionControl control;
+        private final List<UserAssoc> predictions = new ArrayList<UserAssoc>(PREDICTION_BUFFER);
+        private int predictionsCreated = 0;
+
+        private PredictionWriter(final int userCount, final ExecutablePluginSupport.ExecutionControl control) {
+            this.userCount = userCount;
+            this.control = control;
+        }
+
+        public void consume(final int start, final int end, final List<UserAssoc> block) {
+            for (final UserAssoc prediction : block) {
+                predictions.add(prediction);
+                predictionsCreated++;
+
+                if (predictions.size() >= PREDICTION_BUFFER) {
+                    predictionComputationStrategy.storePredictions(predictions);
+                    predictions.clear();
+                }
+            }
+
+            if (control != null) control.updateProgress(
+                    String.format("Calculating predictions %d/%d - %.2f%%", end, userCount,
+                            ((double) end / (double) userCount) * 100.00));
+        }
+
+        /**
+         * @return the number of predictions stored in total
+         */
+        private int flush() {
+            if (predictions.size() > 0) predictionComputationStrategy.storePredictions(predictions);
+
+            predictions.clear();
+
+            return predictionsCreated;
+        }
+    }
 }
@@ -23,12 +23,16 @@ import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.easyrec.model.core.AssociatedItemVO;
 import org.easyrec.model.core.ItemVO;
+import org.easyrec.model.core.RatingMatrix;
 import org.easyrec.model.core.RatingVO;
 import org.easyrec.plugin.itemitem.PredictionComputationStrategy;
+import org.easyrec.plugin.itemitem.model.SimilarityIndex;
 import org.easyrec.plugin.itemitem.model.UserAssoc;
 import org.easyrec.plugin.itemitem.store.dao.ActionDAO;
 import org.easyrec.plugin.itemitem.store.dao.UserAssocDAO;
 
+import java.util.ArrayList;
+import java.util.BitSet;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -53,6 +57,8 @@ public class WeightedPredictionComputationStrategy implements PredictionComputat
     private boolean normalizePredictions;
     private UserAssoc sample;
     private UserAssocDAO userAssocDao;
+    // the sums of every thread predicting users, indexed by the item being predicted
+    private final ThreadLocal<Sums> sums = new ThreadLocal<Sums>();
 
     // --------------------------- CONSTRUCTORS ---------------------------
 
@@ -114,17 +120,84 @@ public class WeightedPredictionComputationStrategy implements PredictionComputat
 
         if (denominator == 0) return;
 
-        double prediction = numerator / denominator;
+        final UserAssoc userAssoc = new UserAssoc(getPrediction(numerator, denominator), sample.getChangeDate(), item,
+                sample.getSourceTypeId(), sample.getTenantId(), userId);
 
-        if (normalizePredictions) {
-            prediction = Math.max(prediction, minRatingValue);
-            prediction = Math.min(prediction, maxRatingValue);
+        userAssocDao.insertOrUpdateUserAssoc(userAssoc);
+    }
+
+    public List<UserAssoc> predictForUser(final int userIndex, final RatingMatrix ratings,
+                                          final SimilarityIndex similarities) {
+        if (sample == null) throw new IllegalStateException("beginPrediction not called");
+
+        Sums sums = this.sums.get();
+
+        // the rated items grow with the bit set, only the sums need to hold all items
+        if (sums == null || sums.numerators.length < similarities.getItemCount()) {
+            sums = new Sums(similarities.getItemCount(), ratings.getItemCount());
+            this.sums.set(sums);
         }
 
-        final UserAssoc userAssoc = new UserAssoc(prediction, sample.getChangeDate(), item, sample.getSourceTypeId(),
-                sample.getTenantId(), userId);
+        final int userStart = ratings.getUserStart(userIndex);
+        final int userEnd = ratings.getUserEnd(userIndex);
 
-        userAssocDao.insertOrUpdateUserAssoc(userAssoc);
+        for (int entry = userStart; entry < userEnd; entry++)
+            sums.rated.set(ratings.getEntryItem(entry));
+
+        // only the items similar to an item the user rated get a prediction
+        int candidateCount = 0;
+
+        for (int entry = userStart; entry < userEnd; entry++) {
+            final double userRating = ratings.getEntryRating(entry);
+            final int ratedItem = ratings.getEntryItem(entry);
+
+            for (int similar = similarities.getStart(ratedItem); similar < similarities.getEnd(ratedItem); similar++) {
+                final int item = similarities.getEntryItem(similar);
+                // similarity is in [-1.0, 1.0] -> move it to [0.0, 2.0] because negative similarities might cancel other similarities
+                final double similarity = similarities.getEntrySimilarity(similar) + 1.0;
+
+                if (!sums.candidate[item]) {
+                    sums.candidate[item] = true;
+                    sums.candidates[candidateCount++] = item;
+                }
+
+                sums.numerators[item] += similarity * userRating;
+                sums.denominators[item] += Math.abs(similarity);
+            }
+        }
+
+        final List<UserAssoc> result = new ArrayList<UserAssoc>(candidateCount);
+        final Integer userId = ratings.getUserId(userIndex);
+
+        for (int i = 0; i < candidateCount; i++) {
+            final int item = sums.candidates[i];
+            final double numerator = sums.numerators[item];
+            final double denominator = sums.denominators[item];
+            final int ratedItem = similarities.getRatedItem(item);
+
+            sums.clear(item);
+
+            if (ratedItem >= 0 && sums.rated.get(ratedItem)) continue;
+
+            if (denominator == 0) continue;
+
+            final ItemVO<Integer, Integer> itemTo = new ItemVO<Integer, Integer>(sample.getTenantId(),
+                    similarities.getItemId(item), sample.getItemTo().getType());
+
+            result.add(new UserAssoc(getPrediction(numerator, denominator), sample.getChangeDate(), itemTo,
+                    sample.getSourceTypeId(), sample.getTenantId(), userId));
+        }
+
+        for (int entry = userStart; entry < userEnd; entry++)
+            sums.rated.clear(ratings.getEntryItem(entry));
+
+        return result;
+    }
+
+    public void storePredictions(final List<UserAssoc> predictions) {
+        if (userAssocDao == null) throw new IllegalStateException("DAOs not set");
+
+        userAssocDao.insertOrUpdateUserAssocs(predictions);
     }
 
     public void setActionDAO(final ActionDAO actionDao) {
@@ -137,6 +210,17 @@ public class WeightedPredictionComputationStrategy implements PredictionComputat
 
     // -------------------------- OTHER METHODS --------------------------
 
+    private double getPrediction(final double numerator, final double denominator) {
+        double prediction = numerator / denominator;
+
+        if (normalizePredictions) {
+            prediction = Math.max(prediction, minRatingValue);
+            prediction = Math.min(prediction, maxRatingValue);
+        }
+
+        return prediction;
+    }
+
     /**
      * Creates a mapping of item IDs for which the user has rated to the ratings of the user
      *
@@ -159,4 +243,32 @@ public class WeightedPredictionComputationStrategy implements PredictionComputat
         }
         return ratingsOfUserMap;
     }
+
+    // -------------------------- INNER CLASSES --------------------------
+
+    /**
+     * The weighted sums of the items predicted for a user and the items the user rated, they are cleared again while
+     * they are read.
+     */
+    private static class Sums {
+        private final double[] numerators;
+        private final double[] denominators;
+        private final boolean[] candidate;
+        private final int[] candidates;
+        private final BitSet rated;
+
+        private Sums(final int items, final int ratedItems) {
+            numerators = new double[items];
+            denominators = new double[items];
+            candidate = new boolean[items];
+            candidates = new int[items];
+            rated = new BitSet(ratedItems);
+        }
+
+        private void clear(final int item) {
+            numerators[item] = 0.0;
+            denominators[item] = 0.0;
+            candidate[item] = false;
+        }
+    }
 }
@@ -41,12 +41,47 @@ public class ItemItemConfiguration extends GeneratorConfiguration {
     public static final boolean DEFAULT_NORMALIZEPREDICTIONS = false;
     public static final PredictionComputationType DEFAULT_PREDICTIONCOMPUTATIONTYPE = PredictionComputationType.WEIGHTED;
     public static final SimilarityCalculationType DEFAULT_SIMILARITYCALCULATIONTYPE = SimilarityCalculationType.PEARSON;
+    public static final int DEFAULT_MINCORATEDCOUNT = 1;
+    public static final int DEFAULT_MAXRECSPERITEM = 0;
+    public static final int DEFAULT_THREADS = 0;
+    public static final int DEFAULT_BLOCKSIZE = 0;
+    public static final int DEFAULT_MAXBLOCKMEMORY = 64;
 
     @PluginParameter(displayName = "similarityType",
             description = "Method used for calculating similarities (PEARSON, COSINE and ADJUSTED_COSINE)",
             shortDescription = "")
     private SimilarityCalculationType similarityType;
 
+    @PluginParameter(displayName = "minCoRatedCount",
+            description = "Similarities of items that were rated together by less than minCoRatedCount users are ignored.",
+            shortDescription = "Minimum number of users that rated both items.",
+            optional = true)
+    private Integer minCoRatedCount = DEFAULT_MINCORATEDCOUNT;
+
+    @PluginParameter(displayName = "maxRecsPerItem",
+            description = "No more than maxRecsPerItem of the most similar items are stored for each item, 0 stores all of them.",
+            shortDescription = "Maximum number of similar items per item.",
+            optional = true)
+    private Integer maxRecsPerItem = DEFAULT_MAXRECSPERITEM;
+
+    @PluginParameter(displayName = "threads",
+            description = "Number of threads calculating similarities in parallel, 0 uses a thread per processor.",
+            shortDescription = "Number of threads calculating similarities.",
+            optional = true)
+    private Integer threads = DEFAULT_THREADS;
+
+    @PluginParameter(displayName = "blockSize",
+            description = "Number of items whose similarities are calculated together by a thread, 0 derives it from maxBlockMemory.",
+            shortDescription = "Number of items per block.",
+            optional = true)
+    private Integer blockSize = DEFAULT_BLOCKSIZE;
+
+    @PluginParameter(displayName = "maxBlockMemory",
+            description = "Megabytes the similarities of the blocks being calculated and the sums of the threads may take when the block size is derived.",
+            shortDescription = "Memory for the blocks in megabytes.",
+            optional = true)
+    private Integer maxBlockMemory = DEFAULT_MAXBLOCKMEMORY;
+
     //    @PluginParameter(displayName = "predictionType",
     //        description = "Method used for calculating predictions (currently only WEIGHTED).",
     //        shortDescription = "")
@@ -137,6 +172,53 @@ public class ItemItemConfiguration extends GeneratorConfiguration {
         this.similarityType = similarityType;
     }
 
+    /**
+     * Minimum number of users that must have rated two items for storing their similarity.
+     *
+     * @return Minimum number of users that must have rated two items for storing their similarity.
+     */
+    public Integer getMinCoRatedCount() { return minCoRatedCount; }
+
+    public void setMinCoRatedCount(final Integer minCoRatedCount) { this.minCoRatedCount = minCoRatedCount; }
+
+    /**
+     * Maximum number of similarities stored for each item, {@code 0} stores all of them.
+     *
+     * @return Maximum number of similarities stored for each item, {@code 0} stores all of them.
+     */
+    public Integer getMaxRecsPerItem() { return maxRecsPerItem; }
+
+    public void setMaxRecsPerItem(final Integer maxRecsPerItem) { this.maxRecsPerItem = maxRecsPerItem; }
+
+    /**
+     * Number of threads calculating similarities in parallel, {@code 0} uses a thread per available processor.
+     *
+     * @return Number of threads calculating similarities in parallel.
+     */
+    public Integer getThreads() { return threads; }
+
+    public void setThreads(final Integer threads) { this.threads = threads; }
+
+    /**
+     * Number of items whose similarities are calculated together by a thread, {@code 0} derives the block size from
+     * {@link #getMaxBlockMemory()}.
+     *
+     * @return Number of items whose similarities are calculated together by a thread.
+     */
+    public Integer getBlockSize() { return blockSize; }
+
+    public void setBlockSize(final Integer blockSize) { this.blockSize = blockSize; }
+
+    /**
+     * Memory in megabytes the similarities of the blocks being calculated and the sums of the threads may take when
+     * the block size is derived.
+     *
+     * @return Memory in megabytes the similarities of the blocks being calculated may take.
+     */
+    public Integer getMaxBlockMemory() { return maxBlockMemory; }
+
+    public void setMaxBlockMemory(final Integer maxBlockMemory) { this.maxBlockMemory = maxBlockMemory; }
+
     /**
      * View type used when writing to the itemassoc table.
      *
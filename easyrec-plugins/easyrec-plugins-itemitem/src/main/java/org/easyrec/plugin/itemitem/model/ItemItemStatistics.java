@@ -0,0 +1,77 @@
+/*
+ * Copyright 2010 Research Studios Austria Forschungsgesellschaft mBH
+ *
+ * This file is part of easyrec.
+ *
+ * easyrec is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * easyrec is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with easyrec.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.easyrec.plugin.itemitem.model;
+
+import org.easyrec.plugin.stats.GeneratorStatistics;
+
+import javax.xml.bind.annotation.XmlRootElement;
+import java.io.Serializable;
+
+/**
+ * Collected statistics for a run of the item-item algorithm, the durations are the wall times of the phases in
+ * milliseconds.
+ */
+@XmlRootElement
+public class ItemItemStatistics extends GeneratorStatistics implements Serializable {
+    private static final long serialVersionUID = -3581027164617440383L;
+
+    private int noUsers = 0;
+    private int noItems = 0;
+    private long actionDuration = 0;
+    private long ratingDuration = 0;
+    private long similarityDuration = 0;
+    private long writeDuration = 0;
+
+    public int getNoUsers() { return noUsers; }
+
+    public void setNoUsers(int noUsers) { this.noUsers = noUsers; }
+
+    public int getNoItems() { return noItems; }
+
+    public void setNoItems(int noItems) { this.noItems = noItems; }
+
+    /**
+     * @return the time spent copying the actions to the plugin's action table
+     */
+    public long getActionDuration() { return actionDuration; }
+
+    public void setActionDuration(long actionDuration) { this.actionDuration = actionDuration; }
+
+    /**
+     * @return the time spent loading the ratings into the rating matrix
+     */
+    public long getRatingDuration() { return ratingDuration; }
+
+    public void setRatingDuration(long ratingDuration) { this.ratingDuration = ratingDuration; }
+
+    /**
+     * @return the time spent calculating and storing the similarities
+     */
+    public long getSimilarityDuration() { return similarityDuration; }
+
+    public void setSimilarityDuration(long similarityDuration) { this.similarityDuration = similarityDuration; }
+
+    /**
+     * @return the part of the similarity duration spent storing the similarities
+     */
+    public long getWriteDuration() { return writeDuration; }
+
+    public void setWriteDuration(long writeDuration) { this.writeDuration = writeDuration; }
+}
@@ -0,0 +1,160 @@
+/*
+ * Copyright 2010 Research Studios Austria Forschungsgesellschaft mBH
+ *
+ * This file is part of easyrec.
+ *
+ * easyrec is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * easyrec is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with easyrec.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.easyrec.plugin.itemitem.model;
+
+import gnu.trove.list.array.TDoubleArrayList;
+import gnu.trove.list.array.TIntArrayList;
+import gnu.trove.set.hash.TIntHashSet;
+import org.easyrec.model.core.RatingMatrix;
+
+import java.util.Arrays;
+
+/**
+ * The item similarities inverted by the item an item is similar to, so the items whose prediction depends on a rating
+ * are found from the rated item.
+ * <p/>
+ * The rated items are addressed by their index in a {@link RatingMatrix}, the predicted items by dense indexes in the
+ * order of their ids. The items similar to rated item <code>j</code> are the entries <code>getStart(j)</code> to
+ * <code>getEnd(j) - 1</code>.
+ */
+public class SimilarityIndex {
+    private final int[] itemIds;
+    // the index of every predicted item in the rating matrix, negative if the item has no ratings
+    private final int[] ratedItems;
+    // the entries of rated item j are offsets[j] until offsets[j + 1]
+    private final int[] offsets;
+    private final int[] entryItems;
+    private final double[] entrySimilarities;
+
+    private SimilarityIndex(int[] itemIds, int[] ratedItems, int[] offsets, int[] entryItems,
+                            double[] entrySimilarities) {
+        this.itemIds = itemIds;
+        this.ratedItems = ratedItems;
+        this.offsets = offsets;
+        this.entryItems = entryItems;
+        this.entrySimilarities = entrySimilarities;
+    }
+
+    /**
+     * @return the number of items that can be predicted
+     */
+    public int getItemCount() {
+        return itemIds.length;
+    }
+
+    public int getSimilarityCount() {
+        return entryItems.length;
+    }
+
+    public int getItemId(int itemIndex) {
+        return itemIds[itemIndex];
+    }
+
+    /**
+     * @return the index of the item in the rating matrix or a negative value if the item has no ratings
+     */
+    public int getRatedItem(int itemIndex) {
+        return ratedItems[itemIndex];
+    }
+
+    /**
+     * @param ratedItem the index of an item in the rating matrix
+     */
+    public int getStart(int ratedItem) {
+        return offsets[ratedItem];
+    }
+
+    public int getEnd(int ratedItem) {
+        return offsets[ratedItem + 1];
+    }
+
+    /**
+     * @return the index of the item that is similar to the rated item of the entry
+     */
+    public int getEntryItem(int entry) {
+        return entryItems[entry];
+    }
+
+    public double getEntrySimilarity(int entry) {
+        return entrySimilarities[entry];
+    }
+
+    /**
+     * Collects the similarities of a {@link SimilarityIndex} for the items of a rating matrix, similarities to items
+     * without ratings are dropped because they never contribute to a prediction.
+     */
+    public static class Builder {
+        private final RatingMatrix ratings;
+        private final TIntArrayList items = new TIntArrayList();
+        private final TIntArrayList ratedItems = new TIntArrayList();
+        private final TDoubleArrayList similarities = new TDoubleArrayList();
+
+        public Builder(RatingMatrix ratings) {
+            this.ratings = ratings;
+        }
+
+        /**
+         * @param itemId        the item to predict
+         * @param similarItemId the item the item is similar to
+         */
+        public Builder add(int itemId, int similarItemId, double similarity) {
+            int ratedItem = ratings.getItemIndex(similarItemId);
+
+            if (ratedItem < 0) return this;
+
+            items.add(itemId);
+            ratedItems.add(ratedItem);
+            similarities.add(similarity);
+
+            return this;
+        }
+
+        public SimilarityIndex build() {
+            int[] itemIds = new TIntHashSet(items).toArray();
+            Arrays.sort(itemIds);
+
+            int[] ratedItemIndexes = new int[itemIds.length];
+
+            for (int item = 0; item < itemIds.length; item++)
+                ratedItemIndexes[item] = ratings.getItemIndex(itemIds[item]);
+
+            int[] offsets = new int[ratings.getItemCount() + 1];
+
+            for (int similarity = 0; similarity < ratedItems.size(); similarity++)
+                offsets[ratedItems.get(similarity) + 1]++;
+
+            for (int j = 0; j < ratings.getItemCount(); j++)
+                offsets[j + 1] += offsets[j];
+
+            int[] entryItems = new int[ratedItems.size()];
+            double[] entrySimilarities = new double[ratedItems.size()];
+            int[] next = Arrays.copyOf(offsets, ratings.getItemCount());
+
+            for (int similarity = 0; similarity < ratedItems.size(); similarity++) {
+                int entry = next[ratedItems.get(similarity)]++;
+
+                entryItems[entry] = Arrays.binarySearch(itemIds, items.get(similarity));
+                entrySimilarities[entry] = similarities.get(similarity);
+            }
+
+            return new SimilarityIndex(itemIds, ratedItemIndexes, offsets, entryItems, entrySimilarities);
+        }
+    }
+}
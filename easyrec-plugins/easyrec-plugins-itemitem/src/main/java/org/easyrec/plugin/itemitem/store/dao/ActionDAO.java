@@ -21,6 +21,7 @@ package org.easyrec.plugin.itemitem.store.dao;
 
 import com.google.common.base.Objects;
 import org.easyrec.model.core.ItemVO;
+import org.easyrec.model.core.RatingMatrix;
 import org.easyrec.model.core.RatingVO;
 import org.easyrec.utils.spring.store.dao.TableCreatingDroppingDAO;
 
@@ -111,6 +112,16 @@ public interface ActionDAO extends TableCreatingDroppingDAO {
                                                                                   Integer item1Id, Integer item2Id,
                                                                                   Integer actionTypeId);
 
+    /**
+     * Loads all ratings of an action type into a sparse rating matrix in one pass over the actions.
+     *
+     * @param tenantId     Tenant id.
+     * @param itemTypeId   Item type id.
+     * @param actionTypeId Action type id.
+     * @return The users' ratings of the items.
+     */
+    RatingMatrix getRatingMatrix(Integer tenantId, Integer itemTypeId, Integer actionTypeId);
+
     /**
      * Get all ratings that happend after {@code since}.
      *
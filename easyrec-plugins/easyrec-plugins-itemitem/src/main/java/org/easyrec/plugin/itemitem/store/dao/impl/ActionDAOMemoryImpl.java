@@ -20,13 +20,15 @@
 package org.easyrec.plugin.itemitem.store.dao.impl;
 
 import org.easyrec.model.core.ItemVO;
+import org.easyrec.model.core.RatingMatrix;
 import org.easyrec.model.core.RatingVO;
 import org.easyrec.plugin.itemitem.store.dao.ActionDAO;
 
 import java.util.*;
 
 /**
- * Implementation of {@link ActionDAO} where the data is stored in-memory in a List. <p><b>Company:&nbsp;</b> SAT,
+ * Implementation of {@link ActionDAO} where the data is stored in-memory in a List. The ratings are indexed by user
+ * and by item, so lookups for a single user or item don't scan all ratings. <p><b>Company:&nbsp;</b> SAT,
  * Research Studios Austria</p> <p><b>Copyright:&nbsp;</b> (c) 2007</p> <p><b>last modified:</b><br/> $Author$<br/>
  * $Date$<br/> $Revision$</p>
  *
@@ -37,6 +39,13 @@ public class ActionDAOMemoryImpl implements ActionDAO {
 
     private List<RatingVO<Integer, Integer>> ratings = new LinkedList<RatingVO<Integer, Integer>>();
     private int actionTypeId;
+    // the ratings of every user respectively item in the order of the ratings
+    private Map<Integer, List<RatingVO<Integer, Integer>>> ratingsByUser =
+            new HashMap<Integer, List<RatingVO<Integer, Integer>>>();
+    private Map<ItemVO<Integer, Integer>, List<RatingVO<Integer, Integer>>> ratingsByItem =
+            new HashMap<ItemVO<Integer, Integer>, List<RatingVO<Integer, Integer>>>();
+    private Map<Integer, Set<ItemVO<Integer, Integer>>> ratedItemsByUser =
+            new HashMap<Integer, Set<ItemVO<Integer, Integer>>>();
 
     // --------------------------- CONSTRUCTORS ---------------------------
 
@@ -44,6 +53,28 @@ public class ActionDAOMemoryImpl implements ActionDAO {
                                int actionTypeId) {
         this.ratings.addAll(ratings);
         this.actionTypeId = actionTypeId;
+
+        for (RatingVO<Integer, Integer> rating : this.ratings) {
+            List<RatingVO<Integer, Integer>> userRatings = ratingsByUser.get(rating.getUser());
+
+            if (userRatings == null) {
+                userRatings = new ArrayList<RatingVO<Integer, Integer>>();
+                ratingsByUser.put(rating.getUser(), userRatings);
+                ratedItemsByUser.put(rating.getUser(), new HashSet<ItemVO<Integer, Integer>>());
+            }
+
+            userRatings.add(rating);
+            ratedItemsByUser.get(rating.getUser()).add(rating.getItem());
+
+            List<RatingVO<Integer, Integer>> itemRatings = ratingsByItem.get(rating.getItem());
+
+            if (itemRatings == null) {
+                itemRatings = new ArrayList<RatingVO<Integer, Integer>>();
+                ratingsByItem.put(rating.getItem(), itemRatings);
+            }
+
+            itemRatings.add(rating);
+        }
     }
 
     // ------------------------ INTERFACE METHODS ------------------------
@@ -55,14 +86,9 @@ public class ActionDAOMemoryImpl implements ActionDAO {
                                    final Integer actionTypeId) {
         if (actionTypeId != this.actionTypeId) return false;
 
-        for (RatingVO<Integer, Integer> rating : ratings) {
-            if (!rating.getUser().equals(userId)) continue;
-            if (!rating.getItem().equals(item)) continue;
-
-            return true;
-        }
+        Set<ItemVO<Integer, Integer>> ratedItems = ratedItemsByUser.get(userId);
 
-        return false;
+        return ratedItems != null && ratedItems.contains(item);
     }
 
     public int generateActions(final Integer tenantId, final Date sinceLastAction) {
@@ -160,31 +186,22 @@ public class ActionDAOMemoryImpl implements ActionDAO {
         if (actionTypeId != this.actionTypeId)
             return new ArrayList<RatedTogether<Integer, Integer>>(0);
 
-        Map<Integer, List<RatingVO<Integer, Integer>>> userRatings = new HashMap<Integer, List<RatingVO<Integer, Integer>>>();
+        // only the users that rated the first item can have rated both items
+        Set<Integer> users = new LinkedHashSet<Integer>();
 
-        for (RatingVO<Integer, Integer> rating : ratings) {
-            if (!rating.getItem().getTenant().equals(tenantId)) continue;
-            if (!rating.getItem().getType().equals(itemTypeId)) continue;
-            if (!rating.getItem().getItem().equals(item1Id) && !rating.getItem().getItem().equals(item2Id)) continue;
-
-            Integer user = rating.getUser();
-
-            if (!userRatings.containsKey(user)) {
-                userRatings.put(user, new LinkedList<RatingVO<Integer, Integer>>());
-            }
-
-            userRatings.get(user).add(rating);
-        }
+        for (RatingVO<Integer, Integer> rating : getRatingsOfItem(tenantId, item1Id, itemTypeId))
+            users.add(rating.getUser());
 
         List<RatedTogether<Integer, Integer>> result = new LinkedList<RatedTogether<Integer, Integer>>();
 
-        for (Integer user : userRatings.keySet()) {
-            List<RatingVO<Integer, Integer>> ur = userRatings.get(user);
-
+        for (Integer user : users) {
             RatingVO<Integer, Integer> rating1 = null;
             RatingVO<Integer, Integer> rating2 = null;
 
-            for (RatingVO<Integer, Integer> rating : ur) {
+            for (RatingVO<Integer, Integer> rating : ratingsByUser.get(user)) {
+                if (!rating.getItem().getTenant().equals(tenantId)) continue;
+                if (!rating.getItem().getType().equals(itemTypeId)) continue;
+
                 if (rating.getItem().getItem().equals(item1Id)) {
                     rating1 = rating;
                 } else if (rating.getItem().getItem().equals(item2Id)) {
@@ -207,14 +224,39 @@ public class ActionDAOMemoryImpl implements ActionDAO {
         return result;
     }
 
+    public RatingMatrix getRatingMatrix(final Integer tenantId, final Integer itemTypeId,
+                                        final Integer actionTypeId) {
+        RatingMatrix.Builder builder = new RatingMatrix.Builder();
+
+        if (actionTypeId != this.actionTypeId) return builder.build();
+
+        for (RatingVO<Integer, Integer> rating : ratings) {
+            if (!rating.getItem().getTenant().equals(tenantId)) continue;
+            if (!rating.getItem().getType().equals(itemTypeId)) continue;
+
+            builder.add(rating.getUser(), rating.getItem().getItem(), rating.getRatingValue());
+        }
+
+        return builder.build();
+    }
+
     public List<RatingVO<Integer, Integer>> getLatestRatingsForTenant(final Integer tenantId,
                                                                                         final Integer itemTypeId,
                                                                                         final Integer itemId,
                                                                                         final Integer userId,
                                                                                         final Date since) {
         List<RatingVO<Integer, Integer>> result = new LinkedList<RatingVO<Integer, Integer>>();
+        List<RatingVO<Integer, Integer>> candidates = ratings;
 
-        for (RatingVO<Integer, Integer> rating : ratings) {
+        if (userId != null) {
+            candidates = ratingsByUser.get(userId);
+        } else if (itemId != null) {
+            candidates = getRatingsOfItem(tenantId, itemId, itemTypeId);
+        }
+
+        if (candidates == null) return result;
+
+        for (RatingVO<Integer, Integer> rating : candidates) {
             if (!rating.getItem().getTenant().equals(tenantId)) continue;
             if (!rating.getItem().getType().equals(itemTypeId)) continue;
             if (itemId != null && !rating.getItem().getItem().equals(itemId)) continue;
@@ -228,15 +270,7 @@ public class ActionDAOMemoryImpl implements ActionDAO {
     }
 
     public List<Integer> getUsersForTenant(final Integer tenantId) {
-        Set<Integer> result = new HashSet<Integer>();
-
-        for (RatingVO<Integer, Integer> rating : ratings) {
-            if (result.contains(rating.getUser())) continue;
-
-            result.add(rating.getUser());
-        }
-
-        return new ArrayList<Integer>(result);
+        return new ArrayList<Integer>(ratingsByUser.keySet());
     }
 
     // --------------------- Interface TableCreatingDAO ---------------------
@@ -252,4 +286,14 @@ public class ActionDAOMemoryImpl implements ActionDAO {
     // --------------------- Interface TableCreatingDroppingDAO ---------------------
 
     public void dropTable() {}
+
+    // -------------------------- OTHER METHODS --------------------------
+
+    private List<RatingVO<Integer, Integer>> getRatingsOfItem(final Integer tenantId, final Integer itemId,
+                                                              final Integer itemTypeId) {
+        List<RatingVO<Integer, Integer>> result = ratingsByItem
+                .get(new ItemVO<Integer, Integer>(tenantId, itemId, itemTypeId));
+
+        return result != null ? result : Collections.<RatingVO<Integer, Integer>>emptyList();
+    }
 }
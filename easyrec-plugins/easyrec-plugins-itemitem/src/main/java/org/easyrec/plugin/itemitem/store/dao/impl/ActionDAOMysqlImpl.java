@@ -22,6 +22,7 @@ package org.easyrec.plugin.itemitem.store.dao.impl;
 import com.google.common.primitives.Ints;
 import org.easyrec.model.core.ActionVO;
 import org.easyrec.model.core.ItemVO;
+import org.easyrec.model.core.RatingMatrix;
 import org.easyrec.model.core.RatingVO;
 import org.easyrec.model.core.transfer.TimeConstraintVO;
 import org.easyrec.plugin.itemitem.store.dao.ActionDAO;
@@ -30,6 +31,8 @@ import org.easyrec.utils.spring.store.dao.DaoUtils;
 import org.easyrec.utils.spring.store.dao.annotation.DAO;
 import org.easyrec.utils.spring.store.dao.impl.AbstractTableCreatingDroppingDAOImpl;
 import org.easyrec.utils.spring.store.service.sqlscript.SqlScriptService;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
 import org.springframework.jdbc.core.RowMapper;
 import org.springframework.jdbc.datasource.DataSourceUtils;
 
@@ -77,6 +80,9 @@ public class ActionDAOMysqlImpl extends AbstractTableCreatingDroppingDAOImpl imp
     public static final String QUERY_RATEDTOGETHER;
     public static final int[] ARGT_RATEDTOGETHER;
 
+    public static final String QUERY_RATINGMATRIX;
+    public static final int[] ARGT_RATINGMATRIX;
+
     public static final String QUERY_INSERT;
     public static final int[] ARGT_INSERT;
 
@@ -166,6 +172,19 @@ public class ActionDAOMysqlImpl extends AbstractTableCreatingDroppingDAOImpl imp
         QUERY_RATEDTOGETHER = query.toString();
         ARGT_RATEDTOGETHER = new int[]{Types.INTEGER, Types.INTEGER, Types.INTEGER, Types.INTEGER, Types.INTEGER};
 
+        query = new StringBuilder("SELECT ");
+        query.append(COLUMN_USERID).append(", ");
+        query.append(COLUMN_ITEMID).append(", ");
+        query.append(COLUMN_RATINGVALUE);
+        query.append(" FROM ").append(TABLE_NAME);
+        query.append(" WHERE ");
+        query.append(COLUMN_TENANTID).append("=? AND ");
+        query.append(COLUMN_ITEMTYPEID).append("=? AND ");
+        query.append(COLUMN_ACTIONTYPEID).append("=?");
+
+        QUERY_RATINGMATRIX = query.toString();
+        ARGT_RATINGMATRIX = new int[]{Types.INTEGER, Types.INTEGER, Types.INTEGER};
+
         query = new StringBuilder();
         query.append("INSERT IGNORE INTO ").append(TABLE_NAME).append("(\n");
         query.append("  ").append(COLUMN_TENANTID).append("\n,");
@@ -389,6 +408,23 @@ public class ActionDAOMysqlImpl extends AbstractTableCreatingDroppingDAOImpl imp
         return getJdbcTemplate().query(QUERY_RATEDTOGETHER, args, ARGT_RATEDTOGETHER, defaultRatedTogetherMapper);
     }
 
+    public RatingMatrix getRatingMatrix(final Integer tenantId, final Integer itemTypeId,
+                                        final Integer actionTypeId) {
+        final Object[] args = new Object[]{tenantId, itemTypeId, actionTypeId};
+        final RatingMatrix.Builder builder = new RatingMatrix.Builder();
+
+        // stream the ratings instead of loading all of them into a list first
+        JdbcTemplate streamingTemplate = new JdbcTemplate(getDataSource());
+        streamingTemplate.setFetchSize(Integer.MIN_VALUE);
+        streamingTemplate.query(QUERY_RATINGMATRIX, args, ARGT_RATINGMATRIX, new RowCallbackHandler() {
+            public void processRow(final ResultSet rs) throws SQLException {
+                builder.add(rs.getInt(COLUMN_USERID), rs.getInt(COLUMN_ITEMID), rs.getDouble(COLUMN_RATINGVALUE));
+            }
+        });
+
+        return builder.build();
+    }
+
     @ShortCacheable
     public List<RatingVO<Integer, Integer>> getLatestRatingsForTenant(final Integer tenantId,
                                                                                         final Integer itemTypeId,
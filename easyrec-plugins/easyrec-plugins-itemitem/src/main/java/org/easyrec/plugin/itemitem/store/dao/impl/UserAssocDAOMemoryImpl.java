@@ -87,4 +87,13 @@ public class UserAssocDAOMemoryImpl implements UserAssocDAO {
 
         return 1;
     }
+
+    public int insertOrUpdateUserAssocs(final List<UserAssoc> userAssocs) {
+        int result = 0;
+
+        for (final UserAssoc userAssoc : userAssocs)
+            result += insertOrUpdateUserAssoc(userAssoc);
+
+        return result;
+    }
 }
@@ -21,12 +21,16 @@ package org.easyrec.plugin.itemitem.store.dao.impl;
 
 import org.easyrec.plugin.itemitem.model.UserAssoc;
 import org.easyrec.plugin.itemitem.store.dao.UserAssocDAO;
+import org.easyrec.store.dao.impl.LoadDataInfile;
 import org.easyrec.utils.spring.store.dao.impl.AbstractTableCreatingDroppingDAOImpl;
 import org.easyrec.utils.spring.store.service.sqlscript.SqlScriptService;
 
 import javax.sql.DataSource;
+import java.io.IOException;
+import java.io.Writer;
 import java.sql.Types;
 import java.util.Date;
+import java.util.List;
 
 /**
  * MySQL implementation of @see{org.easyrec.plugin.itemitem.store.dao.UserAssocDAO} <p/> <p> <b>Company:&nbsp;</b> SAT,
@@ -63,6 +67,23 @@ public class UserAssocDAOMysqlImpl extends AbstractTableCreatingDroppingDAOImpl
                 Types.TIMESTAMP};
     }
 
+    private static final LoadDataInfile<UserAssoc> LOAD_USER_ASSOCS = new LoadDataInfile<UserAssoc>(TABLE_NAME,
+            new LoadDataInfile.RowWriter<UserAssoc>() {
+                public void write(final Writer writer, final UserAssoc userAssoc) throws IOException {
+                    final Date changeDate = userAssoc.getChangeDate() != null ? userAssoc.getChangeDate() :
+                            new Date();
+
+                    writer.append(userAssoc.getTenantId().toString()).append('\t');
+                    writer.append(userAssoc.getUserFrom().toString()).append('\t');
+                    writer.append(userAssoc.getAssocValue().toString()).append('\t');
+                    writer.append(userAssoc.getItemTo().getItem().toString()).append('\t');
+                    writer.append(userAssoc.getItemTo().getType().toString()).append('\t');
+                    writer.append(userAssoc.getSourceTypeId().toString()).append('\t');
+                    writer.append(LoadDataInfile.formatDate(changeDate)).append('\n');
+                }
+            }, COLUMN_TENANT, COLUMN_USERFROM, COLUMN_ASSOCVALUE, COLUMN_ITEMTO, COLUMN_ITEMTOTYPE, COLUMN_SOURCETYPE,
+            COLUMN_CHANGEDATE);
+
     // --------------------------- CONSTRUCTORS ---------------------------
 
     public UserAssocDAOMysqlImpl(final DataSource dataSource, final SqlScriptService sqlScriptService) {
@@ -94,4 +115,10 @@ public class UserAssocDAOMysqlImpl extends AbstractTableCreatingDroppingDAOImpl
 
         return getJdbcTemplate().update(QUERY_INSERT, args, ARGT_INSERT);
     }
+
+    public int insertOrUpdateUserAssocs(final List<UserAssoc> userAssocs) {
+        if (userAssocs == null) throw new IllegalArgumentException("Missing 'userAssocs'");
+
+        return LOAD_USER_ASSOCS.load(getJdbcTemplate(), userAssocs);
+    }
 }
@@ -62,7 +62,7 @@ public class AdjustedCosineSimilarityCalculationStrategyTest extends AbstractySi
     public void calculateSimilarity_isCorrect() {
         Date now = new Date();
 
-        strategy.calculateSimilarity(1, 1, 1, ASSOC_TYPE, SOURCE_TYPE, VIEW_TYPE, now, null);
+        strategy.calculateSimilarity(1, 1, 1, ASSOC_TYPE, SOURCE_TYPE, VIEW_TYPE, now, null, null);
 
         List<ItemAssocVO<Integer,Integer>> result = itemAssocService
                 .getItemAssocs();
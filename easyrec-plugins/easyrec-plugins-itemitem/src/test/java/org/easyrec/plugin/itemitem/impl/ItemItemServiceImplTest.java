@@ -0,0 +1,182 @@
+/*
+ * Copyright 2010 Research Studios Austria Forschungsgesellschaft mBH
+ *
+ * This file is part of easyrec.
+ *
+ * easyrec is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * easyrec is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with easyrec.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.easyrec.plugin.itemitem.impl;
+
+import org.easyrec.model.core.AssociatedItemVO;
+import org.easyrec.model.core.ItemVO;
+import org.easyrec.model.core.RatingMatrix;
+import org.easyrec.model.core.RatingVO;
+import org.easyrec.plugin.itemitem.model.ItemItemConfiguration;
+import org.easyrec.plugin.itemitem.model.SimilarityIndex;
+import org.easyrec.plugin.itemitem.model.UserAssoc;
+import org.easyrec.plugin.itemitem.store.dao.impl.ActionDAOMemoryImpl;
+import org.easyrec.plugin.itemitem.store.dao.impl.UserAssocDAOMemoryImpl;
+import org.easyrec.service.core.ItemAssocService;
+import org.junit.Test;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class ItemItemServiceImplTest {
+    private static final int TENANT = 1;
+    private static final int ITEM_TYPE = 1;
+    private static final int ACTION_TYPE = 1;
+    private static final int ASSOC_TYPE = 2;
+    private static final int SOURCE_TYPE = 3;
+
+    @Test
+    public void predict_storesThePredictionsOfTheStrategyForAllUsers() {
+        Random random = new Random(42);
+        List<RatingVO<Integer, Integer>> ratings = new ArrayList<RatingVO<Integer, Integer>>();
+
+        for (int userId = 1; userId <= 300; userId++)
+            for (int itemId = 1; itemId <= 40; itemId++)
+                if (random.nextInt(4) == 0)
+                    ratings.add(new RatingVO<Integer, Integer>(item(itemId), 1.0 + random.nextInt(10), ACTION_TYPE,
+                            new Date(), userId, null));
+
+        // the items every item is similar to
+        Map<Integer, List<AssociatedItemVO<Integer, Integer>>> itemsTo =
+                new HashMap<Integer, List<AssociatedItemVO<Integer, Integer>>>();
+
+        for (int itemFrom = 1; itemFrom <= 40; itemFrom++) {
+            List<AssociatedItemVO<Integer, Integer>> associatedItems = new ArrayList<AssociatedItemVO<Integer, Integer>>();
+
+            for (int itemTo = 1; itemTo <= 40; itemTo++)
+                if (itemTo != itemFrom && random.nextInt(3) == 0)
+                    associatedItems.add(new AssociatedItemVO<Integer, Integer>(item(itemTo), random.nextDouble(),
+                            null, ASSOC_TYPE));
+
+            itemsTo.put(itemFrom, associatedItems);
+        }
+
+        ActionDAOMemoryImpl actionDAO = new ActionDAOMemoryImpl(ratings, ACTION_TYPE);
+        Date now = new Date();
+
+        // the predictions of the strategy for every user
+        UserAssocDAOMemoryImpl expected = new UserAssocDAOMemoryImpl();
+        WeightedPredictionComputationStrategy strategy = strategy(actionDAO, expected);
+        RatingMatrix matrix = actionDAO.getRatingMatrix(TENANT, ITEM_TYPE, ACTION_TYPE);
+        SimilarityIndex.Builder builder = new SimilarityIndex.Builder(matrix);
+
+        for (Map.Entry<Integer, List<AssociatedItemVO<Integer, Integer>>> entry : itemsTo.entrySet())
+            for (AssociatedItemVO<Integer, Integer> associatedItem : entry.getValue())
+                builder.add(associatedItem.getItem().getItem(), entry.getKey(), associatedItem.getAssocValue());
+
+        SimilarityIndex similarities = builder.build();
+        List<UserAssoc> predictions = new ArrayList<UserAssoc>();
+
+        strategy.beginPrediction(sample(now), 1, 10, false);
+
+        for (int user = 0; user < matrix.getUserCount(); user++)
+            predictions.addAll(strategy.predictForUser(user, matrix, similarities));
+
+        strategy.storePredictions(predictions);
+        strategy.endPrediction();
+
+        // the predictions of the service
+        UserAssocDAOMemoryImpl actual = new UserAssocDAOMemoryImpl();
+        ItemsTo itemAssocs = new ItemsTo(itemsTo);
+        ItemItemServiceImpl service = new ItemItemServiceImpl(actionDAO, (ItemAssocService) Proxy.newProxyInstance(
+                ItemAssocService.class.getClassLoader(), new Class<?>[]{ItemAssocService.class}, itemAssocs));
+        ItemItemConfiguration configuration = new ItemItemConfiguration();
+        configuration.setThreads(4);
+
+        service.setConfiguration(configuration);
+        service.setPredictionComputationStrategy(strategy(actionDAO, actual));
+        service.setSimilarityCalculationStrategy(new CosineSimilarityCalculationStrategy());
+        service.predict(TENANT, ACTION_TYPE, ITEM_TYPE, ASSOC_TYPE, null, SOURCE_TYPE, now, null, 1, 10, null);
+
+        Map<String, Double> expectedValues = toMap(expected.getUserAssocs());
+        Map<String, Double> actualValues = toMap(actual.getUserAssocs());
+
+        // the similarities of all rated items are read with one query
+        assertEquals(1, itemAssocs.queries);
+        assertTrue(expectedValues.size() > 1000);
+        assertEquals(expectedValues.keySet(), actualValues.keySet());
+
+        for (Map.Entry<String, Double> entry : expectedValues.entrySet())
+            assertEquals(entry.getKey(), entry.getValue(), actualValues.get(entry.getKey()), 1.0e-9);
+    }
+
+    private static WeightedPredictionComputationStrategy strategy(ActionDAOMemoryImpl actionDAO,
+                                                                  UserAssocDAOMemoryImpl userAssocDAO) {
+        WeightedPredictionComputationStrategy strategy = new WeightedPredictionComputationStrategy();
+        strategy.setActionDAO(actionDAO);
+        strategy.setUserAssocDAO(userAssocDAO);
+
+        return strategy;
+    }
+
+    private static UserAssoc sample(Date changeDate) {
+        return new UserAssoc(null, changeDate, new ItemVO<Integer, Integer>(TENANT, null, ITEM_TYPE), SOURCE_TYPE,
+                TENANT, null);
+    }
+
+    private static ItemVO<Integer, Integer> item(int itemId) {
+        return new ItemVO<Integer, Integer>(TENANT, itemId, ITEM_TYPE);
+    }
+
+    // predictions as "user/item"
+    private static Map<String, Double> toMap(List<UserAssoc> userAssocs) {
+        Map<String, Double> result = new HashMap<String, Double>();
+
+        for (UserAssoc userAssoc : userAssocs)
+            result.put(userAssoc.getUserFrom() + "/" + userAssoc.getItemTo().getItem(), userAssoc.getAssocValue());
+
+        return result;
+    }
+
+    // answers getItemsTo for several items and counts the calls
+    private static class ItemsTo implements InvocationHandler {
+        private final Map<Integer, List<AssociatedItemVO<Integer, Integer>>> itemsTo;
+        private int queries = 0;
+
+        private ItemsTo(Map<Integer, List<AssociatedItemVO<Integer, Integer>>> itemsTo) {
+            this.itemsTo = itemsTo;
+        }
+
+        @SuppressWarnings("unchecked")
+        public Object invoke(Object proxy, Method method, Object[] args) {
+            if (!method.getName().equals("getItemsTo") || !(args[0] instanceof Collection))
+                throw new UnsupportedOperationException(method.getName());
+
+            Map<ItemVO<Integer, Integer>, List<AssociatedItemVO<Integer, Integer>>> result =
+                    new HashMap<ItemVO<Integer, Integer>, List<AssociatedItemVO<Integer, Integer>>>();
+
+            for (ItemVO<Integer, Integer> itemFrom : (Collection<ItemVO<Integer, Integer>>) args[0])
+                result.put(itemFrom, itemsTo.get(itemFrom.getItem()));
+
+            queries++;
+
+            return result;
+        }
+    }
+}
@@ -0,0 +1,396 @@
+/*
+ * Copyright 2010 Research Studios Austria Forschungsgesellschaft mBH
+ *
+ * This file is part of easyrec.
+ *
+ * easyrec is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * easyrec is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with easyrec.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.easyrec.plugin.itemitem.impl;
+
+import org.easyrec.model.core.ItemAssocVO;
+import org.easyrec.model.core.ItemVO;
+import org.easyrec.model.core.RatingVO;
+import org.easyrec.plugin.itemitem.model.ItemItemStatistics;
+import org.easyrec.plugin.itemitem.store.dao.ActionDAO;
+import org.easyrec.plugin.itemitem.store.dao.ActionDAO.RatedTogether;
+import org.easyrec.plugin.itemitem.store.dao.impl.ActionDAOMemoryImpl;
+import org.easyrec.plugin.itemitem.test.helpers.ItemAssocServiceStub;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeNotNull;
+
+/**
+ * Compares the similarities of the strategies with the similarities of the former implementation, which queried the
+ * ratings of every pair of items with {@link ActionDAO#getItemsRatedTogether}.
+ * <p/>
+ * The ratings are generated like the Movielens ratings (1 to 5 stars, popular items are rated more often). Set the
+ * system property <code>movielens100k</code> to the path of the <code>u.data</code> file of the Movielens 100k data
+ * set to compare on the real data set too.
+ */
+public class SimilarityCalculationRegressionTest {
+    private static final int TENANT = 1;
+    private static final int ITEM_TYPE = 1;
+    private static final int ACTION_TYPE = 1;
+    private static final int ASSOC_TYPE = 99;
+    private static final int SOURCE_TYPE = 98;
+    private static final int VIEW_TYPE = 97;
+    private static final double DELTA = 1.0e-9;
+
+    private static List<RatingVO<Integer, Integer>> generatedRatings;
+
+    @BeforeClass
+    public static void beforeClass() {
+        generatedRatings = generateRatings(150, 80, 42);
+    }
+
+    @Test
+    public void calculateSimilarity_cosineMatchesFormerImplementation() {
+        ActionDAO actionDAO = new ActionDAOMemoryImpl(generatedRatings, ACTION_TYPE);
+
+        assertSimilaritiesEqual(new CosineSimilarityCalculationStrategy(), actionDAO);
+    }
+
+    @Test
+    public void calculateSimilarity_adjustedCosineMatchesFormerImplementation() {
+        ActionDAO actionDAO = new ActionDAOMemoryImpl(generatedRatings, ACTION_TYPE);
+
+        assertSimilaritiesEqual(new AdjustedCosineSimilarityCalculationStrategy(), actionDAO);
+    }
+
+    @Test
+    public void calculateSimilarity_pearsonMatchesFormerImplementation() {
+        ActionDAO actionDAO = new ActionDAOMemoryImpl(generatedRatings, ACTION_TYPE);
+
+        assertSimilaritiesEqual(new PearsonSimilarityCalculationStrategy(), actionDAO);
+    }
+
+    @Test
+    public void calculateSimilarity_blocksOnSeveralThreadsMatchFormerImplementation() {
+        ActionDAO actionDAO = new ActionDAOMemoryImpl(generatedRatings, ACTION_TYPE);
+        PearsonSimilarityCalculationStrategy strategy = new PearsonSimilarityCalculationStrategy();
+        strategy.setThreads(3);
+        strategy.setBlockSize(7);
+
+        assertSimilaritiesEqual(strategy, actionDAO);
+    }
+
+    @Test
+    public void calculateSimilarity_reportsStatistics() {
+        ActionDAO actionDAO = new ActionDAOMemoryImpl(generatedRatings, ACTION_TYPE);
+        CosineSimilarityCalculationStrategy strategy = new CosineSimilarityCalculationStrategy(actionDAO,
+                new ItemAssocServiceStub());
+        ItemItemStatistics stats = new ItemItemStatistics();
+
+        strategy.calculateSimilarity(TENANT, ACTION_TYPE, ITEM_TYPE, ASSOC_TYPE, SOURCE_TYPE, VIEW_TYPE, new Date(),
+                stats, null);
+
+        assertEquals(150, stats.getNoUsers());
+        assertEquals(80, stats.getNoItems());
+        assertTrue(stats.getWriteDuration() <= stats.getSimilarityDuration());
+    }
+
+    @Test
+    public void getBlockSize_fitsTheBlocksIntoMaxBlockMemory() {
+        CosineSimilarityCalculationStrategy strategy = new CosineSimilarityCalculationStrategy();
+        strategy.setMaxBlockMemory(4);
+
+        // 4 MB for the sums of 4 threads and 5 blocks of items similar to 9999 others
+        assertEquals((4 * 1024 * 1024 - 4 * 10000 * 32) / 5 / (9999 * 12), strategy.getBlockSize(10000, 4));
+
+        // the sums alone take more than 1 MB
+        strategy.setMaxBlockMemory(1);
+        assertEquals(1, strategy.getBlockSize(10000, 4));
+
+        strategy.setMaxBlockMemory(4);
+
+        strategy.setMaxRecsPerItem(10);
+
+        // limited by spreading 4 blocks per thread
+        assertEquals(625, strategy.getBlockSize(10000, 4));
+        assertEquals(1, strategy.getBlockSize(0, 4));
+    }
+
+    @Test
+    public void calculateSimilarity_ignoresRatingsOfOtherActionTypes() {
+        ActionDAO actionDAO = new ActionDAOMemoryImpl(generatedRatings, ACTION_TYPE + 1);
+        ItemAssocServiceStub itemAssocService = new ItemAssocServiceStub();
+        CosineSimilarityCalculationStrategy strategy = new CosineSimilarityCalculationStrategy(actionDAO,
+                itemAssocService);
+
+        assertEquals(0, strategy.calculateSimilarity(TENANT, ACTION_TYPE, ITEM_TYPE, ASSOC_TYPE, SOURCE_TYPE,
+                VIEW_TYPE, new Date(), null, null));
+        assertTrue(itemAssocService.getItemAssocs().isEmpty());
+    }
+
+    @Test
+    public void calculateSimilarity_ignoresItemsRatedTogetherByTooFewUsers() {
+        ActionDAO actionDAO = new ActionDAOMemoryImpl(generatedRatings, ACTION_TYPE);
+        PearsonSimilarityCalculationStrategy strategy = new PearsonSimilarityCalculationStrategy();
+        strategy.setMinCoRatedCount(10);
+
+        Map<String, Double> expected = calculateFormerSimilarities(strategy, actionDAO, 10);
+        Map<String, Double> actual = calculateSimilarities(strategy, actionDAO);
+
+        assertTrue(actual.size() < calculateFormerSimilarities(strategy, actionDAO, 1).size());
+        assertSimilaritiesEqual(expected, actual);
+    }
+
+    @Test
+    public void calculateSimilarity_keepsTheMostSimilarItems() {
+        ActionDAO actionDAO = new ActionDAOMemoryImpl(generatedRatings, ACTION_TYPE);
+        AdjustedCosineSimilarityCalculationStrategy strategy = new AdjustedCosineSimilarityCalculationStrategy();
+        strategy.setMaxRecsPerItem(5);
+
+        Map<String, Double> all = calculateFormerSimilarities(strategy, actionDAO, 1);
+        Map<String, Double> actual = calculateSimilarities(strategy, actionDAO);
+        Map<Integer, List<Double>> allPerItem = groupByItemFrom(all);
+        Map<Integer, List<Double>> actualPerItem = groupByItemFrom(actual);
+
+        for (Map.Entry<Integer, List<Double>> item : allPerItem.entrySet()) {
+            List<Double> expectedValues = item.getValue();
+            Collections.sort(expectedValues, Collections.reverseOrder());
+            expectedValues = expectedValues.subList(0, Math.min(5, expectedValues.size()));
+
+            List<Double> actualValues = actualPerItem.get(item.getKey());
+            Collections.sort(actualValues, Collections.reverseOrder());
+
+            assertEquals(expectedValues.size(), actualValues.size());
+
+            for (int i = 0; i < expectedValues.size(); i++)
+                assertEquals(expectedValues.get(i), actualValues.get(i), DELTA);
+        }
+    }
+
+    @Test
+    public void calculateSimilarity_matchesFormerImplementationOnMovielens100k() throws IOException {
+        String path = System.getProperty("movielens100k");
+        assumeNotNull(path);
+
+        ActionDAO actionDAO = new IndexedActionDAO(readMovielens(new File(path)), ACTION_TYPE);
+
+        assertSimilaritiesEqual(new CosineSimilarityCalculationStrategy(), actionDAO);
+        assertSimilaritiesEqual(new AdjustedCosineSimilarityCalculationStrategy(), actionDAO);
+        assertSimilaritiesEqual(new PearsonSimilarityCalculationStrategy(), actionDAO);
+    }
+
+    private static void assertSimilaritiesEqual(AbstractSimilarityCalculationStrategy strategy, ActionDAO actionDAO) {
+        Map<String, Double> expected = calculateFormerSimilarities(strategy, actionDAO, 1);
+
+        assertTrue(expected.size() > 0);
+        assertSimilaritiesEqual(expected, calculateSimilarities(strategy, actionDAO));
+    }
+
+    private static void assertSimilaritiesEqual(Map<String, Double> expected, Map<String, Double> actual) {
+        assertEquals(expected.keySet(), actual.keySet());
+
+        for (Map.Entry<String, Double> similarity : expected.entrySet())
+            assertEquals(similarity.getKey(), similarity.getValue(), actual.get(similarity.getKey()), DELTA);
+    }
+
+    private static Map<String, Double> calculateSimilarities(AbstractSimilarityCalculationStrategy strategy,
+                                                             ActionDAO actionDAO) {
+        ItemAssocServiceStub itemAssocService = new ItemAssocServiceStub();
+        strategy.setActionDAO(actionDAO);
+        strategy.setItemAssocService(itemAssocService);
+
+        int created = strategy.calculateSimilarity(TENANT, ACTION_TYPE, ITEM_TYPE, ASSOC_TYPE, SOURCE_TYPE, VIEW_TYPE,
+                new Date(), null, null);
+
+        Map<String, Double> result = new HashMap<String, Double>();
+
+        for (ItemAssocVO<Integer, Integer> itemAssoc : itemAssocService.getItemAssocs()) {
+            assertEquals(strategy.getSourceInfo(), itemAssoc.getSourceInfo());
+
+            result.put(itemAssoc.getItemFrom().getItem() + "-" + itemAssoc.getItemTo().getItem(),
+                    itemAssoc.getAssocValue());
+        }
+
+        assertEquals(created, result.size());
+
+        return result;
+    }
+
+    /**
+     * The similarity calculation as it was before the ratings were loaded into a rating matrix.
+     */
+    private static Map<String, Double> calculateFormerSimilarities(AbstractSimilarityCalculationStrategy strategy,
+                                                                   ActionDAO actionDAO, int minCoRatedCount) {
+        strategy.setActionDAO(actionDAO);
+
+        List<ItemVO<Integer, Integer>> allItems = actionDAO.getAvailableItemsForTenant(TENANT, ITEM_TYPE);
+        Map<Integer, RatingVO<Integer, Integer>> averageItemRatings = strategy.getAverageItemRatings(TENANT,
+                ITEM_TYPE);
+        Map<String, Double> result = new HashMap<String, Double>();
+
+        for (int i = 0; i < allItems.size(); i++) {
+            ItemVO<Integer, Integer> item1 = allItems.get(i);
+
+            for (int j = i + 1; j < allItems.size(); j++) {
+                double numerator = 0.0;
+                double denominator1 = 0.0;
+                double denominator2 = 0.0;
+
+                ItemVO<Integer, Integer> item2 = allItems.get(j);
+
+                List<RatedTogether<Integer, Integer>> ratedTogether = actionDAO
+                        .getItemsRatedTogether(TENANT, ITEM_TYPE, item1.getItem(), item2.getItem(), ACTION_TYPE);
+
+                for (RatedTogether<Integer, Integer> rated : ratedTogether) {
+                    RatingVO<Integer, Integer> rating1 = rated.getRating1();
+                    RatingVO<Integer, Integer> rating2 = rated.getRating2();
+
+                    double rating1diff = rating1.getRatingValue() -
+                            strategy.getAverage(rating1.getUser(), rating1.getItem().getItem(), averageItemRatings);
+                    double rating2diff = rating2.getRatingValue() -
+                            strategy.getAverage(rating2.getUser(), rating2.getItem().getItem(), averageItemRatings);
+
+                    numerator += rating1diff * rating2diff;
+                    denominator1 += Math.pow(rating1diff, 2);
+                    denominator2 += Math.pow(rating2diff, 2);
+                }
+
+                denominator1 = Math.sqrt(denominator1);
+                denominator2 = Math.sqrt(denominator2);
+
+                if (ratedTogether.size() < minCoRatedCount) continue;
+
+                if (denominator1 == 0.0 || denominator2 == 0.0) continue;
+
+                double similarityValue = numerator / (denominator1 * denominator2);
+
+                if (Double.isNaN(similarityValue)) continue;
+
+                result.put(item1.getItem() + "-" + item2.getItem(), similarityValue);
+                result.put(item2.getItem() + "-" + item1.getItem(), similarityValue);
+            }
+        }
+
+        return result;
+    }
+
+    private static Map<Integer, List<Double>> groupByItemFrom(Map<String, Double> similarities) {
+        Map<Integer, List<Double>> result = new HashMap<Integer, List<Double>>();
+
+        for (Map.Entry<String, Double> similarity : similarities.entrySet()) {
+            Integer itemFrom = Integer.valueOf(similarity.getKey().substring(0, similarity.getKey().indexOf('-')));
+
+            if (!result.containsKey(itemFrom)) result.put(itemFrom, new ArrayList<Double>());
+
+            result.get(itemFrom).add(similarity.getValue());
+        }
+
+        return result;
+    }
+
+    private static List<RatingVO<Integer, Integer>> generateRatings(int users, int items, long seed) {
+        Random random = new Random(seed);
+        List<RatingVO<Integer, Integer>> result = new ArrayList<RatingVO<Integer, Integer>>();
+
+        for (int user = 1; user <= users; user++) {
+            // some users rate everything alike, their deviations from the average are 0
+            int bias = random.nextInt(10) == 0 ? -1 : random.nextInt(3) - 1;
+
+            for (int item = 1; item <= items; item++) {
+                // the lower the item id the more popular the item
+                if (random.nextDouble() > 0.6 / Math.sqrt(item)) continue;
+
+                long stars = bias == -1 ? 3 : Math.max(1, Math.min(5, 3 + bias + Math.round(random.nextGaussian())));
+                result.add(createRating(user, item, stars));
+            }
+        }
+
+        return result;
+    }
+
+    private static List<RatingVO<Integer, Integer>> readMovielens(File file) throws IOException {
+        List<RatingVO<Integer, Integer>> result = new ArrayList<RatingVO<Integer, Integer>>(100000);
+        BufferedReader reader = new BufferedReader(new FileReader(file));
+
+        try {
+            String line;
+
+            while ((line = reader.readLine()) != null) {
+                // user id | item id | rating | timestamp
+                String[] fields = line.split("\t");
+
+                result.add(createRating(Integer.parseInt(fields[0]), Integer.parseInt(fields[1]),
+                        Double.parseDouble(fields[2])));
+            }
+        } finally {
+            reader.close();
+        }
+
+        return result;
+    }
+
+    private static RatingVO<Integer, Integer> createRating(int userId, int itemId, double ratingValue) {
+        return new RatingVO<Integer, Integer>(new ItemVO<Integer, Integer>(TENANT, itemId, ITEM_TYPE), ratingValue, 1,
+                new Date(), userId, null);
+    }
+
+    /**
+     * Answers {@link #getItemsRatedTogether} from an index, scanning all ratings for every pair of items of the
+     * Movielens data set would take days.
+     */
+    private static class IndexedActionDAO extends ActionDAOMemoryImpl {
+        private final Map<Integer, Map<Integer, RatingVO<Integer, Integer>>> ratingsByItem =
+                new HashMap<Integer, Map<Integer, RatingVO<Integer, Integer>>>();
+
+        private IndexedActionDAO(Collection<RatingVO<Integer, Integer>> ratings, int actionTypeId) {
+            super(ratings, actionTypeId);
+
+            for (RatingVO<Integer, Integer> rating : ratings) {
+                Integer itemId = rating.getItem().getItem();
+
+                if (!ratingsByItem.containsKey(itemId))
+                    ratingsByItem.put(itemId, new HashMap<Integer, RatingVO<Integer, Integer>>());
+
+                ratingsByItem.get(itemId).put(rating.getUser(), rating);
+            }
+        }
+
+        @Override
+        public List<RatedTogether<Integer, Integer>> getItemsRatedTogether(Integer tenantId, Integer itemTypeId,
+                                                                           Integer item1Id, Integer item2Id,
+                                                                           Integer actionTypeId) {
+            List<RatedTogether<Integer, Integer>> result = new ArrayList<RatedTogether<Integer, Integer>>();
+            Map<Integer, RatingVO<Integer, Integer>> ratings2 = ratingsByItem.get(item2Id);
+
+            for (RatingVO<Integer, Integer> rating1 : ratingsByItem.get(item1Id).values()) {
+                RatingVO<Integer, Integer> rating2 = ratings2.get(rating1.getUser());
+
+                if (rating2 != null) result.add(new RatedTogether<Integer, Integer>(rating1, rating2));
+            }
+
+            return result;
+        }
+    }
+}
@@ -21,7 +21,9 @@ package org.easyrec.plugin.itemitem.impl;
 
 import org.easyrec.model.core.AssociatedItemVO;
 import org.easyrec.model.core.ItemVO;
+import org.easyrec.model.core.RatingMatrix;
 import org.easyrec.model.core.RatingVO;
+import org.easyrec.plugin.itemitem.model.SimilarityIndex;
 import org.easyrec.plugin.itemitem.model.UserAssoc;
 import org.easyrec.plugin.itemitem.store.dao.impl.ActionDAOMemoryImpl;
 import org.easyrec.plugin.itemitem.store.dao.impl.UserAssocDAOMemoryImpl;
@@ -195,6 +197,56 @@ public class WeightedPredictionComputationStrategyTest {
                         delta)));
     }
 
+    @Test
+    public void predictForUser_isCorrect() {
+        final Date now = new Date();
+        final int MIN_RATING = 0;
+        final int MAX_RATING = 10;
+
+        UserAssoc sample = new UserAssoc(null, now, new ItemVO<Integer, Integer>(TENANT, null, ITEM_TYPE),
+                SOURCE_TYPE, TENANT, null);
+
+        RatingMatrix ratings = actionDAO.getRatingMatrix(TENANT, ITEM_TYPE, ACTION_TYPE);
+        SimilarityIndex.Builder builder = new SimilarityIndex.Builder(ratings);
+
+        for (Map.Entry<Integer, List<AssociatedItemVO<Integer, Integer>>> entry : associatedItems.entrySet())
+            for (AssociatedItemVO<Integer, Integer> assoc : entry.getValue())
+                builder.add(entry.getKey(), assoc.getItem().getItem(), assoc.getAssocValue());
+
+        SimilarityIndex similarities = builder.build();
+
+        strategy.beginPrediction(sample, MIN_RATING, MAX_RATING, false);
+
+        List<UserAssoc> predictions = new ArrayList<UserAssoc>();
+
+        for (int user = 0; user < ratings.getUserCount(); user++)
+            predictions.addAll(strategy.predictForUser(user, ratings, similarities));
+
+        strategy.storePredictions(predictions);
+        strategy.endPrediction();
+
+        // the same predictions as calculated for every user and item that was not rated
+        List<UserAssoc> result = userAssocDAO.getUserAssocs();
+        final double delta = 1.0e-6;
+
+        assertThat(result.size(), is(7));
+        assertThat(result,
+                hasItem(closeToUserAssoc(createUserAssoc(1, 3, 3.62321928835346000000, sample.getChangeDate()),
+                        delta)));
+        assertThat(result, hasItem(closeToUserAssoc(createUserAssoc(1, 5, 10.0, sample.getChangeDate()), delta)));
+        assertThat(result,
+                hasItem(closeToUserAssoc(createUserAssoc(2, 2, 2.33949265845244000000, sample.getChangeDate()),
+                        delta)));
+        assertThat(result, hasItem(closeToUserAssoc(createUserAssoc(2, 5, 10.0, sample.getChangeDate()), delta)));
+        assertThat(result, hasItem(closeToUserAssoc(createUserAssoc(3, 5, 9.0, sample.getChangeDate()), delta)));
+        assertThat(result,
+                hasItem(closeToUserAssoc(createUserAssoc(4, 2, 9.61807075924101000000, sample.getChangeDate()),
+                        delta)));
+        assertThat(result,
+                hasItem(closeToUserAssoc(createUserAssoc(4, 3, 7.37678071164654000000, sample.getChangeDate()),
+                        delta)));
+    }
+
     private static UserAssoc createUserAssoc(int userFrom, int itemTo, double assocValue, Date changeDate) {
         return new UserAssoc(assocValue, changeDate, createItem(itemTo), SOURCE_TYPE, TENANT, userFrom);
     }
@@ -25,10 +25,12 @@ import org.easyrec.model.core.ItemVO;
 import org.easyrec.model.core.transfer.IAConstraintVO;
 import org.easyrec.service.core.ItemAssocService;
 
+import java.util.Collection;
 import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.ListIterator;
+import java.util.Map;
 
 /**
  * Stub for {@link ItemAssocService} supporting only {@link #insertOrUpdateItemAssoc(org.easyrec.model.core.ItemAssocVO)}.
@@ -101,7 +103,12 @@ public class ItemAssocServiceStub implements ItemAssocService {
 
     public int insertOrUpdateItemAssocs(
             final List<ItemAssocVO<Integer,Integer>> itemAssocs) {
-        return 0;
+        int result = 0;
+
+        for (ItemAssocVO<Integer,Integer> itemAssoc : itemAssocs)
+            result += insertOrUpdateItemAssoc(itemAssoc);
+
+        return result;
     }
 
     public boolean isActiveItemAssoc(final Integer itemAssocId) {return false;}
@@ -141,6 +148,10 @@ public class ItemAssocServiceStub implements ItemAssocService {
             final ItemVO<Integer, Integer> itemFrom, final Integer assocTypeId, final Integer itemToType,
             final IAConstraintVO<Integer, Integer> constraints) { return null; }
 
+    public Map<ItemVO<Integer, Integer>, List<AssociatedItemVO<Integer, Integer>>> getItemsTo(
+            final Collection<ItemVO<Integer, Integer>> itemsFrom, final Integer assocTypeId, final Integer itemToType,
+            final IAConstraintVO<Integer, Integer> constraints) { return null; }
+
     public List<ItemAssocVO<Integer,Integer>> getItemAssocs(
             final ItemVO<Integer, Integer> itemFrom, final Integer assocType,
             final ItemVO<Integer, Integer> itemTo,
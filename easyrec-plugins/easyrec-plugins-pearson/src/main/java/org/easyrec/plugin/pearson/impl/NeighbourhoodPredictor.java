@@ -0,0 +1,364 @@
+/*
+ * Copyright 2010 Research Studios Austria Forschungsgesellschaft mBH
+ *
+ * This file is part of easyrec.
+ *
+ * easyrec is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * easyrec is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with easyrec.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.easyrec.plugin.pearson.impl;
+
+import gnu.trove.set.hash.TIntHashSet;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.easyrec.model.core.ItemVO;
+import org.easyrec.model.core.RatingMatrix;
+import org.easyrec.plugin.pearson.model.Neighbours;
+import org.easyrec.plugin.pearson.model.UserAssoc;
+import org.easyrec.plugin.pearson.store.dao.UserAssocDAO;
+import org.easyrec.util.core.ParallelBlocks;
+import org.easyrec.util.core.TopScores;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Date;
+import java.util.List;
+
+/**
+ * Predicts the ratings of users from the ratings of their neighbours as described in [Breese et al, 1998]: the mean
+ * rating of the user plus the weighted mean deviation of the neighbours from their mean ratings.
+ * <p/>
+ * All items a user did not rate are scored in one pass over the ratings of the neighbours of the user, only the items
+ * with the highest predictions are kept. The users are split into blocks that are predicted in parallel, the
+ * predictions of a block replace the earlier predictions of its users in one transaction. Predictions of users that
+ * are no longer predicted are deleted at the end.
+ */
+public class NeighbourhoodPredictor {
+    private static final int MAX_USERS_PER_BLOCK = 1000;
+
+    private final Log logger = LogFactory.getLog(getClass());
+    private final UserAssocDAO userAssocDao;
+
+    private Double caseAmplification = null;
+    private boolean normalizePredictions = false;
+    private Integer minRatingValue = null;
+    private Integer maxRatingValue = null;
+    private int maxPredictions = 0;
+    private Integer testDataSourceType = null;
+    private int threads = 1;
+
+    public NeighbourhoodPredictor(final UserAssocDAO userAssocDao) {
+        this.userAssocDao = userAssocDao;
+    }
+
+    /**
+     * @param caseAmplification the power the weights are raised to, {@code null} uses the weights as they are
+     */
+    public void setCaseAmplification(final Double caseAmplification) {
+        this.caseAmplification = caseAmplification;
+    }
+
+    /**
+     * @param normalizePredictions when {@code true} predictions are truncated to the rating range
+     */
+    public void setNormalizePredictions(final boolean normalizePredictions) {
+        this.normalizePredictions = normalizePredictions;
+    }
+
+    public void setRatingRange(final Integer minRatingValue, final Integer maxRatingValue) {
+        this.minRatingValue = minRatingValue;
+        this.maxRatingValue = maxRatingValue;
+    }
+
+    /**
+     * @param maxPredictions the number of items with the highest predictions stored for every user, 0 stores all
+     */
+    public void setMaxPredictions(final int maxPredictions) {
+        this.maxPredictions = maxPredictions;
+    }
+
+    /**
+     * @param testDataSourceType when set only the items associated to a user with this source type are predicted, all
+     *                           of them regardless of {@code maxPredictions}
+     */
+    public void setTestDataSourceType(final Integer testDataSourceType) {
+        this.testDataSourceType = testDataSourceType;
+    }
+
+    /**
+     * @param threads the number of threads, 0 uses one thread per processor
+     */
+    public void setThreads(final int threads) {
+        this.threads = threads;
+    }
+
+    /**
+     * Calculates and stores the predictions of all users, the predictions stored before {@code changeDate} are
+     * replaced.
+     *
+     * @param neighbours the weighted neighbours of the users of {@code ratings}
+     * @return the number of predictions stored
+     */
+    public int predict(final Integer tenantId, final Integer itemTypeId, final Integer sourceTypeId,
+                       final Date changeDate, final RatingMatrix ratings, final Neighbours neighbours) {
+        final double[] means = getMeans(ratings);
+        final int userCount = ratings.getUserCount();
+        final int threadCount = ParallelBlocks.getThreadCount(threads);
+        final int usersPerBlock = Math.min(MAX_USERS_PER_BLOCK,
+                ParallelBlocks.getBalancedBlockSize(userCount, threadCount));
+
+        if (logger.isInfoEnabled())
+            logger.info(String.format("Predicting %d users in blocks of %d users on %d threads", userCount,
+                    usersPerBlock, threadCount));
+
+        // the sums of every thread, indexed by the item being predicted
+        final ThreadLocal<Sums> sums = new ThreadLocal<Sums>() {
+            @Override
+            protected Sums initialValue() {
+                return new Sums(ratings.getItemCount());
+            }
+        };
+
+        final UserAssocFactory userAssocFactory = new UserAssocFactory(ratings, tenantId, itemTypeId, sourceTypeId,
+                changeDate);
+        final PredictionWriter writer = new PredictionWriter(ratings, userAssocFactory);
+
+        ParallelBlocks.run("Prediction", userCount, usersPerBlock, threadCount,
+                new ParallelBlocks.Calculation<List<UserAssoc>>() {
+                    public List<UserAssoc> calculate(int start, int end) {
+                        final List<UserAssoc> result = new ArrayList<UserAssoc>();
+
+                        for (int user = start; user < end; user++)
+                            predictUser(ratings, neighbours, means, sums.get(), userAssocFactory, user, result);
+
+                        return result;
+                    }
+                }, writer);
+
+        return writer.flush();
+    }
+
+    /**
+     * @return the mean rating of every user
+     */
+    static double[] getMeans(final RatingMatrix ratings) {
+        final double[] result = new double[ratings.getUserCount()];
+
+        for (int user = 0; user < result.length; user++) {
+            double sum = 0.0;
+
+            for (int entry = ratings.getUserStart(user); entry < ratings.getUserEnd(user); entry++)
+                sum += ratings.getEntryRating(entry);
+
+            result[user] = sum / (ratings.getUserEnd(user) - ratings.getUserStart(user));
+        }
+
+        return result;
+    }
+
+    private void predictUser(final RatingMatrix ratings, final Neighbours neighbours, final double[] means,
+                             final Sums sums, final UserAssocFactory userAssocFactory, final int active,
+                             final List<UserAssoc> result) {
+        final TIntHashSet testItems = getTestItems(userAssocFactory, ratings.getUserId(active));
+        final int activeStart = ratings.getUserStart(active);
+        final int activeEnd = ratings.getUserEnd(active);
+
+        for (int entry = activeStart; entry < activeEnd; entry++)
+            sums.rated.set(ratings.getEntryItem(entry));
+
+        int candidateCount = 0;
+
+        for (int neighbour = neighbours.getStart(active); neighbour < neighbours.getEnd(active); neighbour++) {
+            final int other = neighbours.getEntryUser(neighbour);
+            final double weight = amplify(neighbours.getEntryWeight(neighbour));
+            final double absoluteWeight = Math.abs(weight);
+            final double meanOther = means[other];
+
+            if (weight == 0.0) continue;
+
+            for (int entry = ratings.getUserStart(other); entry < ratings.getUserEnd(other); entry++) {
+                final int item = ratings.getEntryItem(entry);
+
+                if (sums.rated.get(item)) continue;
+
+                if (!sums.candidate[item]) {
+                    sums.candidate[item] = true;
+                    sums.candidates[candidateCount++] = item;
+                }
+
+                sums.weightedRatings[item] += weight * (ratings.getEntryRating(entry) - meanOther);
+                sums.kappas[item] += absoluteWeight;
+            }
+        }
+
+        for (int entry = activeStart; entry < activeEnd; entry++)
+            sums.rated.clear(ratings.getEntryItem(entry));
+
+        final TopScores topPredictions = maxPredictions > 0 && testItems == null ?
+                sums.getTopPredictions(maxPredictions) : null;
+
+        for (int i = 0; i < candidateCount; i++) {
+            final int item = sums.candidates[i];
+            final double weightedRatings = sums.weightedRatings[item];
+            final double kappa = sums.kappas[item];
+
+            sums.clear(item);
+
+            if (kappa == 0.0 || Double.isNaN(kappa) || Double.isInfinite(kappa)) continue;
+
+            if (testItems != null && !testItems.contains(ratings.getItemId(item))) continue;
+
+            double prediction = means[active] + weightedRatings / kappa;
+
+            if (Double.isNaN(prediction) || Double.isInfinite(prediction)) continue;
+
+            if (normalizePredictions) {
+                if (minRatingValue != null) prediction = Math.max(prediction, minRatingValue);
+                if (maxRatingValue != null) prediction = Math.min(prediction, maxRatingValue);
+            }
+
+            if (topPredictions != null) topPredictions.offer(item, prediction);
+            else result.add(userAssocFactory.create(active, item, prediction));
+        }
+
+        if (topPredictions != null) {
+            for (int position = 0; position < topPredictions.size(); position++)
+                result.add(userAssocFactory.create(active, topPredictions.getIndex(position),
+                        topPredictions.getScore(position)));
+
+            topPredictions.clear();
+        }
+    }
+
+    private double amplify(final double weight) {
+        if (caseAmplification == null) return weight;
+
+        return weight >= 0 ? Math.pow(weight, caseAmplification) : -Math.pow(-weight, caseAmplification);
+    }
+
+    /**
+     * @return the ids of the items of the test set of the user or {@code null} if all items are predicted
+     */
+    private TIntHashSet getTestItems(final UserAssocFactory userAssocFactory, final int userId) {
+        if (testDataSourceType == null) return null;
+
+        final TIntHashSet result = new TIntHashSet();
+
+        for (final ItemVO<Integer, Integer> item : userAssocDao
+                .getItemsAssociatedToUser(userAssocFactory.tenantId, userId, userAssocFactory.itemTypeId,
+                        testDataSourceType))
+            result.add(item.getItem());
+
+        return result;
+    }
+
+    /**
+     * The weighted sums of the items predicted for the user being calculated, they are cleared again while they are
+     * read.
+     */
+    private static class Sums {
+        private final double[] weightedRatings;
+        private final double[] kappas;
+        private final boolean[] candidate;
+        private final int[] candidates;
+        private final BitSet rated;
+        private TopScores topPredictions;
+
+        private Sums(final int items) {
+            weightedRatings = new double[items];
+            kappas = new double[items];
+            candidate = new boolean[items];
+            candidates = new int[items];
+            rated = new BitSet(items);
+        }
+
+        private void clear(final int item) {
+            weightedRatings[item] = 0.0;
+            kappas[item] = 0.0;
+            candidate[item] = false;
+        }
+
+        private TopScores getTopPredictions(final int capacity) {
+            if (topPredictions == null) topPredictions = new TopScores(capacity);
+
+            return topPredictions;
+        }
+    }
+
+    /**
+     * Stores the predictions of the blocks of users given by their index in the rating matrix, they replace the
+     * predictions of these users. The predictions of users that were not predicted are deleted at the end.
+     */
+    private class PredictionWriter implements ParallelBlocks.Consumer<List<UserAssoc>> {
+        private final RatingMatrix ratings;
+        private final UserAssocFactory userAssocFactory;
+        private int predictionsCreated = 0;
+
+        private PredictionWriter(final RatingMatrix ratings, final UserAssocFactory userAssocFactory) {
+            this.ratings = ratings;
+            this.userAssocFactory = userAssocFactory;
+        }
+
+        public void consume(final int start, final int end, final List<UserAssoc> predictions) {
+            final List<Integer> userIds = new ArrayList<Integer>(end - start);
+
+            for (int user = start; user < end; user++)
+                userIds.add(ratings.getUserId(user));
+
+            userAssocDao.replaceUserAssocs(userAssocFactory.tenantId, userAssocFactory.itemTypeId,
+                    userAssocFactory.sourceTypeId, userIds, predictions);
+            predictionsCreated += predictions.size();
+
+            if (logger.isInfoEnabled())
+                logger.info(String.format("Predictions at user %d of %d", end, ratings.getUserCount()));
+        }
+
+        /**
+         * @return the number of predictions written in total
+         */
+        private int flush() {
+            userAssocDao.removeUserAssocsBefore(userAssocFactory.tenantId, userAssocFactory.itemTypeId,
+                    userAssocFactory.sourceTypeId, userAssocFactory.changeDate);
+
+            return predictionsCreated;
+        }
+    }
+
+    /**
+     * Creates the predictions of users and items given by their index in the rating matrix.
+     */
+    private static class UserAssocFactory {
+        private final RatingMatrix ratings;
+        private final Integer tenantId;
+        private final Integer itemTypeId;
+        private final Integer sourceTypeId;
+        private final Date changeDate;
+
+        private UserAssocFactory(final RatingMatrix ratings, final Integer tenantId, final Integer itemTypeId,
+                                 final Integer sourceTypeId, final Date changeDate) {
+            this.ratings = ratings;
+            this.tenantId = tenantId;
+            this.itemTypeId = itemTypeId;
+            this.sourceTypeId = sourceTypeId;
+            this.changeDate = changeDate;
+        }
+
+        private UserAssoc create(final int user, final int item, final double prediction) {
+            final ItemVO<Integer, Integer> itemTo = new ItemVO<Integer, Integer>(tenantId, ratings.getItemId(item),
+                    itemTypeId);
+
+            return new UserAssoc(prediction, changeDate, itemTo, sourceTypeId, tenantId, ratings.getUserId(user));
+        }
+    }
+}
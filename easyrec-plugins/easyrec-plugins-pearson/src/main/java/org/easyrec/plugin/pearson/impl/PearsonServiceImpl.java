@@ -21,16 +21,12 @@ package org.easyrec.plugin.pearson.impl;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
-import org.easyrec.model.core.ItemVO;
-import org.easyrec.model.core.RatingVO;
+import org.easyrec.model.core.RatingMatrix;
 import org.easyrec.model.core.TenantVO;
 import org.easyrec.plugin.pearson.PearsonService;
+import org.easyrec.plugin.pearson.model.Neighbours;
 import org.easyrec.plugin.pearson.model.Settings;
-import org.easyrec.plugin.pearson.model.User;
-import org.easyrec.plugin.pearson.model.UserAssoc;
-import org.easyrec.plugin.pearson.model.Weight;
 import org.easyrec.plugin.pearson.store.dao.LatestActionDAO;
-import org.easyrec.plugin.pearson.store.dao.LatestActionDAO.RatedTogether;
 import org.easyrec.plugin.pearson.store.dao.UserAssocDAO;
 import org.easyrec.plugin.pearson.store.dao.UserDAO;
 import org.easyrec.plugin.pearson.store.dao.WeightDAO;
@@ -75,105 +71,21 @@ public class PearsonServiceImpl implements PearsonService {
             performForTenant(tenant);
     }
 
-    private void calculateWeights(final Integer tenantId, final Integer actionTypeId, final Integer itemTypeId,
-                                  final List<User> users, final Map<Integer, Double> averageRatings) {
-        final int userCount = users.size();
+    private Neighbours calculateWeights(final Integer tenantId, final RatingMatrix ratings) {
+        final WeightCalculator weightCalculator = new WeightCalculator(weightDao);
+        weightCalculator.setUseInverseUserFrequency(settings.isUseInverseUserFrequency());
+        weightCalculator.setMinOverlap(settings.getMinOverlap());
+        weightCalculator.setSignificanceWeighting(settings.getSignificanceWeighting());
+        weightCalculator.setMaxNeighbours(settings.getMaxNeighbours());
+        weightCalculator.setThreads(settings.getThreads());
 
-        final int perc25 = (int) (userCount * 0.25);
-        final int perc50 = (int) (userCount * 0.5);
-        final int perc75 = (int) (userCount * 0.75);
+        final Neighbours neighbours = weightCalculator.calculateWeights(tenantId, ratings);
 
-        for (int i = 0; i < userCount; i++) {
-            final User activeUser = users.get(i);
-            final double averageActive = averageRatings.get(activeUser.getUser());
+        if (logger.isInfoEnabled())
+            logger.info(String.format("Stored %d weights of %d users", neighbours.getWeightCount(),
+                    ratings.getUserCount()));
 
-            if (logger.isInfoEnabled()) {
-                if (i == perc25) logger.info("Weight calculation at 25%");
-                if (i == perc50) logger.info("Weight calculation at 50%");
-                if (i == perc75) logger.info("Weight calculation at 75%");
-
-                if (i % 10 == 0) logger.info(String.format("Weight calculation at user %d of %d", i, userCount));
-            }
-
-            for (int j = i + 1; j < userCount; j++) {
-                final User otherUser = users.get(j);
-                final List<RatedTogether<Integer, Integer>> ratedTogether = latestActionDao
-                        .getItemsRatedTogetherByUsers(tenantId, itemTypeId, activeUser.getUser(), otherUser.getUser(),
-                                actionTypeId);
-
-                // users don't have common rated items
-                if (ratedTogether.size() == 0) continue;
-
-                final double averageOther = averageRatings.get(otherUser.getUser());
-                double frequency = 1.0;
-
-                if (settings.isUseInverseUserFrequency()) {
-                    frequency = userCount / ratedTogether.size();
-                    frequency = Math.log10(frequency);
-
-                    if (frequency == 0.0) continue;
-                }
-
-                double frequencySum = 0.0;
-                double expectedBoth = 0.0;
-                double expectedActive = 0.0;
-                double expectedOther = 0.0;
-                double expectedActiveSquare = 0.0;
-                double expectedOtherSquare = 0.0;
-
-                for (final RatedTogether<Integer, Integer> rating : ratedTogether) {
-                    final double ratingActive = rating.getRating1().getRatingValue();
-                    final double ratingOther = rating.getRating2().getRatingValue();
-
-                    frequencySum += frequency;
-                    expectedBoth += frequency * ratingActive * ratingOther;
-                    expectedActive += frequency * ratingActive;
-                    expectedOther += frequency * ratingOther;
-                    expectedActiveSquare += frequency * Math.pow(ratingActive, 2.0);
-                    expectedOtherSquare += frequency * Math.pow(ratingOther, 2.0);
-                }
-
-                // TODO replace EX^2 - (EX)^2 with E((X-EX)^2) for better stability
-                final double varianceActive = frequencySum * expectedActiveSquare - Math.pow(expectedActive, 2.0);
-                final double varianceOther = frequencySum * expectedOtherSquare - Math.pow(expectedOther, 2.0);
-
-                double numerator1 = frequencySum * expectedBoth;
-                double numerator2 = expectedActive * expectedOther;
-                final double denominator = Math.sqrt(varianceActive * varianceOther);
-
-                numerator1 /= denominator;
-                numerator2 /= denominator;
-
-                final double weight = numerator1 - numerator2;
-
-                if (Double.isNaN(weight) || Double.isInfinite(weight)) {
-                    if (logger.isWarnEnabled()) logger.warn(String.format(
-                            "Weight is %s for users %d and %d (vAct=%.2f, vOth=%.2f, Eact2=%.2f, Eoth2=%.2f, " +
-                                    "Ebot=%.2f, Eact=%.2f, Eoth=%.2f, fre=%.2f fsum=%.2f, num1=%.2f, " +
-                                    "numer2=%.2f, den=%.2f)", Double.isNaN(weight) ? "NaN" : "Inf", i, j,
-                            varianceActive, varianceOther, expectedActiveSquare, expectedOtherSquare, expectedBoth,
-                            expectedActive, expectedOther, frequency, frequencySum, numerator1, numerator2,
-                            denominator));
-
-                    continue;
-                }
-
-                final Weight weightObj = new Weight(activeUser, otherUser, weight);
-
-                weightDao.insertOrUpdateWeightSymmetric(weightObj);
-            }
-        }
-    }
-
-    private Map<Integer, Double> getAverageUserRatingMap(final Integer tenantId, final Integer itemTypeId) {
-        final List<RatingVO<Integer, Integer>> averageRatings = latestActionDao
-                .getAverageRatingsForUser(tenantId, itemTypeId);
-        final Map<Integer, Double> result = new HashMap<Integer, Double>(averageRatings.size());
-
-        for (final RatingVO<Integer, Integer> averageRating : averageRatings)
-            result.put(averageRating.getUser(), averageRating.getRatingValue());
-
-        return result;
+        return neighbours;
     }
 
     private void performForTenant(final TenantVO tenant) {
@@ -187,13 +99,11 @@ public class PearsonServiceImpl implements PearsonService {
         final Integer maxRatingValue = tenant.getRatingRangeMax();
         final Date changeDate = new Date();
 
-        final List<User> users = userDao.getUsersForTenant(tenantId);
-        final Map<Integer, Double> averageRatings = getAverageUserRatingMap(tenantId, itemTypeId);
-
         logger.info("Starting weight calculation.");
         Date start = new Date();
 
-        // calculateWeights(tenantId, actionTypeId, itemTypeId, users, averageRatings);
+        final RatingMatrix ratings = latestActionDao.getRatingMatrix(tenantId, itemTypeId, actionTypeId);
+        final Neighbours neighbours = calculateWeights(tenantId, ratings);
 
         Date end = new Date();
         double time = (end.getTime() - start.getTime()) / 1000L;
@@ -202,8 +112,7 @@ public class PearsonServiceImpl implements PearsonService {
         logger.info("Starting predictions.");
         start = new Date();
 
-        predict(tenantId, actionTypeId, itemTypeId, sourceTypeId, changeDate, users, averageRatings, minRatingValue,
-                maxRatingValue);
+        predict(tenantId, itemTypeId, sourceTypeId, changeDate, ratings, neighbours, minRatingValue, maxRatingValue);
 
         end = new Date();
         time = (end.getTime() - start.getTime()) / 1000L;
@@ -211,128 +120,20 @@ public class PearsonServiceImpl implements PearsonService {
                 time));
     }
 
-    private void predict(final Integer tenantId, final Integer actionTypeId, final Integer itemTypeId,
-                         final Integer sourceTypeId, final Date changeDate, final List<User> users,
-                         final Map<Integer, Double> averageRatings, final Integer minRatingValue,
-                         final Integer maxRatingValue) {
-        // final List<ItemVO<Integer, Integer>> items = latestActionDao.getAvailableItemsForTenant(tenantId,
-        // itemTypeId);
-
-        final double caseAmplification = settings.getCaseAmplification();
-        final boolean useCaseAmplification = settings.getCaseAmplification() != null;
-
-        int cur = 0;
-        final int perc25 = (int) (users.size() * 0.25);
-        final int perc50 = (int) (users.size() * 0.5);
-        final int perc75 = (int) (users.size() * 0.75);
-
-        for (final User activeUser : users) {
-            if (logger.isInfoEnabled()) {
-                if (cur == perc25) logger.info("Predictions at 25%");
-                if (cur == perc50) logger.info("Predictions at 50%");
-                if (cur == perc75) logger.info("Predictions at 75%");
-
-                logger.info(String.format("Predictions at user %d of %d", cur, users.size()));
-            }
-
-            cur++;
-
-            // final List<Weight> weights = weightDao.getWeightsForUser1(tenantId, activeUser.getUser());
-
-            // if (weights.size() == 0) {
-            // if (logger.isInfoEnabled())
-            // logger.info(String.format(
-            // "Couldn't calculate prediction for user %d because no weights were present",
-            // activeUser.getUser()));
-            //
-            // continue;
-            // }
-
-            final List<ItemVO<Integer, Integer>> items;
-
-            if (settings.getTestDataSourceType() == null)
-                items = latestActionDao.getItemsNotRatedByUser(tenantId, activeUser.getUser(), itemTypeId);
-            else
-                // we are only predicting for the test-set
-                items = userAssocDao.getItemsAssociatedToUser(tenantId, activeUser.getUser(), itemTypeId,
-                        settings.getTestDataSourceType());
-
-            for (final ItemVO<Integer, Integer> item : items) {
-                if (latestActionDao.didUserRateItem(activeUser.getUser(), item, actionTypeId)) continue;
-
-                double kappa = 0.0;
-                double weightedRatings = 0.0;
-
-                final List<Weight> weights = weightDao
-                        .getWeightsForUser1AndItem(tenantId, activeUser.getUser(), item.getItem(), item.getType());
-
-                if (weights.size() == 0) {
-                    if (logger.isInfoEnabled()) logger.info(String.format(
-                            "Couldn't calculate prediction for user %d and item %d because no weights were present",
-                            activeUser.getUser(), item.getItem()));
-
-                    continue;
-                }
-
-                // TODO get users that rated item
-                // TODO get weights for users that rated item
-                for (final Weight weight : weights) {
-                    double currentWeight = weight.getWeight();
-                    final User otherUser = weight.getUser2();
-
-                    final List<RatingVO<Integer, Integer>> ratingsOther = latestActionDao
-                            .getLatestRatingsForTenant(tenantId, itemTypeId, item.getItem(), otherUser.getUser(), null);
-
-                    if (ratingsOther.size() > 1 && logger.isWarnEnabled())
-                        logger.warn("    There shouldn't be more than 1 rating");
-
-                    double ratingOther = 0.0;
-
-                    if (ratingsOther.size() == 1) ratingOther = ratingsOther.get(0).getRatingValue();
-                    else
-                        // the other user didn't rate the current item
-                        continue;
-
-                    if (useCaseAmplification)
-                        if (currentWeight >= 0) currentWeight = Math.pow(currentWeight, caseAmplification);
-                        else currentWeight = -Math.pow(-currentWeight, caseAmplification);
-
-                    final double averageRatingOther = averageRatings.get(otherUser.getUser());
-                    kappa += Math.abs(currentWeight);
-                    weightedRatings += currentWeight * (ratingOther - averageRatingOther);
-                }
-
-                if (kappa == 0.0 || Double.isNaN(kappa) || Double.isInfinite(kappa)) {
-                    if (logger.isInfoEnabled()) logger.info(
-                            String.format("    Prediction for user %d item %d failed (kappa=%f)", activeUser.getUser(),
-                                    item.getItem(), kappa));
-
-                    continue;
-                }
-
-                double prediction = weightedRatings / kappa;
-
-                if (Double.isNaN(weightedRatings) || Double.isInfinite(weightedRatings)) {
-                    if (logger.isInfoEnabled()) logger.info(String.format(
-                            "    Prediction for user %d item %d failed (prediction=%f, weightedRatings=%f, kappa=%f)",
-                            activeUser.getUser(), item.getItem(), prediction, weightedRatings, kappa));
-
-                    continue;
-                }
-
-                final double averageRatingActive = averageRatings.get(activeUser.getUser());
-                prediction += averageRatingActive;
-
-                if (settings.isNormalizePredictions()) {
-                    prediction = Math.max(prediction, minRatingValue);
-                    prediction = Math.min(prediction, maxRatingValue);
-                }
-
-                final UserAssoc userAssoc = new UserAssoc(prediction, changeDate, item, sourceTypeId, tenantId,
-                        activeUser.getUser());
-                userAssocDao.insertOrUpdateUserAssoc(userAssoc);
-            }
-        }
+    private void predict(final Integer tenantId, final Integer itemTypeId, final Integer sourceTypeId,
+                         final Date changeDate, final RatingMatrix ratings, final Neighbours neighbours,
+                         final Integer minRatingValue, final Integer maxRatingValue) {
+        final NeighbourhoodPredictor predictor = new NeighbourhoodPredictor(userAssocDao);
+        predictor.setCaseAmplification(settings.getCaseAmplification());
+        predictor.setNormalizePredictions(settings.isNormalizePredictions());
+        predictor.setRatingRange(minRatingValue, maxRatingValue);
+        predictor.setMaxPredictions(settings.getMaxPredictions());
+        predictor.setTestDataSourceType(settings.getTestDataSourceType());
+        predictor.setThreads(settings.getThreads());
+
+        final int predictions = predictor.predict(tenantId, itemTypeId, sourceTypeId, changeDate, ratings, neighbours);
+
+        if (logger.isInfoEnabled())
+            logger.info(String.format("Stored %d predictions of %d users", predictions, ratings.getUserCount()));
     }
-
 }
@@ -0,0 +1,316 @@
+/*
+ * Copyright 2010 Research Studios Austria Forschungsgesellschaft mBH
+ *
+ * This file is part of easyrec.
+ *
+ * easyrec is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * easyrec is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with easyrec.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.easyrec.plugin.pearson.impl;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.easyrec.model.core.RatingMatrix;
+import org.easyrec.plugin.pearson.model.Neighbours;
+import org.easyrec.plugin.pearson.model.User;
+import org.easyrec.plugin.pearson.model.Weight;
+import org.easyrec.plugin.pearson.store.dao.WeightDAO;
+import org.easyrec.util.core.ParallelBlocks;
+import org.easyrec.util.core.ScoreBlock;
+import org.easyrec.util.core.TopScores;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Calculates the pearson correlation weights between users as described in [Breese et al, 1998], optionally weighting
+ * every item with its inverse user frequency log(n / n_j).
+ * <p/>
+ * For every user the sums of all users that rated a common item are accumulated in one pass over the users of the
+ * items the user rated, so users without common items are never compared. The users are split into blocks that are
+ * calculated in parallel, every block holds the weights of its users to all other users. The weights of a block
+ * replace the stored weights of its range of user ids in one transaction, the blocks cover all user ids, so weights of
+ * an earlier run do not remain. The weights are returned as well, so they can be used for predictions without reading
+ * them again.
+ * <p/>
+ * The weights of users with fewer common items than the significance weighting are reduced in proportion as described
+ * in [Herlocker et al, 1999]. [Herlocker et al, 1999] J. L. Herlocker, J. A. Konstan, A. Borchers, and J. Riedl. An
+ * algorithmic framework for performing collaborative filtering. In SIGIR '99, pages 230-237. ACM, 1999.
+ */
+public class WeightCalculator {
+    private static final int MAX_USERS_PER_BLOCK = 1000;
+    // variances this small compared to the sum of the squares are rounding errors of users that always rate the same
+    private static final double VARIANCE_EPSILON = 1.0e-12;
+
+    private final Log logger = LogFactory.getLog(getClass());
+    private final WeightDAO weightDao;
+
+    private boolean useInverseUserFrequency = true;
+    private int minOverlap = 2;
+    private int significanceWeighting = 0;
+    private int maxNeighbours = 0;
+    private int threads = 1;
+
+    public WeightCalculator(final WeightDAO weightDao) {
+        this.weightDao = weightDao;
+    }
+
+    public void setUseInverseUserFrequency(final boolean useInverseUserFrequency) {
+        this.useInverseUserFrequency = useInverseUserFrequency;
+    }
+
+    public void setMinOverlap(final int minOverlap) {
+        this.minOverlap = minOverlap;
+    }
+
+    public void setSignificanceWeighting(final int significanceWeighting) {
+        this.significanceWeighting = significanceWeighting;
+    }
+
+    public void setMaxNeighbours(final int maxNeighbours) {
+        this.maxNeighbours = maxNeighbours;
+    }
+
+    /**
+     * @param threads the number of threads, 0 uses one thread per processor
+     */
+    public void setThreads(final int threads) {
+        this.threads = threads;
+    }
+
+    /**
+     * Calculates the weights from every user to the other users, they replace the stored weights of the tenant.
+     *
+     * @return the weights that were stored
+     */
+    public Neighbours calculateWeights(final Integer tenantId, final RatingMatrix ratings) {
+        final double[] frequencies = getFrequencies(ratings);
+        final int userCount = ratings.getUserCount();
+        final int threadCount = ParallelBlocks.getThreadCount(threads);
+        final int usersPerBlock = Math.min(MAX_USERS_PER_BLOCK,
+                ParallelBlocks.getBalancedBlockSize(userCount, threadCount));
+
+        if (logger.isInfoEnabled())
+            logger.info(String.format("Calculating weights of %d users in blocks of %d users on %d threads",
+                    userCount, usersPerBlock, threadCount));
+
+        // the sums of every thread, indexed by the other user
+        final ThreadLocal<Sums> sums = new ThreadLocal<Sums>() {
+            @Override
+            protected Sums initialValue() {
+                return new Sums(userCount);
+            }
+        };
+
+        final WeightWriter writer = new WeightWriter(ratings, tenantId);
+
+        ParallelBlocks.run("WeightCalculation", userCount, usersPerBlock, threadCount,
+                new ParallelBlocks.Calculation<ScoreBlock>() {
+                    public ScoreBlock calculate(int start, int end) {
+                        return calculateBlock(ratings, frequencies, sums.get(), start, end);
+                    }
+                }, new ParallelBlocks.Consumer<ScoreBlock>() {
+                    public void consume(int start, int end, ScoreBlock block) {
+                        if (logger.isInfoEnabled())
+                            logger.info(String.format("Weight calculation at user %d of %d", end, userCount));
+
+                        writer.write(block);
+                    }
+                });
+
+        return writer.flush();
+    }
+
+    /**
+     * @return the weight of every item, 1 unless the inverse user frequency is used
+     */
+    double[] getFrequencies(final RatingMatrix ratings) {
+        final double[] result = new double[ratings.getItemCount()];
+
+        for (int item = 0; item < result.length; item++) {
+            final int raters = ratings.getItemEnd(item) - ratings.getItemStart(item);
+
+            result[item] = useInverseUserFrequency ? Math.log10((double) ratings.getUserCount() / raters) : 1.0;
+        }
+
+        return result;
+    }
+
+    private ScoreBlock calculateBlock(final RatingMatrix ratings, final double[] frequencies, final Sums sums,
+                                      final int blockStart, final int blockEnd) {
+        final ScoreBlock block = new ScoreBlock(blockStart, blockEnd);
+        final TopScores topWeights = maxNeighbours > 0 ? new TopScores(maxNeighbours) : null;
+
+        for (int active = blockStart; active < blockEnd; active++) {
+            int candidateCount = 0;
+
+            for (int entry = ratings.getUserStart(active); entry < ratings.getUserEnd(active); entry++) {
+                final int item = ratings.getEntryItem(entry);
+                final double frequency = frequencies[item];
+
+                // an item rated by all users tells nothing about the users
+                if (frequency == 0.0) continue;
+
+                final double ratingActive = ratings.getEntryRating(entry);
+
+                for (int position = ratings.getItemStart(item); position < ratings.getItemEnd(item); position++) {
+                    final int otherEntry = ratings.getItemEntry(position);
+                    final int other = ratings.getEntryUser(otherEntry);
+
+                    if (other == active) continue;
+
+                    final double ratingOther = ratings.getEntryRating(otherEntry);
+
+                    if (sums.counts[other]++ == 0) sums.candidates[candidateCount++] = other;
+
+                    sums.frequencySums[other] += frequency;
+                    sums.expectedBoth[other] += frequency * ratingActive * ratingOther;
+                    sums.expectedActive[other] += frequency * ratingActive;
+                    sums.expectedOther[other] += frequency * ratingOther;
+                    sums.expectedActiveSquare[other] += frequency * ratingActive * ratingActive;
+                    sums.expectedOtherSquare[other] += frequency * ratingOther * ratingOther;
+                }
+            }
+
+            for (int i = 0; i < candidateCount; i++) {
+                final int other = sums.candidates[i];
+                final int count = sums.counts[other];
+                final double frequencySum = sums.frequencySums[other];
+                final double expectedBoth = sums.expectedBoth[other];
+                final double expectedActive = sums.expectedActive[other];
+                final double expectedOther = sums.expectedOther[other];
+                final double expectedActiveSquare = sums.expectedActiveSquare[other];
+                final double expectedOtherSquare = sums.expectedOtherSquare[other];
+
+                sums.clear(other);
+
+                if (count < minOverlap) continue;
+
+                final double varianceActive = frequencySum * expectedActiveSquare - expectedActive * expectedActive;
+                final double varianceOther = frequencySum * expectedOtherSquare - expectedOther * expectedOther;
+
+                if (varianceActive <= VARIANCE_EPSILON * frequencySum * expectedActiveSquare) continue;
+                if (varianceOther <= VARIANCE_EPSILON * frequencySum * expectedOtherSquare) continue;
+
+                double weight = (frequencySum * expectedBoth - expectedActive * expectedOther) /
+                        Math.sqrt(varianceActive * varianceOther);
+
+                if (Double.isNaN(weight) || Double.isInfinite(weight)) continue;
+
+                if (count < significanceWeighting) weight *= (double) count / significanceWeighting;
+
+                if (topWeights != null) topWeights.offer(other, weight);
+                else block.add(other, weight);
+            }
+
+            if (topWeights != null) {
+                for (int position = 0; position < topWeights.size(); position++)
+                    block.add(topWeights.getIndex(position), topWeights.getScore(position));
+
+                topWeights.clear();
+            }
+
+            block.endRow();
+        }
+
+        return block;
+    }
+
+    /**
+     * The weighted sums of the users that rated a common item with the user being calculated, they are cleared again
+     * while they are read.
+     */
+    private static class Sums {
+        private final int[] counts;
+        private final int[] candidates;
+        private final double[] frequencySums;
+        private final double[] expectedBoth;
+        private final double[] expectedActive;
+        private final double[] expectedOther;
+        private final double[] expectedActiveSquare;
+        private final double[] expectedOtherSquare;
+
+        private Sums(final int users) {
+            counts = new int[users];
+            candidates = new int[users];
+            frequencySums = new double[users];
+            expectedBoth = new double[users];
+            expectedActive = new double[users];
+            expectedOther = new double[users];
+            expectedActiveSquare = new double[users];
+            expectedOtherSquare = new double[users];
+        }
+
+        private void clear(final int user) {
+            counts[user] = 0;
+            frequencySums[user] = 0.0;
+            expectedBoth[user] = 0.0;
+            expectedActive[user] = 0.0;
+            expectedOther[user] = 0.0;
+            expectedActiveSquare[user] = 0.0;
+            expectedOtherSquare[user] = 0.0;
+        }
+    }
+
+    /**
+     * Stores the weights of the blocks of users given by their index in the rating matrix. The weights of a block
+     * replace the weights of the user ids after the last user of the previous block up to the last user of the block,
+     * the first and last block are open ended.
+     */
+    private class WeightWriter {
+        private final RatingMatrix ratings;
+        private final Integer tenantId;
+        private final Neighbours.Builder neighbours = new Neighbours.Builder();
+
+        private WeightWriter(final RatingMatrix ratings, final Integer tenantId) {
+            this.ratings = ratings;
+            this.tenantId = tenantId;
+        }
+
+        private void write(final ScoreBlock block) {
+            final List<Weight> weights = new ArrayList<Weight>(block.size());
+
+            for (int user = block.getStart(); user < block.getEnd(); user++) {
+                final User user1 = new User(null, null, tenantId, ratings.getUserId(user));
+
+                for (int i = block.getRowStart(user); i < block.getRowEnd(user); i++) {
+                    final User user2 = new User(null, null, tenantId, ratings.getUserId(block.getIndex(i)));
+
+                    weights.add(new Weight(user1, user2, block.getScore(i)));
+                    neighbours.add(block.getIndex(i), block.getScore(i));
+                }
+
+                neighbours.endUser();
+            }
+
+            final Integer user1IdAfter = block.getStart() > 0 ? ratings.getUserId(block.getStart() - 1) : null;
+            final Integer user1IdTo = block.getEnd() < ratings.getUserCount() ?
+                    ratings.getUserId(block.getEnd() - 1) : null;
+
+            weightDao.replaceWeights(tenantId, user1IdAfter, user1IdTo, weights);
+        }
+
+        /**
+         * @return the weights written in total
+         */
+        private Neighbours flush() {
+            // without any users no block replaced the weights of an earlier run
+            if (ratings.getUserCount() == 0)
+                weightDao.replaceWeights(tenantId, null, null, Collections.<Weight>emptyList());
+
+            return neighbours.build();
+        }
+    }
+}
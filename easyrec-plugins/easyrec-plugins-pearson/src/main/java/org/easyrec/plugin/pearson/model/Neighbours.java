@@ -0,0 +1,107 @@
+/*
+ * Copyright 2010 Research Studios Austria Forschungsgesellschaft mBH
+ *
+ * This file is part of easyrec.
+ *
+ * easyrec is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * easyrec is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with easyrec.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.easyrec.plugin.pearson.model;
+
+import gnu.trove.list.array.TDoubleArrayList;
+import gnu.trove.list.array.TIntArrayList;
+import org.easyrec.model.core.RatingMatrix;
+
+/**
+ * The weighted neighbours of every user in compressed rows, the users are addressed by their index in a {@link
+ * RatingMatrix}. The neighbours of user <code>u</code> are the entries <code>getStart(u)</code> to <code>getEnd(u) -
+ * 1</code>.
+ */
+public class Neighbours {
+    private final int[] offsets;
+    private final int[] entryUsers;
+    private final double[] entryWeights;
+
+    private Neighbours(int[] offsets, int[] entryUsers, double[] entryWeights) {
+        this.offsets = offsets;
+        this.entryUsers = entryUsers;
+        this.entryWeights = entryWeights;
+    }
+
+    public int getUserCount() {
+        return offsets.length - 1;
+    }
+
+    /**
+     * @return the number of weights of all users
+     */
+    public int getWeightCount() {
+        return entryUsers.length;
+    }
+
+    public int getStart(int userIndex) {
+        return offsets[userIndex];
+    }
+
+    public int getEnd(int userIndex) {
+        return offsets[userIndex + 1];
+    }
+
+    /**
+     * @return the index of the neighbour of the entry
+     */
+    public int getEntryUser(int entry) {
+        return entryUsers[entry];
+    }
+
+    public double getEntryWeight(int entry) {
+        return entryWeights[entry];
+    }
+
+    /**
+     * Collects the neighbours of the users in the order of the users.
+     */
+    public static class Builder {
+        private final TIntArrayList offsets = new TIntArrayList();
+        private final TIntArrayList users = new TIntArrayList();
+        private final TDoubleArrayList weights = new TDoubleArrayList();
+
+        public Builder() {
+            offsets.add(0);
+        }
+
+        /**
+         * Adds a neighbour to the current user.
+         */
+        public Builder add(int neighbourIndex, double weight) {
+            users.add(neighbourIndex);
+            weights.add(weight);
+
+            return this;
+        }
+
+        /**
+         * Ends the neighbours of the current user, the following neighbours belong to the next user.
+         */
+        public Builder endUser() {
+            offsets.add(users.size());
+
+            return this;
+        }
+
+        public Neighbours build() {
+            return new Neighbours(offsets.toArray(), users.toArray(), weights.toArray());
+        }
+    }
+}
@@ -48,6 +48,11 @@ public class Settings {
     private String sourceType = "PEARSON";
     private Integer testDataSourceType = null;
     private boolean useInverseUserFrequency = true;
+    private int minOverlap = 2;
+    private int significanceWeighting = 50;
+    private int maxNeighbours = 50;
+    private int maxPredictions = 100;
+    private int threads = 0;
 
     /**
      * Initializes:<br/>
@@ -56,7 +61,12 @@ public class Settings {
      * normalizePredictions = true<br/>
      * useInverseUserFrequency = true<br/>
      * caseAmplification = 2.5<br/>
-     * testDataSourceType = null
+     * testDataSourceType = null<br/>
+     * minOverlap = 2<br/>
+     * significanceWeighting = 50<br/>
+     * maxNeighbours = 50<br/>
+     * maxPredictions = 100<br/>
+     * threads = 0
      */
     public Settings() {
         // for initializing as a bean
@@ -85,6 +95,42 @@ public class Settings {
         return itemType;
     }
 
+    /**
+     * @return the number of items users must have rated both to get a weight
+     */
+    public int getMinOverlap() {
+        return minOverlap;
+    }
+
+    /**
+     * @return the number of items two users must have rated both for their full weight, the weights of users with
+     *         fewer common items are reduced in proportion, 0 disables the reduction
+     */
+    public int getSignificanceWeighting() {
+        return significanceWeighting;
+    }
+
+    /**
+     * @return the number of users with the highest weights that are kept for every user, 0 keeps all
+     */
+    public int getMaxNeighbours() {
+        return maxNeighbours;
+    }
+
+    /**
+     * @return the number of items with the highest predictions that are stored for every user, 0 stores all
+     */
+    public int getMaxPredictions() {
+        return maxPredictions;
+    }
+
+    /**
+     * @return the number of threads used for the calculation, 0 uses one thread per processor
+     */
+    public int getThreads() {
+        return threads;
+    }
+
     public String getSourceType() {
         return sourceType;
     }
@@ -113,6 +159,26 @@ public class Settings {
         this.itemType = itemType;
     }
 
+    public void setMinOverlap(final int minOverlap) {
+        this.minOverlap = minOverlap;
+    }
+
+    public void setSignificanceWeighting(final int significanceWeighting) {
+        this.significanceWeighting = significanceWeighting;
+    }
+
+    public void setMaxNeighbours(final int maxNeighbours) {
+        this.maxNeighbours = maxNeighbours;
+    }
+
+    public void setMaxPredictions(final int maxPredictions) {
+        this.maxPredictions = maxPredictions;
+    }
+
+    public void setThreads(final int threads) {
+        this.threads = threads;
+    }
+
     public void setNormalizePredictions(final boolean normalizePredictions) {
         this.normalizePredictions = normalizePredictions;
     }
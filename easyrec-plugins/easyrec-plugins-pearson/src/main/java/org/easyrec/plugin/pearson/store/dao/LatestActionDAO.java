@@ -20,6 +20,7 @@
 package org.easyrec.plugin.pearson.store.dao;
 
 import org.easyrec.model.core.ItemVO;
+import org.easyrec.model.core.RatingMatrix;
 import org.easyrec.model.core.RatingVO;
 import org.easyrec.plugin.pearson.model.User;
 import org.easyrec.utils.spring.store.dao.TableCreatingDAO;
@@ -92,6 +93,11 @@ public interface LatestActionDAO extends TableCreatingDAO {
 
     Date getLatestRatingTimeForTenant(Integer tenantId);
 
+    /**
+     * Loads all latest ratings of an item type and action type of a tenant at once.
+     */
+    RatingMatrix getRatingMatrix(Integer tenantId, Integer itemTypeId, Integer actionTypeId);
+
     List<RatingVO<Integer, Integer>> getLatestRatingsForTenant(Integer tenantId, Integer itemTypeId,
                                                                                  Integer itemId, Integer userId,
                                                                                  Date since);
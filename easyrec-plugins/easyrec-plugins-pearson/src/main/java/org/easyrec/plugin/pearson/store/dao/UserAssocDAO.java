@@ -23,6 +23,8 @@ import org.easyrec.model.core.ItemVO;
 import org.easyrec.plugin.pearson.model.UserAssoc;
 import org.easyrec.utils.spring.store.dao.TableCreatingDAO;
 
+import java.util.Collection;
+import java.util.Date;
 import java.util.List;
 
 /**
@@ -61,4 +63,30 @@ public interface UserAssocDAO extends TableCreatingDAO {
                                                                      Integer itemTypeId, Integer sourceTypeId);
 
     int insertOrUpdateUserAssoc(UserAssoc userAssoc);
+
+    /**
+     * Inserts or updates several user associations at once.
+     *
+     * @return the number of associations stored
+     */
+    int insertOrUpdateUserAssocs(List<UserAssoc> userAssocs);
+
+    /**
+     * Replaces the associations of the given users in one transaction: all their associations of the item type and
+     * source type are deleted and the given associations are stored.
+     *
+     * @param userIds    the users whose associations are replaced
+     * @param userAssocs the new associations of these users
+     * @return the number of associations stored
+     */
+    int replaceUserAssocs(Integer tenantId, Integer itemTypeId, Integer sourceTypeId, Collection<Integer> userIds,
+                          List<UserAssoc> userAssocs);
+
+    /**
+     * Deletes the associations of the item type and source type that were changed before the given date, i.e. those
+     * that were not stored again by a later run.
+     *
+     * @return the number of associations deleted
+     */
+    int removeUserAssocsBefore(Integer tenantId, Integer itemTypeId, Integer sourceTypeId, Date changeDate);
 }
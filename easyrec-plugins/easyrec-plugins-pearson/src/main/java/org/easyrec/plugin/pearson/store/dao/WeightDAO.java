@@ -38,4 +38,24 @@ public interface WeightDAO extends TableCreatingDAO {
                                                   Integer itemTypeId);
 
     public void insertOrUpdateWeightSymmetric(Weight weight);
+
+    /**
+     * Inserts or updates several weights at once, the weights are stored only in the direction from user1 to user2.
+     *
+     * @return the number of weights stored
+     */
+    public int insertOrUpdateWeights(List<Weight> weights);
+
+    /**
+     * Replaces the weights of a range of users in one transaction: the weights from the users with an id after
+     * {@code user1IdAfter} up to {@code user1IdTo} are deleted and the given weights are stored.
+     *
+     * @param user1IdAfter the id before the first user of the range, {@code null} starts with the lowest id
+     * @param user1IdTo    the id of the last user of the range, {@code null} ends with the highest id
+     * @param weights      the new weights from users of the range
+     * @return the number of weights stored
+     */
+    public int replaceWeights(Integer tenantId, Integer user1IdAfter, Integer user1IdTo, List<Weight> weights);
+
+    public int removeWeightsForTenant(Integer tenantId);
 }
@@ -22,6 +22,7 @@ package org.easyrec.plugin.pearson.store.dao.impl;
 import com.google.common.collect.ObjectArrays;
 import com.google.common.primitives.Ints;
 import org.easyrec.model.core.ItemVO;
+import org.easyrec.model.core.RatingMatrix;
 import org.easyrec.model.core.RatingVO;
 import org.easyrec.plugin.pearson.model.User;
 import org.easyrec.plugin.pearson.store.dao.LatestActionDAO;
@@ -31,6 +32,8 @@ import org.easyrec.utils.spring.store.dao.DaoUtils;
 import org.easyrec.utils.spring.store.dao.annotation.DAO;
 import org.easyrec.utils.spring.store.dao.impl.AbstractTableCreatingDAOImpl;
 import org.easyrec.utils.spring.store.service.sqlscript.SqlScriptService;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
 import org.springframework.jdbc.core.RowMapper;
 
 import javax.sql.DataSource;
@@ -295,6 +298,35 @@ public class LatestActionDAOMysqlImpl extends AbstractTableCreatingDAOImpl imple
         return (Date) getJdbcTemplate().queryForObject(query.toString(), args, argt, Date.class);
     }
 
+    public RatingMatrix getRatingMatrix(final Integer tenantId, final Integer itemTypeId,
+                                        final Integer actionTypeId) {
+        final StringBuilder query = new StringBuilder("SELECT ");
+        query.append(DEFAULT_USER_COLUMN_NAME).append(", ");
+        query.append(DEFAULT_ITEM_COLUMN_NAME).append(", ");
+        query.append(DEFAULT_RATING_VALUE_COLUMN_NAME).append("\n");
+        query.append("FROM ").append(DEFAULT_TABLE_NAME).append("\n");
+        query.append("WHERE ");
+        query.append(DEFAULT_TENANT_COLUMN_NAME).append(" = ? AND ");
+        query.append(DEFAULT_ITEM_TYPE_COLUMN_NAME).append(" = ? AND ");
+        query.append(DEFAULT_ACTION_TYPE_COLUMN_NAME).append(" = ?");
+
+        final Object[] args = new Object[]{tenantId, itemTypeId, actionTypeId};
+        final int[] argt = new int[]{Types.INTEGER, Types.INTEGER, Types.INTEGER};
+        final RatingMatrix.Builder builder = new RatingMatrix.Builder();
+
+        // stream the ratings instead of loading all of them into a list first
+        final JdbcTemplate streamingTemplate = new JdbcTemplate(getDataSource());
+        streamingTemplate.setFetchSize(Integer.MIN_VALUE);
+        streamingTemplate.query(query.toString(), args, argt, new RowCallbackHandler() {
+            public void processRow(final ResultSet rs) throws SQLException {
+                builder.add(rs.getInt(DEFAULT_USER_COLUMN_NAME), rs.getInt(DEFAULT_ITEM_COLUMN_NAME),
+                        rs.getDouble(DEFAULT_RATING_VALUE_COLUMN_NAME));
+            }
+        });
+
+        return builder.build();
+    }
+
     @SuppressWarnings("unchecked")
     @ShortCacheable
     public List<RatingVO<Integer, Integer>> getLatestRatingsForTenant(final Integer tenantId,
@@ -26,15 +26,25 @@ import org.easyrec.model.core.ItemVO;
 import org.easyrec.plugin.pearson.model.UserAssoc;
 import org.easyrec.plugin.pearson.store.dao.LatestActionDAO;
 import org.easyrec.plugin.pearson.store.dao.UserAssocDAO;
+import org.easyrec.store.dao.impl.LoadDataInfile;
 import org.easyrec.utils.spring.store.dao.DaoUtils;
 import org.easyrec.utils.spring.store.dao.impl.AbstractTableCreatingDAOImpl;
 import org.easyrec.utils.spring.store.service.sqlscript.SqlScriptService;
 import org.springframework.jdbc.core.RowMapper;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.TransactionCallback;
+import org.springframework.transaction.support.TransactionTemplate;
 
 import javax.sql.DataSource;
+import java.io.IOException;
+import java.io.Writer;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Types;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
 import java.util.Date;
 import java.util.List;
 
@@ -80,12 +90,33 @@ public class UserAssocDAOMysqlImpl extends AbstractTableCreatingDAOImpl implemen
 
     private final static String TABLE_CREATING_SQL_SCRIPT_NAME = "classpath:sql/content/PearsonUserAssoc.sql";
 
+    private static final LoadDataInfile<UserAssoc> LOAD_USER_ASSOCS = new LoadDataInfile<UserAssoc>(
+            DEFAULT_TABLE_NAME, new LoadDataInfile.RowWriter<UserAssoc>() {
+        public void write(final Writer writer, final UserAssoc userAssoc) throws IOException {
+            final Date changeDate = userAssoc.getChangeDate() != null ? userAssoc.getChangeDate() : new Date();
+
+            writer.append(userAssoc.getTenantId().toString()).append('\t');
+            writer.append(userAssoc.getUserFrom().toString()).append('\t');
+            writer.append(userAssoc.getAssocValue().toString()).append('\t');
+            writer.append(userAssoc.getItemTo().getItem().toString()).append('\t');
+            writer.append(userAssoc.getItemTo().getType().toString()).append('\t');
+            writer.append(userAssoc.getSourceTypeId().toString()).append('\t');
+            writer.append(LoadDataInfile.formatDate(changeDate)).append('\n');
+        }
+    }, DEFAULT_TENANT_COLUMN_NAME, DEFAULT_USER_FROM_COLUMN_NAME, DEFAULT_ASSOC_VALUE_COLUMN_NAME,
+            DEFAULT_ITEM_TO_COLUMN_NAME, DEFAULT_ITEM_TO_TYPE_COLUMN_NAME, DEFAULT_SOURCE_TYPE_COLUMN_NAME,
+            DEFAULT_CHANGE_DATE_COLUMN_NAME);
+
+    private final TransactionTemplate transactionTemplate;
+
     /**
      * @param sqlScriptService
      */
     public UserAssocDAOMysqlImpl(final DataSource dataSource, final SqlScriptService sqlScriptService) {
         super(sqlScriptService);
         setDataSource(dataSource);
+
+        transactionTemplate = new TransactionTemplate(new DataSourceTransactionManager(dataSource));
     }
 
     public int deleteAlreadyVotedAssocs(final Integer tenantId, final Integer sourceTypeId) {
@@ -228,4 +259,75 @@ public class UserAssocDAOMysqlImpl extends AbstractTableCreatingDAOImpl implemen
 
         return getJdbcTemplate().update(query.toString(), args, argt);
     }
+
+    public int insertOrUpdateUserAssocs(final List<UserAssoc> userAssocs) {
+        if (userAssocs == null) throw new IllegalArgumentException("Missing 'userAssocs'");
+
+        return LOAD_USER_ASSOCS.load(getJdbcTemplate(), userAssocs);
+    }
+
+    public int replaceUserAssocs(final Integer tenantId, final Integer itemTypeId, final Integer sourceTypeId,
+                                 final Collection<Integer> userIds, final List<UserAssoc> userAssocs) {
+        if (userIds == null) throw new IllegalArgumentException("Missing 'userIds'");
+        if (userAssocs == null) throw new IllegalArgumentException("Missing 'userAssocs'");
+
+        if (userIds.isEmpty()) return insertOrUpdateUserAssocs(userAssocs);
+
+        final StringBuilder query = new StringBuilder("DELETE FROM ");
+        query.append(DEFAULT_TABLE_NAME);
+        query.append(" WHERE ");
+        query.append(DEFAULT_TENANT_COLUMN_NAME);
+        query.append(" = ? AND ");
+        query.append(DEFAULT_ITEM_TO_TYPE_COLUMN_NAME);
+        query.append(" = ? AND ");
+        query.append(DEFAULT_SOURCE_TYPE_COLUMN_NAME);
+        query.append(" = ? AND ");
+        query.append(DEFAULT_USER_FROM_COLUMN_NAME);
+        query.append(" IN (");
+
+        final List<Object> args = new ArrayList<Object>(userIds.size() + 3);
+        args.add(tenantId);
+        args.add(itemTypeId);
+        args.add(sourceTypeId);
+
+        for (final Integer userId : userIds) {
+            query.append(args.size() > 3 ? ", ?" : "?");
+            args.add(userId);
+        }
+
+        query.append(")");
+
+        final int[] argt = new int[args.size()];
+        Arrays.fill(argt, Types.INTEGER);
+
+        return transactionTemplate.execute(new TransactionCallback<Integer>() {
+            public Integer doInTransaction(final TransactionStatus status) {
+                getJdbcTemplate().update(query.toString(), args.toArray(), argt);
+
+                return LOAD_USER_ASSOCS.load(getJdbcTemplate(), userAssocs);
+            }
+        });
+    }
+
+    public int removeUserAssocsBefore(final Integer tenantId, final Integer itemTypeId, final Integer sourceTypeId,
+                                      final Date changeDate) {
+        final StringBuilder query = new StringBuilder("DELETE FROM ");
+        query.append(DEFAULT_TABLE_NAME);
+        query.append(" WHERE ");
+        query.append(DEFAULT_TENANT_COLUMN_NAME);
+        query.append(" = ? AND ");
+        query.append(DEFAULT_ITEM_TO_TYPE_COLUMN_NAME);
+        query.append(" = ? AND ");
+        query.append(DEFAULT_SOURCE_TYPE_COLUMN_NAME);
+        query.append(" = ? AND ");
+        query.append(DEFAULT_CHANGE_DATE_COLUMN_NAME);
+        query.append(" < ?");
+
+        // the change date column stores whole seconds, associations stored at the given date must remain
+        final Object[] args = new Object[]{tenantId, itemTypeId, sourceTypeId,
+                new Date(changeDate.getTime() / 1000L * 1000L)};
+        final int[] argt = new int[]{Types.INTEGER, Types.INTEGER, Types.INTEGER, Types.TIMESTAMP};
+
+        return getJdbcTemplate().update(query.toString(), args, argt);
+    }
 }
@@ -23,15 +23,24 @@ import org.easyrec.plugin.pearson.model.User;
 import org.easyrec.plugin.pearson.model.Weight;
 import org.easyrec.plugin.pearson.store.dao.LatestActionDAO;
 import org.easyrec.plugin.pearson.store.dao.WeightDAO;
+import org.easyrec.store.dao.impl.LoadDataInfile;
 import org.easyrec.utils.spring.store.dao.DaoUtils;
 import org.easyrec.utils.spring.store.dao.impl.AbstractTableCreatingDAOImpl;
 import org.easyrec.utils.spring.store.service.sqlscript.SqlScriptService;
 import org.springframework.jdbc.core.RowMapper;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.TransactionCallback;
+import org.springframework.transaction.support.TransactionTemplate;
 
 import javax.sql.DataSource;
+import java.io.IOException;
+import java.io.Writer;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Types;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 
 public class WeightDAOMysqlImpl extends AbstractTableCreatingDAOImpl implements WeightDAO {
@@ -55,9 +64,24 @@ public class WeightDAOMysqlImpl extends AbstractTableCreatingDAOImpl implements
     private static final RowMapper defaultWeightMapper = new WeightMapper();
     private static final String TABLE_CREATING_SQL_SCRIPT_NAME = "classpath:sql/content/Weight.sql";
 
+    private static final LoadDataInfile<Weight> LOAD_WEIGHTS = new LoadDataInfile<Weight>(DEFAULT_TABLE_NAME,
+            new LoadDataInfile.RowWriter<Weight>() {
+                public void write(final Writer writer, final Weight weight) throws IOException {
+                    writer.append(weight.getUser1().getTenantId().toString()).append('\t');
+                    writer.append(weight.getUser1().getUser().toString()).append('\t');
+                    writer.append(weight.getUser2().getUser().toString()).append('\t');
+                    writer.append(weight.getWeight().toString()).append('\n');
+                }
+            }, DEFAULT_TENANT_COLUMN_NAME, DEFAULT_USER1_COLUMN_NAME, DEFAULT_USER2_COLUMN_NAME,
+            DEFAULT_WEIGHT_COLUMN_NAME);
+
+    private final TransactionTemplate transactionTemplate;
+
     protected WeightDAOMysqlImpl(final DataSource dataSource, final SqlScriptService sqlScriptService) {
         super(sqlScriptService);
         setDataSource(dataSource);
+
+        transactionTemplate = new TransactionTemplate(new DataSourceTransactionManager(dataSource));
     }
 
     @Override
@@ -167,4 +191,58 @@ public class WeightDAOMysqlImpl extends AbstractTableCreatingDAOImpl implements
         getJdbcTemplate().update(query.toString(), args2, argt);
     }
 
+    public int insertOrUpdateWeights(final List<Weight> weights) {
+        if (weights == null) throw new IllegalArgumentException("Missing 'weights'");
+
+        return LOAD_WEIGHTS.load(getJdbcTemplate(), weights);
+    }
+
+    public int replaceWeights(final Integer tenantId, final Integer user1IdAfter, final Integer user1IdTo,
+                              final List<Weight> weights) {
+        if (weights == null) throw new IllegalArgumentException("Missing 'weights'");
+
+        final StringBuilder query = new StringBuilder("DELETE FROM ");
+        query.append(DEFAULT_TABLE_NAME);
+        query.append(" WHERE ");
+        query.append(DEFAULT_TENANT_COLUMN_NAME);
+        query.append("=?");
+
+        final List<Object> args = new ArrayList<Object>(3);
+        args.add(tenantId);
+
+        if (user1IdAfter != null) {
+            query.append(" AND ").append(DEFAULT_USER1_COLUMN_NAME).append(">?");
+            args.add(user1IdAfter);
+        }
+
+        if (user1IdTo != null) {
+            query.append(" AND ").append(DEFAULT_USER1_COLUMN_NAME).append("<=?");
+            args.add(user1IdTo);
+        }
+
+        final int[] argt = new int[args.size()];
+        Arrays.fill(argt, Types.INTEGER);
+
+        return transactionTemplate.execute(new TransactionCallback<Integer>() {
+            public Integer doInTransaction(final TransactionStatus status) {
+                getJdbcTemplate().update(query.toString(), args.toArray(), argt);
+
+                return LOAD_WEIGHTS.load(getJdbcTemplate(), weights);
+            }
+        });
+    }
+
+    public int removeWeightsForTenant(final Integer tenantId) {
+        final StringBuilder query = new StringBuilder("DELETE FROM ");
+        query.append(DEFAULT_TABLE_NAME);
+        query.append(" WHERE ");
+        query.append(DEFAULT_TENANT_COLUMN_NAME);
+        query.append("=?");
+
+        final Object[] args = new Object[]{tenantId};
+        final int[] argt = new int[]{Types.INTEGER};
+
+        return getJdbcTemplate().update(query.toString(), args, argt);
+    }
+
 }
@@ -0,0 +1,348 @@
+/*
+ * Copyright 2010 Research Studios Austria Forschungsgesellschaft mBH
+ *
+ * This file is part of easyrec.
+ *
+ * easyrec is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * easyrec is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with easyrec.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.easyrec.plugin.pearson.impl;
+
+import org.easyrec.model.core.ItemVO;
+import org.easyrec.model.core.RatingMatrix;
+import org.easyrec.plugin.pearson.model.Neighbours;
+import org.easyrec.plugin.pearson.model.UserAssoc;
+import org.easyrec.plugin.pearson.store.dao.UserAssocDAO;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class NeighbourhoodPredictorTest {
+    private static final int TENANT = 1;
+    private static final int ITEM_TYPE = 2;
+    private static final int SOURCE_TYPE = 3;
+    private static final int TEST_SOURCE_TYPE = 4;
+    private static final int USERS = 80;
+    private static final int ITEMS = 50;
+    private static final int NEIGHBOURS = 10;
+    private static final double CASE_AMPLIFICATION = 2.5;
+    private static final double DELTA = 1.0e-9;
+
+    // the ratings of every user by item
+    private static Map<Integer, Map<Integer, Double>> userRatings;
+    // the weights of the neighbours of every user
+    private static Map<Integer, Map<Integer, Double>> userWeights;
+    private static RatingMatrix ratings;
+    private static Neighbours neighbours;
+
+    @BeforeClass
+    public static void beforeClass() {
+        Random random = new Random(42);
+        RatingMatrix.Builder ratingsBuilder = new RatingMatrix.Builder();
+        userRatings = new HashMap<Integer, Map<Integer, Double>>();
+
+        for (int user = 1; user <= USERS; user++) {
+            Map<Integer, Double> itemRatings = new HashMap<Integer, Double>();
+
+            for (int item = 1; item <= ITEMS; item++) {
+                // every user rates item 1, so every user has a mean rating
+                if (item != 1 && random.nextDouble() >= 0.2) continue;
+
+                double rating = 1 + random.nextInt(5);
+
+                itemRatings.put(item, rating);
+                ratingsBuilder.add(user, item, rating);
+            }
+
+            userRatings.put(user, itemRatings);
+        }
+
+        ratings = ratingsBuilder.build();
+
+        Neighbours.Builder neighboursBuilder = new Neighbours.Builder();
+        userWeights = new HashMap<Integer, Map<Integer, Double>>();
+
+        for (int user = 0; user < ratings.getUserCount(); user++) {
+            Map<Integer, Double> weights = new HashMap<Integer, Double>();
+
+            while (weights.size() < NEIGHBOURS) {
+                int neighbour = random.nextInt(ratings.getUserCount());
+
+                if (neighbour == user || weights.containsKey(ratings.getUserId(neighbour))) continue;
+
+                double weight = 2 * random.nextDouble() - 1;
+
+                weights.put(ratings.getUserId(neighbour), weight);
+                neighboursBuilder.add(neighbour, weight);
+            }
+
+            neighboursBuilder.endUser();
+            userWeights.put(ratings.getUserId(user), weights);
+        }
+
+        neighbours = neighboursBuilder.build();
+    }
+
+    @Test
+    public void predict_matchesTheFormula() {
+        UserAssocDAOStub userAssocDao = new UserAssocDAOStub();
+        NeighbourhoodPredictor predictor = new NeighbourhoodPredictor(userAssocDao);
+        predictor.setCaseAmplification(CASE_AMPLIFICATION);
+
+        int predictions = predictor.predict(TENANT, ITEM_TYPE, SOURCE_TYPE, new Date(), ratings, neighbours);
+
+        Map<String, Double> expected = getExpectedPredictions(CASE_AMPLIFICATION, null, null);
+
+        assertEquals(expected.size(), predictions);
+        assertPredictions(expected, userAssocDao.predictions);
+
+        for (UserAssoc userAssoc : userAssocDao.userAssocs) {
+            assertEquals(TENANT, userAssoc.getTenantId().intValue());
+            assertEquals(ITEM_TYPE, userAssoc.getItemTo().getType().intValue());
+            assertEquals(SOURCE_TYPE, userAssoc.getSourceTypeId().intValue());
+        }
+    }
+
+    @Test
+    public void predict_keepsTheTopPredictionsInParallel() {
+        UserAssocDAOStub userAssocDao = new UserAssocDAOStub();
+        NeighbourhoodPredictor predictor = new NeighbourhoodPredictor(userAssocDao);
+        predictor.setNormalizePredictions(true);
+        predictor.setRatingRange(1, 5);
+        predictor.setMaxPredictions(5);
+        predictor.setThreads(3);
+
+        predictor.predict(TENANT, ITEM_TYPE, SOURCE_TYPE, new Date(), ratings, neighbours);
+
+        Map<String, Double> expected = getExpectedPredictions(null, 1.0, 5.0);
+
+        for (int user = 1; user <= USERS; user++) {
+            List<Double> expectedTop = getPredictionsOfUser(expected, user);
+            Collections.sort(expectedTop, Collections.reverseOrder());
+            expectedTop = expectedTop.subList(0, Math.min(5, expectedTop.size()));
+
+            List<Double> actualTop = getPredictionsOfUser(userAssocDao.predictions, user);
+            Collections.sort(actualTop, Collections.reverseOrder());
+
+            assertEquals(expectedTop.size(), actualTop.size());
+
+            for (int i = 0; i < expectedTop.size(); i++)
+                assertEquals(expectedTop.get(i), actualTop.get(i), DELTA);
+        }
+
+        for (Map.Entry<String, Double> prediction : userAssocDao.predictions.entrySet())
+            assertEquals(prediction.getKey(), expected.get(prediction.getKey()), prediction.getValue(), DELTA);
+    }
+
+    @Test
+    public void predict_predictsOnlyTheTestItems() {
+        UserAssocDAOStub userAssocDao = new UserAssocDAOStub();
+        NeighbourhoodPredictor predictor = new NeighbourhoodPredictor(userAssocDao);
+        predictor.setMaxPredictions(1);
+        predictor.setTestDataSourceType(TEST_SOURCE_TYPE);
+
+        predictor.predict(TENANT, ITEM_TYPE, SOURCE_TYPE, new Date(), ratings, neighbours);
+
+        Map<String, Double> expected = new HashMap<String, Double>();
+
+        for (Map.Entry<String, Double> prediction : getExpectedPredictions(null, null, null).entrySet()) {
+            int item = Integer.parseInt(prediction.getKey().split("-")[1]);
+
+            if (UserAssocDAOStub.isTestItem(item)) expected.put(prediction.getKey(), prediction.getValue());
+        }
+
+        assertTrue(expected.size() > USERS);
+        assertPredictions(expected, userAssocDao.predictions);
+    }
+
+    @Test
+    public void predict_replacesTheEarlierPredictions() {
+        UserAssocDAOStub userAssocDao = new UserAssocDAOStub();
+        NeighbourhoodPredictor predictor = new NeighbourhoodPredictor(userAssocDao);
+        predictor.setThreads(2);
+
+        Date earlier = new Date(System.currentTimeMillis() - 60000L);
+        // item 1 is rated by every user and a user without ratings is no longer predicted
+        userAssocDao.insertOrUpdateUserAssocs(Collections.singletonList(createUserAssoc(1, 1, earlier)));
+        userAssocDao.insertOrUpdateUserAssocs(Collections.singletonList(createUserAssoc(USERS + 1, 2, earlier)));
+
+        predictor.predict(TENANT, ITEM_TYPE, SOURCE_TYPE, new Date(), ratings, neighbours);
+
+        assertFalse(userAssocDao.predictions.containsKey("1-1"));
+        assertFalse(userAssocDao.predictions.containsKey((USERS + 1) + "-2"));
+        assertPredictions(getExpectedPredictions(null, null, null), userAssocDao.predictions);
+    }
+
+    private static UserAssoc createUserAssoc(int user, int item, Date changeDate) {
+        return new UserAssoc(0.0, changeDate, new ItemVO<Integer, Integer>(TENANT, item, ITEM_TYPE), SOURCE_TYPE,
+                TENANT, user);
+    }
+
+    // the predictions of all users for all items they did not rate by their definition
+    private static Map<String, Double> getExpectedPredictions(Double caseAmplification, Double minRating,
+                                                              Double maxRating) {
+        Map<Integer, Double> means = new HashMap<Integer, Double>();
+
+        for (Map.Entry<Integer, Map<Integer, Double>> user : userRatings.entrySet()) {
+            double sum = 0.0;
+
+            for (Double rating : user.getValue().values())
+                sum += rating;
+
+            means.put(user.getKey(), sum / user.getValue().size());
+        }
+
+        Map<String, Double> result = new HashMap<String, Double>();
+
+        for (int user = 1; user <= USERS; user++) {
+            for (int item = 1; item <= ITEMS; item++) {
+                if (userRatings.get(user).containsKey(item)) continue;
+
+                double weightedRatings = 0.0;
+                double kappa = 0.0;
+
+                for (Map.Entry<Integer, Double> neighbour : userWeights.get(user).entrySet()) {
+                    Double rating = userRatings.get(neighbour.getKey()).get(item);
+
+                    if (rating == null) continue;
+
+                    double weight = neighbour.getValue();
+
+                    if (caseAmplification != null)
+                        weight = Math.signum(weight) * Math.pow(Math.abs(weight), caseAmplification);
+
+                    weightedRatings += weight * (rating - means.get(neighbour.getKey()));
+                    kappa += Math.abs(weight);
+                }
+
+                if (kappa == 0.0) continue;
+
+                double prediction = means.get(user) + weightedRatings / kappa;
+
+                if (minRating != null) prediction = Math.min(maxRating, Math.max(minRating, prediction));
+
+                result.put(user + "-" + item, prediction);
+            }
+        }
+
+        return result;
+    }
+
+    private static void assertPredictions(Map<String, Double> expected, Map<String, Double> actual) {
+        assertEquals(expected.keySet(), actual.keySet());
+
+        for (Map.Entry<String, Double> prediction : expected.entrySet())
+            assertEquals(prediction.getKey(), prediction.getValue(), actual.get(prediction.getKey()), DELTA);
+    }
+
+    private static List<Double> getPredictionsOfUser(Map<String, Double> predictions, int user) {
+        List<Double> result = new ArrayList<Double>();
+
+        for (Map.Entry<String, Double> prediction : predictions.entrySet())
+            if (prediction.getKey().startsWith(user + "-")) result.add(prediction.getValue());
+
+        return result;
+    }
+
+    // collects the predictions as "user-item", every third item is in the test set of every user
+    private static class UserAssocDAOStub implements UserAssocDAO {
+        private final List<UserAssoc> userAssocs = new ArrayList<UserAssoc>();
+        private final Map<String, Double> predictions = new HashMap<String, Double>();
+        private final Map<String, Date> changeDates = new HashMap<String, Date>();
+
+        private static boolean isTestItem(int item) {
+            return item % 3 == 0;
+        }
+
+        public int deleteAlreadyVotedAssocs(Integer tenantId, Integer sourceTypeId) {
+            throw new UnsupportedOperationException();
+        }
+
+        public List<ItemVO<Integer, Integer>> getItemsAssociatedToUser(Integer tenantId, Integer userId,
+                                                                       Integer itemTypeId, Integer sourceTypeId) {
+            assertEquals(TEST_SOURCE_TYPE, sourceTypeId.intValue());
+
+            List<ItemVO<Integer, Integer>> result = new ArrayList<ItemVO<Integer, Integer>>();
+
+            for (int item = 1; item <= ITEMS; item++)
+                if (isTestItem(item)) result.add(new ItemVO<Integer, Integer>(tenantId, item, itemTypeId));
+
+            return result;
+        }
+
+        public int insertOrUpdateUserAssoc(UserAssoc userAssoc) {
+            throw new UnsupportedOperationException();
+        }
+
+        public int insertOrUpdateUserAssocs(List<UserAssoc> userAssocs) {
+            this.userAssocs.addAll(userAssocs);
+
+            for (UserAssoc userAssoc : userAssocs) {
+                String key = userAssoc.getUserFrom() + "-" + userAssoc.getItemTo().getItem();
+
+                predictions.put(key, userAssoc.getAssocValue());
+                changeDates.put(key, userAssoc.getChangeDate());
+            }
+
+            return userAssocs.size();
+        }
+
+        public int replaceUserAssocs(Integer tenantId, Integer itemTypeId, Integer sourceTypeId,
+                                     Collection<Integer> userIds, List<UserAssoc> userAssocs) {
+            for (Integer userId : userIds)
+                for (String key : new ArrayList<String>(predictions.keySet()))
+                    if (key.startsWith(userId + "-")) remove(key);
+
+            return insertOrUpdateUserAssocs(userAssocs);
+        }
+
+        public int removeUserAssocsBefore(Integer tenantId, Integer itemTypeId, Integer sourceTypeId,
+                                          Date changeDate) {
+            int result = 0;
+
+            for (String key : new ArrayList<String>(predictions.keySet())) {
+                if (!changeDates.get(key).before(changeDate)) continue;
+
+                remove(key);
+                result++;
+            }
+
+            return result;
+        }
+
+        private void remove(String key) {
+            predictions.remove(key);
+            changeDates.remove(key);
+        }
+
+        public String getDefaultTableName() { return null; }
+
+        public String getTableCreatingSQLScriptName() { return null; }
+
+        public void createTable() {}
+
+        public boolean existsTable() { return true; }
+    }
+}
@@ -0,0 +1,300 @@
+/*
+ * Copyright 2010 Research Studios Austria Forschungsgesellschaft mBH
+ *
+ * This file is part of easyrec.
+ *
+ * easyrec is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * easyrec is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with easyrec.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.easyrec.plugin.pearson.impl;
+
+import org.easyrec.model.core.RatingMatrix;
+import org.easyrec.plugin.pearson.model.Neighbours;
+import org.easyrec.plugin.pearson.model.Weight;
+import org.easyrec.plugin.pearson.store.dao.WeightDAO;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class WeightCalculatorTest {
+    private static final int TENANT = 1;
+    private static final int USERS = 120;
+    private static final int ITEMS = 60;
+    private static final double DELTA = 1.0e-9;
+
+    // the ratings of every user by item
+    private static Map<Integer, Map<Integer, Double>> userRatings;
+    private static RatingMatrix ratings;
+
+    @BeforeClass
+    public static void beforeClass() {
+        Random random = new Random(42);
+        RatingMatrix.Builder builder = new RatingMatrix.Builder();
+        userRatings = new HashMap<Integer, Map<Integer, Double>>();
+
+        for (int user = 1; user <= USERS; user++) {
+            Map<Integer, Double> itemRatings = new HashMap<Integer, Double>();
+            // some users rate many items, most users only a few
+            double density = user % 10 == 0 ? 0.6 : 0.15;
+
+            for (int item = 1; item <= ITEMS; item++) {
+                // item 1 is rated by everyone, so it has no inverse user frequency
+                if (item != 1 && random.nextDouble() >= density) continue;
+
+                double rating = 1 + random.nextInt(5);
+
+                itemRatings.put(item, rating);
+                builder.add(user, item, rating);
+            }
+
+            userRatings.put(user, itemRatings);
+        }
+
+        ratings = builder.build();
+    }
+
+    @Test
+    public void calculateWeights_matchesTheFormula() {
+        for (boolean useInverseUserFrequency : new boolean[]{true, false}) {
+            WeightDAOStub weightDao = new WeightDAOStub();
+            WeightCalculator weightCalculator = new WeightCalculator(weightDao);
+            weightCalculator.setUseInverseUserFrequency(useInverseUserFrequency);
+
+            Neighbours neighbours = weightCalculator.calculateWeights(TENANT, ratings);
+
+            Map<String, Double> expected = getExpectedWeights(useInverseUserFrequency, 2, 0);
+
+            assertEquals(expected.size(), neighbours.getWeightCount());
+            assertWeights(expected, weightDao.weights);
+            assertWeights(expected, toMap(neighbours));
+        }
+    }
+
+    @Test
+    public void calculateWeights_keepsTheTopNeighboursInParallel() {
+        WeightDAOStub weightDao = new WeightDAOStub();
+        WeightCalculator weightCalculator = new WeightCalculator(weightDao);
+        weightCalculator.setMinOverlap(3);
+        weightCalculator.setSignificanceWeighting(10);
+        weightCalculator.setMaxNeighbours(5);
+        weightCalculator.setThreads(3);
+
+        Neighbours neighbours = weightCalculator.calculateWeights(TENANT, ratings);
+
+        assertWeights(weightDao.weights, toMap(neighbours));
+
+        Map<String, Double> expected = getExpectedWeights(true, 3, 10);
+
+        for (int user = 1; user <= USERS; user++) {
+            List<Double> expectedTop = getWeightsOfUser(expected, user);
+            Collections.sort(expectedTop, Collections.reverseOrder());
+            expectedTop = expectedTop.subList(0, Math.min(5, expectedTop.size()));
+
+            List<Double> actualTop = getWeightsOfUser(weightDao.weights, user);
+            Collections.sort(actualTop, Collections.reverseOrder());
+
+            assertEquals(expectedTop.size(), actualTop.size());
+
+            for (int i = 0; i < expectedTop.size(); i++)
+                assertEquals(expectedTop.get(i), actualTop.get(i), DELTA);
+        }
+    }
+
+    @Test
+    public void calculateWeights_skipsUsersWithoutCommonItems() {
+        RatingMatrix.Builder builder = new RatingMatrix.Builder();
+        builder.add(1, 1, 1.0).add(1, 2, 5.0).add(1, 3, 3.0);
+        builder.add(2, 1, 2.0).add(2, 2, 4.0).add(2, 3, 5.0);
+        builder.add(3, 4, 1.0).add(3, 5, 5.0);
+        builder.add(4, 4, 2.0).add(4, 5, 4.0);
+
+        WeightDAOStub weightDao = new WeightDAOStub();
+        WeightCalculator weightCalculator = new WeightCalculator(weightDao);
+        weightCalculator.setUseInverseUserFrequency(false);
+
+        assertEquals(4, weightCalculator.calculateWeights(TENANT, builder.build()).getWeightCount());
+
+        assertTrue(weightDao.weights.containsKey("1-2"));
+        assertTrue(weightDao.weights.containsKey("2-1"));
+        assertEquals(1.0, weightDao.weights.get("3-4"), DELTA);
+        assertFalse(weightDao.weights.containsKey("1-3"));
+        assertFalse(weightDao.weights.containsKey("2-4"));
+    }
+
+    @Test
+    public void calculateWeights_replacesTheWeightsOfAnEarlierRun() {
+        WeightDAOStub weightDao = new WeightDAOStub();
+        // weights of users before, between and after the users of the ratings
+        weightDao.weights.put("0-1", 0.5);
+        weightDao.weights.put("1-1", 0.5);
+        weightDao.weights.put((USERS + 1) + "-1", 0.5);
+
+        WeightCalculator weightCalculator = new WeightCalculator(weightDao);
+        weightCalculator.setThreads(3);
+        weightCalculator.calculateWeights(TENANT, ratings);
+
+        assertWeights(getExpectedWeights(true, 2, 0), weightDao.weights);
+    }
+
+    // the weighted pearson correlation of all pairs of users by its definition
+    private static Map<String, Double> getExpectedWeights(boolean useInverseUserFrequency, int minOverlap,
+                                                          int significanceWeighting) {
+        Map<Integer, Integer> raters = new HashMap<Integer, Integer>();
+
+        for (Map<Integer, Double> itemRatings : userRatings.values())
+            for (Integer item : itemRatings.keySet())
+                raters.put(item, raters.containsKey(item) ? raters.get(item) + 1 : 1);
+
+        Map<String, Double> result = new HashMap<String, Double>();
+
+        for (int user1 = 1; user1 <= USERS; user1++) {
+            for (int user2 = 1; user2 <= USERS; user2++) {
+                if (user1 == user2) continue;
+
+                List<double[]> common = new ArrayList<double[]>();
+
+                for (Map.Entry<Integer, Double> rating1 : userRatings.get(user1).entrySet()) {
+                    Double rating2 = userRatings.get(user2).get(rating1.getKey());
+                    double frequency = useInverseUserFrequency ?
+                            Math.log10((double) USERS / raters.get(rating1.getKey())) : 1.0;
+
+                    if (rating2 == null || frequency == 0.0) continue;
+
+                    common.add(new double[]{frequency, rating1.getValue(), rating2});
+                }
+
+                if (common.size() < minOverlap) continue;
+
+                double frequencySum = 0.0;
+                double mean1 = 0.0;
+                double mean2 = 0.0;
+
+                for (double[] rating : common) {
+                    frequencySum += rating[0];
+                    mean1 += rating[0] * rating[1];
+                    mean2 += rating[0] * rating[2];
+                }
+
+                mean1 /= frequencySum;
+                mean2 /= frequencySum;
+
+                double covariance = 0.0;
+                double variance1 = 0.0;
+                double variance2 = 0.0;
+
+                for (double[] rating : common) {
+                    covariance += rating[0] * (rating[1] - mean1) * (rating[2] - mean2);
+                    variance1 += rating[0] * (rating[1] - mean1) * (rating[1] - mean1);
+                    variance2 += rating[0] * (rating[2] - mean2) * (rating[2] - mean2);
+                }
+
+                if (variance1 < DELTA || variance2 < DELTA) continue;
+
+                double weight = covariance / Math.sqrt(variance1 * variance2);
+
+                if (common.size() < significanceWeighting) weight *= (double) common.size() / significanceWeighting;
+
+                result.put(user1 + "-" + user2, weight);
+            }
+        }
+
+        return result;
+    }
+
+    private static void assertWeights(Map<String, Double> expected, Map<String, Double> actual) {
+        assertEquals(expected.keySet(), actual.keySet());
+
+        for (Map.Entry<String, Double> weight : expected.entrySet())
+            assertEquals(weight.getKey(), weight.getValue(), actual.get(weight.getKey()), DELTA);
+    }
+
+    private static Map<String, Double> toMap(Neighbours neighbours) {
+        Map<String, Double> result = new HashMap<String, Double>();
+
+        for (int user = 0; user < neighbours.getUserCount(); user++)
+            for (int entry = neighbours.getStart(user); entry < neighbours.getEnd(user); entry++)
+                result.put(ratings.getUserId(user) + "-" + ratings.getUserId(neighbours.getEntryUser(entry)),
+                        neighbours.getEntryWeight(entry));
+
+        return result;
+    }
+
+    private static List<Double> getWeightsOfUser(Map<String, Double> weights, int user) {
+        List<Double> result = new ArrayList<Double>();
+
+        for (Map.Entry<String, Double> weight : weights.entrySet())
+            if (weight.getKey().startsWith(user + "-")) result.add(weight.getValue());
+
+        return result;
+    }
+
+    // collects the weights as "user1-user2"
+    private static class WeightDAOStub implements WeightDAO {
+        private final Map<String, Double> weights = new HashMap<String, Double>();
+
+        public List<Weight> getWeightsForUser1(Integer tenantId, Integer user1Id) {
+            throw new UnsupportedOperationException();
+        }
+
+        public List<Weight> getWeightsForUser1AndItem(Integer tenantId, Integer user1Id, Integer itemId,
+                                                      Integer itemTypeId) {
+            throw new UnsupportedOperationException();
+        }
+
+        public void insertOrUpdateWeightSymmetric(Weight weight) {
+            throw new UnsupportedOperationException();
+        }
+
+        public int insertOrUpdateWeights(List<Weight> weights) {
+            for (Weight weight : weights)
+                this.weights.put(weight.getUser1().getUser() + "-" + weight.getUser2().getUser(), weight.getWeight());
+
+            return weights.size();
+        }
+
+        public int replaceWeights(Integer tenantId, Integer user1IdAfter, Integer user1IdTo, List<Weight> weights) {
+            for (String key : new ArrayList<String>(this.weights.keySet())) {
+                int user1 = Integer.parseInt(key.split("-")[0]);
+
+                if ((user1IdAfter == null || user1 > user1IdAfter) && (user1IdTo == null || user1 <= user1IdTo))
+                    this.weights.remove(key);
+            }
+
+            return insertOrUpdateWeights(weights);
+        }
+
+        public int removeWeightsForTenant(Integer tenantId) {
+            weights.clear();
+
+            return 0;
+        }
+
+        public String getDefaultTableName() { return null; }
+
+        public String getTableCreatingSQLScriptName() { return null; }
+
+        public void createTable() {}
+
+        public boolean existsTable() { return true; }
+    }
+}
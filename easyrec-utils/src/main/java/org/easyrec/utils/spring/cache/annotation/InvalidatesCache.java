@@ -23,13 +23,16 @@ import java.lang.annotation.RetentionPolicy;
 import java.lang.annotation.Target;
 
 /**
- * Annotation applicable on methods that causes all caches used in an application
- * to be cleared after th execution of this the annotated method. This is intended
- * for use after e.g. remove operations on a database table whichs contents are
- * cached in a long term cache and avoid inconsistencies between cache and database.
- * WARNING: THE USE OF THIS ASPECT HAS POTENTIALLY DRAMATIC EFFECTS ON PERFORMANCE.
- * IT IS INTENDED ONLY FOR USE ON METHODS USED IN DEVELOPER AND TESTING ENVIROMENTS.
- * PRODUCTION LEVEL CODE SHOULD AVOID THE USE OF THIS ASPECT.
+ * Annotation applicable on methods that causes cache entries to be evicted after
+ * the execution of the annotated method. This is intended for use after e.g. update
+ * or remove operations on a database table whichs contents are cached in a long term
+ * cache and avoid inconsistencies between cache and database.
+ * <p/>
+ * The entries to evict are narrowed down by {@link #regions()} and {@link #key()}, e.g.
+ * <code>@InvalidatesCache(regions = "SAT_TENANT_CACHE", key = "#p0")</code> only evicts
+ * the cached method results of the tenant passed as first argument.
+ * WARNING: WITHOUT REGIONS AND KEY ALL CACHES OF THE APPLICATION ARE CLEARED, WHICH HAS
+ * POTENTIALLY DRAMATIC EFFECTS ON PERFORMANCE.
  * <p/>
  * <p><b>Company:&nbsp;</b>
  * SAT, Research Studios Austria</p>
@@ -49,4 +52,18 @@ import java.lang.annotation.Target;
 @Target(ElementType.METHOD)
 public @interface InvalidatesCache {
 
+    /**
+     * The names of the cache regions to evict entries from. If empty all regions
+     * of the cache manager are affected.
+     */
+    String[] regions() default {};
+
+    /**
+     * A SpEL expression evaluated against the arguments of the annotated method
+     * (available as <code>#p0</code>, <code>#p1</code>, ... and <code>#args</code>).
+     * Only method results whose leading arguments equal the value of the expression
+     * are evicted; a list value (e.g. <code>{#p0, #p1}</code>) is matched against
+     * as many leading arguments. If empty the regions are cleared entirely.
+     */
+    String key() default "";
 }
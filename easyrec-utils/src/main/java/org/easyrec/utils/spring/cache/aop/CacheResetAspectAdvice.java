@@ -17,14 +17,30 @@
  */
 package org.easyrec.utils.spring.cache.aop;
 
+import com.jamonapi.MonitorFactory;
+import net.sf.ehcache.Cache;
 import net.sf.ehcache.CacheManager;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
+import org.aspectj.lang.JoinPoint;
+import org.easyrec.utils.spring.cache.annotation.InvalidatesCache;
 import org.springframework.beans.factory.InitializingBean;
+import org.springframework.expression.Expression;
+import org.springframework.expression.ExpressionParser;
+import org.springframework.expression.spel.standard.SpelExpressionParser;
+import org.springframework.expression.spel.support.StandardEvaluationContext;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 /**
- * Aspect that resets all the caches managed by the given CacheManager.
- * USE WITH CAUTION: LEADS TO TEMPORARY PERFORMANCE DECREASE!!!!!!!!!!
+ * Aspect that evicts the entries described by an {@link InvalidatesCache} annotation from the caches
+ * managed by the given CacheManager. Only entries stored by the {@link CachingAspectAdvice} can be matched
+ * against a key; all other entries of an affected region are evicted. The number of evicted entries is
+ * recorded per region in the JAMon monitor <code>CacheReset.evicted.&lt;region&gt;</code>.
+ * USE WITH CAUTION: RESETTING ALL CACHES LEADS TO TEMPORARY PERFORMANCE DECREASE!!!!!!!!!!
  * <p/>
  * <p><b>Company:&nbsp;</b>
  * SAT, Research Studios Austria</p>
@@ -45,6 +61,9 @@ public class CacheResetAspectAdvice implements InitializingBean {
 
     private CacheManager cacheManager;
 
+    private final ExpressionParser parser = new SpelExpressionParser();
+    private final ConcurrentMap<String, Expression> expressions = new ConcurrentHashMap<String, Expression>();
+
     public void setCacheManager(CacheManager cacheManager) {
         this.cacheManager = cacheManager;
     }
@@ -53,7 +72,102 @@ public class CacheResetAspectAdvice implements InitializingBean {
         if (log.isDebugEnabled()) {
             log.debug("!!!!!!!!!!!!! CLEARING ALL CACHES !!!!!!!!!!!!!!!!!");
         }
-        cacheManager.clearAll();
+        for (String region : cacheManager.getCacheNames())
+            evict(region, (Object[]) null);
+    }
+
+    /**
+     * Evicts the cached method results of the given regions that belong to one of the given scopes. This is meant
+     * for code that cannot rely on {@link InvalidatesCache}, e.g. because the method is called on <code>this</code>
+     * and never passes the proxy, or because the entries of an object are cached under several keys such as its id
+     * and its name.
+     *
+     * @param regions the names of the cache regions
+     * @param scopes  values matched against the first argument of the cached calls, or lists of values matched
+     *                against as many leading arguments (see {@link MethodCacheKey#isInScope(Object)})
+     */
+    public void evict(String[] regions, Object... scopes) {
+        for (String region : regions)
+            evict(region, scopes);
+    }
+
+    /**
+     * Evicts the cache entries described by the annotation of the intercepted method.
+     *
+     * @param joinPoint        the JoinPoint containing information about the intercepted method call
+     * @param invalidatesCache the annotation of the intercepted method
+     */
+    public void invalidate(JoinPoint joinPoint, InvalidatesCache invalidatesCache) {
+        invalidate(invalidatesCache, joinPoint.getArgs());
+    }
+
+    void invalidate(InvalidatesCache invalidatesCache, Object[] args) {
+        String[] regions = invalidatesCache.regions();
+        String key = invalidatesCache.key();
+
+        if (regions.length == 0 && key.length() == 0) {
+            clearCaches();
+            return;
+        }
+
+        if (regions.length == 0) regions = cacheManager.getCacheNames();
+
+        Object[] scopes = key.length() > 0 ? new Object[]{evaluate(key, args)} : null;
+
+        for (String region : regions)
+            evict(region, scopes);
+    }
+
+    private void evict(String region, Object[] scopes) {
+        Cache cache = cacheManager.getCache(region);
+
+        if (cache == null) {
+            log.warn("Cannot invalidate unknown cache region " + region);
+            return;
+        }
+
+        int evicted = 0;
+
+        if (scopes == null) {
+            evicted = cache.getSize();
+            cache.removeAll();
+        } else {
+            for (Object key : (List<?>) cache.getKeys()) {
+                if (key instanceof MethodCacheKey && !isInScope((MethodCacheKey) key, scopes)) continue;
+
+                if (cache.remove(key)) evicted++;
+            }
+        }
+
+        MonitorFactory.add("CacheReset.evicted." + region, "entries", evicted);
+
+        if (log.isDebugEnabled()) {
+            log.debug("Evicted " + evicted + " entries " +
+                    (scopes != null ? "of scope " + Arrays.toString(scopes) + " " : "") + "from cache " + region);
+        }
+    }
+
+    private static boolean isInScope(MethodCacheKey key, Object[] scopes) {
+        for (Object scope : scopes)
+            if (key.isInScope(scope)) return true;
+
+        return false;
+    }
+
+    private Object evaluate(String key, Object[] args) {
+        Expression expression = expressions.get(key);
+
+        if (expression == null) {
+            expression = parser.parseExpression(key);
+            expressions.put(key, expression);
+        }
+
+        StandardEvaluationContext context = new StandardEvaluationContext(args);
+        context.setVariable("args", args);
+        for (int i = 0; i < args.length; i++)
+            context.setVariable("p" + i, args[i]);
+
+        return expression.getValue(context);
     }
 
     public void afterPropertiesSet() throws Exception {
@@ -23,15 +23,25 @@ import net.sf.ehcache.Element;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.aspectj.lang.ProceedingJoinPoint;
+import org.aspectj.lang.reflect.MethodSignature;
 import org.springframework.beans.factory.InitializingBean;
 import org.springframework.core.Ordered;
 import org.springframework.core.annotation.Order;
 
 import java.io.Serializable;
+import java.lang.reflect.Method;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 /**
  * Aspect that caches method results.
  * <p/>
+ * The identity and logger of an intercepted method are resolved on its first call only, so that a cache hit merely
+ * allocates the {@link MethodCacheKey} wrapping the arguments.
+ * <p/>
+ * The arguments of cached methods must be values (see {@link MethodCacheKey}); a warning is logged for parameter
+ * types that do not implement <code>equals</code>.
+ * <p/>
  * <p><b>Company:&nbsp;</b>
  * SAT, Research Studios Austria</p>
  * <p/>
@@ -52,6 +62,9 @@ public class CachingAspectAdvice implements InitializingBean {
 
     private Cache cache;
 
+    private final ConcurrentMap<Class<?>, ConcurrentMap<Method, CachedMethod>> cachedMethods =
+            new ConcurrentHashMap<Class<?>, ConcurrentMap<Method, CachedMethod>>();
+
     public void setCache(Cache cache) {
         this.cache = cache;
     }
@@ -64,17 +77,15 @@ public class CachingAspectAdvice implements InitializingBean {
      * @throws Throwable
      */
     public Object cacheMethodResult(ProceedingJoinPoint pjp) throws Throwable {
-        String targetName = pjp.getTarget().getClass().getName();
-        String methodName = pjp.getSignature().getName();
-        Object[] args = pjp.getArgs();
+        CachedMethod method = getCachedMethod(pjp);
         Object result;
 
-        Log logger = LogFactory.getLog(pjp.getTarget().getClass());
+        Log logger = method.logger;
 
         if (logger.isDebugEnabled()) {
-            logger.debug("looking for method " + methodName + " result in cache");
+            logger.debug("looking for method " + method.identity.getMethodName() + " result in cache");
         }
-        String cacheKey = getCacheKey(targetName, methodName, args);
+        MethodCacheKey cacheKey = new MethodCacheKey(method.identity, pjp.getArgs());
         Element element = cache.get(cacheKey);
         if (element == null) {
             if (logger.isDebugEnabled()) {
@@ -100,28 +111,43 @@ public class CachingAspectAdvice implements InitializingBean {
         return element.getValue();
     }
 
-    /**
-     * Generates a unique key from the given arguments for storing a method result in a cache.
-     *
-     * @param targetName name of the object (bean) on which a method is called
-     * @param methodName name of the method called
-     * @param arguments  the arguments passed to the method called
-     * @return a unique key for the cache entry
-     */
-    private String getCacheKey(String targetName, String methodName, Object[] arguments) {
+    private CachedMethod getCachedMethod(ProceedingJoinPoint pjp) {
+        Class<?> targetClass = pjp.getTarget().getClass();
+        Method method = ((MethodSignature) pjp.getSignature()).getMethod();
 
-        StringBuilder sb = new StringBuilder();
+        ConcurrentMap<Method, CachedMethod> methods = cachedMethods.get(targetClass);
+        if (methods == null) {
+            methods = new ConcurrentHashMap<Method, CachedMethod>();
+            ConcurrentMap<Method, CachedMethod> existing = cachedMethods.putIfAbsent(targetClass, methods);
+            if (existing != null) methods = existing;
+        }
 
-        sb.append(targetName).append(".").append(methodName);
-        for (Object object : arguments) {
-            if (object != null) {
-                sb.append(object.getClass().getName());
-            }
-            sb.append(object);
+        CachedMethod cachedMethod = methods.get(method);
+        if (cachedMethod == null) {
+            cachedMethod = new CachedMethod(targetClass, method);
+            CachedMethod existing = methods.putIfAbsent(method, cachedMethod);
+            if (existing != null) cachedMethod = existing;
+            else checkParameterTypes(targetClass, method);
         }
-        return sb.toString();
+
+        return cachedMethod;
     }
 
+    private void checkParameterTypes(Class<?> targetClass, Method method) {
+        for (Class<?> type : method.getParameterTypes()) {
+            if (type.isPrimitive() || type.isInterface() || type.isArray() || type == Object.class) continue;
+
+            try {
+                if (type.getMethod("equals", Object.class).getDeclaringClass() != Object.class) continue;
+            } catch (NoSuchMethodException e) {
+                continue;
+            }
+
+            log.warn("Method " + targetClass.getName() + "." + method.getName() + " is cached, but its argument type " +
+                    type.getName() + " does not implement equals, so cached results are only found for the same " +
+                    "instance");
+        }
+    }
 
     public void afterPropertiesSet() throws Exception {
         if (log.isInfoEnabled()) {
@@ -138,4 +164,14 @@ public class CachingAspectAdvice implements InitializingBean {
             log.info(this.getClass().getSimpleName() + " Aspect initialized!");
         }
     }
+
+    private static final class CachedMethod {
+        private final MethodIdentity identity;
+        private final Log logger;
+
+        private CachedMethod(Class<?> targetClass, Method method) {
+            this.identity = new MethodIdentity(targetClass.getName(), method.getName(), method.getParameterTypes());
+            this.logger = LogFactory.getLog(targetClass);
+        }
+    }
 }
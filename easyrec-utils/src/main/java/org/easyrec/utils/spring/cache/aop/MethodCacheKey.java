@@ -0,0 +1,102 @@
+/*
+ * Copyright 2010 Research Studios Austria Forschungsgesellschaft mBH
+ *
+ * This file is part of easyrec.
+ *
+ * easyrec is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * easyrec is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with easyrec.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.easyrec.utils.spring.cache.aop;
+
+import java.io.Serializable;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Key of a method result cached by {@link CachingAspectAdvice}. Unlike a flattened String the key keeps the
+ * method arguments, so that {@link CacheResetAspectAdvice} is able to evict only the entries belonging to a
+ * given scope (e.g. a tenant).
+ * <p/>
+ * The hash is computed once on construction since a key is hashed at least once per lookup and again by every
+ * comparison inside the cache.
+ * <p/>
+ * Keys are compared with <code>equals</code> and <code>hashCode</code> of the arguments, so the arguments of cached
+ * methods must be values: immutable types that implement both by value, such as <code>String</code>, the primitive
+ * wrappers or enums. Arguments of other types only match the identical instance, and an argument that is changed
+ * after the call leaves an entry that can neither be found nor evicted by scope.
+ */
+public class MethodCacheKey implements Serializable {
+    private static final long serialVersionUID = 3127640618223370147L;
+
+    private final MethodIdentity method;
+    private final Object[] arguments;
+    private final int hash;
+
+    public MethodCacheKey(String targetName, String methodName, Object[] arguments) {
+        this(new MethodIdentity(targetName, methodName), arguments);
+    }
+
+    public MethodCacheKey(MethodIdentity method, Object[] arguments) {
+        this.method = method;
+        this.arguments = arguments;
+        this.hash = 31 * method.hashCode() + Arrays.deepHashCode(arguments);
+    }
+
+    public MethodIdentity getMethod() {
+        return method;
+    }
+
+    /**
+     * Checks whether the leading arguments of the cached method call equal the given scope.
+     *
+     * @param scope a single value matched against the first argument or a {@link List} of values matched against
+     *              as many leading arguments
+     * @return true if the entry belongs to the scope
+     */
+    public boolean isInScope(Object scope) {
+        if (!(scope instanceof List)) return arguments.length > 0 && equal(arguments[0], scope);
+
+        List<?> values = (List<?>) scope;
+
+        if (values.size() > arguments.length) return false;
+
+        for (int i = 0; i < values.size(); i++)
+            if (!equal(arguments[i], values.get(i))) return false;
+
+        return true;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+
+        MethodCacheKey that = (MethodCacheKey) o;
+
+        return hash == that.hash && method.equals(that.method) && Arrays.deepEquals(arguments, that.arguments);
+    }
+
+    @Override
+    public int hashCode() {
+        return hash;
+    }
+
+    @Override
+    public String toString() {
+        return method + Arrays.deepToString(arguments);
+    }
+
+    private static boolean equal(Object a, Object b) {
+        return a == null ? b == null : a.equals(b);
+    }
+}
@@ -0,0 +1,77 @@
+/*
+ * Copyright 2010 Research Studios Austria Forschungsgesellschaft mBH
+ *
+ * This file is part of easyrec.
+ *
+ * easyrec is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * easyrec is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with easyrec.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.easyrec.utils.spring.cache.aop;
+
+import java.io.Serializable;
+import java.util.Arrays;
+
+/**
+ * Identity of a cached method, i.e. the class of the target bean, the name of the method and its parameter types,
+ * which tell overloaded methods apart. An instance is resolved once per intercepted method by
+ * {@link CachingAspectAdvice} and shared by all {@link MethodCacheKey}s of that method, so that computing the hash
+ * of a key only needs to consider the arguments.
+ */
+public final class MethodIdentity implements Serializable {
+    private static final long serialVersionUID = -6215498436587914215L;
+
+    private final String targetName;
+    private final String methodName;
+    private final Class<?>[] parameterTypes;
+    private final int hash;
+
+    public MethodIdentity(String targetName, String methodName, Class<?>... parameterTypes) {
+        this.targetName = targetName;
+        this.methodName = methodName;
+        this.parameterTypes = parameterTypes;
+        this.hash = 31 * (31 * targetName.hashCode() + methodName.hashCode()) + Arrays.hashCode(parameterTypes);
+    }
+
+    public String getTargetName() {
+        return targetName;
+    }
+
+    public String getMethodName() {
+        return methodName;
+    }
+
+    public Class<?>[] getParameterTypes() {
+        return parameterTypes.clone();
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+
+        MethodIdentity that = (MethodIdentity) o;
+
+        return hash == that.hash && methodName.equals(that.methodName) && targetName.equals(that.targetName) &&
+                Arrays.equals(parameterTypes, that.parameterTypes);
+    }
+
+    @Override
+    public int hashCode() {
+        return hash;
+    }
+
+    @Override
+    public String toString() {
+        return targetName + "." + methodName;
+    }
+}
@@ -0,0 +1,236 @@
+/*
+ * Copyright 2010 Research Studios Austria Forschungsgesellschaft mBH
+ *
+ * This file is part of easyrec.
+ *
+ * easyrec is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * easyrec is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with easyrec.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.easyrec.utils.spring.store;
+
+import com.google.common.collect.ObjectArrays;
+import com.google.common.primitives.Ints;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.ResultSetExtractor;
+import org.springframework.jdbc.core.RowMapper;
+
+import javax.sql.DataSource;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.regex.Pattern;
+
+import static com.google.common.base.Objects.firstNonNull;
+
+/**
+ * Iterator that allows bulkwise fetching of large result sets for mysql by keyset pagination.
+ * <p/>
+ * Each bulk continues after the key of the last row of the previous bulk
+ * (<code>... AND key &gt; ? ORDER BY key LIMIT ?</code>), so unlike the offset of {@link ResultSetIteratorMysql}
+ * every bulk costs the same no matter how far the iteration has advanced. The key column has to be numeric and
+ * unique within the result, e.g. the primary key of the table. The sql must not contain an ORDER BY or LIMIT clause
+ * or a subquery with a WHERE clause.
+ * <p/>
+ * If a <code>prefetcher</code> is given, the next bulk is fetched on one of its threads with a connection of its own
+ * while the current bulk is processed. When the prefetcher rejects the fetch, e.g. because it was shut down, the bulk
+ * is fetched when it is needed. Don't prefetch when iterating within a transaction that changes the rows.
+ * <p/>
+ * Example: <br />
+ * <p/>
+ * <pre>
+ *       Iterator<MyClass> resultIt = new KeysetResultSetIteratorMysql<MyClass>(
+ *               myDataSource, bulkSize, "select * from myTable where someValue = ?",
+ *               new Object[] { someValue }, new int[] { Types.INTEGER }, "id", null, myRowMapper);
+ * <p/>
+ *       while (resultIt.hasNext()){
+ *          MyClass obj = resultIt.next();
+ *       }
+ * </pre>
+ */
+public class KeysetResultSetIteratorMysql<T> implements Iterator<T> {
+    private static final Pattern WHERE = Pattern.compile("\\bwhere\\b", Pattern.CASE_INSENSITIVE);
+
+    //the logger
+    protected final Log logger = LogFactory.getLog(getClass());
+
+    private final JdbcTemplate jdbcTemplate;
+    private final int bulkSize;
+    private final String sql;
+    private final Object[] args;
+    private final int[] types;
+    private final String keyLabel;
+    private final Executor prefetcher;
+    private final RowMapper<T> rowMapper;
+
+    private Iterator<T> currentIterator;
+    private long lastKey = Long.MIN_VALUE;
+    private boolean exhausted = false;
+    private Future<Bulk<T>> nextBulk;
+
+    /**
+     * create the result set iterator.
+     *
+     * @param ds         a DataSource
+     * @param bulkSize   number of result rows to fetch each time a query is sent to the db
+     * @param sql        the sql string (without 'order by' and 'limit' clause!)
+     * @param args       args
+     * @param types      types
+     * @param keyColumn  the unique numeric column the result is paged by, may be qualified by a table alias
+     * @param prefetcher fetches the next bulk while the current bulk is iterated, null fetches every bulk when it
+     *                   is needed
+     * @param rowMapper  for creating the results
+     */
+    public KeysetResultSetIteratorMysql(DataSource ds, int bulkSize, String sql, Object[] args, int[] types,
+                                        String keyColumn, Executor prefetcher, RowMapper<T> rowMapper) {
+        if (bulkSize < 1) throw new IllegalArgumentException("'bulkSize' must be positive");
+
+        this.jdbcTemplate = new JdbcTemplate(ds);
+        this.bulkSize = bulkSize;
+        this.sql = getKeysetSql(sql, keyColumn);
+        this.args = firstNonNull(args, new Object[0]);
+        this.types = Ints.concat(firstNonNull(types, new int[0]), new int[]{Types.BIGINT, Types.INTEGER});
+        this.keyLabel = keyColumn.substring(keyColumn.lastIndexOf('.') + 1);
+        this.prefetcher = prefetcher;
+        this.rowMapper = rowMapper;
+
+        advance();
+    }
+
+    /**
+     * create the result set iterator without arguments to the sql statement
+     *
+     * @param ds         a DataSource
+     * @param bulkSize   number of result rows to fetch each time a query is sent to the db
+     * @param sql        the sql string (without 'order by' and 'limit' clause!)
+     * @param keyColumn  the unique numeric column the result is paged by, may be qualified by a table alias
+     * @param prefetcher fetches the next bulk while the current bulk is iterated, null fetches every bulk when it
+     *                   is needed
+     * @param rowMapper  for creating the results
+     */
+    public KeysetResultSetIteratorMysql(DataSource ds, int bulkSize, String sql, String keyColumn,
+                                        Executor prefetcher, RowMapper<T> rowMapper) {
+        this(ds, bulkSize, sql, null, null, keyColumn, prefetcher, rowMapper);
+    }
+
+    public T next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException("no element to return");
+        }
+        return currentIterator.next();
+    }
+
+    public boolean hasNext() {
+        while (!currentIterator.hasNext()) {
+            if (exhausted) return false;
+
+            advance();
+        }
+        return true;
+    }
+
+    public void remove() {
+        throw new UnsupportedOperationException("This iterator does not support removal");
+    }
+
+    /**
+     * @return the sql with the key condition appended to its WHERE clause, ordered by the key and limited
+     */
+    static String getKeysetSql(String sql, String keyColumn) {
+        return sql + (WHERE.matcher(sql).find() ? " AND " : " WHERE ") + keyColumn + " > ? ORDER BY " + keyColumn +
+                " LIMIT ?";
+    }
+
+    private void advance() {
+        Bulk<T> bulk = nextBulk != null ? await(nextBulk) : fetch(lastKey);
+
+        nextBulk = null;
+        currentIterator = bulk.rows.iterator();
+        lastKey = bulk.lastKey;
+        // a short bulk is the last one, no need to ask for an empty one
+        exhausted = bulk.rows.size() < bulkSize;
+
+        if (prefetcher != null && !exhausted) {
+            final long key = lastKey;
+            FutureTask<Bulk<T>> task = new FutureTask<Bulk<T>>(new Callable<Bulk<T>>() {
+                public Bulk<T> call() {
+                    return fetch(key);
+                }
+            });
+
+            try {
+                prefetcher.execute(task);
+                nextBulk = task;
+            } catch (RejectedExecutionException e) {
+                logger.debug("prefetching the next bulk was rejected, fetching it when it is needed", e);
+            }
+        }
+    }
+
+    private Bulk<T> fetch(final long afterKey) {
+        if (logger.isDebugEnabled()) {
+            logger.debug("loading next bulk. key > " + afterKey + ", bulkSize=" + bulkSize);
+        }
+
+        return jdbcTemplate.query(sql, ObjectArrays.concat(args, new Object[]{afterKey, bulkSize}, Object.class),
+                types, new ResultSetExtractor<Bulk<T>>() {
+                    public Bulk<T> extractData(ResultSet rs) throws SQLException {
+                        List<T> rows = new ArrayList<T>(bulkSize);
+                        long key = afterKey;
+
+                        while (rs.next()) {
+                            rows.add(rowMapper.mapRow(rs, rows.size()));
+                            key = rs.getLong(keyLabel);
+                        }
+
+                        return new Bulk<T>(rows, key);
+                    }
+                });
+    }
+
+    private static <T> Bulk<T> await(Future<Bulk<T>> future) {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("interrupted while waiting for the next bulk", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) throw (RuntimeException) e.getCause();
+            if (e.getCause() instanceof Error) throw (Error) e.getCause();
+
+            throw new IllegalStateException("could not fetch the next bulk", e.getCause());
+        }
+    }
+
+    private static class Bulk<T> {
+        private final List<T> rows;
+        private final long lastKey;
+
+        private Bulk(List<T> rows, long lastKey) {
+            this.rows = rows.isEmpty() ? Collections.<T>emptyList() : rows;
+            this.lastKey = lastKey;
+        }
+    }
+}
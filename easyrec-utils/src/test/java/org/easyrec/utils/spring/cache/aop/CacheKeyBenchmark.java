@@ -0,0 +1,97 @@
+/*
+ * Copyright 2010 Research Studios Austria Forschungsgesellschaft mBH
+ *
+ * This file is part of easyrec.
+ *
+ * easyrec is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * easyrec is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with easyrec.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.easyrec.utils.spring.cache.aop;
+
+import net.sf.ehcache.Cache;
+import net.sf.ehcache.CacheManager;
+import net.sf.ehcache.Element;
+
+/**
+ * Micro benchmark comparing the cost of a cache hit of the {@link CachingAspectAdvice} with the former String
+ * cache key and with the precomputed {@link MethodCacheKey}. Run the main method with a JIT enabled JVM, e.g.
+ * <code>java -server -cp ... org.easyrec.utils.spring.cache.aop.CacheKeyBenchmark</code>.
+ */
+public class CacheKeyBenchmark {
+
+    private static final int KEYS = 1000;
+    private static final int ITERATIONS = 5000000;
+    private static final int ROUNDS = 5;
+
+    private static final String TARGET_NAME = "org.easyrec.store.dao.core.types.impl.ItemTypeDAOMysqlImpl";
+    private static final String METHOD_NAME = "getIdOfType";
+
+    private static volatile Object sink;
+
+    public static void main(String[] args) {
+        CacheManager cacheManager = new CacheManager();
+        Cache stringCache = new Cache("STRING_KEYS", KEYS, false, true, 0, 0);
+        Cache structuredCache = new Cache("STRUCTURED_KEYS", KEYS, false, true, 0, 0);
+        cacheManager.addCache(stringCache);
+        cacheManager.addCache(structuredCache);
+
+        Object[][] arguments = new Object[KEYS][];
+        for (int i = 0; i < KEYS; i++) {
+            arguments[i] = new Object[]{i % 10, "ITEM_TYPE_" + i, Boolean.TRUE};
+            stringCache.put(new Element(stringKey(TARGET_NAME, METHOD_NAME, arguments[i]), i));
+            structuredCache.put(new Element(new MethodCacheKey(TARGET_NAME, METHOD_NAME, arguments[i]), i));
+        }
+
+        MethodIdentity identity = new MethodIdentity(TARGET_NAME, METHOD_NAME);
+
+        try {
+            for (int round = 0; round < ROUNDS; round++) {
+                long start = System.nanoTime();
+                for (int i = 0; i < ITERATIONS; i++) {
+                    // the join point hands out a copy of the arguments in both cases
+                    Object[] copy = arguments[i % KEYS].clone();
+                    sink = stringCache.get(stringKey(TARGET_NAME, METHOD_NAME, copy));
+                }
+                long stringTime = System.nanoTime() - start;
+
+                start = System.nanoTime();
+                for (int i = 0; i < ITERATIONS; i++) {
+                    Object[] copy = arguments[i % KEYS].clone();
+                    sink = structuredCache.get(new MethodCacheKey(identity, copy));
+                }
+                long structuredTime = System.nanoTime() - start;
+
+                System.out.println("round " + round + ": String key " + (stringTime / ITERATIONS) +
+                        " ns/hit, MethodCacheKey " + (structuredTime / ITERATIONS) + " ns/hit");
+            }
+        } finally {
+            cacheManager.shutdown();
+        }
+    }
+
+    /**
+     * The key generation of the {@link CachingAspectAdvice} before the introduction of {@link MethodCacheKey}.
+     */
+    private static String stringKey(String targetName, String methodName, Object[] arguments) {
+        StringBuilder sb = new StringBuilder();
+
+        sb.append(targetName).append(".").append(methodName);
+        for (Object object : arguments) {
+            if (object != null) {
+                sb.append(object.getClass().getName());
+            }
+            sb.append(object);
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,141 @@
+/*
+ * Copyright 2010 Research Studios Austria Forschungsgesellschaft mBH
+ *
+ * This file is part of easyrec.
+ *
+ * easyrec is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * easyrec is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with easyrec.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.easyrec.utils.spring.cache.aop;
+
+import net.sf.ehcache.Cache;
+import net.sf.ehcache.CacheManager;
+import net.sf.ehcache.Element;
+import org.easyrec.utils.spring.cache.annotation.InvalidatesCache;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.notNullValue;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.junit.Assert.assertThat;
+
+/**
+ * Tests the scoped eviction of the CacheResetAspectAdvice.
+ */
+public class CacheResetAspectAdviceTest {
+    private CacheManager cacheManager;
+    private Cache tenantCache;
+    private Cache otherCache;
+    private CacheResetAspectAdvice advice;
+
+    @Before
+    public void setUp() throws Exception {
+        cacheManager = new CacheManager();
+        tenantCache = new Cache("TENANT", 100, false, true, 0, 0);
+        otherCache = new Cache("OTHER", 100, false, true, 0, 0);
+        cacheManager.addCache(tenantCache);
+        cacheManager.addCache(otherCache);
+
+        advice = new CacheResetAspectAdvice();
+        advice.setCacheManager(cacheManager);
+        advice.afterPropertiesSet();
+
+        put(tenantCache, "getMapping", 1, true);
+        put(tenantCache, "getIdOfType", 1, "ITEM", true);
+        put(tenantCache, "getIdOfType", 2, "ITEM", true);
+        put(otherCache, "getTenantById", 1);
+        otherCache.put(new Element("1ITEM", "unscoped"));
+    }
+
+    @After
+    public void tearDown() {
+        cacheManager.shutdown();
+    }
+
+    @Test
+    public void evictsOnlyEntriesOfScopeInGivenRegion() throws Exception {
+        advice.invalidate(annotation("tenantScoped"), new Object[]{1, "ITEM"});
+
+        assertThat(get(tenantCache, "getMapping", 1, true), nullValue());
+        assertThat(get(tenantCache, "getIdOfType", 1, "ITEM", true), nullValue());
+        assertThat(get(tenantCache, "getIdOfType", 2, "ITEM", true), notNullValue());
+        assertThat(otherCache.getSize(), is(2));
+    }
+
+    @Test
+    public void evictsEntriesMatchingLeadingArguments() throws Exception {
+        advice.invalidate(annotation("typeScoped"), new Object[]{1, "ITEM"});
+
+        assertThat(get(tenantCache, "getMapping", 1, true), notNullValue());
+        assertThat(get(tenantCache, "getIdOfType", 1, "ITEM", true), nullValue());
+        assertThat(get(tenantCache, "getIdOfType", 2, "ITEM", true), notNullValue());
+    }
+
+    @Test
+    public void evictsUnscopedEntriesOfAllRegions() throws Exception {
+        advice.invalidate(annotation("allRegions"), new Object[]{1});
+
+        assertThat(tenantCache.getSize(), is(1));
+        assertThat(otherCache.getSize(), is(0));
+    }
+
+    @Test
+    public void evictsEntriesOfEveryGivenScope() throws Exception {
+        put(otherCache, "getTenantByStringId", "tenant1");
+        put(otherCache, "getTenantByStringId", "tenant2");
+
+        advice.evict(new String[]{"TENANT", "OTHER"}, 1, "tenant1");
+
+        assertThat(get(tenantCache, "getMapping", 1, true), nullValue());
+        assertThat(get(tenantCache, "getIdOfType", 2, "ITEM", true), notNullValue());
+        assertThat(get(otherCache, "getTenantById", 1), nullValue());
+        assertThat(get(otherCache, "getTenantByStringId", "tenant1"), nullValue());
+        assertThat(get(otherCache, "getTenantByStringId", "tenant2"), notNullValue());
+    }
+
+    @Test
+    public void clearsAllCachesWithoutRegionsAndKey() throws Exception {
+        advice.invalidate(annotation("legacy"), new Object[0]);
+
+        assertThat(tenantCache.getSize(), is(0));
+        assertThat(otherCache.getSize(), is(0));
+    }
+
+    private static void put(Cache cache, String methodName, Object... args) {
+        cache.put(new Element(new MethodCacheKey("Dao", methodName, args), "result"));
+    }
+
+    private static Element get(Cache cache, String methodName, Object... args) {
+        return cache.get(new MethodCacheKey("Dao", methodName, args));
+    }
+
+    private static InvalidatesCache annotation(String methodName) throws Exception {
+        return Invalidators.class.getMethod(methodName).getAnnotation(InvalidatesCache.class);
+    }
+
+    public static class Invalidators {
+        @InvalidatesCache(regions = "TENANT", key = "#p0")
+        public void tenantScoped() {}
+
+        @InvalidatesCache(regions = "TENANT", key = "{#p0, #p1}")
+        public void typeScoped() {}
+
+        @InvalidatesCache(key = "#p0")
+        public void allRegions() {}
+
+        @InvalidatesCache
+        public void legacy() {}
+    }
+}
@@ -0,0 +1,112 @@
+/*
+ * Copyright 2010 Research Studios Austria Forschungsgesellschaft mBH
+ *
+ * This file is part of easyrec.
+ *
+ * easyrec is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * easyrec is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with easyrec.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.easyrec.utils.spring.cache.aop;
+
+import net.sf.ehcache.Cache;
+import net.sf.ehcache.CacheManager;
+import org.aspectj.lang.ProceedingJoinPoint;
+import org.aspectj.lang.reflect.MethodSignature;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+/**
+ * Tests the keys of the results cached by the CachingAspectAdvice.
+ */
+public class CachingAspectAdviceTest {
+    private CacheManager cacheManager;
+    private Cache cache;
+    private CachingAspectAdvice advice;
+
+    @Before
+    public void setUp() throws Exception {
+        cacheManager = new CacheManager();
+        cache = new Cache("METHODS", 100, false, true, 0, 0);
+        cacheManager.addCache(cache);
+
+        advice = new CachingAspectAdvice();
+        advice.setCache(cache);
+        advice.afterPropertiesSet();
+    }
+
+    @After
+    public void tearDown() {
+        cacheManager.shutdown();
+    }
+
+    @Test
+    public void cachesResultsOfOverloadedMethodsSeparately() throws Throwable {
+        Dao dao = new Dao();
+
+        assertThat(advice.cacheMethodResult(call(dao, Dao.class.getMethod("get", String.class), "a")),
+                is((Object) "string a"));
+        assertThat(advice.cacheMethodResult(call(dao, Dao.class.getMethod("get", Object.class), "a")),
+                is((Object) "object a"));
+        assertThat(advice.cacheMethodResult(call(dao, Dao.class.getMethod("get", String.class), "a")),
+                is((Object) "string a"));
+        assertThat(dao.calls, is(2));
+        assertThat(cache.getSize(), is(2));
+    }
+
+    private static ProceedingJoinPoint call(final Object target, final Method method, final Object... args) {
+        final MethodSignature signature = (MethodSignature) Proxy.newProxyInstance(
+                MethodSignature.class.getClassLoader(), new Class<?>[]{MethodSignature.class},
+                new InvocationHandler() {
+                    public Object invoke(Object proxy, Method invoked, Object[] invokedArgs) {
+                        if (invoked.getName().equals("getMethod")) return method;
+                        if (invoked.getName().equals("getName")) return method.getName();
+
+                        throw new UnsupportedOperationException(invoked.getName());
+                    }
+                });
+
+        return (ProceedingJoinPoint) Proxy.newProxyInstance(ProceedingJoinPoint.class.getClassLoader(),
+                new Class<?>[]{ProceedingJoinPoint.class}, new InvocationHandler() {
+                    public Object invoke(Object proxy, Method invoked, Object[] invokedArgs) throws Throwable {
+                        if (invoked.getName().equals("getTarget")) return target;
+                        if (invoked.getName().equals("getSignature")) return signature;
+                        if (invoked.getName().equals("getArgs")) return args.clone();
+                        if (invoked.getName().equals("proceed")) return method.invoke(target, args);
+
+                        throw new UnsupportedOperationException(invoked.getName());
+                    }
+                });
+    }
+
+    public static class Dao {
+        private int calls = 0;
+
+        public String get(String value) {
+            calls++;
+            return "string " + value;
+        }
+
+        public String get(Object value) {
+            calls++;
+            return "object " + value;
+        }
+    }
+}
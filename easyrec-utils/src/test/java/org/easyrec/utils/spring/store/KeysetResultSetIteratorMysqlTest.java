@@ -0,0 +1,233 @@
+/*
+ * Copyright 2010 Research Studios Austria Forschungsgesellschaft mBH
+ *
+ * This file is part of easyrec.
+ *
+ * easyrec is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * easyrec is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with easyrec.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.easyrec.utils.spring.store;
+
+import org.junit.Test;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.RowMapper;
+
+import javax.sql.DataSource;
+import java.lang.reflect.Array;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.junit.Assert.assertEquals;
+
+public class KeysetResultSetIteratorMysqlTest {
+    private static final RowMapper<Long> ID_MAPPER = new RowMapper<Long>() {
+        public Long mapRow(ResultSet rs, int rowNum) throws SQLException {
+            return rs.getLong("id");
+        }
+    };
+
+    // the ids of the table, with gaps
+    private final List<Long> table = new ArrayList<Long>();
+    // the key every query continued after
+    private final List<Long> queriedKeys = Collections.synchronizedList(new ArrayList<Long>());
+
+    {
+        for (long id = 1; id <= 50; id++)
+            table.add(id * 3);
+    }
+
+    @Test
+    public void next_returnsAllRowsWithoutPrefetching() {
+        assertEquals(table, toList(iterator(20, null)));
+        assertEquals(keys(Long.MIN_VALUE, 60L, 120L), queriedKeys);
+    }
+
+    @Test
+    public void next_returnsAllRowsWhilePrefetching() {
+        ExecutorService prefetcher = Executors.newSingleThreadExecutor();
+        final int[] prefetched = new int[1];
+
+        try {
+            List<Long> rows = toList(iterator(20, new CountingExecutor(prefetcher, prefetched)));
+
+            assertEquals(table, rows);
+            assertEquals(keys(Long.MIN_VALUE, 60L, 120L), queriedKeys);
+            // the first bulk is fetched by the constructor, the following ones by the prefetcher
+            assertEquals(2, prefetched[0]);
+        } finally {
+            prefetcher.shutdown();
+        }
+    }
+
+    @Test
+    public void next_fetchesTheBulkItselfWhenThePrefetcherRejectsIt() {
+        ExecutorService prefetcher = Executors.newSingleThreadExecutor();
+        prefetcher.shutdown();
+
+        assertEquals(table, toList(iterator(20, prefetcher)));
+        assertEquals(keys(Long.MIN_VALUE, 60L, 120L), queriedKeys);
+    }
+
+    @Test(expected = DataAccessException.class)
+    public void next_throwsTheExceptionOfAPrefetchedBulk() {
+        // the table breaks after the first bulk was read
+        Iterator<Long> iterator = iterator(20, new Executor() {
+            public void execute(Runnable command) {
+                table.add(0, -1L);
+                command.run();
+            }
+        });
+
+        toList(iterator);
+    }
+
+    @Test
+    public void getKeysetSql_startsAWhereClause() {
+        assertEquals("SELECT * FROM action WHERE id > ? ORDER BY id LIMIT ?",
+                KeysetResultSetIteratorMysql.getKeysetSql("SELECT * FROM action", "id"));
+    }
+
+    @Test
+    public void getKeysetSql_extendsTheWhereClause() {
+        assertEquals("SELECT * FROM action WHERE actionTime >= ? AND id > ? ORDER BY id LIMIT ?",
+                KeysetResultSetIteratorMysql.getKeysetSql("SELECT * FROM action WHERE actionTime >= ?", "id"));
+        assertEquals("select r.* from a r, b s where r.x=s.id AND r.id > ? ORDER BY r.id LIMIT ?",
+                KeysetResultSetIteratorMysql.getKeysetSql("select r.* from a r, b s where r.x=s.id", "r.id"));
+    }
+
+    private Iterator<Long> iterator(int bulkSize, Executor prefetcher) {
+        return new KeysetResultSetIteratorMysql<Long>(dataSource(), bulkSize, "SELECT id FROM test", "id",
+                prefetcher, ID_MAPPER);
+    }
+
+    private static List<Long> toList(Iterator<Long> iterator) {
+        List<Long> list = new ArrayList<Long>();
+
+        while (iterator.hasNext())
+            list.add(iterator.next());
+
+        return list;
+    }
+
+    private static List<Long> keys(Long... keys) {
+        List<Long> list = new ArrayList<Long>();
+
+        Collections.addAll(list, keys);
+
+        return list;
+    }
+
+    // answers the keyset query on the table, a negative id fails the query
+    private DataSource dataSource() {
+        return proxy(DataSource.class, new InvocationHandler() {
+            public Object invoke(Object proxy, Method method, Object[] args) {
+                if (method.getName().equals("getConnection")) return connection();
+
+                return null;
+            }
+        });
+    }
+
+    private Connection connection() {
+        return proxy(Connection.class, new InvocationHandler() {
+            public Object invoke(Object proxy, Method method, Object[] args) {
+                if (method.getName().equals("prepareStatement")) return statement();
+
+                return null;
+            }
+        });
+    }
+
+    private PreparedStatement statement() {
+        final Object[] parameters = new Object[2];
+
+        return proxy(PreparedStatement.class, new InvocationHandler() {
+            public Object invoke(Object proxy, Method method, Object[] args) throws SQLException {
+                if (method.getName().equals("setObject")) {
+                    parameters[(Integer) args[0] - 1] = args[1];
+                } else if (method.getName().equals("executeQuery")) {
+                    long afterKey = ((Number) parameters[0]).longValue();
+                    int limit = ((Number) parameters[1]).intValue();
+                    List<Long> rows = new ArrayList<Long>();
+
+                    queriedKeys.add(afterKey);
+
+                    for (Long id : table) {
+                        if (id < 0) throw new SQLException("query failed");
+                        if (id > afterKey && rows.size() < limit) rows.add(id);
+                    }
+
+                    return resultSet(rows);
+                }
+
+                return null;
+            }
+        });
+    }
+
+    private static ResultSet resultSet(final List<Long> rows) {
+        final int[] row = {-1};
+
+        return proxy(ResultSet.class, new InvocationHandler() {
+            public Object invoke(Object proxy, Method method, Object[] args) {
+                if (method.getName().equals("next")) return ++row[0] < rows.size();
+                if (method.getName().equals("getLong")) return rows.get(row[0]);
+
+                return null;
+            }
+        });
+    }
+
+    // methods not answered by the handler return null, 0 or false
+    @SuppressWarnings("unchecked")
+    private static <T> T proxy(Class<T> type, final InvocationHandler handler) {
+        return (T) Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[]{type}, new InvocationHandler() {
+            public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+                Object result = handler.invoke(proxy, method, args);
+                Class<?> returnType = method.getReturnType();
+
+                if (result != null || !returnType.isPrimitive() || returnType == void.class) return result;
+
+                return returnType == boolean.class ? Boolean.FALSE : Array.get(Array.newInstance(returnType, 1), 0);
+            }
+        });
+    }
+
+    // counts the bulks fetched by the executor
+    private static class CountingExecutor implements Executor {
+        private final Executor executor;
+        private final int[] count;
+
+        private CountingExecutor(Executor executor, int[] count) {
+            this.executor = executor;
+            this.count = count;
+        }
+
+        public void execute(Runnable command) {
+            count[0]++;
+            executor.execute(command);
+        }
+    }
+}
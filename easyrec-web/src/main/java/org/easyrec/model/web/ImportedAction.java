@@ -0,0 +1,214 @@
+/*
+ * Copyright 2010 Research Studios Austria Forschungsgesellschaft mBH
+ *
+ * This file is part of easyrec.
+ *
+ * easyrec is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * easyrec is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with easyrec.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.easyrec.model.web;
+
+import org.easyrec.model.core.web.Message;
+
+import javax.xml.bind.annotation.XmlAccessType;
+import javax.xml.bind.annotation.XmlAccessorType;
+import javax.xml.bind.annotation.XmlAttribute;
+import java.util.Date;
+
+/**
+ * One action of a bulk action import. The fields are named like the parameters of the single action REST calls
+ * (<code>userid</code>, <code>sessionid</code>, <code>itemid</code>, ...). Only the import status of the action is
+ * marshaled into the response.
+ */
+@XmlAccessorType(XmlAccessType.NONE)
+public class ImportedAction {
+    public final static String STATUS_OK = "ok";
+    public final static String STATUS_ERROR = "error";
+
+    private int line;
+    private String userId;
+    private String sessionId;
+    private String itemId;
+    private String itemType;
+    private String itemDescription;
+    private String itemUrl;
+    private String itemImageUrl;
+    private String actionType;
+    private String actionValue;
+    private String actionTime;
+
+    // set during validation
+    private Integer value;
+    private Date time;
+    private Message error;
+
+    public ImportedAction() {
+    }
+
+    public ImportedAction(int line) {
+        this.line = line;
+    }
+
+    /**
+     * Sets the field with the given REST parameter name, unknown names are ignored.
+     */
+    public void set(String name, String fieldValue) {
+        if ("userid".equals(name)) userId = fieldValue;
+        else if ("sessionid".equals(name)) sessionId = fieldValue;
+        else if ("itemid".equals(name)) itemId = fieldValue;
+        else if ("itemtype".equals(name)) itemType = fieldValue;
+        else if ("itemdescription".equals(name)) itemDescription = fieldValue;
+        else if ("itemurl".equals(name)) itemUrl = fieldValue;
+        else if ("itemimageurl".equals(name)) itemImageUrl = fieldValue;
+        else if ("actiontype".equals(name)) actionType = fieldValue;
+        else if ("actionvalue".equals(name) || "ratingvalue".equals(name)) actionValue = fieldValue;
+        else if ("actiontime".equals(name)) actionTime = fieldValue;
+    }
+
+    /**
+     * @return the line of the action in a CSV body or its position in a JSON body
+     */
+    @XmlAttribute
+    public int getLine() {
+        return line;
+    }
+
+    @XmlAttribute
+    public String getStatus() {
+        return error == null ? STATUS_OK : STATUS_ERROR;
+    }
+
+    @XmlAttribute
+    public Integer getCode() {
+        return error != null ? error.getCode() : null;
+    }
+
+    @XmlAttribute
+    public String getMessage() {
+        return error != null ? error.getDescription() : null;
+    }
+
+    public boolean isValid() {
+        return error == null;
+    }
+
+    public Message getError() {
+        return error;
+    }
+
+    public void setError(Message error) {
+        this.error = error;
+    }
+
+    public String getUserId() {
+        return userId;
+    }
+
+    public void setUserId(String userId) {
+        this.userId = userId;
+    }
+
+    public String getSessionId() {
+        return sessionId;
+    }
+
+    public void setSessionId(String sessionId) {
+        this.sessionId = sessionId;
+    }
+
+    public String getItemId() {
+        return itemId;
+    }
+
+    public void setItemId(String itemId) {
+        this.itemId = itemId;
+    }
+
+    public String getItemType() {
+        return itemType;
+    }
+
+    public void setItemType(String itemType) {
+        this.itemType = itemType;
+    }
+
+    public String getItemDescription() {
+        return itemDescription;
+    }
+
+    public void setItemDescription(String itemDescription) {
+        this.itemDescription = itemDescription;
+    }
+
+    public String getItemUrl() {
+        return itemUrl;
+    }
+
+    public void setItemUrl(String itemUrl) {
+        this.itemUrl = itemUrl;
+    }
+
+    public String getItemImageUrl() {
+        return itemImageUrl;
+    }
+
+    public void setItemImageUrl(String itemImageUrl) {
+        this.itemImageUrl = itemImageUrl;
+    }
+
+    public String getActionType() {
+        return actionType;
+    }
+
+    public void setActionType(String actionType) {
+        this.actionType = actionType;
+    }
+
+    public String getActionValue() {
+        return actionValue;
+    }
+
+    public void setActionValue(String actionValue) {
+        this.actionValue = actionValue;
+    }
+
+    public String getActionTime() {
+        return actionTime;
+    }
+
+    public void setActionTime(String actionTime) {
+        this.actionTime = actionTime;
+    }
+
+    /**
+     * @return the validated action value, null if the action type has no value
+     */
+    public Integer getValue() {
+        return value;
+    }
+
+    public void setValue(Integer value) {
+        this.value = value;
+    }
+
+    /**
+     * @return the validated action time, null for the time of the import
+     */
+    public Date getTime() {
+        return time;
+    }
+
+    public void setTime(Date time) {
+        this.time = time;
+    }
+}
@@ -19,32 +19,128 @@ package org.easyrec.model.web;
 
 import org.easyrec.model.core.web.RemoteTenant;
 
-import java.util.ArrayList;
-import java.util.List;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
 
 /**
+ * The tenants waiting for their plugin runs.
+ * <p/>
+ * A tenant is queued at most once. A tenant is not taken again until its previous run has been marked {@link
+ * #done(RemoteTenant) done}, so the runs of one tenant never overlap while the tenants queued behind it can be taken.
+ * <p/>
+ * Of the waiting tenants the one with the lowest duration of its last run minus the time it has waited is taken
+ * first, tenants that have not run yet count as runs of no duration. A tenant with short runs does not wait behind
+ * one whose runs take hours, and a tenant with long runs is taken at the latest once it has waited longer than its
+ * last run took; tenants with the same priority are taken in the order they were added.
+ *
  * @author phlavac
  */
 public class Queue {
 
-    private List<RemoteTenant> queue = null;
+    private final LinkedHashMap<Integer, Entry> waiting = new LinkedHashMap<Integer, Entry>();
+    // start of the running tenants' runs
+    private final Map<Integer, Long> running = new HashMap<Integer, Long>();
+    private final Map<Integer, Long> lastRunDurations = new HashMap<Integer, Long>();
+
+    public synchronized void add(RemoteTenant r) {
+        if (!waiting.containsKey(r.getId())) {
+            waiting.put(r.getId(), new Entry(r, currentTime()));
+            notifyAll();
+        }
+    }
+
+    /**
+     * Takes the waiting tenant that is not running with the highest priority (see the class comment) and marks it
+     * as running, waiting for one if necessary.
+     *
+     * @param timeout the maximum time to wait in milliseconds
+     * @return the entry of the tenant or null if no tenant could be taken within the timeout
+     */
+    public synchronized Entry take(long timeout) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + timeout;
+        Entry entry;
+
+        while ((entry = next()) == null) {
+            long remaining = deadline - System.currentTimeMillis();
+
+            if (remaining <= 0) return null;
+
+            wait(remaining);
+        }
+
+        return entry;
+    }
+
+    /**
+     * Marks the run of a tenant taken from the queue as finished.
+     */
+    public synchronized void done(RemoteTenant r) {
+        Long start = running.remove(r.getId());
+
+        if (start != null) lastRunDurations.put(r.getId(), currentTime() - start);
+
+        notifyAll();
+    }
+
+    public synchronized boolean isEmpty() {
+        return waiting.isEmpty();
+    }
 
-    public Queue() {
-        queue = new ArrayList<RemoteTenant>();
+    public synchronized int size() {
+        return waiting.size();
     }
 
-    public void add(RemoteTenant r) {
-        queue.add(r);
+    // the clock of the queue, in milliseconds
+    long currentTime() {
+        return System.currentTimeMillis();
     }
 
-    public RemoteTenant poll() {
-        if (!queue.isEmpty()) {
-            return queue.remove(0);
+    private Entry next() {
+        long now = currentTime();
+        Entry next = null;
+        long nextPriority = Long.MAX_VALUE;
+
+        for (Entry entry : waiting.values()) {
+            Integer tenantId = entry.getTenant().getId();
+
+            if (running.containsKey(tenantId)) continue;
+
+            Long lastRunDuration = lastRunDurations.get(tenantId);
+            long priority = (lastRunDuration != null ? lastRunDuration : 0) - (now - entry.getQueuedAt());
+
+            if (priority < nextPriority) {
+                next = entry;
+                nextPriority = priority;
+            }
+        }
+
+        if (next != null) {
+            waiting.remove(next.getTenant().getId());
+            running.put(next.getTenant().getId(), now);
         }
-        return null;
+
+        return next;
     }
 
-    public boolean isEmpty() {
-        return queue.isEmpty();
+    public static class Entry {
+        private final RemoteTenant tenant;
+        private final long queuedAt;
+
+        private Entry(RemoteTenant tenant, long queuedAt) {
+            this.tenant = tenant;
+            this.queuedAt = queuedAt;
+        }
+
+        public RemoteTenant getTenant() {
+            return tenant;
+        }
+
+        /**
+         * @return the time the tenant was added to the queue in milliseconds
+         */
+        public long getQueuedAt() {
+            return queuedAt;
+        }
     }
-}
\ No newline at end of file
+}
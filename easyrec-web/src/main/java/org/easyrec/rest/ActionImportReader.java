@@ -0,0 +1,188 @@
+/*
+ * Copyright 2010 Research Studios Austria Forschungsgesellschaft mBH
+ *
+ * This file is part of easyrec.
+ *
+ * easyrec is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * easyrec is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with easyrec.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.easyrec.rest;
+
+import org.codehaus.jackson.JsonFactory;
+import org.codehaus.jackson.JsonParser;
+import org.codehaus.jackson.JsonToken;
+import org.easyrec.model.web.ImportedAction;
+
+import java.io.*;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Reads the actions of a bulk action import one by one from the request body, so the body is never held in memory.
+ * <p/>
+ * JSON bodies are an array of objects whose fields are named like the parameters of the single action REST calls:
+ * <pre>
+ * [{"userid":"24EH1jkl","sessionid":"F3D4E3BE31EE3FA069F5434DB7EC2E34","itemid":"42","itemdescription":"Fatboy Slim",
+ *   "itemurl":"/item/fatboyslim","actiontype":"VIEW"}, ...]
+ * </pre>
+ * CSV bodies start with a header line naming the columns with the same parameter names, followed by one action per
+ * line. Fields may be quoted with <code>"</code>, quotes inside a quoted field are doubled.
+ */
+public abstract class ActionImportReader implements Closeable {
+    public final static String CONTENT_TYPE_CSV = "text/csv";
+
+    /**
+     * @return the next action, null at the end of the body
+     * @throws IOException if the body is malformed
+     */
+    public abstract ImportedAction next() throws IOException;
+
+    public static ActionImportReader create(String contentType, InputStream body) throws IOException {
+        if (contentType != null && contentType.toLowerCase().startsWith(CONTENT_TYPE_CSV))
+            return new CsvReader(new BufferedReader(new InputStreamReader(body, "UTF-8")));
+
+        return new JsonReader(new JsonFactory().createJsonParser(body));
+    }
+
+    private static class JsonReader extends ActionImportReader {
+        private JsonParser parser;
+        private int line = 0;
+
+        public JsonReader(JsonParser parser) throws IOException {
+            this.parser = parser;
+
+            if (parser.nextToken() != JsonToken.START_ARRAY)
+                throw new IOException("the body must be a JSON array of actions");
+        }
+
+        @Override
+        public ImportedAction next() throws IOException {
+            JsonToken token = parser.nextToken();
+
+            if (token == null || token == JsonToken.END_ARRAY) return null;
+            if (token != JsonToken.START_OBJECT)
+                throw new IOException("expected an action object at " + parser.getCurrentLocation());
+
+            ImportedAction action = new ImportedAction(++line);
+
+            while ((token = parser.nextToken()) == JsonToken.FIELD_NAME) {
+                String name = parser.getCurrentName().toLowerCase();
+
+                token = parser.nextToken();
+
+                if (token == JsonToken.START_OBJECT || token == JsonToken.START_ARRAY) parser.skipChildren();
+                else if (token != JsonToken.VALUE_NULL) action.set(name, parser.getText());
+            }
+
+            if (token != JsonToken.END_OBJECT)
+                throw new IOException("unexpected " + token + " at " + parser.getCurrentLocation());
+
+            return action;
+        }
+
+        public void close() throws IOException {
+            parser.close();
+        }
+    }
+
+    private static class CsvReader extends ActionImportReader {
+        private BufferedReader in;
+        private List<String> header;
+        private int line = 0;
+        private int recordLine = 0;
+        private boolean eof = false;
+
+        public CsvReader(BufferedReader in) throws IOException {
+            this.in = in;
+
+            header = readRecord();
+
+            if (header == null) throw new IOException("the body must start with a CSV header line");
+
+            for (int i = 0; i < header.size(); i++)
+                header.set(i, header.get(i).trim().toLowerCase());
+        }
+
+        @Override
+        public ImportedAction next() throws IOException {
+            List<String> record;
+
+            // skip empty lines
+            do {
+                record = readRecord();
+            } while (record != null && record.size() == 1 && record.get(0).length() == 0);
+
+            if (record == null) return null;
+
+            ImportedAction action = new ImportedAction(recordLine);
+
+            for (int i = 0; i < record.size() && i < header.size(); i++) {
+                String value = record.get(i);
+
+                if (value.length() > 0) action.set(header.get(i), value);
+            }
+
+            return action;
+        }
+
+        public void close() throws IOException {
+            in.close();
+        }
+
+        private List<String> readRecord() throws IOException {
+            if (eof) return null;
+
+            List<String> record = new ArrayList<String>();
+            StringBuilder field = new StringBuilder();
+            boolean quoted = false;
+            int c = in.read();
+
+            if (c < 0) {
+                eof = true;
+                return null;
+            }
+
+            recordLine = ++line;
+
+            for (; c >= 0; c = in.read()) {
+                if (quoted) {
+                    if (c == '"') {
+                        in.mark(1);
+
+                        if (in.read() == '"') field.append('"');
+                        else {
+                            in.reset();
+                            quoted = false;
+                        }
+                    } else {
+                        if (c == '\n') line++;
+
+                        field.append((char) c);
+                    }
+                } else if (c == '"') quoted = true;
+                else if (c == ',') {
+                    record.add(field.toString());
+                    field.setLength(0);
+                } else if (c == '\n') break;
+                else if (c != '\r') field.append((char) c);
+            }
+
+            if (quoted) throw new IOException("unterminated quoted field in line " + line);
+            if (c < 0) eof = true;
+
+            record.add(field.toString());
+
+            return record;
+        }
+    }
+}
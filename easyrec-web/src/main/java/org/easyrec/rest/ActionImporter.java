@@ -0,0 +1,102 @@
+/*
+ * Copyright 2010 Research Studios Austria Forschungsgesellschaft mBH
+ *
+ * This file is part of easyrec.
+ *
+ * easyrec is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * easyrec is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with easyrec.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.easyrec.rest;
+
+import org.easyrec.model.core.web.RemoteTenant;
+import org.easyrec.model.web.ImportedAction;
+import org.easyrec.service.web.nodomain.ShopRecommenderService;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Stores the validated actions of a bulk import in batches. Only the current batch and the first
+ * <code>maxFailures</code> rejected actions are kept, so the memory used does not grow with the size of the import.
+ */
+class ActionImporter {
+    private final ShopRecommenderService shopRecommenderService;
+    private final RemoteTenant remoteTenant;
+    private final String ip;
+    private final int batchSize;
+    private final int maxFailures;
+    private final List<ImportedAction> batch;
+    private final List<ImportedAction> failures = new ArrayList<ImportedAction>();
+    private int imported = 0;
+    private int failed = 0;
+
+    public ActionImporter(ShopRecommenderService shopRecommenderService, RemoteTenant remoteTenant, String ip,
+                          int batchSize, int maxFailures) {
+        this.shopRecommenderService = shopRecommenderService;
+        this.remoteTenant = remoteTenant;
+        this.ip = ip;
+        this.batchSize = batchSize;
+        this.maxFailures = maxFailures;
+        this.batch = new ArrayList<ImportedAction>(batchSize);
+    }
+
+    /**
+     * Adds a validated action, the batch is stored when it is full.
+     */
+    public void add(ImportedAction action) {
+        if (!action.isValid()) {
+            fail(action);
+            return;
+        }
+
+        batch.add(action);
+
+        if (batch.size() >= batchSize) flush();
+    }
+
+    /**
+     * Stores the actions of the current batch. Actions rejected while storing, e.g. of inactive items, count as
+     * failed.
+     */
+    public void flush() {
+        if (batch.isEmpty()) return;
+
+        imported += shopRecommenderService.importActions(remoteTenant, batch, ip);
+
+        for (ImportedAction action : batch)
+            if (!action.isValid()) fail(action);
+
+        batch.clear();
+    }
+
+    public int getImported() {
+        return imported;
+    }
+
+    public int getFailed() {
+        return failed;
+    }
+
+    /**
+     * @return the first <code>maxFailures</code> rejected actions in the order they were rejected
+     */
+    public List<ImportedAction> getFailures() {
+        return failures;
+    }
+
+    private void fail(ImportedAction action) {
+        failed++;
+
+        if (failures.size() < maxFailures) failures.add(action);
+    }
+}
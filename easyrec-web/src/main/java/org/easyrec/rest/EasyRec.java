@@ -26,8 +26,10 @@ import com.sun.jersey.api.json.JSONWithPadding;
 import com.sun.jersey.spi.resource.Singleton;
 import org.easyrec.exception.core.ClusterException;
 import org.easyrec.model.core.ClusterVO;
+import org.easyrec.model.core.TenantVO;
 import org.easyrec.model.core.transfer.TimeConstraintVO;
 import org.easyrec.model.core.web.*;
+import org.easyrec.model.web.ImportedAction;
 import org.easyrec.model.web.Recommendation;
 import org.easyrec.rest.nodomain.exception.EasyRecRestException;
 import org.easyrec.service.core.ClusterService;
@@ -50,11 +52,10 @@ import javax.servlet.http.HttpServletRequest;
 import javax.ws.rs.*;
 import javax.ws.rs.core.Context;
 import javax.ws.rs.core.Response;
+import java.io.IOException;
+import java.io.InputStream;
 import java.text.SimpleDateFormat;
-import java.util.ArrayList;
-import java.util.Date;
-import java.util.List;
-import java.util.Set;
+import java.util.*;
 
 /**
  * @author szavrel
@@ -86,6 +87,7 @@ public class EasyRec {
     private final static String JAMON_REST_BUY = "rest.buy";
     private final static String JAMON_REST_RATE = "rest.rate";
     private final static String JAMON_REST_ACTION = "rest.action";
+    private final static String JAMON_REST_IMPORT_ACTIONS = "rest.import.actions";
     private final static String JAMON_REST_ALSO_VIEWED = "rest.alsoviewed";
     private final static String JAMON_REST_ALSO_BOUGHT = "rest.alsobought";
     private final static String JAMON_REST_ALSO_RATED = "rest.alsorated";
@@ -100,11 +102,17 @@ public class EasyRec {
     private final static String JAMON_REST_CREATE_CLUSTER = "rest.create.cluster";
     private final static String JAMON_REST_ITEM_ACTIVE = "rest.item.active.rule";
     private final static String JAMON_REST_RELATED_ITEMS = "rest.related.items";
+    private final static String JAMON_REST_ONLINE_RECOMMENDATIONS = "rest.online.recommendations";
     private final static String JAMON_REST_ITEMTYPES = "rest.itemtypes";
     private final static String JAMON_REST_CLUSTERS = "rest.clusters";
     private final static String JAMON_REST_ITEMS_OF_CLUSTERS = "rest.items.from.clusters";
     private final static String JAMON_REST_ACTIONHISTORY = "rest.history";
 
+    // the number of imported actions stored at once
+    private final static int IMPORT_ACTIONS_BATCH_SIZE = 1000;
+    // the number of rejected actions listed in the import response
+    private final static int IMPORT_ACTIONS_MAX_FAILURES = 1000;
+
     public EasyRec(OperatorDAO operatorDAO, RemoteTenantDAO remoteTenantDAO,
                    ShopRecommenderService shopRecommenderService, TenantService tenantService,
                    TypeMappingService typeMappingService, ItemDAO itemDAO, RemoteAssocService remoteAssocService,
@@ -400,6 +408,61 @@ public class EasyRec {
     }
 
 
+    /**
+     * Imports many actions with one request. The body is a JSON array of actions or a CSV file with a header line,
+     * see {@link ActionImportReader}. Every action is validated like the single action calls; valid actions are
+     * stored in batches while the body is read. The response contains the number of imported and rejected actions
+     * and the first rejected actions with their error.
+     */
+    @POST
+    @Path("/importactions")
+    @Consumes({"application/json", "text/csv"})
+    public Response importActions(@PathParam("type") String type, @QueryParam("apikey") String apiKey,
+                                  @QueryParam("tenantid") String tenantId, @QueryParam("callback") String callback,
+                                  @HeaderParam("Content-Type") String contentType, InputStream body)
+            throws EasyRecException {
+
+        Monitor mon = MonitorFactory.start(JAMON_REST_IMPORT_ACTIONS);
+
+        Integer coreTenantId = operatorDAO.getTenantId(apiKey, tenantId);
+
+        if (coreTenantId == null)
+            exceptionResponse(WS.ACTION_IMPORT_ACTIONS, MSG.TENANT_WRONG_TENANT_APIKEY, type, callback);
+
+        RemoteTenant r = remoteTenantDAO.get(coreTenantId);
+        String ip = request.getRemoteAddr();
+        ImportedActionValidator validator = new ImportedActionValidator(coreTenantId, tenantId);
+        ActionImporter importer = new ActionImporter(shopRecommenderService, r, ip, IMPORT_ACTIONS_BATCH_SIZE,
+                IMPORT_ACTIONS_MAX_FAILURES);
+        ActionImportReader reader = null;
+
+        try {
+            reader = ActionImportReader.create(contentType, body);
+            ImportedAction action;
+
+            while ((action = reader.next()) != null) {
+                validator.check(action);
+                importer.add(action);
+            }
+
+            importer.flush();
+        } catch (IOException e) {
+            exceptionResponse(WS.ACTION_IMPORT_ACTIONS, MSG.OPERATION_FAILED.append(
+                    String.format(" %s (%d actions imported before)", e.getMessage(), importer.getImported())),
+                    type, callback);
+        } finally {
+            try {
+                if (reader != null) reader.close();
+            } catch (IOException ignored) {}
+        }
+
+        mon.stop();
+
+        return formatResponse(new ResponseImportActions(tenantId, WS.ACTION_IMPORT_ACTIONS, importer.getImported(),
+                importer.getFailed(), importer.getFailures()), new ArrayList<Message>(), WS.ACTION_IMPORT_ACTIONS,
+                type, callback);
+    }
+
     @GET
     @Path("/otherusersalsoviewed")
     public Response otherUsersAlsoViewed(@PathParam("type") String type, @QueryParam("apikey") String apiKey,
@@ -1089,6 +1152,72 @@ public class EasyRec {
             return Response.ok(rec, WS.RESPONSE_TYPE_XML).build();
     }
 
+    @GET
+    @Path("/onlinerecommendations")
+    public Response onlineRecommendations(@PathParam("type") String type, @QueryParam("apikey") String apiKey,
+                                          @QueryParam("tenantid") String tenantId,
+                                          @QueryParam("assoctype") String assocType, @QueryParam("userid") String userId,
+                                          @QueryParam("sessionid") String sessionId, @QueryParam("itemid") String itemId,
+                                          @QueryParam("numberOfResults") Integer numberOfResults,
+                                          @QueryParam("itemtype") String itemType,
+                                          @QueryParam("requesteditemtype") String requestedItemType,
+                                          @QueryParam("callback") String callback,
+                                          @QueryParam("withProfile") @DefaultValue("false") boolean withProfile)
+            throws EasyRecException {
+
+        Monitor mon = MonitorFactory.start(JAMON_REST_ONLINE_RECOMMENDATIONS);
+        Recommendation rec = null;
+        Integer coreTenantId = operatorDAO.getTenantId(apiKey, tenantId);
+
+        if (coreTenantId == null)
+            exceptionResponse(WS.ACTION_ONLINE_RECOMMENDATIONS, MSG.TENANT_WRONG_TENANT_APIKEY, type, callback);
+
+        RemoteTenant r = remoteTenantDAO.get(coreTenantId);
+
+        if (r.isMaxActionLimitExceeded())
+            exceptionResponse(WS.ACTION_ONLINE_RECOMMENDATIONS, MSG.MAXIMUM_ACTIONS_EXCEEDED, type, callback);
+
+        if (itemId == null)
+            exceptionResponse(WS.ACTION_ONLINE_RECOMMENDATIONS, MSG.ITEM_NO_ID, type, callback);
+
+        if (assocType != null) {
+            // only visible assocTypes can be queried
+            if (typeMappingService.getIdOfAssocType(coreTenantId, assocType, Boolean.TRUE) == null)
+                exceptionResponse(WS.ACTION_ONLINE_RECOMMENDATIONS, MSG.ASSOC_TYPE_DOES_NOT_EXIST, type, callback);
+        } else {
+            assocType = AssocTypeDAO.ASSOCTYPE_IS_RELATED;
+        }
+
+        itemType = checkItemType(itemType, type, coreTenantId, tenantId, WS.ACTION_ONLINE_RECOMMENDATIONS, callback);
+        requestedItemType = checkItemType(requestedItemType, type, coreTenantId, tenantId,
+                WS.ACTION_ONLINE_RECOMMENDATIONS, callback, null);
+        Session session = new Session(sessionId, request);
+
+        try {
+            if ((numberOfResults == null) || (numberOfResults > WS.DEFAULT_NUMBER_OF_RESULTS))
+                numberOfResults = WS.DEFAULT_NUMBER_OF_RESULTS;
+
+            rec = shopRecommenderService.onlineRecommendations(coreTenantId, assocType, userId, itemId, itemType,
+                    requestedItemType, session, numberOfResults);
+
+            if (withProfile) {
+                addProfileDataToItems(rec);
+            }
+        } catch (EasyRecRestException e) {
+            exceptionResponse(WS.ACTION_ONLINE_RECOMMENDATIONS, e.getMessageObject(), type, callback);
+        }
+
+        mon.stop();
+
+        if (WS.JSON_PATH.equals(type)) {
+            if (callback != null)
+                return Response.ok(new JSONWithPadding(rec, callback), WS.RESPONSE_TYPE_JSCRIPT).build();
+            else
+                return Response.ok(rec, WS.RESPONSE_TYPE_JSON).build();
+        } else
+            return Response.ok(rec, WS.RESPONSE_TYPE_XML).build();
+    }
+
     @GET
     @Path("/setitemactive")
     public Response setItemActive(@PathParam("type") String type, @QueryParam("apikey") String apiKey,
@@ -1415,8 +1544,11 @@ public class EasyRec {
     // private methods
 
     private void addProfileDataToItems(Recommendation recommendation) {
-        for (Item item : recommendation.getRecommendedItems()) {
-            item.setProfileData(profileService.getProfile(item));
+        List<Item> items = recommendation.getRecommendedItems();
+        List<String> profiles = profileService.getProfiles(items);
+
+        for (int i = 0; i < items.size(); i++) {
+            items.get(i).setProfileData(profiles.get(i));
         }
     }
 
@@ -1491,6 +1623,108 @@ public class EasyRec {
             }
     }
 
+    /**
+     * Validates imported actions like the single action calls. The action and item types of a tenant are looked up
+     * once per request.
+     */
+    private class ImportedActionValidator {
+        private Integer coreTenantId;
+        private String tenantId;
+        private SimpleDateFormat dateFormatter = new SimpleDateFormat(dateFormat);
+        private Map<String, Boolean> actionTypeHasValue = new HashMap<String, Boolean>();
+        private Map<String, Boolean> itemTypeExists = new HashMap<String, Boolean>();
+        private TenantVO tenant;
+
+        public ImportedActionValidator(Integer coreTenantId, String tenantId) {
+            this.coreTenantId = coreTenantId;
+            this.tenantId = tenantId;
+            this.tenant = tenantService.getTenantById(coreTenantId);
+        }
+
+        public void check(ImportedAction action) {
+            List<Message> messages = new ArrayList<Message>();
+
+            checkParams(coreTenantId, action.getItemId(), action.getItemDescription(), action.getItemUrl(),
+                    action.getSessionId(), messages);
+            checkActionValue(action, messages);
+
+            if (action.getActionTime() != null) {
+                action.setTime(MyUtils.dateFormatCheck(action.getActionTime(), dateFormatter));
+
+                if (action.getTime() == null)
+                    messages.add(MSG.DATE_PARSE);
+            }
+
+            String itemType = action.getItemType() != null ? CharMatcher.WHITESPACE.trimFrom(action.getItemType()) :
+                              null;
+
+            if (Strings.isNullOrEmpty(itemType))
+                itemType = Item.DEFAULT_STRING_ITEM_TYPE;
+            else if (!itemTypeExists(itemType))
+                messages.add(MSG.OPERATION_FAILED.append(
+                        String.format(" itemType %s not found for tenant %s", itemType, tenantId)));
+
+            action.setItemType(itemType);
+
+            if (!messages.isEmpty())
+                action.setError(messages.get(0));
+        }
+
+        private void checkActionValue(ImportedAction action, List<Message> messages) {
+            String actionType = action.getActionType();
+
+            if (Strings.isNullOrEmpty(actionType)) {
+                messages.add(MSG.MISSING_ACTIONTYPE);
+                return;
+            }
+
+            Boolean hasValue = actionTypeHasValue.get(actionType);
+
+            if (hasValue == null && !actionTypeHasValue.containsKey(actionType)) {
+                hasValue = tenantService.hasActionValue(coreTenantId, actionType);
+                actionTypeHasValue.put(actionType, hasValue);
+            }
+
+            if (hasValue == null) {
+                messages.add(MSG.INVALID_ACTIONTYPE);
+            } else if (hasValue) {
+                if (Strings.isNullOrEmpty(action.getActionValue())) {
+                    messages.add(MSG.MISSING_ACTION_VALUE);
+                    return;
+                }
+
+                try {
+                    Integer value = Integer.valueOf(action.getActionValue());
+
+                    if (TypeMappingService.ACTION_TYPE_RATE.equals(actionType) &&
+                            (value < tenant.getRatingRangeMin() || value > tenant.getRatingRangeMax()))
+                        messages.add(MSG.ITEM_INVALID_RATING_VALUE);
+                    else
+                        action.setValue(value);
+                } catch (NumberFormatException e) {
+                    messages.add(MSG.ITEM_INVALID_RATING_VALUE);
+                }
+            }
+        }
+
+        private boolean itemTypeExists(String itemType) {
+            Boolean exists = itemTypeExists.get(itemType);
+
+            if (exists == null) {
+                try {
+                    typeMappingService.getIdOfItemType(coreTenantId, itemType, true);
+                    exists = true;
+                } catch (IllegalArgumentException ex) {
+                    exists = false;
+                }
+
+                itemTypeExists.put(itemType, exists);
+            }
+
+            return exists;
+        }
+    }
+
     private TimeConstraintVO checkTimeConstraints(String startTime, String endTime) {
         Date startDate = null;
         Date endDate;
@@ -0,0 +1,77 @@
+/*
+ * Copyright 2010 Research Studios Austria Forschungsgesellschaft mBH
+ *
+ * This file is part of easyrec.
+ *
+ * easyrec is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * easyrec is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with easyrec.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.easyrec.rest;
+
+import org.easyrec.model.web.ImportedAction;
+
+import javax.xml.bind.annotation.*;
+import java.util.List;
+
+/**
+ * The result of a bulk action import: the number of imported and rejected actions and the first
+ * rejected actions with their error.
+ */
+@XmlRootElement(name = "easyrec")
+@XmlAccessorType(XmlAccessType.FIELD)
+public class ResponseImportActions {
+    @XmlElement(name = "tenantid")
+    private String tenantId;
+
+    private String action;
+
+    private int imported;
+
+    private int failed;
+
+    @XmlElementWrapper(name = "actions")
+    @XmlElement(name = "action")
+    private List<ImportedAction> actions;
+
+    public ResponseImportActions() {
+    }
+
+    public ResponseImportActions(String tenantId, String action, int imported, int failed,
+                                 List<ImportedAction> actions) {
+        this.tenantId = tenantId;
+        this.action = action;
+        this.imported = imported;
+        this.failed = failed;
+        this.actions = actions;
+    }
+
+    public String getTenantId() {
+        return tenantId;
+    }
+
+    public String getAction() {
+        return action;
+    }
+
+    public int getImported() {
+        return imported;
+    }
+
+    public int getFailed() {
+        return failed;
+    }
+
+    public List<ImportedAction> getActions() {
+        return actions;
+    }
+}
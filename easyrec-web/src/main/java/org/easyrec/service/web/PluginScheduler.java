@@ -18,6 +18,9 @@
  */
 package org.easyrec.service.web;
 
+import com.google.common.base.Objects;
+import com.jamonapi.Monitor;
+import com.jamonapi.MonitorFactory;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.easyrec.model.core.web.Operator;
@@ -35,22 +38,37 @@ import org.easyrec.store.dao.web.RemoteTenantDAO;
 import org.springframework.beans.factory.DisposableBean;
 import org.springframework.beans.factory.InitializingBean;
 
-import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
 import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * This class schedules plugins for each tenant.
  * <p/>
- * TODO update javadoc
  * All tenants, that have an active plugin scheduler flag are added
- * to the plugin TaskList. The PluginTaskList is a HashMap that contains
+ * to the plugin TaskList. The PluginTaskList is a map that contains
  * the tenant id as key and a PluginTask as value.
  * <p/>
  * A PluginTask adds a tenant to the execution queue at its execution time.
  * <p/>
- * The queue holds a list of all tenants that are waiting to be scheduled.
- * After a tenant is processed by the plugins, he is removed from the queue.
+ * The queue holds a list of all tenants that are waiting to be scheduled. The scheduler thread takes the tenants
+ * from the queue, tenants with short runs ahead of those with long ones unless these have waited long enough (see
+ * {@link Queue}), and runs their plugins on a pool of <code>workers</code> threads, the runs of one tenant never
+ * overlap. The time tenants wait in the queue and the duration of their runs are recorded by
+ * the JAMon monitors <code>PluginScheduler.queueWait</code> and <code>PluginScheduler.run</code>.
+ * <p/>
+ * Tasks are updated by the controllers changing a tenant's scheduler settings, all tenants are only checked for
+ * changes every {@link #TASK_UPDATE_INTERVAL} ms.
  *
  * @author phlavac
  */
@@ -58,20 +76,25 @@ public class PluginScheduler implements InitializingBean, DisposableBean {
 
     // TODO: move to vocabulary?
     private final static int SCHEDULER_PAUSE = 30 * 1000;
+    public final static int TASK_UPDATE_INTERVAL = 10 * 60 * 1000;
+    public final static int DEFAULT_WORKERS = 2;
 
     private final Log logger = LogFactory.getLog(getClass());
 
     private RemoteTenantDAO remoteTenantDAO;
     private OperatorDAO operatorDAO;
-    private HashMap<Integer, PluginTimerTask> pluginTimerTasks;
+    private Map<Integer, PluginTimerTask> pluginTimerTasks;
     private LogEntryDAO logEntryDAO;
     private Queue queue;
     private TenantService tenantService;
     private RemoteTenantService remoteTenantService;
     private EasyRecSettings easyrecSettings;
     private GeneratorContainer generatorContainer;
+    private int workers = DEFAULT_WORKERS;
 
     private Scheduler scheduler;
+    private ExecutorService workerPool;
+    private Semaphore idleWorkers;
 
     public PluginScheduler() {
         queue = new Queue();
@@ -88,9 +111,17 @@ public class PluginScheduler implements InitializingBean, DisposableBean {
         if (easyrecSettings.isGenerator()) {
             initTasks();
             logEntryDAO.endAllEntries();
+            idleWorkers = new Semaphore(workers);
+            workerPool = Executors.newFixedThreadPool(workers, new ThreadFactory() {
+                private final AtomicInteger number = new AtomicInteger();
+
+                public Thread newThread(Runnable runnable) {
+                    return new Thread(runnable, "PluginScheduler-worker-" + number.incrementAndGet());
+                }
+            });
             scheduler = new Scheduler(queue);
             scheduler.start();
-            logger.info("Plugin Scheduler started.");
+            logger.info("Plugin Scheduler started with " + workers + " worker(s).");
         }
     }
 
@@ -103,14 +134,16 @@ public class PluginScheduler implements InitializingBean, DisposableBean {
     public void destroy() throws Exception {
         Thread interruptThread = scheduler;
         scheduler = null;
-        interruptThread.interrupt();
 
-        for (PluginTimerTask task : pluginTimerTasks.values()) {
-            task.destroy();
-            //noinspection UnusedAssignment
-            task = null;
+        if (interruptThread != null) interruptThread.interrupt();
+        if (workerPool != null) workerPool.shutdownNow();
+
+        if (pluginTimerTasks != null) {
+            for (PluginTimerTask task : pluginTimerTasks.values()) {
+                task.destroy();
+            }
+            pluginTimerTasks.clear();
         }
-        pluginTimerTasks.clear();
         logger.info("PluginScheduler shut down.");
     }
 
@@ -119,43 +152,42 @@ public class PluginScheduler implements InitializingBean, DisposableBean {
      *
      * @param remoteTenant RemoteTenant
      */
-    public void addTask(RemoteTenant remoteTenant) {
+    public synchronized void addTask(RemoteTenant remoteTenant) {
 
         if (pluginTimerTasks != null) {
-            pluginTimerTasks.put(remoteTenant.getId(), new PluginTimerTask(remoteTenant, queue));
+            PluginTimerTask previousTask =
+                    pluginTimerTasks.put(remoteTenant.getId(), new PluginTimerTask(remoteTenant, queue));
+
+            if (previousTask != null) previousTask.destroy();
         }
     }
 
     /**
-     * Update a tenant's PluginTimerTask
+     * Update a tenant's PluginTimerTask, the task is only replaced if the tenant's execution time changed.
      *
      * @param remoteTenant RemoteTenant
      */
-    public void updateTask(RemoteTenant remoteTenant) {
-
-        boolean tenantInTaskList = false;
+    public synchronized void updateTask(RemoteTenant remoteTenant) {
 
         if (pluginTimerTasks != null) {
 
             PluginTimerTask pluginTimerTask = pluginTimerTasks.get(remoteTenant.getId());
 
-            if (pluginTimerTask != null) {
-                tenantInTaskList = true;
-                pluginTimerTask.destroy();
-                pluginTimerTasks.remove(remoteTenant.getId());
-
-            }
             if (remoteTenant.isSchedulerEnabled()) {
-                pluginTimerTasks.put(remoteTenant.getId(), new PluginTimerTask(remoteTenant, queue));
-                if (!tenantInTaskList) {
+                if (pluginTimerTask != null && Objects.equal(pluginTimerTask.getSchedulerExecutionTime(),
+                        remoteTenant.getSchedulerExecutionTime())) return;
+
+                addTask(remoteTenant);
+
+                if (pluginTimerTask == null) {
                     logger.info("'" + remoteTenant.getOperatorId() + " - " + remoteTenant.getStringId() +
                             "' added to PluginTask List");
                 }
-            } else {
-                if (tenantInTaskList) {
-                    logger.info("'" + remoteTenant.getOperatorId() + " - " + remoteTenant.getStringId() +
-                            "' removed from PluginTask List");
-                }
+            } else if (pluginTimerTask != null) {
+                pluginTimerTask.destroy();
+                pluginTimerTasks.remove(remoteTenant.getId());
+                logger.info("'" + remoteTenant.getOperatorId() + " - " + remoteTenant.getStringId() +
+                        "' removed from PluginTask List");
             }
         }
     }
@@ -166,14 +198,13 @@ public class PluginScheduler implements InitializingBean, DisposableBean {
      *
      * @param remoteTenant RemoteTenant
      */
-    public void stopTask(RemoteTenant remoteTenant) {
+    public synchronized void stopTask(RemoteTenant remoteTenant) {
 
         if (pluginTimerTasks != null) {
-            PluginTimerTask pluginTimerTask = pluginTimerTasks.get(remoteTenant.getId());
+            PluginTimerTask pluginTimerTask = pluginTimerTasks.remove(remoteTenant.getId());
 
             if (pluginTimerTask != null) {
                 pluginTimerTask.destroy();
-                pluginTimerTasks.remove(remoteTenant.getId());
             }
 
             logger.info("'" + remoteTenant.getOperatorId() + " - " + remoteTenant.getStringId() +
@@ -182,9 +213,9 @@ public class PluginScheduler implements InitializingBean, DisposableBean {
         }
     }
 
-    public void initTasks() {
+    public synchronized void initTasks() {
 
-        pluginTimerTasks = new HashMap<Integer, PluginTimerTask>();
+        pluginTimerTasks = new ConcurrentHashMap<Integer, PluginTimerTask>();
 
         List<Operator> operators = operatorDAO.getOperators(0, Integer.MAX_VALUE);
         for (Operator operator : operators) {
@@ -202,19 +233,32 @@ public class PluginScheduler implements InitializingBean, DisposableBean {
     }
 
     /**
-     * Iterates through all tenants and adds or removes a tenant
+     * Iterates through all tenants and adds or removes a tenant, catches changes that did not pass the controllers
      */
-    private void updateTasks() {
+    private synchronized void updateTasks() {
 
         List<Operator> operators = operatorDAO.getOperators(0, Integer.MAX_VALUE);
+        Set<Integer> tenantIds = new HashSet<Integer>();
 
         for (Operator operator : operators) {
 
             List<RemoteTenant> tenants = remoteTenantDAO.getTenantsFromOperator(operator.getOperatorId());
             for (RemoteTenant r : tenants) {
+                tenantIds.add(r.getId());
                 updateTask(r);
             }
         }
+
+        // tenants that were deleted
+        for (Iterator<Map.Entry<Integer, PluginTimerTask>> it = pluginTimerTasks.entrySet().iterator();
+             it.hasNext(); ) {
+            Map.Entry<Integer, PluginTimerTask> task = it.next();
+
+            if (!tenantIds.contains(task.getKey())) {
+                task.getValue().destroy();
+                it.remove();
+            }
+        }
     }
 
     private class Scheduler extends Thread {
@@ -222,67 +266,118 @@ public class PluginScheduler implements InitializingBean, DisposableBean {
         private final Log logger = LogFactory.getLog(getClass());
 
         Queue queue;
-        RemoteTenant remoteTenant;
 
         Scheduler(Queue queue) {
+            super("PluginScheduler");
             this.queue = queue;
         }
 
-        // look if tenants are waiting in queue. If so process plugins for every tenant in queue.
+        // wait for a free worker and a tenant in the queue, then process the plugins of the tenant on the worker.
         @Override
         public void run() {
             Thread thisThread = Thread.currentThread();
+            long nextTaskUpdate = System.currentTimeMillis() + TASK_UPDATE_INTERVAL;
 
             while (!thisThread.isInterrupted() && scheduler == thisThread) {
+                try {
+                    if (System.currentTimeMillis() >= nextTaskUpdate) {
+                        updateTasks();
+                        nextTaskUpdate = System.currentTimeMillis() + TASK_UPDATE_INTERVAL;
+                    }
+
+                    idleWorkers.acquire();
+
+                    Queue.Entry entry = queue.take(SCHEDULER_PAUSE);
 
-                updateTasks();
+                    if (entry == null) {
+                        idleWorkers.release();
+                        logger.debug("no tenant queued for " + SCHEDULER_PAUSE + "ms.");
+                        continue;
+                    }
+
+                    MonitorFactory.add("PluginScheduler.queueWait", "ms",
+                            System.currentTimeMillis() - entry.getQueuedAt());
 
-                if (queue.isEmpty()) {
                     try {
-                        sleep(SCHEDULER_PAUSE);
-                        logger.debug("pausing plugin scheduler for " + SCHEDULER_PAUSE + "ms.");
-                    } catch (InterruptedException ex) {
-                        logger.debug("pausing plugin scheduler failed", ex);
-                        Thread.currentThread().interrupt();
+                        workerPool.execute(new PluginRun(entry.getTenant()));
+                    } catch (RejectedExecutionException e) {
+                        queue.done(entry.getTenant());
+                        idleWorkers.release();
+                        throw e;
                     }
-                } else {
-                    remoteTenant = queue.poll();
+                } catch (InterruptedException ex) {
+                    logger.debug("waiting for plugin runs interrupted", ex);
+                    Thread.currentThread().interrupt();
+                } catch (RuntimeException e) {
+                    logger.error("scheduling plugin runs failed", e);
+                }
+            }
+            logger.debug("PluginScheduler stopped. ");
+        }
+    }
 
-                    final Properties tenantConfig = tenantService.getTenantConfig(remoteTenant.getId());
+    /**
+     * Runs the plugins of a tenant taken from the queue on a worker.
+     */
+    private class PluginRun implements Runnable {
 
-                    if (tenantConfig == null) {
-                        logger.warn("could not get tenant configuration, aborting");
+        private final RemoteTenant remoteTenant;
 
-                        return;
-                    }
+        PluginRun(RemoteTenant remoteTenant) {
+            this.remoteTenant = remoteTenant;
+        }
+
+        public void run() {
+            Monitor monitor = MonitorFactory.start("PluginScheduler.run");
+
+            try {
+                runPlugins();
+            } catch (RuntimeException e) {
+                logger.error("running plugins for tenant " + remoteTenant.getOperatorId() + ":" +
+                        remoteTenant.getStringId() + " failed", e);
+            } finally {
+                monitor.stop();
+                queue.done(remoteTenant);
+                idleWorkers.release();
+            }
 
-                    if ("true".equals(tenantConfig.getProperty(RemoteTenant.AUTO_ARCHIVER_ENABLED))) {
-                        String daysString = tenantConfig.getProperty(RemoteTenant.AUTO_ARCHIVER_TIME_RANGE);
-                        final int days = Integer.parseInt(daysString);
-                        ArchivePseudoConfiguration configuration = new ArchivePseudoConfiguration(days);
-                        configuration.setAssociationType("ARCHIVE");
-                        NamedConfiguration namedConfiguration = new NamedConfiguration(remoteTenant.getId(), 0,
-                                ArchivePseudoGenerator.ID, "Archive", configuration, true);
+            logger.info("plugins for tenant " + remoteTenant.getOperatorId() + ":" + remoteTenant.getStringId() +
+                    " finished in " + (long) monitor.getLastValue() + "ms");
+        }
 
-                        logger.info("Archiving actions older than " + days + " day(s)");
+        private void runPlugins() {
+            final Properties tenantConfig = tenantService.getTenantConfig(remoteTenant.getId());
 
-                        generatorContainer.runGenerator(namedConfiguration);
-                    }
+            if (tenantConfig == null) {
+                logger.warn("could not get tenant configuration, aborting");
 
-                    logger.info("starting generator plugin for tenant: " + remoteTenant.getOperatorId() + ":" +
-                            remoteTenant.getStringId());
+                return;
+            }
 
-                    generatorContainer.runGeneratorsForTenant(remoteTenant.getId());
+            if ("true".equals(tenantConfig.getProperty(RemoteTenant.AUTO_ARCHIVER_ENABLED))) {
+                String daysString = tenantConfig.getProperty(RemoteTenant.AUTO_ARCHIVER_TIME_RANGE);
+                final int days = Integer.parseInt(daysString);
+                ArchivePseudoConfiguration configuration = new ArchivePseudoConfiguration(days);
+                configuration.setAssociationType("ARCHIVE");
+                NamedConfiguration namedConfiguration = new NamedConfiguration(remoteTenant.getId(), 0,
+                        ArchivePseudoGenerator.ID, "Archive", configuration, true);
 
-                    ///////////////////////////////////////
-                    // TODO: insert logic here to trigger plugin generators
-                    // TODO: send call to REST-API to mostview ALL Time to get results cached
-                    // Problem: how to get ContextPath the needs to present to build backtracking URL?
+                logger.info("Archiving actions older than " + days + " day(s)");
 
-                    remoteTenantService.updateTenantStatistics(remoteTenant.getId());
-                }
+                generatorContainer.runGenerator(namedConfiguration);
             }
-            logger.debug("PluginScheduler stopped. ");
+
+            logger.info("starting generator plugin for tenant: " + remoteTenant.getOperatorId() + ":" +
+                    remoteTenant.getStringId());
+
+            generatorContainer.runGeneratorsForTenant(remoteTenant.getId());
+
+            ///////////////////////////////////////
+            // TODO: insert logic here to trigger plugin generators
+            // TODO: send call to REST-API to mostview ALL Time to get results cached
+            // Problem: how to get ContextPath the needs to present to build backtracking URL?
+
+            remoteTenantService.updateTenantStatistics(remoteTenant.getId());
         }
     }
 
@@ -313,4 +408,13 @@ public class PluginScheduler implements InitializingBean, DisposableBean {
     public void setGeneratorContainer(GeneratorContainer generatorContainer) {
         this.generatorContainer = generatorContainer;
     }
+
+    /**
+     * @param workers the number of tenants whose plugins run at the same time
+     */
+    public void setWorkers(int workers) {
+        if (workers < 1) throw new IllegalArgumentException("'workers' must be positive");
+
+        this.workers = workers;
+    }
 }
@@ -98,6 +98,13 @@ public class PluginTimerTask {
         return remoteTenant.getStringId();
     }
 
+    /**
+     * @return the time of day the tenant is queued at, e.g. 23:45
+     */
+    public String getSchedulerExecutionTime() {
+        return remoteTenant.getSchedulerExecutionTime();
+    }
+
     /**
      * Cancels this task
      */
@@ -33,7 +33,11 @@ import org.easyrec.store.dao.core.types.AssocTypeDAO;
 import org.easyrec.store.dao.core.types.ItemTypeDAO;
 
 import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 /**
  * <DESCRIPTION>
@@ -267,12 +271,14 @@ public class IDMappingServiceImpl implements IDMappingService {
         List<Item> items = new ArrayList<Item>();
         Item item = null;
         if (inList != null) {
-            for (ItemVO<Integer, String> itemVO : inList) {
+            List<Item> storedItems = getItems(remoteTenant, inList);
+
+            for (int i = 0; i < inList.size(); i++) {
+                ItemVO<Integer, String> itemVO = inList.get(i);
 
                 if (items.size() >= numberOfRecommendations) break;
 
-                item = itemDAO.get(remoteTenant, idMappingDAO.lookup(itemVO.getItem()),
-                        itemVO.getType());
+                item = storedItems.get(i);
 
                 if (item != null) {
                     if (item.isActive()) {
@@ -316,12 +322,36 @@ public class IDMappingServiceImpl implements IDMappingService {
         Item item = null;
 
         if (recommendation != null && recommendation.getRecommendedItems() != null) {
-            for (RecommendedItemVO<Integer, String> recommendedItem : recommendation.getRecommendedItems()) {
+            List<RecommendedItemVO<Integer, String>> recommendedItems = recommendation.getRecommendedItems();
+            List<ItemVO<Integer, String>> itemVOs = new ArrayList<ItemVO<Integer, String>>(recommendedItems.size());
+
+            for (RecommendedItemVO<Integer, String> recommendedItem : recommendedItems) {
+                itemVOs.add(recommendedItem.getItem());
+            }
+
+            List<Item> storedItems = getItems(remoteTenant, itemVOs);
+
+            Integer assocTypeId = assocTypeDAO
+                    .getIdOfType(remoteTenant.getId(), recommendation.getQueriedAssocType());
+
+            // assocTypeId: recommendations for user
+            if (assocTypeId == null) {
+                assocTypeId = BackTrackingController.ASSOC_RECOMMENDATIONS_FOR_USER;
+            }
+
+            Integer itemFromId = recommendation.getQueriedItem();
+
+            // default item fromid = 0 in case of "recommendations for user"
+            if (itemFromId == null) {
+                itemFromId = 0;
+            }
+
+            for (int i = 0; i < recommendedItems.size(); i++) {
+                RecommendedItemVO<Integer, String> recommendedItem = recommendedItems.get(i);
 
                 if (items.size() >= numberOfRecommendations) break;
 
-                item = itemDAO.get(remoteTenant, idMappingDAO.lookup(recommendedItem.getItem().getItem()),
-                        recommendedItem.getItem().getType());
+                item = storedItems.get(i);
 
 
                 if (item != null) {
@@ -331,21 +361,6 @@ public class IDMappingServiceImpl implements IDMappingService {
                         // e.g. http://localhost:8084/easyrec-web/t?t=1&f=2&t=3&a=4&u=www.flimmit.com
                         String itemUrl = item.getUrl();
 
-                        Integer assocTypeId = assocTypeDAO
-                                .getIdOfType(remoteTenant.getId(), recommendation.getQueriedAssocType());
-
-                        // assocTypeId: recommendations for user
-                        if (assocTypeId == null) {
-                            assocTypeId = BackTrackingController.ASSOC_RECOMMENDATIONS_FOR_USER;
-                        }
-
-                        Integer itemFromId = recommendation.getQueriedItem();
-
-                        // default item fromid = 0 in case of "recommendations for user"
-                        if (itemFromId == null) {
-                            itemFromId = 0;
-                        }
-
                         if (remoteTenant.backtrackingEnabled()) {
                                 itemUrl = Item.getTrackingUrl(session, userId, remoteTenant, itemFromId,
                                     recommendedItem.getItem().getItem(), assocTypeId, item.getUrl());
@@ -377,12 +392,20 @@ public class IDMappingServiceImpl implements IDMappingService {
         Item item = null;
 
         if (rankedItems != null) {
+            List<ItemVO<Integer, String>> itemVOs = new ArrayList<ItemVO<Integer, String>>(rankedItems.size());
+
             for (RankedItemVO<Integer, String> rankedItem : rankedItems) {
+                itemVOs.add(rankedItem.getItem());
+            }
+
+            List<Item> storedItems = getItems(remoteTenant, itemVOs);
+
+            for (int i = 0; i < rankedItems.size(); i++) {
+                RankedItemVO<Integer, String> rankedItem = rankedItems.get(i);
 
                 if (items.size() >= numberOfRecommendations) break;
 
-                item = itemDAO.get(remoteTenant, idMappingDAO.lookup(rankedItem.getItem().getItem()),
-                        rankedItem.getItem().getType());
+                item = storedItems.get(i);
 
                 if (item != null) {
                     if (item.isActive()) {
@@ -415,10 +438,19 @@ public class IDMappingServiceImpl implements IDMappingService {
         Item item = null;
 
         if (ratedItems != null) {
+            List<ItemVO<Integer, String>> itemVOs = new ArrayList<ItemVO<Integer, String>>(ratedItems.size());
+
             for (RatingVO<Integer, String> ratedItem : ratedItems) {
+                itemVOs.add(ratedItem.getItem());
+            }
+
+            List<Item> storedItems = getItems(remoteTenant, itemVOs);
+
+            for (int i = 0; i < ratedItems.size(); i++) {
+                RatingVO<Integer, String> ratedItem = ratedItems.get(i);
+
                 if (items.size() >= numberOfRecommendations) break;
-                item = itemDAO.get(remoteTenant, idMappingDAO.lookup(ratedItem.getItem().getItem()),
-                        ratedItem.getItem().getType());
+                item = storedItems.get(i);
 
                 if (item != null) {
                     if (item.isActive()) {
@@ -487,12 +519,21 @@ public class IDMappingServiceImpl implements IDMappingService {
         Item item = null;
 
         if (clusterItems != null) {
+            List<ItemVO<Integer, String>> itemVOs = new ArrayList<ItemVO<Integer, String>>(clusterItems.size());
+
             for (ItemVO<Integer, Integer> clusterItem : clusterItems) {
+                itemVOs.add(new ItemVO<Integer, String>(clusterItem.getTenant(), clusterItem.getItem(),
+                        itemTypeDAO.getTypeById(clusterItem.getTenant(), clusterItem.getType())));
+            }
+
+            List<Item> storedItems = getItems(remoteTenant, itemVOs);
+
+            for (int i = 0; i < clusterItems.size(); i++) {
+                ItemVO<Integer, Integer> clusterItem = clusterItems.get(i);
 
                 if (items.size() >= numberOfRecommendations) break;
 
-                item = itemDAO.get(remoteTenant, idMappingDAO.lookup(clusterItem.getItem()),
-                        itemTypeDAO.getTypeById(clusterItem.getTenant(), clusterItem.getType()));
+                item = storedItems.get(i);
 
                 if (item != null) {
                     if (item.isActive()) {
@@ -517,4 +558,53 @@ public class IDMappingServiceImpl implements IDMappingService {
         }
         return items;
     }
-}
\ No newline at end of file
+
+    /**
+     * Loads the items for the given core items with a single id mapping lookup and a single item query per item
+     * type instead of one lookup and one query per item.
+     *
+     * @return the items in the order of the given core items, {@code null} where no item exists
+     */
+    private List<Item> getItems(RemoteTenant remoteTenant, List<ItemVO<Integer, String>> itemVOs) {
+        List<Integer> intIds = new ArrayList<Integer>(itemVOs.size());
+
+        for (ItemVO<Integer, String> itemVO : itemVOs) {
+            intIds.add(itemVO.getItem());
+        }
+
+        Map<Integer, String> stringIds = idMappingDAO.lookupStringIds(intIds);
+        Map<String, Set<String>> itemIdsByType = new HashMap<String, Set<String>>();
+
+        for (ItemVO<Integer, String> itemVO : itemVOs) {
+            String stringId = stringIds.get(itemVO.getItem());
+
+            if (stringId == null) continue;
+
+            Set<String> itemIds = itemIdsByType.get(itemVO.getType());
+
+            if (itemIds == null) {
+                itemIds = new LinkedHashSet<String>();
+                itemIdsByType.put(itemVO.getType(), itemIds);
+            }
+
+            itemIds.add(stringId);
+        }
+
+        Map<String, Map<String, Item>> itemsByType = new HashMap<String, Map<String, Item>>();
+
+        for (Map.Entry<String, Set<String>> entry : itemIdsByType.entrySet()) {
+            itemsByType.put(entry.getKey(), itemDAO.get(remoteTenant, entry.getValue(), entry.getKey()));
+        }
+
+        List<Item> items = new ArrayList<Item>(itemVOs.size());
+
+        for (ItemVO<Integer, String> itemVO : itemVOs) {
+            Map<String, Item> itemsOfType = itemsByType.get(itemVO.getType());
+            String stringId = stringIds.get(itemVO.getItem());
+
+            items.add(itemsOfType != null && stringId != null ? itemsOfType.get(stringId) : null);
+        }
+
+        return items;
+    }
+}
@@ -139,6 +139,18 @@ public interface ShopRecommenderService {
     public Item sendAction(RemoteTenant remoteTenant, String userId, String itemId, String itemType,
                          String itemDescription, String itemUrl, String itemImageUrl, String actionType, Integer actionValue,
                          Date actionTime, Session session);
+
+    /**
+     * Stores a batch of validated actions of a bulk import. The items of the batch are resolved with one lookup per
+     * item type, unknown items are created and all actions on active items are stored at once. Actions on inactive
+     * items get an error status.
+     *
+     * @param remoteTenant tenant identifier
+     * @param actions      the validated actions, the item type must be set
+     * @param ip           the ip the actions were sent from
+     * @return the number of stored actions
+     */
+    public int importActions(RemoteTenant remoteTenant, List<ImportedAction> actions, String ip);
     
     ///////////////////////////////////////////////////////////////////////////////////////////////
     // Rankings
@@ -502,6 +514,25 @@ public interface ShopRecommenderService {
                                        String requestedItemType, Session session, Integer numberOfResults)
             throws EasyRecRestException;
 
+    /**
+     * returns {@link RecommendedItem}s computed online, combining the rules of the given item with the rules of the
+     * items the user or session acted on lately
+     *
+     * @param tenantId          tenant identifier
+     * @param assocType         the assoc type of the rules to use
+     * @param userId            optional user id, the recent actions of the user are considered
+     * @param itemId            the id of the item the recommendations are requested for
+     * @param itemType          the type of the item the recommendations are requested for
+     * @param requestedItemType optional, if set, only items of the requested type are used in the result
+     * @param session           optional session, the recent actions of the session are considered
+     * @return the recommended items, best first
+     * @throws org.easyrec.rest.nodomain.exception.EasyRecRestException
+     */
+    public Recommendation onlineRecommendations(Integer tenantId, String assocType, String userId, String itemId,
+                                                String itemType, String requestedItemType, Session session,
+                                                Integer numberOfResults)
+            throws EasyRecRestException;
+
     ///////////////////////////////////////////////////////////////////////////////////////////////
     // Utility methods
     ///////////////////////////////////////////////////////////////////////////////////////////////
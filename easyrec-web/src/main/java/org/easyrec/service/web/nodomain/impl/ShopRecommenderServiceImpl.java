@@ -94,10 +94,12 @@ public class ShopRecommenderServiceImpl implements ShopRecommenderService {
     private final static String JAMON_REST_RATE_CORE = "rest.rate.core";
     private final static String JAMON_REST_BUY_CORE = "rest.buy.core";
     private final static String JAMON_REST_SENDACTION_CORE = "rest.sendaction.core";
+    private final static String JAMON_REST_IMPORT_ACTIONS_CORE = "rest.import.actions.core";
 
     private final static String JAMON_REST_ALSO_VIEWED_CORE = "rest.alsoviewed.core";
     private final static String JAMON_REST_ALSO_BOUGHT_CORE = "rest.alsobought.core";
     private final static String JAMON_REST_ALSO_RATED_CORE = "rest.alsorated.core";
+    private final static String JAMON_REST_ONLINE_CORE = "rest.online.core";
     private final static String JAMON_REST_RECS_FOR_USER = "rest.recsforuser.core";
     private final static String JAMON_REST_ACTION_HISTORY_CORE = "rest.history.core";
     private final static String JAMON_REST_RECOMMENDED_ITEMS_CORE = "rest.recommendeditems.core";
@@ -399,6 +401,68 @@ public class ShopRecommenderServiceImpl implements ShopRecommenderService {
 
     }
 
+    public int importActions(RemoteTenant remoteTenant, List<ImportedAction> actions, String ip) {
+        Monitor monCore = MonitorFactory.start(JAMON_REST_IMPORT_ACTIONS_CORE);
+
+        // resolve the items with one lookup per item type
+        Map<String, Set<String>> itemIdsByType = new HashMap<String, Set<String>>();
+
+        for (ImportedAction action : actions) {
+            Set<String> itemIds = itemIdsByType.get(action.getItemType());
+
+            if (itemIds == null) {
+                itemIds = new HashSet<String>();
+                itemIdsByType.put(action.getItemType(), itemIds);
+            }
+
+            itemIds.add(action.getItemId());
+        }
+
+        Map<String, Map<String, Item>> itemsByType = new HashMap<String, Map<String, Item>>();
+
+        for (Map.Entry<String, Set<String>> itemIds : itemIdsByType.entrySet())
+            itemsByType.put(itemIds.getKey(),
+                    new HashMap<String, Item>(itemDAO.get(remoteTenant, itemIds.getValue(), itemIds.getKey())));
+
+        List<ActionVO<Integer, String>> actionVOs = new ArrayList<ActionVO<Integer, String>>(actions.size());
+        Date now = new Date();
+
+        for (ImportedAction action : actions) {
+            Map<String, Item> items = itemsByType.get(action.getItemType());
+            Item item = items.get(action.getItemId());
+
+            if (item == null) {
+                item = itemDAO.add(remoteTenant.getId(), action.getItemId(), action.getItemType(),
+                        action.getItemDescription(), action.getItemUrl(), action.getItemImageUrl());
+                items.put(action.getItemId(), item);
+            }
+
+            if (item == null || !item.isActive()) {
+                action.setError(MSG.ITEM_NOT_ACTIVE);
+                continue;
+            }
+
+            // if userid is empty use sessionid instead of the userid
+            String userId = Strings.isNullOrEmpty(action.getUserId()) ? action.getSessionId() : action.getUserId();
+
+            actionVOs.add(new ActionVO<Integer, String>(remoteTenant.getId(), idMappingDAO.lookup(userId),
+                    action.getSessionId(), ip,
+                    new ItemVO<Integer, String>(remoteTenant.getId(), idMappingDAO.lookup(action.getItemId()),
+                            action.getItemType()), action.getActionType(), action.getValue(), null, null,
+                    action.getItemDescription(), action.getTime() != null ? action.getTime() : now));
+        }
+
+        int stored = actionVOs.isEmpty() ? 0 : domainActionService.insertActions(actionVOs, true);
+
+        monCore.stop();
+
+        if (logger.isDebugEnabled())
+            logger.debug("<importActions@" + remoteTenant.getId() + "> " + stored + " of " + actions.size() +
+                    " actions stored");
+
+        return stored;
+    }
+
     
     
     //    @IOLog
@@ -1099,6 +1163,46 @@ public class ShopRecommenderServiceImpl implements ShopRecommenderService {
         return rec;
     }
 
+    @Override
+    public Recommendation onlineRecommendations(Integer tenantId, String assocType, String userId, String itemId,
+                                                String itemType, String requestedItemType, Session session,
+                                                Integer numberOfResults)
+            throws EasyRecRestException {
+        RemoteTenant remoteTenant = remoteTenantDAO.get(tenantId);
+        Item i = itemDAO.get(remoteTenant, itemId, itemType);
+
+        if (i == null)
+            throw new EasyRecRestException(MSG.ITEM_NOT_EXISTS);
+
+        if (!i.isActive())
+            throw new EasyRecRestException(MSG.ITEM_NOT_ACTIVE);
+
+        if (logger.isDebugEnabled()) {
+            logger.debug("<ONLINE@" + remoteTenant.getStringId() + "> " +
+                    (!Strings.isNullOrEmpty(userId) ? userId : "anonymous") +
+                    " requesting online recommendations for " + itemType + " " + i.getDescription() +
+                    " (id:" + itemId + ")");
+        }
+
+        // an unknown user has no history, so no mapping is created for it
+        Integer coreUserId = !Strings.isNullOrEmpty(userId) ? idMappingDAO.lookupExisting(userId) : null;
+
+        Monitor monCore = MonitorFactory.start(JAMON_REST_ONLINE_CORE);
+
+        RecommendationVO<Integer, String> recommendation =
+                domainRecommenderService
+                        .recommend(tenantId, coreUserId, session.getSessionId(),
+                                new ItemVO<Integer, String>(tenantId, idMappingDAO.lookup(itemId), itemType),
+                                assocType, requestedItemType);
+        monCore.stop();
+
+        List<Item> items = idMappingService
+                .mapRecommendedItems(recommendation, remoteTenant, coreUserId, session, numberOfResults);
+
+        return new Recommendation(remoteTenant.getStringId(), WS.ACTION_ONLINE_RECOMMENDATIONS, userId,
+                session.getSessionId(), i, items);
+    }
+
 
     ///////////////////////////////////////////////////////////////////////////////////////////////
     // Utility Methods
@@ -18,6 +18,7 @@
  */
 package org.easyrec.store.dao.web.impl;
 
+import org.easyrec.store.dao.core.ItemAssocDAO;
 import org.easyrec.store.dao.impl.BasicDAOMysqlImpl;
 import org.easyrec.store.dao.web.AssocDAO;
 import org.springframework.jdbc.core.PreparedStatementCreatorFactory;
@@ -56,6 +57,8 @@ public class AssocDAOMysqlImpl extends BasicDAOMysqlImpl implements AssocDAO {
 
     private static final PreparedStatementCreatorFactory PS_ADD_RULE;
 
+    private ItemAssocDAO itemAssocDAO;
+
 
     static {
 
@@ -96,6 +99,10 @@ public class AssocDAOMysqlImpl extends BasicDAOMysqlImpl implements AssocDAO {
         this.setTableName("itemassoc");
     }
 
+    public void setItemAssocDAO(ItemAssocDAO itemAssocDAO) {
+        this.itemAssocDAO = itemAssocDAO;
+    }
+
     /*
     * (non-Javadoc)
     *
@@ -111,7 +118,7 @@ public class AssocDAOMysqlImpl extends BasicDAOMysqlImpl implements AssocDAO {
 
         try {
             int rowsAffected = getJdbcTemplate().update(PS_ADD_RULE.newPreparedStatementCreator(args), keyHolder);
-
+            invalidateServingIndex(tenantId, assocType);
 
         } catch (Exception e) {
             logger.debug(e);
@@ -127,6 +134,7 @@ public class AssocDAOMysqlImpl extends BasicDAOMysqlImpl implements AssocDAO {
         Object[] args = {tenantId, itemFromId, itemToId};
         try {
             getJdbcTemplate().update(SQL_ACTIVATE_RULE, args, ARGTYPES_SETSTATUS_RULE);
+            invalidateServingIndex(tenantId, null);
 
         } catch (Exception e) {
             logger.debug(e);
@@ -141,10 +149,14 @@ public class AssocDAOMysqlImpl extends BasicDAOMysqlImpl implements AssocDAO {
         Object[] args = {tenantId, itemFromId, itemToId};
         try {
             getJdbcTemplate().update(SQL_DEACTIVATE_RULE, args, ARGTYPES_SETSTATUS_RULE);
+            invalidateServingIndex(tenantId, null);
 
         } catch (Exception e) {
             logger.debug(e);
         }
     }
 
-}
\ No newline at end of file
+    private void invalidateServingIndex(Integer tenantId, Integer assocType) {
+        if (itemAssocDAO != null) itemAssocDAO.invalidateServingIndex(tenantId, assocType);
+    }
+}
@@ -28,11 +28,12 @@ import org.easyrec.plugin.generator.GeneratorConfiguration;
 import org.easyrec.plugin.model.PluginId;
 import org.easyrec.plugin.stats.GeneratorStatistics;
 import org.easyrec.service.core.TenantService;
+import org.easyrec.store.dao.core.ItemAssocDAO;
 import org.easyrec.store.dao.impl.BasicDAOMysqlImpl;
 import org.easyrec.store.dao.web.RemoteTenantDAO;
 import org.easyrec.util.core.Security;
 import org.easyrec.utils.servlet.ServletUtils;
-import org.easyrec.utils.spring.cache.annotation.InvalidatesCache;
+import org.easyrec.utils.spring.cache.aop.CacheResetAspectAdvice;
 import org.easyrec.utils.spring.store.dao.DaoUtils;
 import org.springframework.jdbc.core.RowMapper;
 
@@ -42,6 +43,7 @@ import java.io.ByteArrayInputStream;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Types;
+import java.util.ArrayList;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.List;
@@ -76,6 +78,10 @@ public class RemoteTenantDAOMysqlImpl extends BasicDAOMysqlImpl implements Remot
 
     private static final int[] ARGTYPES_KEY = {Types.VARCHAR, Types.VARCHAR};
 
+    // the regions holding cached results of a tenant, e.g. its type mappings and authentication
+    private static final String[] TENANT_CACHE_REGIONS =
+            {"SAT_TENANT_CACHE", "SAT_LONG_TERM_CACHE", "SAT_SHORT_TERM_CACHE", "RANKINGS_CACHE"};
+
     static {
         SQL_GET_REMOTE_TENANT = new StringBuilder()
                 .append("SELECT ID, STRINGID, OPERATORID, URL, DESCRIPTION, CREATIONDATE, TENANTCONFIG, TENANTSTATISTIC  FROM ")
@@ -118,6 +124,8 @@ public class RemoteTenantDAOMysqlImpl extends BasicDAOMysqlImpl implements Remot
 
     private PluginRegistry pluginRegistry;
     private TenantService tenantService;
+    private ItemAssocDAO itemAssocDAO;
+    private CacheResetAspectAdvice cacheReset;
 
     public RemoteTenantDAOMysqlImpl(DataSource dataSource) {
         super(dataSource);
@@ -134,6 +142,14 @@ public class RemoteTenantDAOMysqlImpl extends BasicDAOMysqlImpl implements Remot
         this.tenantService = tenantService;
     }
 
+    public void setItemAssocDAO(ItemAssocDAO itemAssocDAO) {
+        this.itemAssocDAO = itemAssocDAO;
+    }
+
+    public void setCacheReset(CacheResetAspectAdvice cacheReset) {
+        this.cacheReset = cacheReset;
+    }
+
 
     /*
      * (non-Javadoc)
@@ -152,9 +168,21 @@ public class RemoteTenantDAOMysqlImpl extends BasicDAOMysqlImpl implements Remot
         RemoteTenant r = get(operatorId, tenantId);
         if (r != null) {
             try {
+                // results cached by domain are keyed by the domains of the tenant, which are deleted below
+                List<String> domainURLs = getJdbcTemplate().queryForList(
+                        "SELECT domainURL FROM authentication WHERE tenantId = ?", new Object[]{r.getId()},
+                        new int[]{Types.INTEGER}, String.class);
+
                 getJdbcTemplate().update(SQL_DELETE_TENANT, new Object[]{tenantId, operatorId}, ARGTYPES_KEY);
 
                 removeTenantDependencies(r.getId());
+                if (itemAssocDAO != null) itemAssocDAO.invalidateServingIndex(r.getId(), null);
+                if (cacheReset != null) {
+                    List<Object> scopes = new ArrayList<Object>(domainURLs);
+                    scopes.add(r.getId());
+                    scopes.add(r.getStringId());
+                    cacheReset.evict(TENANT_CACHE_REGIONS, scopes.toArray());
+                }
                 remoteTenantIntCache.remove(r.getId());
                 remoteTenantCache.remove(tenantId + ":::" + operatorId);
             } catch (Exception e) {
@@ -310,7 +338,6 @@ public class RemoteTenantDAOMysqlImpl extends BasicDAOMysqlImpl implements Remot
      * (non-Javadoc)
      * @see at.researchstudio.sat.recommender.remote.store.dao.OperatorDAO#removeOperator(java.lang.String)
      */
-    @InvalidatesCache
     public boolean removeTenantDependencies(int tenantId) {
         try {
             Object[] argsDelete = {tenantId};
@@ -26,6 +26,7 @@ public class WS implements InitializingBean {
     public final static String ACTION_BUY = "buy";
     public final static String ACTION_RATE = "rate";
     public static final String ACTION_SENDACTION = "sendaction";
+    public static final String ACTION_IMPORT_ACTIONS = "importactions";
     public static final String ACTION_MOST_VIEWED = "mostvieweditems";
     public static final String ACTION_MOST_BOUGHT = "mostboughtitems";
     public static final String ACTION_MOST_RATED = "mostrateditems";
@@ -35,6 +36,7 @@ public class WS implements InitializingBean {
     public static final String ACTION_IMPORT_ITEM = "importitem";
     public static final String ACTION_CREATE_CLUSTER = "createcluster";
     public static final String ACTION_RELATED_ITEMS = "relateditems";
+    public static final String ACTION_ONLINE_RECOMMENDATIONS = "onlinerecommendations";
     public static final String ACTION_ITEMS_OF_CLUSTER = "itemsofcluster";
     public static final String ACTION_SET_ITEM_ACTIVE = "setitemactive:";
     public static final String ACTION_ITEMTYPES = "itemtypes";
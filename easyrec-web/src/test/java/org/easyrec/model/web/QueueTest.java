@@ -0,0 +1,115 @@
+/*
+ * Copyright 2010 Research Studios Austria Forschungsgesellschaft mBH
+ *
+ * This file is part of easyrec.
+ *
+ * easyrec is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * easyrec is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with easyrec.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.easyrec.model.web;
+
+import org.easyrec.model.core.web.RemoteTenant;
+import org.junit.Test;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.junit.Assert.assertThat;
+
+public class QueueTest {
+    private static final long HOUR = 60 * 60 * 1000;
+
+    private long now = 0;
+
+    // a queue whose clock only moves in the test
+    private final Queue queue = new Queue() {
+        @Override
+        long currentTime() {
+            return now;
+        }
+    };
+
+    @Test
+    public void take_takesNewTenantsInTheOrderTheyWereAdded() throws InterruptedException {
+        queue.add(tenant(1));
+        queue.add(tenant(2));
+        queue.add(tenant(1));
+
+        assertThat(queue.size(), is(2));
+        assertThat(queue.take(0).getTenant().getId(), is(1));
+        assertThat(queue.take(0).getTenant().getId(), is(2));
+        assertThat(queue.take(0), is(nullValue()));
+        assertThat(queue.isEmpty(), is(true));
+    }
+
+    @Test
+    public void take_doesNotTakeARunningTenant() throws InterruptedException {
+        queue.add(tenant(1));
+        Queue.Entry first = queue.take(0);
+
+        queue.add(tenant(1));
+        queue.add(tenant(2));
+
+        assertThat(queue.take(0).getTenant().getId(), is(2));
+        assertThat(queue.take(0), is(nullValue()));
+
+        queue.done(first.getTenant());
+
+        assertThat(queue.take(0).getTenant().getId(), is(1));
+    }
+
+    @Test
+    public void take_takesTenantsWithShortRunsFirst() throws InterruptedException {
+        run(1, 3 * HOUR);
+        run(2, 1000);
+
+        queue.add(tenant(1));
+        queue.add(tenant(2));
+        queue.add(tenant(3));
+
+        assertThat(queue.take(0).getTenant().getId(), is(3));
+        assertThat(queue.take(0).getTenant().getId(), is(2));
+        assertThat(queue.take(0).getTenant().getId(), is(1));
+    }
+
+    @Test
+    public void take_takesATenantWithLongRunsOnceItHasWaitedLongEnough() throws InterruptedException {
+        run(1, 3 * HOUR);
+        run(2, 1000);
+
+        queue.add(tenant(1));
+        now += 3 * HOUR + 1000;
+        queue.add(tenant(2));
+        now += 1;
+
+        assertThat(queue.take(0).getTenant().getId(), is(1));
+        assertThat(queue.take(0).getTenant().getId(), is(2));
+    }
+
+    // runs the tenant for the given time
+    private void run(int id, long duration) throws InterruptedException {
+        queue.add(tenant(id));
+        Queue.Entry entry = queue.take(0);
+
+        assertThat(entry.getTenant().getId(), is(id));
+
+        now += duration;
+        queue.done(entry.getTenant());
+    }
+
+    private static RemoteTenant tenant(int id) {
+        RemoteTenant tenant = new RemoteTenant();
+        tenant.setId(id);
+
+        return tenant;
+    }
+}
@@ -0,0 +1,97 @@
+/*
+ * Copyright 2010 Research Studios Austria Forschungsgesellschaft mBH
+ *
+ * This file is part of easyrec.
+ *
+ * easyrec is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * easyrec is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with easyrec.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.easyrec.rest;
+
+import org.easyrec.model.web.ImportedAction;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.junit.Assert.assertThat;
+
+public class ActionImportReaderTest {
+
+    @Test
+    public void next_readsJsonActions() throws Exception {
+        ActionImportReader reader = reader("application/json",
+                "[{\"userid\":\"u1\",\"sessionid\":\"s1\",\"itemid\":\"42\",\"actiontype\":\"RATE\"," +
+                        "\"actionvalue\":5,\"unknown\":{\"a\":[1,2]}},\n" +
+                        " {\"ItemId\":\"43\",\"itemdescription\":null,\"actiontype\":\"VIEW\"}]");
+
+        ImportedAction first = reader.next();
+        assertThat(first.getLine(), is(1));
+        assertThat(first.getUserId(), is("u1"));
+        assertThat(first.getSessionId(), is("s1"));
+        assertThat(first.getItemId(), is("42"));
+        assertThat(first.getActionType(), is("RATE"));
+        assertThat(first.getActionValue(), is("5"));
+
+        ImportedAction second = reader.next();
+        assertThat(second.getLine(), is(2));
+        assertThat(second.getItemId(), is("43"));
+        assertThat(second.getItemDescription(), is(nullValue()));
+
+        assertThat(reader.next(), is(nullValue()));
+    }
+
+    @Test(expected = IOException.class)
+    public void create_rejectsJsonWithoutArray() throws Exception {
+        reader("application/json", "{\"itemid\":\"42\"}");
+    }
+
+    @Test
+    public void next_readsCsvActions() throws Exception {
+        ActionImportReader reader = reader("text/csv; charset=UTF-8",
+                "userid,sessionid,itemid,itemdescription,actiontype,actionvalue\r\n" +
+                        "u1,s1,42,\"Fatboy Slim, \"\"Live\"\"\",RATE,5\r\n" +
+                        "\n" +
+                        ",s2,43,\"two\nlines\",VIEW\n" +
+                        "u3,s3,44,last,BUY,");
+
+        ImportedAction first = reader.next();
+        assertThat(first.getLine(), is(2));
+        assertThat(first.getUserId(), is("u1"));
+        assertThat(first.getItemDescription(), is("Fatboy Slim, \"Live\""));
+        assertThat(first.getActionValue(), is("5"));
+
+        ImportedAction second = reader.next();
+        assertThat(second.getLine(), is(4));
+        assertThat(second.getUserId(), is(nullValue()));
+        assertThat(second.getItemDescription(), is("two\nlines"));
+        assertThat(second.getActionValue(), is(nullValue()));
+
+        ImportedAction third = reader.next();
+        assertThat(third.getLine(), is(6));
+        assertThat(third.getActionType(), is("BUY"));
+
+        assertThat(reader.next(), is(nullValue()));
+    }
+
+    @Test(expected = IOException.class)
+    public void next_rejectsUnterminatedQuote() throws Exception {
+        reader("text/csv", "itemid,itemdescription\n42,\"open").next();
+    }
+
+    private static ActionImportReader reader(String contentType, String body) throws IOException {
+        return ActionImportReader.create(contentType, new ByteArrayInputStream(body.getBytes("UTF-8")));
+    }
+}
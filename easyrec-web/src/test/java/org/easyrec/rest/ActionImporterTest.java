@@ -0,0 +1,130 @@
+/*
+ * Copyright 2010 Research Studios Austria Forschungsgesellschaft mBH
+ *
+ * This file is part of easyrec.
+ *
+ * easyrec is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * easyrec is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with easyrec.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.easyrec.rest;
+
+import org.easyrec.model.core.web.RemoteTenant;
+import org.easyrec.model.web.ImportedAction;
+import org.easyrec.service.web.nodomain.ShopRecommenderService;
+import org.easyrec.vocabulary.MSG;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+public class ActionImporterTest {
+    private final RecordingService recorder = new RecordingService();
+    private final ShopRecommenderService service = (ShopRecommenderService) Proxy.newProxyInstance(
+            ShopRecommenderService.class.getClassLoader(), new Class<?>[]{ShopRecommenderService.class}, recorder);
+
+    @Test
+    public void add_storesTheValidActionsInBatches() throws Exception {
+        ActionImporter importer = new ActionImporter(service, new RemoteTenant(), "127.0.0.1", 2, 10);
+
+        // line 3 has no action type, item 13 is inactive
+        importAll(importer, "userid,sessionid,itemid,actiontype\n" +
+                "u1,s1,11,VIEW\n" +
+                "u1,s1,12,\n" +
+                "u2,s2,13,VIEW\n" +
+                "u2,s2,14,BUY\n" +
+                "u3,s3,15,VIEW\n");
+
+        assertThat(recorder.batchSizes, is(Arrays.asList(2, 2)));
+        assertThat(importer.getImported(), is(3));
+        assertThat(importer.getFailed(), is(2));
+        assertThat(importer.getFailures().size(), is(2));
+        assertThat(importer.getFailures().get(0).getLine(), is(3));
+        assertThat(importer.getFailures().get(0).getCode(), is(MSG.MISSING_ACTIONTYPE.getCode()));
+        assertThat(importer.getFailures().get(1).getLine(), is(4));
+        assertThat(importer.getFailures().get(1).getCode(), is(MSG.ITEM_NOT_ACTIVE.getCode()));
+    }
+
+    @Test
+    public void add_keepsOnlyTheFirstFailures() throws Exception {
+        ActionImporter importer = new ActionImporter(service, new RemoteTenant(), "127.0.0.1", 2, 2);
+        StringBuilder body = new StringBuilder("userid,sessionid,itemid,actiontype\n");
+
+        for (int i = 0; i < 100; i++)
+            body.append("u1,s1,").append(i).append(i % 10 == 0 ? ",VIEW\n" : ",\n");
+
+        importAll(importer, body.toString());
+
+        assertThat(importer.getImported(), is(10));
+        assertThat(importer.getFailed(), is(90));
+        assertThat(importer.getFailures().size(), is(2));
+        assertThat(importer.getFailures().get(0).getLine(), is(3));
+        assertThat(importer.getFailures().get(1).getLine(), is(4));
+    }
+
+    @Test
+    public void flush_doesNotCallTheServiceWithoutActions() {
+        ActionImporter importer = new ActionImporter(service, new RemoteTenant(), "127.0.0.1", 2, 10);
+
+        importer.flush();
+
+        assertThat(recorder.batchSizes.isEmpty(), is(true));
+        assertThat(importer.getImported(), is(0));
+    }
+
+    // reads a CSV body like the import call, actions without an action type are invalid
+    private static void importAll(ActionImporter importer, String csv) throws Exception {
+        ActionImportReader reader = ActionImportReader.create("text/csv",
+                new ByteArrayInputStream(csv.getBytes("UTF-8")));
+        ImportedAction action;
+
+        while ((action = reader.next()) != null) {
+            if (action.getActionType() == null) action.setError(MSG.MISSING_ACTIONTYPE);
+
+            importer.add(action);
+        }
+
+        importer.flush();
+        reader.close();
+    }
+
+    // records the size of every batch, actions of item 13 are rejected as inactive
+    private static class RecordingService implements InvocationHandler {
+        private final List<Integer> batchSizes = new ArrayList<Integer>();
+
+        @SuppressWarnings("unchecked")
+        public Object invoke(Object proxy, Method method, Object[] args) {
+            if (!method.getName().equals("importActions"))
+                throw new UnsupportedOperationException(method.getName());
+
+            List<ImportedAction> batch = (List<ImportedAction>) args[1];
+            int stored = 0;
+
+            batchSizes.add(batch.size());
+
+            for (ImportedAction action : batch) {
+                if ("13".equals(action.getItemId())) action.setError(MSG.ITEM_NOT_ACTIVE);
+                else stored++;
+            }
+
+            return stored;
+        }
+    }
+}